@@ -18,6 +18,31 @@ public class ApimAdapterConfig {
 
     private static final Logger LOG = LoggerFactory.getLogger(ApimAdapterConfig.class);
 
+    /**
+     * Number of clients whose plan is synchronized with 3Scale concurrently
+     */
+    public static final int DEFAULT_SYNC_PARALLELISM = 16;
+    /**
+     * Number of clients which are queued or being synchronized at the same time
+     */
+    public static final int DEFAULT_SYNC_MAX_IN_FLIGHT = 64;
+    /**
+     * Number of transaction forms which are reported to 3Scale concurrently
+     */
+    public static final int DEFAULT_REPORT_PARALLELISM = 4;
+    /**
+     * Memory the parsed tokens may use in the token cache, roughly 20'000 tokens
+     */
+    public static final int DEFAULT_TOKEN_CACHE_MAX_KILOBYTES = 4096;
+    /**
+     * Time the token issuers and the configuration may take to load on startup, before the offline configuration is used
+     */
+    public static final int DEFAULT_STARTUP_TIMEOUT_IN_SECONDS = 10;
+    /**
+     * Requests of a new client which are admitted while its plan is loaded in the background, with the async client admission
+     */
+    public static final int DEFAULT_PROVISIONAL_CLIENT_REQUESTS = 10;
+
     private final boolean backendUseHttps;
     private final String backendPort;
     private final String backendHost;
@@ -39,6 +64,14 @@ public class ApimAdapterConfig {
     private final String cacheLocation;
     private final List<HttpMethod> excludeFilterMethods;
     private final boolean reportResponseCode;
+    private final int syncParallelism;
+    private final int syncMaxInFlight;
+    private final int reportParallelism;
+    private final int tokenCacheMaxKilobytes;
+    private final int startupTimeoutInSeconds;
+    private final boolean asyncClientAdmission;
+    private final int provisionalClientRequests;
+    private final int provisionalClientWaitMillis;
     private boolean apimFilterEnabled;
 
     public ApimAdapterConfig(boolean backendUseHttps, String backendPort, String backendHost, String backendToken,
@@ -47,7 +80,7 @@ public class ApimAdapterConfig {
                              boolean adapterProductionMode, MonitoringLevel monitoringLevel, String monitoringPushHost,
                              int monitoringPushIntervalInSeconds, boolean monitoringPushEnabled, String monitoringId,
                              String monitoringNamespace, String cacheLocation, List<HttpMethod> excludeFilterMethods,
-                             boolean reportResponseCode, boolean apimFilterEnabled) {
+                             boolean reportResponseCode, boolean apimFilterEnabled, int syncParallelism, int syncMaxInFlight, int reportParallelism, int tokenCacheMaxKilobytes, int startupTimeoutInSeconds, boolean asyncClientAdmission, int provisionalClientRequests, int provisionalClientWaitMillis) {
         this.backendUseHttps = backendUseHttps;
         this.backendPort = backendPort;
         this.backendHost = backendHost;
@@ -70,6 +103,14 @@ public class ApimAdapterConfig {
         this.excludeFilterMethods = excludeFilterMethods;
         this.reportResponseCode = reportResponseCode;
         this.apimFilterEnabled = apimFilterEnabled;
+        this.syncParallelism = syncParallelism;
+        this.syncMaxInFlight = syncMaxInFlight;
+        this.reportParallelism = reportParallelism;
+        this.tokenCacheMaxKilobytes = tokenCacheMaxKilobytes;
+        this.startupTimeoutInSeconds = startupTimeoutInSeconds;
+        this.asyncClientAdmission = asyncClientAdmission;
+        this.provisionalClientRequests = provisionalClientRequests;
+        this.provisionalClientWaitMillis = provisionalClientWaitMillis;
 
         if (tokenIssuers == null) {
             throw new IllegalArgumentException("At least one token issuer url pattern must be provided");
@@ -79,6 +120,24 @@ public class ApimAdapterConfig {
         if (urlPatterns.isEmpty()) {
             throw new IllegalArgumentException("At least one token issuer url pattern must be provided");
         }
+        if (syncParallelism < 1 || syncMaxInFlight < syncParallelism) {
+            throw new IllegalArgumentException("The sync parallelism must be at least 1 and not exceed the sync max in flight");
+        }
+        if (reportParallelism < 1) {
+            throw new IllegalArgumentException("The report parallelism must be at least 1");
+        }
+        if (tokenCacheMaxKilobytes < 1) {
+            throw new IllegalArgumentException("The token cache max kilobytes must be at least 1");
+        }
+        if (startupTimeoutInSeconds < 1) {
+            throw new IllegalArgumentException("The startup timeout must be at least 1 second");
+        }
+        if (provisionalClientRequests < 0) {
+            throw new IllegalArgumentException("The provisional client requests must not be negative");
+        }
+        if (provisionalClientWaitMillis < 0) {
+            throw new IllegalArgumentException("The provisional client wait must not be negative");
+        }
     }
 
     public static ApimAdapterConfigBuilder builder() {
@@ -108,6 +167,14 @@ public class ApimAdapterConfig {
         private List<HttpMethod> excludeFilterMethods;
         private boolean reportResponseCode;
         private boolean apimFilterEnabled = true;
+        private int syncParallelism = DEFAULT_SYNC_PARALLELISM;
+        private int syncMaxInFlight = DEFAULT_SYNC_MAX_IN_FLIGHT;
+        private int reportParallelism = DEFAULT_REPORT_PARALLELISM;
+        private int tokenCacheMaxKilobytes = DEFAULT_TOKEN_CACHE_MAX_KILOBYTES;
+        private int startupTimeoutInSeconds = DEFAULT_STARTUP_TIMEOUT_IN_SECONDS;
+        private boolean asyncClientAdmission;
+        private int provisionalClientRequests = DEFAULT_PROVISIONAL_CLIENT_REQUESTS;
+        private int provisionalClientWaitMillis;
 
 
         ApimAdapterConfigBuilder() {
@@ -231,6 +298,46 @@ public class ApimAdapterConfig {
             return this;
         }
 
+        public ApimAdapterConfigBuilder syncParallelism(int syncParallelism) {
+            this.syncParallelism = syncParallelism;
+            return this;
+        }
+
+        public ApimAdapterConfigBuilder syncMaxInFlight(int syncMaxInFlight) {
+            this.syncMaxInFlight = syncMaxInFlight;
+            return this;
+        }
+
+        public ApimAdapterConfigBuilder reportParallelism(int reportParallelism) {
+            this.reportParallelism = reportParallelism;
+            return this;
+        }
+
+        public ApimAdapterConfigBuilder tokenCacheMaxKilobytes(int tokenCacheMaxKilobytes) {
+            this.tokenCacheMaxKilobytes = tokenCacheMaxKilobytes;
+            return this;
+        }
+
+        public ApimAdapterConfigBuilder startupTimeoutInSeconds(int startupTimeoutInSeconds) {
+            this.startupTimeoutInSeconds = startupTimeoutInSeconds;
+            return this;
+        }
+
+        public ApimAdapterConfigBuilder asyncClientAdmission(boolean asyncClientAdmission) {
+            this.asyncClientAdmission = asyncClientAdmission;
+            return this;
+        }
+
+        public ApimAdapterConfigBuilder provisionalClientRequests(int provisionalClientRequests) {
+            this.provisionalClientRequests = provisionalClientRequests;
+            return this;
+        }
+
+        public ApimAdapterConfigBuilder provisionalClientWaitMillis(int provisionalClientWaitMillis) {
+            this.provisionalClientWaitMillis = provisionalClientWaitMillis;
+            return this;
+        }
+
         public ApimAdapterConfigBuilder apimFilterEnabled(boolean apimFilterEnabled) {
             this.apimFilterEnabled = apimFilterEnabled;
             return this;
@@ -243,7 +350,7 @@ public class ApimAdapterConfig {
                     adapterServiceId, adapterProductionMode, monitoringLevel, monitoringPushHost,
                     monitoringPushIntervalInSeconds, monitoringPushEnabled,
                     monitoringId, monitoringNamespace, cacheLocation, excludeFilterMethods,
-                    reportResponseCode, apimFilterEnabled);
+                    reportResponseCode, apimFilterEnabled, syncParallelism, syncMaxInFlight, reportParallelism, tokenCacheMaxKilobytes, startupTimeoutInSeconds, asyncClientAdmission, provisionalClientRequests, provisionalClientWaitMillis);
         }
 
         @Override
@@ -268,6 +375,14 @@ public class ApimAdapterConfig {
                     ", cacheLocation='" + cacheLocation + '\'' +
                     ", excludeFilterMethods='" + excludeFilterMethods + '\'' +
                     ", reportResponseCode='" + reportResponseCode + '\'' +
+                    ", syncParallelism=" + syncParallelism +
+                    ", syncMaxInFlight=" + syncMaxInFlight +
+                    ", reportParallelism=" + reportParallelism +
+                    ", tokenCacheMaxKilobytes=" + tokenCacheMaxKilobytes +
+                    ", startupTimeoutInSeconds=" + startupTimeoutInSeconds +
+                    ", asyncClientAdmission=" + asyncClientAdmission +
+                    ", provisionalClientRequests=" + provisionalClientRequests +
+                    ", provisionalClientWaitMillis=" + provisionalClientWaitMillis +
                     '}';
         }
 
@@ -370,6 +485,38 @@ public class ApimAdapterConfig {
         return reportResponseCode;
     }
 
+    public int getSyncParallelism() {
+        return syncParallelism;
+    }
+
+    public int getSyncMaxInFlight() {
+        return syncMaxInFlight;
+    }
+
+    public int getReportParallelism() {
+        return reportParallelism;
+    }
+
+    public int getTokenCacheMaxKilobytes() {
+        return tokenCacheMaxKilobytes;
+    }
+
+    public int getStartupTimeoutInSeconds() {
+        return startupTimeoutInSeconds;
+    }
+
+    public boolean isAsyncClientAdmission() {
+        return asyncClientAdmission;
+    }
+
+    public int getProvisionalClientRequests() {
+        return provisionalClientRequests;
+    }
+
+    public int getProvisionalClientWaitMillis() {
+        return provisionalClientWaitMillis;
+    }
+
     public boolean isApimFilterEnabled() {
         return apimFilterEnabled;
     }
@@ -400,6 +547,14 @@ public class ApimAdapterConfig {
                 ", cacheLocation='" + cacheLocation + '\'' +
                 ", excludeFilterMethods=" + excludeFilterMethods +
                 ", reportResponseCode=" + reportResponseCode +
+                ", syncParallelism=" + syncParallelism +
+                ", syncMaxInFlight=" + syncMaxInFlight +
+                ", reportParallelism=" + reportParallelism +
+                ", tokenCacheMaxKilobytes=" + tokenCacheMaxKilobytes +
+                ", startupTimeoutInSeconds=" + startupTimeoutInSeconds +
+                ", asyncClientAdmission=" + asyncClientAdmission +
+                ", provisionalClientRequests=" + provisionalClientRequests +
+                ", provisionalClientWaitMillis=" + provisionalClientWaitMillis +
                 '}';
     }
 }
@@ -14,7 +14,7 @@ public enum ReasonCode {
     APIM_1007("Issuer resolved. IssuerURL={}"),
     APIM_1008("Public keys of tokenIssuer={} did not change, token remains invalid"),
     APIM_1009("Public keys of tokenIssuer={} did change, token however remains invalid"),
-    APIM_1010("Got a Token with invalid signature, this verifier can't handle it, returning null"),
+    APIM_1010("Got a Token with invalid signature, this verifier can't handle it, returning null. Suppressed similar entries={}"),
     APIM_1011("Adding JWK with KeyId={} JwksUri={}"),
     APIM_1012("Invalidating Token cache with size={}"),
     APIM_1013("Exception while loading plan config. Returning SERVER_ERROR response"),
@@ -37,8 +37,13 @@ public enum ReasonCode {
     APIM_1030("Failed to push to prometheus! host={}"),
     APIM_1031("Shutting down MonitoringService"),
     APIM_1032("Using cache location={}"),
-    APIM_1033("Handled invalid request with: clientId={} httpStatus={} reason={} path={} method={}"),
+    APIM_1033("Handled invalid request with: clientId={} httpStatus={} reason={} path={} method={} Suppressed similar entries={}"),
     APIM_1034("JWKS loaded in duration={} ms JwksUri={}"),
+    APIM_1035("Hit journal location={} contains unreported hits={} of responseSummaries={}"),
+    APIM_1036("Invalidated parsed tokens={} of token issuer={} after reloading the JWKS"),
+    APIM_1037("Startup initialization of token issuers and configuration finished in duration={} ms"),
+    APIM_1038("Issuer initialized from offline cache. IssuerURL={}"),
+    APIM_1039("Plan of clientId={} loaded in the background, reconciled provisionally admitted requests={}"),
 
     /**
      * ADAPTER WARNING
@@ -72,7 +77,7 @@ public enum ReasonCode {
     APIM_2027("Empty response when reading proxy config url={} httpStatus={} message={}"),
     APIM_2028("Exception while reporting duration={} ms"),
     APIM_2029("Got exception while loading plan in 3scale for clientId={} duration={} ms"),
-    APIM_2030("Encountered unresolvable / untrusted Issuer. IssuerURL={}"),
+    APIM_2030("Encountered unresolvable / untrusted Issuer. IssuerURL={}, suppressed similar entries={}"),
     APIM_2031("Unable to parse '{}' as HttpMethod"),
     APIM_2032("Unable to terminate Monitoring Scheduler"),
     APIM_2033("Path or method was null: path={} method={}"),
@@ -85,6 +90,14 @@ public enum ReasonCode {
     APIM_2040("Error during reloading of JWKS. Pause for at least one minute before next attempt"),
     APIM_2041("Unable to parse ClientId from Token: {}"),
     APIM_2042("{} Try to load it from offline cache"),
+    APIM_2043("Hit journal compaction failed, the segments in location={} are kept"),
+    APIM_2044("Background refresh of JWKS failed, JwksUri={}, next attempt in seconds={}"),
+    APIM_2045("Startup initialization of token issuers and configuration not finished within seconds={}, using the offline cache until it is"),
+    APIM_2046("Startup initialization of token issuers and configuration failed, loading it on first use"),
+    APIM_2047("Issuer neither initialized within the startup timeout nor found in offline cache. IssuerURL={}"),
+    APIM_2048("Could not load config for service={} from offline cache: ExceptionMessage={}"),
+    APIM_2049("Loading the plan of clientId={} in the background failed, its provisionally admitted requests={} are not counted"),
+    APIM_2050("Hits of responseSummary={} are not journaled, its clientId or metric is longer than bytes={}"),
 
     /**
      * ADAPTER ERROR
@@ -115,6 +128,8 @@ public enum ReasonCode {
     APIM_3023("Unknown error, not caching the token and returning internal server error"),
     APIM_3024("Error at loading property={} from config file={} - nodeName={} was unexpectedly an array"),
     APIM_3025("Error at loading property={} from config file={} - nodeName={} was expected to be an array node, but was not"),
+    APIM_3026("Error while synchronizing clientId={} with 3Scale"),
+    APIM_3027("Unable to use the hit journal in location={}, unreported hits are only kept in memory"),
 
     /**
      * GATEWAY INFO
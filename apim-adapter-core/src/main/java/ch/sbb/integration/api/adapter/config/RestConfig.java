@@ -33,6 +33,13 @@ public class RestConfig {
     }
 
     public ResteasyClient newRestEasyClient() {
+        return newRestEasyClient(0);
+    }
+
+    /**
+     * @param maxConnections size of the connection pool, the http client default applies if it is not positive
+     */
+    public ResteasyClient newRestEasyClient(int maxConnections) {
         try {
             LOG.debug("Setting connect timeout to {} ms and read timeout to {} ms", connectTimeoutInMillis, readTimeoutInMillis);
             final RequestConfig requestConfig = RequestConfig.custom()
@@ -41,7 +48,12 @@ public class RestConfig {
                     .setSocketTimeout(readTimeoutInMillis)
                     .build();
 
-            final HttpClient httpClient = HttpClientBuilder.create().useSystemProperties().setDefaultRequestConfig(requestConfig).build();
+            final HttpClientBuilder httpClientBuilder = HttpClientBuilder.create().useSystemProperties().setDefaultRequestConfig(requestConfig);
+            if (maxConnections > 0) {
+                LOG.debug("Setting max connections to {}", maxConnections);
+                httpClientBuilder.setMaxConnTotal(maxConnections).setMaxConnPerRoute(maxConnections);
+            }
+            final HttpClient httpClient = httpClientBuilder.build();
 
             return new ResteasyClientBuilder()
                     .httpEngine(new ApacheHttpClient4Engine(httpClient))
@@ -15,18 +15,31 @@ import ch.sbb.integration.api.adapter.service.monitoring.MonitoringService;
 import ch.sbb.integration.api.adapter.service.repository.OfflineConfigurationCacheRepo;
 import ch.sbb.integration.api.adapter.service.utils.ErrorResponseHelper;
 import ch.sbb.integration.api.adapter.service.utils.HttpMethod;
+import ch.sbb.integration.api.adapter.service.utils.StopWatch;
 import com.fasterxml.jackson.databind.JsonNode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+import static ch.sbb.integration.api.adapter.config.ReasonCode.APIM_1037;
 import static ch.sbb.integration.api.adapter.config.ReasonCode.APIM_2007;
+import static ch.sbb.integration.api.adapter.config.ReasonCode.APIM_2045;
+import static ch.sbb.integration.api.adapter.config.ReasonCode.APIM_2046;
 import static java.util.stream.Collectors.toList;
 
 public final class ApimAdapterFactory {
 
     private static final Logger LOG = LoggerFactory.getLogger(ApimAdapterFactory.class);
+    /**
+     * One each for the mapping rules, the metrics and the proxy settings, the token issuers have their own
+     */
+    private static final int STARTUP_THREADS = 3;
 
     private ApimAdapterFactory() {
     }
@@ -70,7 +83,7 @@ public final class ApimAdapterFactory {
         final PublicKeyCheck publicKeyCheck = new PublicKeyCheck();
         final ErrorResponseHelper errorResponseHelper = new ErrorResponseHelper(config);
 
-        return new ApimAdapterService(
+        return warmUp(new ApimAdapterService(
                 config,
                 monitoringService,
                 connectionCheck,
@@ -80,7 +93,37 @@ public final class ApimAdapterFactory {
                 errorResponseHelper,
                 offlineConfigurationCacheRepo,
                 emergencyModeState,
-                operationMode);
+                operationMode), config);
+    }
+
+    /**
+     * Loads the token issuers and the configuration of the service in parallel and waits for them at most the startup
+     * timeout. Whatever is not loaded by then is taken from the offline cache, so a slow 3scale or token issuer does
+     * not hold up the readiness. The running loads complete in the background.
+     */
+    public static ApimAdapterService warmUp(ApimAdapterService apimAdapterService, ApimAdapterConfig config) {
+        final ExecutorService executor = Executors.newFixedThreadPool(STARTUP_THREADS, runnable -> {
+            final Thread thread = new Thread(runnable, "apim-startup");
+            thread.setDaemon(true);
+            return thread;
+        });
+        final StopWatch sw = new StopWatch().start();
+        try {
+            apimAdapterService.warmUp(executor).get(config.getStartupTimeoutInSeconds(), TimeUnit.SECONDS);
+            LOG.info(APIM_1037.pattern(), sw.stop().getMillis());
+        } catch (TimeoutException e) {
+            LOG.warn(APIM_2045.pattern(), config.getStartupTimeoutInSeconds());
+            apimAdapterService.warmUpFromOfflineCache();
+        } catch (ExecutionException e) {
+            // the loads have fallen back to the offline cache already
+            LOG.warn(APIM_2046.pattern(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            apimAdapterService.warmUpFromOfflineCache();
+        } finally {
+            executor.shutdown();
+        }
+        return apimAdapterService;
     }
 
     public static ApimAdapterFilter createApimAdapterFilter() {
@@ -117,10 +160,22 @@ public final class ApimAdapterFactory {
                 .cacheLocation(cl.getValueForProperty("apim.cache.location"))
                 .excludeFilterMethods(cl.getValuesForProperty("apim.adapter.exclude-filter-methods", true).stream().map(HttpMethod::parse).filter(Objects::nonNull).collect(toList()))
                 .reportResponseCode(Boolean.valueOf(cl.getValueForProperty("apim.adapter.report-response-code", true)))
+                .syncParallelism(intValueOrDefault(cl.getValueForProperty("apim.adapter.sync-parallelism", true), ApimAdapterConfig.DEFAULT_SYNC_PARALLELISM))
+                .syncMaxInFlight(intValueOrDefault(cl.getValueForProperty("apim.adapter.sync-max-in-flight", true), ApimAdapterConfig.DEFAULT_SYNC_MAX_IN_FLIGHT))
+                .reportParallelism(intValueOrDefault(cl.getValueForProperty("apim.adapter.report-parallelism", true), ApimAdapterConfig.DEFAULT_REPORT_PARALLELISM))
+                .tokenCacheMaxKilobytes(intValueOrDefault(cl.getValueForProperty("apim.adapter.token-cache-max-kilobytes", true), ApimAdapterConfig.DEFAULT_TOKEN_CACHE_MAX_KILOBYTES))
+                .startupTimeoutInSeconds(intValueOrDefault(cl.getValueForProperty("apim.adapter.startup-timeout-in-seconds", true), ApimAdapterConfig.DEFAULT_STARTUP_TIMEOUT_IN_SECONDS))
+                .asyncClientAdmission(Boolean.valueOf(cl.getValueForProperty("apim.adapter.async-client-admission", true)))
+                .provisionalClientRequests(intValueOrDefault(cl.getValueForProperty("apim.adapter.provisional-client-requests", true), ApimAdapterConfig.DEFAULT_PROVISIONAL_CLIENT_REQUESTS))
+                .provisionalClientWaitMillis(intValueOrDefault(cl.getValueForProperty("apim.adapter.provisional-client-wait-millis", true), 0))
                 .apimFilterEnabled(true)
                 .build();
     }
 
+    private static int intValueOrDefault(String value, int defaultValue) {
+        return value == null || value.isEmpty() ? defaultValue : Integer.parseInt(value);
+    }
+
     private static class DisabledApimAdapterService extends ApimAdapterService {
 
         public DisabledApimAdapterService(ApimAdapterConfig adapterConfig, RestConfig restConfig, OfflineConfigurationCacheRepo offlineConfigurationCacheRepo, EmergencyModeState emergencyModeState, OperationMode operationMode) {
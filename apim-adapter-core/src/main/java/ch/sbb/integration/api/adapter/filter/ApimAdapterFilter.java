@@ -1,6 +1,7 @@
 package ch.sbb.integration.api.adapter.filter;
 
 import ch.sbb.integration.api.adapter.model.AuthRepResponse;
+import ch.sbb.integration.api.adapter.model.OAuthToken;
 import ch.sbb.integration.api.adapter.service.ApimAdapterService;
 import ch.sbb.integration.api.adapter.service.utils.AuthUtils;
 import ch.sbb.integration.api.adapter.service.utils.HttpMethod;
@@ -40,27 +41,33 @@ public class ApimAdapterFilter implements Filter {
         final HttpServletResponse httpResponse = (HttpServletResponse) servletResponse;
         final HttpMethod httpMethod = HttpMethod.valueOf(httpRequest.getMethod().toUpperCase());
 
-        final String token = AuthUtils.extractJwtFromAuthHeader(httpRequest.getHeader(AuthUtils.HTTP_AUTHORIZATION_HEADER_NAME));
+        // the token is looked up once and passed along
+        final OAuthToken parsedToken = apimAdapterService.parseAuthorizationHeader(httpRequest.getHeader(AuthUtils.HTTP_AUTHORIZATION_HEADER_NAME));
 
-        if (apimAdapterService.getApiWatch().isApiWatchRequest(token, httpMethod)) {
+        if (apimAdapterService.getApiWatch().isApiWatchRequest(parsedToken, httpMethod)) {
             apimAdapterService.getApiWatch().writeResponse(httpResponse);
         } else if (excludeFilterMethods.contains(httpMethod)) {
             filterChain.doFilter(servletRequest, httpResponse);
         } else {
-            applyApimFilter(httpRequest, httpMethod, httpResponse, token, filterChain);
+            applyApimFilter(httpRequest, httpMethod, httpResponse, parsedToken, filterChain);
         }
     }
 
-    private void applyApimFilter(HttpServletRequest httpRequest, HttpMethod httpMethod, HttpServletResponse httpResponse, String token, FilterChain filterChain) throws IOException, ServletException {
+    private void applyApimFilter(HttpServletRequest httpRequest, HttpMethod httpMethod, HttpServletResponse httpResponse, OAuthToken parsedToken, FilterChain filterChain) throws IOException, ServletException {
         StopWatch sw = new StopWatch().start();
         final String path = httpRequest.getRequestURI();
         final String queryString = httpRequest.getQueryString();
 
-        final AuthRepResponse authRepResponse = apimAdapterService.authRep(token, path, queryString, httpMethod);
+        final AuthRepResponse authRepResponse = apimAdapterService.authRep(parsedToken, path, queryString, httpMethod);
 
         if (authRepResponse.isAllowed()) {
             StopWatch responseSw = new StopWatch().start();
             filterChain.doFilter(httpRequest, httpResponse);
+            if (httpRequest.isAsyncStarted()) {
+                // the response is written later on an other thread, its status is known once the async request completes
+                httpRequest.getAsyncContext().addListener(new ReportHitAsyncListener(authRepResponse, httpResponse, sw));
+                return;
+            }
             LOG.debug("filter got response duration={} ms", responseSw.stop().getMillis());
         } else {
             if (authRepResponse.getWwwAuthenticateResponseHeader() != null) {
@@ -77,4 +84,41 @@ public class ApimAdapterFilter implements Filter {
     public void destroy() {
         apimAdapterService.close();
     }
+
+    /**
+     * Reports the hit of an async request with the status of its response, once it is written
+     */
+    private final class ReportHitAsyncListener implements AsyncListener {
+        private final AuthRepResponse authRepResponse;
+        private final HttpServletResponse httpResponse;
+        private final StopWatch sw;
+
+        private ReportHitAsyncListener(AuthRepResponse authRepResponse, HttpServletResponse httpResponse, StopWatch sw) {
+            this.authRepResponse = authRepResponse;
+            this.httpResponse = httpResponse;
+            this.sw = sw;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            apimAdapterService.reportHit(authRepResponse, httpResponse.getStatus());
+            LOG.debug("APIM filter finished async request duration={} ms", sw.stop().getMillis());
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            // the container completes the request after the timeout, it is reported then
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            LOG.debug("Async request failed", event.getThrowable());
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // the listeners are removed when the async request is restarted, e.g. by a dispatch
+            event.getAsyncContext().addListener(this);
+        }
+    }
 }
@@ -19,6 +19,7 @@ public class MappingRule implements Serializable {
 
     private String id;
     private String metricId;
+    private String patternString;
     private Pattern pattern;
     private HttpMethod method;
     // TODO: consider introducing delta parameter here & in access-logic (would make sense for negative deltas - which is currently not allowed by 3Scale)
@@ -26,6 +27,7 @@ public class MappingRule implements Serializable {
     public MappingRule(String id, String metricId, String pattern, String method) {
         this.id = id;
         this.metricId = metricId;
+        this.patternString = pattern;
         this.pattern = Pattern.compile(convertToRegexPattern(pattern));
         this.method = HttpMethod.valueOf(method.toUpperCase());
     }
@@ -38,6 +40,13 @@ public class MappingRule implements Serializable {
         return pattern;
     }
 
+    /**
+     * @return the pattern as defined in 3Scale, before it was converted into a regex
+     */
+    public String getPatternString() {
+        return patternString;
+    }
+
     public String getMetricId() {
         return metricId;
     }
@@ -0,0 +1,313 @@
+package ch.sbb.integration.api.adapter.model;
+
+import ch.sbb.integration.api.adapter.service.utils.HttpMethod;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Immutable, pre-compiled view on the mapping rules of all metrics of a service.
+ * <p>
+ * The rules are stored in a trie keyed on the literal path segments at the start of each pattern. A request path is
+ * walked down the trie segment by segment, so only the rules sharing its literal prefix are looked at. The remaining
+ * part of a rule is matched without regex: literal parts are compared directly and every <code>{param}</code> is a
+ * wildcard for one or more characters (it may span several segments, exactly like the <code>.+</code> of the regex
+ * built by {@link MappingRule}). Each distinct pattern is evaluated only once per request and carries a bitmask of the
+ * http methods per metric.
+ * <p>
+ * Patterns which contain characters that keep a special meaning in the regex of {@link MappingRule} (e.g. a
+ * <code>$</code> in the middle or a backslash) are not indexed but matched with their regex as a fallback.
+ */
+public final class MappingRuleIndex {
+
+    private final List<Metric> metrics;
+    private final String[] metricSystemNames;
+    private final Node root = new Node();
+    private final List<RuleEntry> fallbackRules = new ArrayList<>();
+
+    private MappingRuleIndex(List<Metric> metrics) {
+        this.metrics = Collections.unmodifiableList(new ArrayList<>(metrics));
+        this.metricSystemNames = new String[metrics.size()];
+
+        final Map<String, RuleEntry> entriesByPattern = new LinkedHashMap<>();
+        for (int metricIndex = 0; metricIndex < metrics.size(); metricIndex++) {
+            final Metric metric = metrics.get(metricIndex);
+            metricSystemNames[metricIndex] = metric.getSystemName().intern();
+            if (metric.getMappingRule() == null) {
+                continue;
+            }
+            for (MappingRule mappingRule : metric.getMappingRule()) {
+                final RuleEntry entry = entriesByPattern.computeIfAbsent(mappingRule.getPatternString(), p -> addEntry(mappingRule));
+                entry.addMethod(metricIndex, mappingRule.getMethod());
+            }
+        }
+    }
+
+    public static MappingRuleIndex of(List<Metric> metrics) {
+        return new MappingRuleIndex(metrics);
+    }
+
+    public List<Metric> getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Matches the path (including the query string, if any) and the method against all mapping rules.
+     *
+     * @param pathToValidate path and query string, e.g. /v1/locations?name=foo
+     * @param method         http method of the request, null if it is unknown (the path may match, no metric does)
+     * @return the matching result, never null
+     */
+    public MetricMatchingResult match(String pathToValidate, HttpMethod method) {
+        final Match match = new Match(metricSystemNames.length, method);
+
+        Node node = root;
+        int position = 0;
+        while (node != null) {
+            for (RuleEntry entry : node.entries) {
+                if (entry.tail.matches(pathToValidate, position)) {
+                    match.add(entry);
+                }
+            }
+            node = node.child(pathToValidate, position);
+            if (node != null) {
+                position = pathToValidate.indexOf('/', position + 1);
+            }
+        }
+
+        for (RuleEntry entry : fallbackRules) {
+            if (entry.regex.matcher(pathToValidate).matches()) {
+                match.add(entry);
+            }
+        }
+
+        return match.toResult(pathToValidate, metricSystemNames);
+    }
+
+    private RuleEntry addEntry(MappingRule mappingRule) {
+        final String patternString = mappingRule.getPatternString();
+        if (!Tail.isSupported(patternString)) {
+            final RuleEntry entry = new RuleEntry(null, mappingRule.getPattern());
+            fallbackRules.add(entry);
+            return entry;
+        }
+
+        final String body = patternString.endsWith("$") ? patternString.substring(0, patternString.length() - 1) : patternString;
+        final int literalPrefixEnd = body.indexOf('{') < 0 ? body.length() : body.indexOf('{');
+
+        // walk down the literal segments which are terminated by a slash
+        Node node = root;
+        int segmentStart = 0;
+        if (body.startsWith("/")) {
+            int slash = body.indexOf('/', 1);
+            while (slash > 0 && slash < literalPrefixEnd) {
+                node = node.childFor(body.substring(segmentStart + 1, slash));
+                segmentStart = slash;
+                slash = body.indexOf('/', slash + 1);
+            }
+        }
+
+        final RuleEntry entry = new RuleEntry(Tail.of(patternString.substring(segmentStart)), null);
+        node.entries.add(entry);
+        return entry;
+    }
+
+    /**
+     * Node of the segment trie. The children are keyed by the literal segment between two slashes.
+     */
+    private static final class Node {
+        private final List<RuleEntry> entries = new ArrayList<>(2);
+        private Map<String, Node> children;
+
+        private Node childFor(String segment) {
+            if (children == null) {
+                children = new HashMap<>();
+            }
+            return children.computeIfAbsent(segment, s -> new Node());
+        }
+
+        /**
+         * @param path     the path to validate
+         * @param position index of the slash in front of the next segment
+         * @return the child for the next segment, or null if there is none (or the segment is not terminated by a slash)
+         */
+        private Node child(String path, int position) {
+            if (children == null || position < 0 || position >= path.length() || path.charAt(position) != '/') {
+                return null;
+            }
+            final int end = path.indexOf('/', position + 1);
+            if (end < 0) {
+                return null;
+            }
+            return children.get(path.substring(position + 1, end));
+        }
+    }
+
+    /**
+     * A distinct pattern with the allowed http methods (as bitmask) per metric index.
+     */
+    private static final class RuleEntry {
+        private final Tail tail;
+        private final Pattern regex;
+        private int[] metricIndexes = new int[0];
+        private int[] methodMasks = new int[0];
+
+        private RuleEntry(Tail tail, Pattern regex) {
+            this.tail = tail;
+            this.regex = regex;
+        }
+
+        private void addMethod(int metricIndex, HttpMethod method) {
+            final int methodBit = 1 << method.ordinal();
+            for (int i = 0; i < metricIndexes.length; i++) {
+                if (metricIndexes[i] == metricIndex) {
+                    methodMasks[i] |= methodBit;
+                    return;
+                }
+            }
+            final int length = metricIndexes.length;
+            metricIndexes = Arrays.copyOf(metricIndexes, length + 1);
+            methodMasks = Arrays.copyOf(methodMasks, length + 1);
+            metricIndexes[length] = metricIndex;
+            methodMasks[length] = methodBit;
+        }
+    }
+
+    /**
+     * Collects the matching metrics of one request.
+     */
+    private static final class Match {
+        private final int methodBit;
+        private final BitSet matchingMetrics;
+        private boolean pathMatching;
+
+        private Match(int metricCount, HttpMethod method) {
+            this.methodBit = method != null ? 1 << method.ordinal() : 0;
+            this.matchingMetrics = new BitSet(metricCount);
+        }
+
+        private void add(RuleEntry entry) {
+            pathMatching = true;
+            for (int i = 0; i < entry.metricIndexes.length; i++) {
+                if ((entry.methodMasks[i] & methodBit) != 0) {
+                    matchingMetrics.set(entry.metricIndexes[i]);
+                }
+            }
+        }
+
+        private MetricMatchingResult toResult(String pathToValidate, String[] metricSystemNames) {
+            if (!pathMatching) {
+                return MetricMatchingResult.noMatch(pathToValidate);
+            }
+            final List<String> sysNames = new ArrayList<>(matchingMetrics.cardinality());
+            for (int i = matchingMetrics.nextSetBit(0); i >= 0; i = matchingMetrics.nextSetBit(i + 1)) {
+                if (!sysNames.contains(metricSystemNames[i])) {
+                    sysNames.add(metricSystemNames[i]);
+                }
+            }
+            return new MetricMatchingResult(pathToValidate, true, sysNames);
+        }
+    }
+
+    /**
+     * The part of a pattern after its literal segments, split into literal parts and <code>{param}</code> wildcards.
+     * Matches the same paths as the regex created by {@link MappingRule}.
+     */
+    static final class Tail {
+        /**
+         * Literal parts, between each two of them is a wildcard.
+         */
+        private final String[] parts;
+        private final boolean fixEnd;
+
+        private Tail(String[] parts, boolean fixEnd) {
+            this.parts = parts;
+            this.fixEnd = fixEnd;
+        }
+
+        /**
+         * @return false if the pattern contains characters which are not escaped by {@link MappingRule} and would
+         * therefore be interpreted by the regex engine.
+         */
+        static boolean isSupported(String pattern) {
+            final String body = pattern.endsWith("$") ? pattern.substring(0, pattern.length() - 1) : pattern;
+            for (int i = 0; i < body.length(); i++) {
+                final char c = body.charAt(i);
+                if (c == '\\' || c == '$' || isLineTerminator(c)) {
+                    return false;
+                }
+                if (c == '{') {
+                    final int end = body.indexOf('}', i + 1);
+                    if (end < 0) {
+                        return false;
+                    }
+                    i = end;
+                }
+            }
+            return true;
+        }
+
+        static Tail of(String pattern) {
+            final boolean fixEnd = pattern.endsWith("$");
+            final String body = fixEnd ? pattern.substring(0, pattern.length() - 1) : pattern;
+            final List<String> parts = new ArrayList<>();
+            int start = 0;
+            int open = body.indexOf('{');
+            while (open >= 0) {
+                final int close = body.indexOf('}', open + 1);
+                parts.add(body.substring(start, open));
+                start = close + 1;
+                open = body.indexOf('{', start);
+            }
+            parts.add(body.substring(start));
+            return new Tail(parts.toArray(new String[0]), fixEnd);
+        }
+
+        boolean matches(String path, int offset) {
+            return offset >= 0 && path.startsWith(parts[0], offset) && matchesFrom(path, offset + parts[0].length(), 1);
+        }
+
+        private boolean matchesFrom(String path, int position, int part) {
+            if (part == parts.length) {
+                return fixEnd ? position == path.length() : firstLineTerminator(path, position) == path.length();
+            }
+            // a wildcard takes at least one character up to the next line terminator (like the regex '.')
+            final String literal = parts[part];
+            final int limit = firstLineTerminator(path, position);
+            int candidate = position + 1;
+            while (candidate <= limit) {
+                if (!literal.isEmpty()) {
+                    candidate = path.indexOf(literal, candidate);
+                    if (candidate < 0 || candidate > limit) {
+                        return false;
+                    }
+                }
+                if (matchesFrom(path, candidate + literal.length(), part + 1)) {
+                    return true;
+                }
+                candidate++;
+            }
+            return false;
+        }
+
+        private static int firstLineTerminator(String path, int from) {
+            for (int i = from; i < path.length(); i++) {
+                if (isLineTerminator(path.charAt(i))) {
+                    return i;
+                }
+            }
+            return path.length();
+        }
+
+        private static boolean isLineTerminator(char c) {
+            return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package ch.sbb.integration.api.adapter.model;
+
+import java.util.List;
+
+import static java.util.Collections.emptyList;
+
+/**
+ * Result of matching a request path and method against the mapping rules of a service.
+ */
+public class MetricMatchingResult {
+
+    private final String pathToValidate;
+    private final boolean pathMatching;
+    private final List<String> metricSystemNames;
+
+    public MetricMatchingResult(String pathToValidate, boolean pathMatching, List<String> metricSystemNames) {
+        this.pathToValidate = pathToValidate;
+        this.pathMatching = pathMatching;
+        this.metricSystemNames = metricSystemNames;
+    }
+
+    public static MetricMatchingResult noMatch(String pathToValidate) {
+        return new MetricMatchingResult(pathToValidate, false, emptyList());
+    }
+
+    public String getPathToValidate() {
+        return pathToValidate;
+    }
+
+    /**
+     * @return true if at least one mapping rule matches the path, regardless of the http method
+     */
+    public boolean isPathMatching() {
+        return pathMatching;
+    }
+
+    /**
+     * @return the distinct system names of all metrics having a mapping rule which matches path and http method
+     */
+    public List<String> getMetricSystemNames() {
+        return metricSystemNames;
+    }
+
+    @Override
+    public String toString() {
+        return "MetricMatchingResult{" +
+                "pathToValidate='" + pathToValidate + '\'' +
+                ", pathMatching=" + pathMatching +
+                ", metricSystemNames=" + metricSystemNames +
+                '}';
+    }
+}
@@ -9,16 +9,16 @@ public class OAuthToken {
     private final TokenStateEnum tokenState;
     private final TokenIssuer tokenIssuer;
     private final String clientId;
-    private final String token;
+    private final TokenDigest tokenDigest;
     private final Long expiration;
     private final String type;
     private final boolean bearer;
 
-    public OAuthToken(TokenStateEnum tokenState, TokenIssuer tokenIssuer, String token, String clientId, Long expirationSeconds, String type) {
+    public OAuthToken(TokenStateEnum tokenState, TokenIssuer tokenIssuer, TokenDigest tokenDigest, String clientId, Long expirationSeconds, String type) {
         this.tokenState = tokenState != null ? tokenState : TokenStateEnum.INVALID;
         this.tokenIssuer = tokenIssuer;
         this.clientId = clientId;
-        this.token = token;
+        this.tokenDigest = tokenDigest;
         this.expiration = expirationSeconds == null ? null : expirationSeconds * 1000; // convert to millis
         this.type = type;
         this.bearer = "Bearer".equalsIgnoreCase(type);
@@ -48,8 +48,8 @@ public class OAuthToken {
         return expiration == null || System.currentTimeMillis() > expiration;
     }
 
-    public String getToken() {
-        return token;
+    public TokenDigest getTokenDigest() {
+        return tokenDigest;
     }
 
     @Override
@@ -63,12 +63,12 @@ public class OAuthToken {
 
         OAuthToken that = (OAuthToken) o;
 
-        return token.equals(that.token);
+        return tokenDigest.equals(that.tokenDigest);
     }
 
     @Override
     public int hashCode() {
-        return token.hashCode();
+        return tokenDigest.hashCode();
     }
 
     @Override
@@ -77,7 +77,7 @@ public class OAuthToken {
                 "tokenState='" + tokenState + '\'' +
                 ", tokenIssuer='" + tokenIssuer + '\'' +
                 ", clientId='" + clientId + '\'' +
-                ", token='" + token + '\'' +
+                ", tokenDigest='" + tokenDigest + '\'' +
                 ", expiration=" + expiration +
                 '}';
     }
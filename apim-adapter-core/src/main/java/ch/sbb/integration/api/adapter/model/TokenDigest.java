@@ -0,0 +1,100 @@
+package ch.sbb.integration.api.adapter.model;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Fixed size identity of a token: the first 128 bits of its SHA-256 digest. Tokens are often one to two kilobytes,
+ * the digest is used instead of the token wherever a token has to be remembered.
+ */
+public final class TokenDigest {
+
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform has to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private static final ThreadLocal<byte[]> BUFFER = ThreadLocal.withInitial(() -> new byte[256]);
+
+    private final long high;
+    private final long low;
+
+    private TokenDigest(long high, long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+    public static TokenDigest of(String token) {
+        if (token == null) {
+            return null;
+        }
+        return of(token, 0, token.length());
+    }
+
+    /**
+     * Digest of the token between the given indexes of the string, e.g. of an Authorization header, without copying
+     * the token out of the string. Same as the digest of the substring.
+     */
+    public static TokenDigest of(String s, int beginIndex, int endIndex) {
+        final MessageDigest sha256 = SHA_256.get();
+        final byte[] buffer = BUFFER.get();
+        int length = 0;
+        for (int i = beginIndex; i < endIndex; i++) {
+            final char c = s.charAt(i);
+            if (c >= 0x80) {
+                // not a JWS, which is ASCII only, digest it the slow way
+                sha256.reset();
+                return fromDigest(sha256.digest(s.substring(beginIndex, endIndex).getBytes(StandardCharsets.UTF_8)));
+            }
+            buffer[length++] = (byte) c;
+            if (length == buffer.length) {
+                sha256.update(buffer, 0, length);
+                length = 0;
+            }
+        }
+        sha256.update(buffer, 0, length);
+        return fromDigest(sha256.digest());
+    }
+
+    private static TokenDigest fromDigest(byte[] digest) {
+        return new TokenDigest(toLong(digest, 0), toLong(digest, 8));
+    }
+
+    private static long toLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = offset; i < offset + 8; i++) {
+            value = (value << 8) | (bytes[i] & 0xFF);
+        }
+        return value;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        TokenDigest that = (TokenDigest) o;
+
+        return high == that.high && low == that.low;
+    }
+
+    @Override
+    public int hashCode() {
+        // the bits of a digest are evenly distributed already
+        return (int) high;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%016x%016x", high, low);
+    }
+}
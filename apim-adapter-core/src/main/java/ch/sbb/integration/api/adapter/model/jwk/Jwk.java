@@ -3,11 +3,18 @@ package ch.sbb.integration.api.adapter.model.jwk;
 import org.apache.commons.codec.binary.Base64;
 
 import java.math.BigInteger;
+import java.security.AlgorithmParameters;
 import java.security.KeyFactory;
 import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
+import java.security.interfaces.ECPublicKey;
 import java.security.interfaces.RSAPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+import java.security.spec.ECPublicKeySpec;
 import java.security.spec.InvalidKeySpecException;
+import java.security.spec.InvalidParameterSpecException;
 import java.security.spec.RSAPublicKeySpec;
 import java.util.Collections;
 import java.util.HashMap;
@@ -22,6 +29,7 @@ import java.util.Map;
  */
 public class Jwk {
     private static final String PUBLIC_KEY_ALGORITHM = "RSA";
+    private static final String EC_PUBLIC_KEY_ALGORITHM = "EC";
 
     private final String id;
     private final String type;
@@ -171,6 +179,57 @@ public class Jwk {
         }
     }
 
+    /**
+     * Returns a {@link PublicKey} if the {@code 'kty'} is {@code 'EC'}, the curves P-256, P-384 and P-521 are supported
+     *
+     * @return a public key
+     * @throws InvalidPublicKeyException if the key cannot be built or the key type is not EC
+     */
+    public ECPublicKey getEcPublicKey() throws InvalidPublicKeyException {
+        if (!EC_PUBLIC_KEY_ALGORITHM.equalsIgnoreCase(type)) {
+            throw new InvalidPublicKeyException("The key is not of type EC", null);
+        }
+        final String curveName = curveName(stringValue("crv"));
+        if (curveName == null) {
+            throw new InvalidPublicKeyException("Unsupported curve " + stringValue("crv"), null);
+        }
+        try {
+            final AlgorithmParameters parameters = AlgorithmParameters.getInstance(EC_PUBLIC_KEY_ALGORITHM);
+            parameters.init(new ECGenParameterSpec(curveName));
+            final ECParameterSpec curve = parameters.getParameterSpec(ECParameterSpec.class);
+            final BigInteger x = new BigInteger(1, Base64.decodeBase64(stringValue("x")));
+            final BigInteger y = new BigInteger(1, Base64.decodeBase64(stringValue("y")));
+            final KeyFactory kf = KeyFactory.getInstance(EC_PUBLIC_KEY_ALGORITHM);
+            return (ECPublicKey) kf.generatePublic(new ECPublicKeySpec(new ECPoint(x, y), curve));
+        } catch (InvalidKeySpecException | InvalidParameterSpecException e) {
+            throw new InvalidPublicKeyException("Invalid public key", e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new InvalidPublicKeyException("Invalid algorithm to generate key", e);
+        }
+    }
+
+    /**
+     * @return the RSA or EC public key, depending on the {@code 'kty'}
+     * @throws InvalidPublicKeyException if the key cannot be built or the key type is neither RSA nor EC
+     */
+    public PublicKey getPublicKey() throws InvalidPublicKeyException {
+        if (EC_PUBLIC_KEY_ALGORITHM.equalsIgnoreCase(type)) {
+            return getEcPublicKey();
+        }
+        return getRsaPublicKey();
+    }
+
+    private static String curveName(String crv) {
+        if ("P-256".equals(crv)) {
+            return "secp256r1";
+        } else if ("P-384".equals(crv)) {
+            return "secp384r1";
+        } else if ("P-521".equals(crv)) {
+            return "secp521r1";
+        }
+        return null;
+    }
+
     private String stringValue(String key) {
         return (String) additionalAttributes.get(key);
     }
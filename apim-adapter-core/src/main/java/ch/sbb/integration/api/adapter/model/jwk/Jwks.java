@@ -6,24 +6,46 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 
 import java.io.IOException;
+import java.security.PublicKey;
+import java.security.interfaces.RSAPublicKey;
 import java.util.*;
-import java.util.stream.Collectors;
 
+/**
+ * Immutable set of JWKs. The public keys are built once when the JWKS is created, so verifying a signature only
+ * needs a lookup of the key by its kid. A reloaded JWKS replaces the whole instance.
+ */
 public class Jwks {
     private static final TypeReference<Map<String, Object>> TYPE_REF = new TypeReference<Map<String, Object>>() {
     };
 
-    private final Map<String, Jwk> keys = Collections.synchronizedMap(new HashMap<>());
+    private final Map<String, Jwk> keys;
+    private final Map<String, PublicKey> publicKeys;
+    private final Map<String, InvalidPublicKeyException> invalidKeys;
 
     public Jwks(String jwksJson) throws IOException {
+        final Map<String, Jwk> jwks = new HashMap<>();
         final ObjectMapper mapper = new ObjectMapper();
         final JsonNode jwksRootNode = mapper.readTree(jwksJson);
         final ArrayNode keysNode = (ArrayNode) jwksRootNode.get("keys");
         for (JsonNode key : keysNode) {
             final Map<String, Object> jwkAsMap = mapper.convertValue(key, TYPE_REF);
             final Jwk jwk = Jwk.fromValues(jwkAsMap);
-            keys.put(jwk.getId(), jwk);
+            jwks.put(jwk.getId(), jwk);
         }
+
+        final Map<String, PublicKey> publicKeys = new HashMap<>();
+        final Map<String, InvalidPublicKeyException> invalid = new HashMap<>();
+        for (Jwk jwk : jwks.values()) {
+            try {
+                publicKeys.put(jwk.getId(), jwk.getPublicKey());
+            } catch (InvalidPublicKeyException e) {
+                invalid.put(jwk.getId(), e);
+            }
+        }
+
+        this.keys = Collections.unmodifiableMap(jwks);
+        this.publicKeys = Collections.unmodifiableMap(publicKeys);
+        this.invalidKeys = Collections.unmodifiableMap(invalid);
     }
 
 
@@ -35,8 +57,32 @@ public class Jwks {
         return Optional.ofNullable(keys.get(kid));
     }
 
+    /**
+     * @return the RSA or EC public key of the JWK with the given kid, null if there is no such JWK
+     * @throws InvalidPublicKeyException if the JWK is not a valid public key
+     */
+    public PublicKey getPublicKey(String kid) throws InvalidPublicKeyException {
+        final PublicKey publicKey = publicKeys.get(kid);
+        if (publicKey == null && invalidKeys.containsKey(kid)) {
+            throw invalidKeys.get(kid);
+        }
+        return publicKey;
+    }
+
+    /**
+     * @return the RSA public key of the JWK with the given kid, null if there is no such JWK
+     * @throws InvalidPublicKeyException if the JWK is not a valid RSA public key
+     */
+    public RSAPublicKey getRsaPublicKey(String kid) throws InvalidPublicKeyException {
+        final PublicKey publicKey = getPublicKey(kid);
+        if (publicKey != null && !(publicKey instanceof RSAPublicKey)) {
+            throw new InvalidPublicKeyException("The key is not of type RSA", null);
+        }
+        return (RSAPublicKey) publicKey;
+    }
+
     public Set<String> getKeyIds() {
-        return keys.values().stream().map(Jwk::getId).collect(Collectors.toSet());
+        return keys.keySet();
     }
 
     @Override
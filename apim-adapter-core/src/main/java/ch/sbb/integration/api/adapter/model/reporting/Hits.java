@@ -1,51 +1,170 @@
 package ch.sbb.integration.api.adapter.model.reporting;
 
+import ch.sbb.integration.api.adapter.service.utils.CoarseClock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Accumulates the hits which are not yet reported to 3Scale.
+ * <p>
+ * Recording a hit is lock-free: the hits are counted in {@link LongAdder}s per (clientId, metricSysName, httpStatus)
+ * and bucketed by the minute they occurred in. The counters are never reset, instead the drain remembers how much of
+ * each counter it has already extracted. Writers therefore never have to be stopped and a hit added concurrently to
+ * a drain is either part of this drain or of the next one. Buckets of past minutes are swapped out of the map once no
+ * writer can be using them anymore: {@link #addHit} only writes into the bucket of the current minute, which is never
+ * retired, and {@link #addUnreportHits}, which may write into any minute, is synchronized with the extraction.
+ */
 public class Hits {
 
     private static final Logger LOG = LoggerFactory.getLogger(Hits.class);
 
-    private ConcurrentHashMap<ResponseSummary, Long> unreportedHits = new ConcurrentHashMap<>();
+    /**
+     * A bucket is removed after it was drained, once its minute is longer ago than this.
+     */
+    private static final long RETIRE_BUCKET_AFTER_MINUTES = 2;
 
-    public synchronized Map<ResponseSummary, Long> extractUnreportedHits() {
-        //This method has to be synchronized, because between the unreportedHits.entrySet() and unreportedHits.clear() no entity should be added or changed.
-        int sizeBeforeExtract = unreportedHits.size();
+    private static final ThreadLocal<HitKey> LOOKUP_KEY = ThreadLocal.withInitial(HitKey::new);
 
-        //Defensive copy
-        Map<ResponseSummary, Long> entry = new ConcurrentHashMap<>(unreportedHits);
-        unreportedHits.clear();
-        int sizeAfterExtract = unreportedHits.size();
+    private final ConcurrentHashMap<Long, MinuteBucket> buckets = new ConcurrentHashMap<>();
+    private volatile MinuteBucket currentBucket = new MinuteBucket(Long.MIN_VALUE);
 
-        LOG.debug("Hits size extract: {} -> {}", sizeBeforeExtract, sizeAfterExtract);
-        LOG.debug("extracted entry: {}", entry);
-        return entry;
+    /**
+     * Adds one hit in the current minute.
+     */
+    public void addHit(String clientId, String metricSysName, int httpStatus) {
+        bucketFor(currentEpochMinute()).counterFor(clientId, metricSysName, httpStatus).increment();
     }
 
+    /**
+     * Adds hits in the minute of the response summary, e.g. the hits of a failed report. Rare, so it is synchronized
+     * with the extraction instead of racing with the retirement of the bucket of a past minute.
+     */
     public synchronized void addUnreportHits(ResponseSummary responseSummary, Long additionalCount) {
-        int sizeBeforeInsert = unreportedHits.size();
-        unreportedHits.compute(responseSummary, (existingHit, existingCount) -> addOrInit(existingCount, additionalCount));
-        int sizeAfterInsert = unreportedHits.size();
-        if(sizeBeforeInsert != sizeAfterInsert) {
-            LOG.debug("Hits size insert:  {} -> {}", sizeBeforeInsert, sizeAfterInsert);
+        bucketFor(responseSummary.getEpochMinute())
+                .counterFor(responseSummary.getClientId(), responseSummary.getMetricSysName(), responseSummary.getHttpStatus())
+                .add(additionalCount);
+    }
+
+    /**
+     * @return all hits which were added since the last extraction, aggregated per {@link ResponseSummary}
+     */
+    public synchronized Map<ResponseSummary, Long> extractUnreportedHits() {
+        // synchronized between extractions only, the hits are added without any lock
+        final long retireBefore = currentEpochMinute() - RETIRE_BUCKET_AFTER_MINUTES;
+        final Map<ResponseSummary, Long> extracted = new HashMap<>();
+
+        for (MinuteBucket bucket : buckets.values()) {
+            if (bucket.epochMinute < retireBefore) {
+                buckets.remove(bucket.epochMinute);
+                if (currentBucket == bucket) {
+                    currentBucket = new MinuteBucket(Long.MIN_VALUE);
+                }
+            }
+            bucket.drainTo(extracted);
         }
+
+        LOG.debug("Hits extracted: {} response summaries out of {} minute buckets", extracted.size(), buckets.size());
+        LOG.debug("extracted entry: {}", extracted);
+        return extracted;
     }
 
-    private Long addOrInit(Long existingCount, Long additionalCount) {
-        if (existingCount == null) {
-            return additionalCount;
+    private MinuteBucket bucketFor(long epochMinute) {
+        final MinuteBucket bucket = currentBucket;
+        if (bucket.epochMinute == epochMinute) {
+            return bucket;
         }
-        return existingCount + additionalCount;
+        final MinuteBucket minuteBucket = buckets.computeIfAbsent(epochMinute, MinuteBucket::new);
+        if (epochMinute > bucket.epochMinute) {
+            currentBucket = minuteBucket;
+        }
+        return minuteBucket;
+    }
+
+    private static long currentEpochMinute() {
+        return CoarseClock.currentTimeMillis() / 60_000L;
     }
 
     @Override
     public String toString() {
         return "Hits{" +
-                "unreportedHits=" + unreportedHits +
+                "buckets=" + buckets.keySet() +
                 '}';
     }
+
+    private static final class MinuteBucket {
+        private final long epochMinute;
+        private final ConcurrentHashMap<HitKey, HitCounter> counters = new ConcurrentHashMap<>();
+
+        private MinuteBucket(long epochMinute) {
+            this.epochMinute = epochMinute;
+        }
+
+        private LongAdder counterFor(String clientId, String metricSysName, int httpStatus) {
+            // look up with a reusable key, only a new combination allocates its own key
+            final HitCounter counter = counters.get(LOOKUP_KEY.get().set(clientId, metricSysName, httpStatus));
+            if (counter != null) {
+                return counter.total;
+            }
+            return counters.computeIfAbsent(new HitKey().set(clientId, metricSysName, httpStatus), k -> new HitCounter()).total;
+        }
+
+        private void drainTo(Map<ResponseSummary, Long> extracted) {
+            counters.forEach((key, counter) -> {
+                final long delta = counter.drain();
+                if (delta > 0) {
+                    extracted.merge(new ResponseSummary(key.clientId, key.httpStatus, key.metricSysName, epochMinute), delta, Long::sum);
+                }
+            });
+        }
+    }
+
+    private static final class HitCounter {
+        private final LongAdder total = new LongAdder();
+        /**
+         * Part of the total which was already extracted. Only accessed by the (synchronized) extraction.
+         */
+        private long extracted;
+
+        private long drain() {
+            final long sum = total.sum();
+            final long delta = sum - extracted;
+            extracted = sum;
+            return delta;
+        }
+    }
+
+    private static final class HitKey {
+        private String clientId;
+        private String metricSysName;
+        private int httpStatus;
+        private int hash;
+
+        private HitKey set(String clientId, String metricSysName, int httpStatus) {
+            this.clientId = clientId;
+            this.metricSysName = metricSysName;
+            this.httpStatus = httpStatus;
+            this.hash = 31 * (31 * clientId.hashCode() + metricSysName.hashCode()) + httpStatus;
+            return this;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            HitKey hitKey = (HitKey) o;
+            return httpStatus == hitKey.httpStatus &&
+                    clientId.equals(hitKey.clientId) &&
+                    metricSysName.equals(hitKey.metricSysName);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
 }
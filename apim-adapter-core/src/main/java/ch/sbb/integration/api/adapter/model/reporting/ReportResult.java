@@ -0,0 +1,62 @@
+package ch.sbb.integration.api.adapter.model.reporting;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Result of reporting hits to 3Scale. The hits are reported in several forms, a form which could not be reported
+ * does not affect the others. Only the hits of the failed forms are unreported and have to be reported again.
+ */
+public class ReportResult {
+
+    private final Map<ResponseSummary, Long> unreportedHits = new ConcurrentHashMap<>();
+
+    public static ReportResult successful() {
+        return new ReportResult();
+    }
+
+    public static ReportResult failed(Map<ResponseSummary, Long> unreportedHits) {
+        final ReportResult result = new ReportResult();
+        result.addUnreportedHits(unreportedHits);
+        return result;
+    }
+
+    /**
+     * Adds the hits of a form which could not be reported, may be called concurrently.
+     */
+    public void addUnreportedHits(Map<ResponseSummary, Long> hits) {
+        hits.forEach((responseSummary, count) -> unreportedHits.merge(responseSummary, count, Long::sum));
+    }
+
+    public boolean isSuccessful() {
+        return unreportedHits.isEmpty();
+    }
+
+    public Map<ResponseSummary, Long> getUnreportedHits() {
+        return Collections.unmodifiableMap(unreportedHits);
+    }
+
+    /**
+     * @param submittedHits the hits which were submitted to 3Scale
+     * @return the submitted hits without the unreported ones
+     */
+    public Map<ResponseSummary, Long> reportedHitsOf(Map<ResponseSummary, Long> submittedHits) {
+        final Map<ResponseSummary, Long> reportedHits = new HashMap<>();
+        submittedHits.forEach((responseSummary, count) -> {
+            final long reported = count - unreportedHits.getOrDefault(responseSummary, 0L);
+            if (reported > 0) {
+                reportedHits.put(responseSummary, reported);
+            }
+        });
+        return reportedHits;
+    }
+
+    @Override
+    public String toString() {
+        return "ReportResult{" +
+                "unreportedHits=" + unreportedHits +
+                '}';
+    }
+}
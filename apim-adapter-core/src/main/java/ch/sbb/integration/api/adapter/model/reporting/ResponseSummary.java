@@ -1,5 +1,7 @@
 package ch.sbb.integration.api.adapter.model.reporting;
 
+import java.time.Instant;
+import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.Objects;
 
@@ -26,6 +28,19 @@ public class ResponseSummary {
                 .with(MILLI_OF_SECOND,0);
     }
 
+    /**
+     * @param epochMinute minutes since the epoch, the hits were counted in
+     */
+    public ResponseSummary(String clientId, int httpStatus, String metricSysName, long epochMinute) {
+        Objects.requireNonNull(clientId, "clientId is null");
+        Objects.requireNonNull(metricSysName, "metricSysName is null");
+
+        this.clientId = clientId;
+        this.httpStatus = httpStatus;
+        this.metricSysName = metricSysName;
+        minuteTimestamp = Instant.ofEpochSecond(epochMinute * 60L).atZone(ZoneId.systemDefault());
+    }
+
     public String getClientId() {
         return clientId;
     }
@@ -42,6 +57,10 @@ public class ResponseSummary {
         return minuteTimestamp;
     }
 
+    public long getEpochMinute() {
+        return Math.floorDiv(minuteTimestamp.toEpochSecond(), 60L);
+    }
+
     public boolean isWithin24Hours() {
         ZonedDateTime oneDayOld = ZonedDateTime.now().minusHours(24);
         return minuteTimestamp.isAfter(oneDayOld);
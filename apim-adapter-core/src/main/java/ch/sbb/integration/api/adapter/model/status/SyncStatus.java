@@ -5,20 +5,38 @@ import org.slf4j.LoggerFactory;
 
 import java.time.Duration;
 import java.time.ZonedDateTime;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
 
 import static java.time.ZonedDateTime.now;
 
+/**
+ * Status of the synchronization with 3Scale. The clients are synchronized concurrently, so the status is updated
+ * from several threads during a run.
+ */
 public class SyncStatus {
     private static final Logger LOG = LoggerFactory.getLogger(SyncStatus.class);
 
-    private boolean lastRunSuccessful = false;
-    private ZonedDateTime lastSyncStart;
-    private Duration lastSyncDuration = Duration.ZERO;
+    private volatile boolean lastRunSuccessful = false;
+    private volatile ZonedDateTime lastSyncStart;
+    private volatile Duration lastSyncDuration = Duration.ZERO;
 
     /**
      * Stores the last synchronization activity point in time - this is updated more frequently than lastSyncStart
      */
-    private ZonedDateTime lastSyncActivity;
+    private volatile ZonedDateTime lastSyncActivity;
+
+    // measurements of the running synchronization
+    private final AtomicInteger syncedClients = new AtomicInteger();
+    private final AtomicLong clientLatencySumMillis = new AtomicLong();
+    private final LongAccumulator clientLatencyMaxMillis = new LongAccumulator(Math::max, 0L);
+
+    // measurements of the last finished synchronization
+    private volatile int lastSyncClients;
+    private volatile double lastSyncClientLatencyAvgSeconds;
+    private volatile double lastSyncClientLatencyMaxSeconds;
+    private volatile double lastSyncThroughputPerSecond;
 
     public boolean isLastRunSuccessful() {
         return lastRunSuccessful;
@@ -29,15 +47,28 @@ public class SyncStatus {
     }
 
     public double getLastSyncDurationSeconds() {
-        return lastSyncDuration.getSeconds() + (double)lastSyncDuration.getNano() / 1_000_000_000.0;
+        return toSeconds(lastSyncDuration);
     }
 
     public void startSync() {
         lastSyncStart = now();
+        syncedClients.set(0);
+        clientLatencySumMillis.set(0L);
+        clientLatencyMaxMillis.reset();
         LOG.debug("BatchSynchronizeStatsJob triggered at '{}'", lastSyncStart);
         updateLastSyncActivity();
     }
 
+    /**
+     * Records the synchronization of a single client, may be called concurrently.
+     */
+    public void clientSynced(long durationMillis) {
+        syncedClients.incrementAndGet();
+        clientLatencySumMillis.addAndGet(durationMillis);
+        clientLatencyMaxMillis.accumulate(durationMillis);
+        updateLastSyncActivity();
+    }
+
     public void finishSync() {
         final ZonedDateTime lastSyncFinished = now();
         updateLastSyncActivity();
@@ -47,15 +78,40 @@ public class SyncStatus {
         } else {
             lastSyncDuration = Duration.ZERO;
         }
+
+        final int clients = syncedClients.get();
+        final double durationSeconds = getLastSyncDurationSeconds();
+        lastSyncClients = clients;
+        lastSyncClientLatencyAvgSeconds = clients == 0 ? 0 : clientLatencySumMillis.get() / 1_000.0 / clients;
+        lastSyncClientLatencyMaxSeconds = clientLatencyMaxMillis.get() / 1_000.0;
+        lastSyncThroughputPerSecond = durationSeconds == 0 ? clients : clients / durationSeconds;
+
         LOG.debug("finished BatchSynchronizeStatsJob at '{}'", lastSyncFinished);
-        LOG.debug("Batch-Job duration: '{}' seconds.", getLastSyncDurationSeconds());
+        LOG.debug("Batch-Job duration: '{}' seconds, clients: '{}', throughput: '{}' clients/s.", durationSeconds, clients, lastSyncThroughputPerSecond);
     }
 
     public long getLastStartTimestamp() {
-        if (lastSyncStart == null) {
+        final ZonedDateTime start = lastSyncStart;
+        if (start == null) {
             return -1;
         }
-        return lastSyncStart.toInstant().toEpochMilli();
+        return start.toInstant().toEpochMilli();
+    }
+
+    public int getLastSyncClients() {
+        return lastSyncClients;
+    }
+
+    public double getLastSyncClientLatencyAvgSeconds() {
+        return lastSyncClientLatencyAvgSeconds;
+    }
+
+    public double getLastSyncClientLatencyMaxSeconds() {
+        return lastSyncClientLatencyMaxSeconds;
+    }
+
+    public double getLastSyncThroughputPerSecond() {
+        return lastSyncThroughputPerSecond;
     }
 
     public ZonedDateTime getLastSyncActivity() {
@@ -66,4 +122,22 @@ public class SyncStatus {
         this.lastSyncActivity = now();
         LOG.debug("lastSyncActivity at '{}'", lastSyncActivity);
     }
+
+    private static double toSeconds(Duration duration) {
+        return duration.getSeconds() + (double) duration.getNano() / 1_000_000_000.0;
+    }
+
+    @Override
+    public String toString() {
+        return "SyncStatus{" +
+                "lastRunSuccessful=" + lastRunSuccessful +
+                ", lastSyncStart=" + lastSyncStart +
+                ", lastSyncDuration=" + lastSyncDuration +
+                ", lastSyncActivity=" + lastSyncActivity +
+                ", lastSyncClients=" + lastSyncClients +
+                ", lastSyncClientLatencyAvgSeconds=" + lastSyncClientLatencyAvgSeconds +
+                ", lastSyncClientLatencyMaxSeconds=" + lastSyncClientLatencyMaxSeconds +
+                ", lastSyncThroughputPerSecond=" + lastSyncThroughputPerSecond +
+                '}';
+    }
 }
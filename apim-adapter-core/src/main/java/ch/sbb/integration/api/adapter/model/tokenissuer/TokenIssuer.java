@@ -1,33 +1,37 @@
 package ch.sbb.integration.api.adapter.model.tokenissuer;
 
 import ch.sbb.integration.api.adapter.config.ReasonCode;
-import ch.sbb.integration.api.adapter.model.jwk.InvalidPublicKeyException;
 import ch.sbb.integration.api.adapter.model.jwk.Jwk;
 import ch.sbb.integration.api.adapter.model.jwk.Jwks;
 import ch.sbb.integration.api.adapter.service.exception.TokenIssuerException;
 import ch.sbb.integration.api.adapter.service.repository.OfflineConfigurationCacheRepo;
 import ch.sbb.integration.api.adapter.service.utils.StopWatch;
-import com.auth0.jwt.JWT;
-import com.auth0.jwt.JWTVerifier;
-import com.auth0.jwt.algorithms.Algorithm;
-import com.auth0.jwt.interfaces.RSAKeyProvider;
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.auth0.jwt.interfaces.DecodedJWT;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.jboss.resteasy.client.jaxrs.ResteasyClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.Response;
 import java.io.IOException;
-import java.security.interfaces.RSAPrivateKey;
-import java.security.interfaces.RSAPublicKey;
-import java.time.LocalDateTime;
 import java.util.HashSet;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 public class TokenIssuer {
     private static final Logger LOG = LoggerFactory.getLogger(TokenIssuer.class);
+    private static final long JWKS_RELOAD_PAUSE_MILLIS = 60_000L;
+    static final long MIN_JWKS_REFRESH_SECONDS = 60L;
+    static final long MAX_JWKS_REFRESH_SECONDS = 3600L;
+    static final long DEFAULT_JWKS_REFRESH_SECONDS = 300L;
 
     private final OfflineConfigurationCacheRepo offlineConfigurationCacheRepo;
     private final ResteasyClient resteasyClient;
@@ -48,10 +52,19 @@ public class TokenIssuer {
     // e.g. "https://sso-dev.sbb.ch/auth/realms/SBB_Public/protocol/openid-connect/certs"
     private String jwksUri;
 
-    private Jwks jwks;
-    private LocalDateTime jwksReloadTimestamp;
+    /**
+     * The JWKS with its verifiers, replaced as a whole on reload, so verifying reads the keys without any locking
+     */
+    private volatile VerifierRegistry verifiers;
+    private volatile long jwksReloadMillis;
+    private final AtomicReference<CompletableFuture<JwksChange>> jwksReload = new AtomicReference<>();
 
-    private final JWTVerifier verifier = createVerifier();
+    /**
+     * Validators and max-age of the last JWKS response, used by the background refresh
+     */
+    private volatile String jwksETag;
+    private volatile String jwksLastModified;
+    private volatile long jwksRefreshSeconds = DEFAULT_JWKS_REFRESH_SECONDS;
 
     public TokenIssuer(ResteasyClient resteasyClient, OfflineConfigurationCacheRepo offlineConfigurationCacheRepo) {
         this.resteasyClient = resteasyClient;
@@ -99,11 +112,12 @@ public class TokenIssuer {
     }
 
     public Jwks getJwks() {
-        return jwks;
+        final VerifierRegistry currentVerifiers = verifiers;
+        return currentVerifiers != null ? currentVerifiers.getJwks() : null;
     }
 
     public void setJwks(Jwks jwks) {
-        this.jwks = jwks;
+        this.verifiers = new VerifierRegistry(jwksUri, jwks);
     }
 
     public boolean hasKey(String keyId) {
@@ -114,54 +128,122 @@ public class TokenIssuer {
         return getJwks().getKey(keyId);
     }
 
-    public JWTVerifier getVerifier() {
-        return verifier;
+    /**
+     * Verifies the signature and the time claims of the token with the key and algorithm given by its header
+     *
+     * @throws JWTVerificationException if the token is not valid
+     */
+    public DecodedJWT verify(DecodedJWT jwt) throws JWTVerificationException {
+        return verifiers.verify(jwt);
     }
 
     /**
-     * @return true, if JWKS has been reloaded and the JWKS keys have changed, false otherwise
+     * Reloads the JWKS, at most once a minute. Concurrent callers wait for the same reload instead of loading the
+     * JWKS themselves.
+     *
+     * @param onKeysChanged called once by the reloading thread if the keys have changed, before any caller returns
+     * @return how the keys have changed, {@link JwksChange#NONE} if the JWKS has not been reloaded
      */
-    public boolean reloadJwks() {
+    public JwksChange reloadJwks(Consumer<JwksChange> onKeysChanged) {
+        return reloadJwksOnce(this::doReloadJwks, onKeysChanged);
+    }
 
-        if (jwksReloadTimestamp == null || LocalDateTime.now().minusMinutes(1).isAfter(jwksReloadTimestamp)) {
-            LOG.debug("Reloading JWKS, at least one minute has passed since last try");
-            try {
-                final Jwks newJwks = loadJwks(false);
+    /**
+     * Refreshes the JWKS in the background with a conditional request, so a JWKS which has not been modified is
+     * neither parsed nor persisted again. Shares the running reload with {@link #reloadJwks(Consumer)}.
+     *
+     * @param onKeysChanged called once by the refreshing thread if the keys have changed
+     * @return how the keys have changed
+     * @throws TokenIssuerException if the JWKS could not be loaded
+     */
+    public JwksChange refreshJwks(Consumer<JwksChange> onKeysChanged) {
+        return reloadJwksOnce(this::doRefreshJwks, onKeysChanged);
+    }
 
-                if (newJwks.getKeys().values().isEmpty()) {
-                    LOG.error(ReasonCode.APIM_3022.pattern(), jwksUri);
-                    return false;
-                } else {
-                    final Set<String> existingKeyIds = this.jwks.getKeyIds();
-                    final Set<String> newKeyIds = newJwks.getKeyIds();
+    /**
+     * @return seconds until the next background refresh of the JWKS, as given by the max-age of the last response
+     */
+    public long getJwksRefreshSeconds() {
+        return jwksRefreshSeconds;
+    }
 
-                    final Set<String> removedKeyIds = new HashSet<>(existingKeyIds);
-                    removedKeyIds.removeAll(newKeyIds);
-                    removedKeyIds.forEach(keyId -> LOG.warn(ReasonCode.APIM_2039.pattern(), keyId, jwksUri));
+    private JwksChange reloadJwksOnce(Supplier<JwksChange> reloader, Consumer<JwksChange> onKeysChanged) {
+        final CompletableFuture<JwksChange> lastReload = jwksReload.get();
+        if (lastReload != null && !lastReload.isDone()) {
+            return lastReload.join();
+        }
 
-                    final Set<String> addedKeyIds = new HashSet<>(newKeyIds);
-                    addedKeyIds.removeAll(existingKeyIds);
-                    addedKeyIds.forEach(keyId -> LOG.info(ReasonCode.APIM_1011.pattern(), keyId, jwksUri));
+        final CompletableFuture<JwksChange> reload = new CompletableFuture<>();
+        if (!jwksReload.compareAndSet(lastReload, reload)) {
+            // another caller has just started a reload
+            return jwksReload.get().join();
+        }
 
-                    // swapping the JWKS
-                    this.jwks = newJwks;
+        JwksChange change = JwksChange.NONE;
+        try {
+            change = reloader.get();
+            if (change != JwksChange.NONE) {
+                onKeysChanged.accept(change);
+            }
+            return change;
+        } finally {
+            reload.complete(change);
+        }
+    }
 
-                    jwksReloadTimestamp = LocalDateTime.now();
-                    return !addedKeyIds.isEmpty() || !existingKeyIds.isEmpty();
-                }
+    private JwksChange doReloadJwks() {
+        if (System.currentTimeMillis() - jwksReloadMillis > JWKS_RELOAD_PAUSE_MILLIS) {
+            LOG.debug("Reloading JWKS, at least one minute has passed since last try");
+            try {
+                final JwksChange change = swapJwks(loadJwks(false));
+                jwksReloadMillis = System.currentTimeMillis();
+                return change;
             } catch (TokenIssuerException e) {
                 LOG.debug("Error during reloading of JWKS. Pause for at least one minute before next attempt", e);
-                jwksReloadTimestamp = LocalDateTime.now();
-                return false;
+                jwksReloadMillis = System.currentTimeMillis();
+                return JwksChange.NONE;
             } catch (Exception e) {
                 LOG.warn(ReasonCode.APIM_2040.pattern(), e);
-                jwksReloadTimestamp = LocalDateTime.now();
-                return false;
+                jwksReloadMillis = System.currentTimeMillis();
+                return JwksChange.NONE;
             }
         } else {
             LOG.debug("Not reloading JWKS as last attempt was within last minute");
-            return false;
+            return JwksChange.NONE;
+        }
+    }
+
+    private JwksChange doRefreshJwks() {
+        final Jwks newJwks = loadJwksIfModified();
+        if (newJwks == null) {
+            return JwksChange.NONE;
         }
+        return swapJwks(newJwks);
+    }
+
+    private JwksChange swapJwks(Jwks newJwks) {
+        if (newJwks.getKeys().values().isEmpty()) {
+            LOG.error(ReasonCode.APIM_3022.pattern(), jwksUri);
+            return JwksChange.NONE;
+        }
+        final Set<String> existingKeyIds = getJwks().getKeyIds();
+        final Set<String> newKeyIds = newJwks.getKeyIds();
+
+        final Set<String> removedKeyIds = new HashSet<>(existingKeyIds);
+        removedKeyIds.removeAll(newKeyIds);
+        removedKeyIds.forEach(keyId -> LOG.warn(ReasonCode.APIM_2039.pattern(), keyId, jwksUri));
+
+        final Set<String> addedKeyIds = new HashSet<>(newKeyIds);
+        addedKeyIds.removeAll(existingKeyIds);
+        addedKeyIds.forEach(keyId -> LOG.info(ReasonCode.APIM_1011.pattern(), keyId, jwksUri));
+
+        // swapping the JWKS
+        setJwks(newJwks);
+
+        if (!removedKeyIds.isEmpty()) {
+            return JwksChange.KEYS_REMOVED;
+        }
+        return addedKeyIds.isEmpty() ? JwksChange.NONE : JwksChange.KEYS_ADDED;
     }
 
     void initJwks() {
@@ -169,6 +251,23 @@ public class TokenIssuer {
         setJwks(loadJwks(true));
     }
 
+    /**
+     * Initializes the JWKS from the offline cache only, without calling the token issuer
+     *
+     * @return false if the OIDC configuration or the JWKS of the token issuer is not in the offline cache
+     */
+    boolean initJwksFromOfflineCache() {
+        try {
+            setJwksUri(parseJwksUri(offlineConfigurationCacheRepo.findOidc(issuerUrl)));
+            final Optional<Jwks> offlineJwks = toJwks(offlineConfigurationCacheRepo.findJwks(jwksUri));
+            offlineJwks.ifPresent(this::setJwks);
+            return offlineJwks.isPresent();
+        } catch (Exception e) {
+            LOG.debug("JWKS not found in offline cache. IssuerURL={}", issuerUrl, e);
+            return false;
+        }
+    }
+
     private String loadJwksUriFromOidc() {
         final StopWatch sw = new StopWatch().start();
         try (Response response = resteasyClient.target(oidcUrl).request().get()) {
@@ -201,6 +300,7 @@ public class TokenIssuer {
         try (Response response = resteasyClient.target(jwksUri).request().get()) {
             LOG.info(ReasonCode.APIM_1034.pattern(), sw.stop().getMillis(), jwksUri);
             if (response.getStatus() == 200) {
+                rememberJwksCaching(response);
                 final String jwksJson = response.readEntity(String.class);
                 offlineConfigurationCacheRepo.persistJwks(jwksUri, jwksJson);
                 final JsonNode jsonNode = new ObjectMapper().readTree(jwksJson);
@@ -231,47 +331,75 @@ public class TokenIssuer {
         }
     }
 
-    private Optional<Jwks> toJwks(String jwksJson) throws IOException {
-        if (jwksJson != null && !jwksJson.isEmpty()) {
-            return Optional.of(new Jwks(jwksJson));
-        } else {
-            return Optional.empty();
+    /**
+     * @return null if the JWKS has not been modified since the last response
+     */
+    private Jwks loadJwksIfModified() {
+        final StopWatch sw = new StopWatch().start();
+        Invocation.Builder request = resteasyClient.target(jwksUri).request();
+        if (jwksETag != null) {
+            request = request.header(HttpHeaders.IF_NONE_MATCH, jwksETag);
         }
-    }
-
-    private JWTVerifier createVerifier() {
-        LOG.debug("Generating new Verifier for token issuerUrl={}", issuerUrl);
-
-        final Algorithm alg = Algorithm.RSA256(new RSAKeyProvider() {
-            @Override
-            public RSAPublicKey getPublicKeyById(String keyId) {
-                final Optional<Jwk> optionalJwk = getKey(keyId);
-                if (optionalJwk.isPresent()) {
-                    try {
-                        return optionalJwk.get().getRsaPublicKey();
-                    } catch (InvalidPublicKeyException e) {
-                        LOG.warn(ReasonCode.APIM_2036.pattern(), keyId, jwksUri, e);
-                    }
-                } else {
-                    LOG.warn(ReasonCode.APIM_2037.pattern(), keyId, jwksUri);
-                }
+        if (jwksLastModified != null) {
+            request = request.header(HttpHeaders.IF_MODIFIED_SINCE, jwksLastModified);
+        }
+        try (Response response = request.get()) {
+            if (response.getStatus() == 304) {
+                LOG.debug("JWKS not modified, checked in {} ms JwksUri={}", sw.stop().getMillis(), jwksUri);
+                jwksRefreshSeconds = refreshSeconds(response.getHeaderString(HttpHeaders.CACHE_CONTROL));
                 return null;
             }
-
-            @Override
-            public RSAPrivateKey getPrivateKey() {
-                // not needed in order to validate signature
-                return null;
+            LOG.info(ReasonCode.APIM_1034.pattern(), sw.stop().getMillis(), jwksUri);
+            if (response.getStatus() == 200) {
+                rememberJwksCaching(response);
+                final String jwksJson = response.readEntity(String.class);
+                offlineConfigurationCacheRepo.persistJwks(jwksUri, jwksJson);
+                return new Jwks(new ObjectMapper().readTree(jwksJson).toString());
             }
+            throw new TokenIssuerException(ReasonCode.APIM_2024.format(jwksUri, sw.stop().getMillis(), response.getStatus()));
+        } catch (TokenIssuerException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new TokenIssuerException("Unable to load JWKS", e);
+        }
+    }
 
-            @Override
-            public String getPrivateKeyId() {
-                // not needed in order to validate signature
-                return null;
+    private void rememberJwksCaching(Response response) {
+        jwksETag = response.getHeaderString(HttpHeaders.ETAG);
+        jwksLastModified = response.getHeaderString(HttpHeaders.LAST_MODIFIED);
+        jwksRefreshSeconds = refreshSeconds(response.getHeaderString(HttpHeaders.CACHE_CONTROL));
+    }
+
+    /**
+     * @return the max-age of the Cache-Control header, bounded to between one minute and one hour
+     */
+    static long refreshSeconds(String cacheControl) {
+        if (cacheControl == null) {
+            return DEFAULT_JWKS_REFRESH_SECONDS;
+        }
+        for (String directive : cacheControl.split(",")) {
+            final String trimmed = directive.trim().toLowerCase();
+            if (trimmed.equals("no-cache") || trimmed.equals("no-store")) {
+                return MIN_JWKS_REFRESH_SECONDS;
+            }
+            if (trimmed.startsWith("max-age=")) {
+                try {
+                    final long maxAge = Long.parseLong(trimmed.substring("max-age=".length()).replace("\"", ""));
+                    return Math.min(MAX_JWKS_REFRESH_SECONDS, Math.max(MIN_JWKS_REFRESH_SECONDS, maxAge));
+                } catch (NumberFormatException e) {
+                    return DEFAULT_JWKS_REFRESH_SECONDS;
+                }
             }
-        });
+        }
+        return DEFAULT_JWKS_REFRESH_SECONDS;
+    }
 
-        return JWT.require(alg).build();
+    private Optional<Jwks> toJwks(String jwksJson) throws IOException {
+        if (jwksJson != null && !jwksJson.isEmpty()) {
+            return Optional.of(new Jwks(jwksJson));
+        } else {
+            return Optional.empty();
+        }
     }
 
     @Override
@@ -288,6 +416,18 @@ public class TokenIssuer {
 
     public void resetJwksReloadTimestamp() {
         LOG.debug("Resetting JWKS reload timestamp");
-        jwksReloadTimestamp = null;
+        jwksReloadMillis = 0;
+    }
+
+    /**
+     * How the keys of a token issuer have changed by reloading its JWKS
+     */
+    public enum JwksChange {
+        NONE,
+        KEYS_ADDED,
+        /**
+         * Keys may have been added as well, tokens signed by the removed keys are no longer valid
+         */
+        KEYS_REMOVED
     }
 }
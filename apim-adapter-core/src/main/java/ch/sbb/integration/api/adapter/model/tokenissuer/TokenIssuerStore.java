@@ -4,12 +4,26 @@ import ch.sbb.integration.api.adapter.config.ApimAdapterConfig;
 import ch.sbb.integration.api.adapter.config.ReasonCode;
 import ch.sbb.integration.api.adapter.config.RestConfig;
 import ch.sbb.integration.api.adapter.config.TokenIssuerConfig;
+import ch.sbb.integration.api.adapter.model.tokenissuer.TokenIssuer.JwksChange;
 import ch.sbb.integration.api.adapter.service.repository.OfflineConfigurationCacheRepo;
+import ch.sbb.integration.api.adapter.service.utils.LogThrottle;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import org.jboss.resteasy.client.jaxrs.ResteasyClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -19,6 +33,9 @@ import static ch.sbb.integration.api.adapter.model.oidc.OidcConfigUtils.issuerTo
 public class TokenIssuerStore {
     private static final Logger LOG = LoggerFactory.getLogger(TokenIssuerStore.class);
     private static final Pattern MATCH_REGEX_GROUP_PATTERN = Pattern.compile(".*\\((.*)\\).*");
+    private static final int UNTRUSTED_ISSUER_LOG_INTERVAL_SECONDS = 10;
+    private static final int MAXIMUM_UNTRUSTED_ISSUERS = 1_000;
+    private static final int MAXIMUM_INITIALIZATION_THREADS = 8;
 
     private static TokenIssuerStore instance;
 
@@ -30,9 +47,25 @@ public class TokenIssuerStore {
     }
 
     public static TokenIssuerStore init(ApimAdapterConfig config, RestConfig restConfig, OfflineConfigurationCacheRepo offlineConfigurationCacheRepo) {
-        instance = new TokenIssuerStore(config, restConfig, offlineConfigurationCacheRepo);
-        instance.eagerIssuerInitialization();
-        return instance;
+        final TokenIssuerStore store = initAsync(config, restConfig, offlineConfigurationCacheRepo);
+        // failures are logged per issuer, the initialization always completes normally
+        store.getInitialization().join();
+        return store;
+    }
+
+    /**
+     * Like {@link #init(ApimAdapterConfig, RestConfig, OfflineConfigurationCacheRepo)}, but without waiting for the
+     * eager initialization of the issuers. A previously initialized store is closed.
+     */
+    public static TokenIssuerStore initAsync(ApimAdapterConfig config, RestConfig restConfig, OfflineConfigurationCacheRepo offlineConfigurationCacheRepo) {
+        final TokenIssuerStore previousInstance = instance;
+        final TokenIssuerStore newInstance = new TokenIssuerStore(config, restConfig, offlineConfigurationCacheRepo);
+        newInstance.initialization = newInstance.eagerIssuerInitialization();
+        instance = newInstance;
+        if (previousInstance != null) {
+            previousInstance.close();
+        }
+        return newInstance;
     }
 
     public static void reset() {
@@ -73,70 +106,339 @@ public class TokenIssuerStore {
         return s != null && (s.contains("*") || s.contains("+") || s.contains("\\") || s.contains("[") || s.contains("]") || s.contains("{") || s.contains("}"));
     }
 
-    private void eagerIssuerInitialization() {
-        final Set<String> issuerUrls = issuerPatterns.stream()
+    private Set<String> eagerIssuerUrls() {
+        return issuerPatterns.stream()
                 .map(Pattern::pattern)
                 .map(TokenIssuerStore::guessTokenIssuerUrls)
                 .flatMap(Collection::stream)
+                .filter(Objects::nonNull)
                 .collect(Collectors.toSet());
-        issuerUrls.stream().filter(Objects::nonNull).forEach(issuerUrl -> {
-            try {
-                resolve(issuerUrl);
-            } catch (Exception e) {
-                LOG.error(ReasonCode.APIM_3007.pattern(), issuerUrl, e);
-            }
+    }
+
+    /**
+     * Initializes the issuers of the patterns in parallel, each one takes an OIDC and a JWKS request
+     */
+    private CompletableFuture<Void> eagerIssuerInitialization() {
+        final Set<String> issuerUrls = eagerIssuerUrls();
+        if (issuerUrls.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(issuerUrls.size(), MAXIMUM_INITIALIZATION_THREADS), runnable -> {
+            final Thread thread = new Thread(runnable, "apim-issuer-initialization");
+            thread.setDaemon(true);
+            return thread;
         });
+        try {
+            return CompletableFuture.allOf(issuerUrls.stream()
+                    .map(issuerUrl -> CompletableFuture.runAsync(() -> {
+                        try {
+                            resolve(issuerUrl);
+                        } catch (Exception e) {
+                            LOG.error(ReasonCode.APIM_3007.pattern(), issuerUrl, e);
+                        }
+                    }, executor))
+                    .toArray(CompletableFuture[]::new));
+        } finally {
+            // the submitted initializations still run
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * @return completes when the eager initialization of the issuers of the patterns has finished
+     */
+    public CompletableFuture<Void> getInitialization() {
+        return initialization;
+    }
+
+    /**
+     * Initializes the issuers of the patterns which are not initialized yet from the offline cache. The issuers are
+     * replaced once their running initialization has finished.
+     */
+    public void initIssuersFromOfflineCache() {
+        for (String issuerUrl : eagerIssuerUrls()) {
+            if (issuers.containsKey(issuerUrl)) {
+                continue;
+            }
+            final Optional<Matcher> matcher = matchIssuerPattern(issuerUrl);
+            final TokenIssuer tokenIssuer = matcher.map(m -> newTokenIssuer(issuerUrl, m)).orElse(null);
+            if (tokenIssuer != null && tokenIssuer.initJwksFromOfflineCache()) {
+                if (addIssuerIfAbsent(issuerUrl, tokenIssuer)) {
+                    scheduleJwksRefresh(tokenIssuer, TokenIssuer.MIN_JWKS_REFRESH_SECONDS);
+                    LOG.info(ReasonCode.APIM_1038.pattern(), issuerUrl);
+                }
+            } else {
+                LOG.warn(ReasonCode.APIM_2047.pattern(), issuerUrl);
+            }
+        }
     }
 
     private final ResteasyClient resteasyClient;
     private final OfflineConfigurationCacheRepo offlineConfigurationCacheRepo;
-    private final Map<String, TokenIssuer> issuers = Collections.synchronizedMap(new HashMap<>());
+    private volatile Map<String, TokenIssuer> issuers = Collections.emptyMap();
+    private final ConcurrentMap<String, CompletableFuture<TokenIssuer>> pendingIssuers = new ConcurrentHashMap<>();
+    private final Cache<String, Boolean> untrustedIssuers = Caffeine.newBuilder().maximumSize(MAXIMUM_UNTRUSTED_ISSUERS).build();
 
     /* pattern is used for flexibility and in order to capture the realm / tenant name. If it does not contain
      * common char capturing, we can simply remove parentheses or the like and trigger an initial eager initialization
      * https://sso-dev.sbb.ch/auth/realms/(SBB_Public) -> https://sso-dev.sbb.ch/auth/realms/SBB_Public
      */
     private final List<Pattern> issuerPatterns;
+    private final List<String> issuerPrefixes;
+    private CompletableFuture<Void> initialization;
+    private final LogThrottle untrustedIssuerLog = new LogThrottle(UNTRUSTED_ISSUER_LOG_INTERVAL_SECONDS, TimeUnit.SECONDS);
+
+    /**
+     * Refreshes the JWKS of every issuer as often as its max-age demands, so new keys are known before the first
+     * token signed with them arrives
+     */
+    private final ScheduledExecutorService jwksRefresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "apim-jwks-refresher");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile BiConsumer<TokenIssuer, JwksChange> jwksChangeListener = (tokenIssuer, change) -> {
+    };
 
-    private TokenIssuerStore(ApimAdapterConfig config, RestConfig restConfig, OfflineConfigurationCacheRepo offlineConfigurationCacheRepo) {
+    TokenIssuerStore(ApimAdapterConfig config, RestConfig restConfig, OfflineConfigurationCacheRepo offlineConfigurationCacheRepo) {
         this.issuerPatterns = config.getTokenIssuers().stream().map(TokenIssuerConfig::getUrlPatternCompiled).collect(Collectors.toList());
+        this.issuerPrefixes = issuerPatterns.stream().map(Pattern::pattern).map(TokenIssuerStore::literalPrefix).collect(Collectors.toList());
         this.offlineConfigurationCacheRepo = offlineConfigurationCacheRepo;
 
         this.resteasyClient = restConfig.newRestEasyClient();
     }
 
     public Optional<TokenIssuer> resolve(String issuerUrl) {
-        if (issuers.containsKey(issuerUrl)) {
+        final TokenIssuer knownIssuer = issuers.get(issuerUrl);
+        if (knownIssuer != null) {
             LOG.trace("Issuer resolved, return from store. IssuerURL={}", issuerUrl);
-            return Optional.ofNullable(issuers.get(issuerUrl));
+            return Optional.of(knownIssuer);
+        }
+        if (!isPossiblyTrusted(issuerUrl) || untrustedIssuers.getIfPresent(issuerUrl) != null) {
+            logUntrustedIssuer(issuerUrl);
+            return Optional.empty();
+        }
+
+        final Optional<Matcher> matcher = matchIssuerPattern(issuerUrl);
+        if (matcher.isPresent()) {
+            return Optional.of(initIssuer(issuerUrl, matcher.get()));
         }
 
+        // the patterns do not change, so an issuer URL has to be matched only once
+        untrustedIssuers.put(issuerUrl, Boolean.TRUE);
+        logUntrustedIssuer(issuerUrl);
+        return Optional.empty();
+    }
+
+    /**
+     * @return the matcher of the first issuer pattern matching the issuer URL
+     */
+    Optional<Matcher> matchIssuerPattern(String issuerUrl) {
         for (Pattern issuerPattern : issuerPatterns) {
             final Matcher matcher = issuerPattern.matcher(issuerUrl);
             if (matcher.matches()) {
-                final TokenIssuer tokenIssuer = new TokenIssuer(resteasyClient, offlineConfigurationCacheRepo);
-                // take host from token issuer URL, e.g. https://login.windows.net/2cda5d11-f0ac-46b3-967d-af1b2e1bd01a/ -> https://login.windows.net
-                // therefore look for the first / after the scheme prefix 'https://'
-                tokenIssuer.setIssuerUrl(issuerUrl);
-                tokenIssuer.setHost(issuerUrl.substring(0, issuerUrl.indexOf('/', Math.min("https://".length(), issuerUrl.length()))));
-                tokenIssuer.setRealm(matcher.groupCount() > 0 ? matcher.group(1) : "");
-                tokenIssuer.setOidcUrl(issuerToOpenIdConfigUrl(issuerUrl));
+                return Optional.of(matcher);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Initializes the issuer once, concurrent callers wait for the running initialization
+     */
+    private TokenIssuer initIssuer(String issuerUrl, Matcher matcher) {
+        final CompletableFuture<TokenIssuer> initialization = new CompletableFuture<>();
+        final CompletableFuture<TokenIssuer> runningInitialization = pendingIssuers.putIfAbsent(issuerUrl, initialization);
+        if (runningInitialization != null) {
+            return await(runningInitialization);
+        }
+
+        try {
+            // the issuer may have been added since it was looked up
+            TokenIssuer tokenIssuer = issuers.get(issuerUrl);
+            if (tokenIssuer == null) {
+                tokenIssuer = newTokenIssuer(issuerUrl, matcher);
                 tokenIssuer.initJwks();
-                issuers.put(issuerUrl, tokenIssuer);
+                addIssuer(issuerUrl, tokenIssuer);
+                scheduleJwksRefresh(tokenIssuer, tokenIssuer.getJwksRefreshSeconds());
                 LOG.info(ReasonCode.APIM_1007.pattern(), issuerUrl);
-                return Optional.of(tokenIssuer);
             }
+            initialization.complete(tokenIssuer);
+            return tokenIssuer;
+        } catch (RuntimeException e) {
+            initialization.completeExceptionally(e);
+            throw e;
+        } finally {
+            pendingIssuers.remove(issuerUrl, initialization);
         }
+    }
 
-        LOG.warn(ReasonCode.APIM_2030.pattern(), issuerUrl);
-        return Optional.empty();
+    TokenIssuer newTokenIssuer(String issuerUrl, Matcher matcher) {
+        final TokenIssuer tokenIssuer = new TokenIssuer(resteasyClient, offlineConfigurationCacheRepo);
+        // take host from token issuer URL, e.g. https://login.windows.net/2cda5d11-f0ac-46b3-967d-af1b2e1bd01a/ -> https://login.windows.net
+        // therefore look for the first / after the scheme prefix 'https://'
+        tokenIssuer.setIssuerUrl(issuerUrl);
+        tokenIssuer.setHost(issuerUrl.substring(0, issuerUrl.indexOf('/', Math.min("https://".length(), issuerUrl.length()))));
+        tokenIssuer.setRealm(matcher.groupCount() > 0 ? matcher.group(1) : "");
+        tokenIssuer.setOidcUrl(issuerToOpenIdConfigUrl(issuerUrl));
+        return tokenIssuer;
+    }
+
+    private static TokenIssuer await(CompletableFuture<TokenIssuer> initialization) {
+        try {
+            return initialization.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Copy on write, the issuers are read far more often than added
+     */
+    private synchronized void addIssuer(String issuerUrl, TokenIssuer tokenIssuer) {
+        final Map<String, TokenIssuer> newIssuers = new HashMap<>(issuers);
+        newIssuers.put(issuerUrl, tokenIssuer);
+        issuers = Collections.unmodifiableMap(newIssuers);
+    }
+
+    private synchronized boolean addIssuerIfAbsent(String issuerUrl, TokenIssuer tokenIssuer) {
+        if (issuers.containsKey(issuerUrl)) {
+            return false;
+        }
+        addIssuer(issuerUrl, tokenIssuer);
+        return true;
+    }
+
+    /**
+     * @param jwksChangeListener called after the JWKS of an issuer has been refreshed in the background and its keys
+     *                           have changed
+     */
+    public void setJwksChangeListener(BiConsumer<TokenIssuer, JwksChange> jwksChangeListener) {
+        this.jwksChangeListener = jwksChangeListener;
+    }
+
+    private void scheduleJwksRefresh(TokenIssuer tokenIssuer, long delaySeconds) {
+        try {
+            jwksRefresher.schedule(() -> refreshJwks(tokenIssuer), delaySeconds, TimeUnit.SECONDS);
+        } catch (RejectedExecutionException e) {
+            LOG.debug("Not refreshing JWKS of closed TokenIssuerStore, JwksUri={}", tokenIssuer.getJwksUri());
+        }
+    }
+
+    private void refreshJwks(TokenIssuer tokenIssuer) {
+        if (issuers.get(tokenIssuer.getIssuerUrl()) != tokenIssuer) {
+            LOG.debug("Not refreshing JWKS of replaced issuer. IssuerURL={}", tokenIssuer.getIssuerUrl());
+            return;
+        }
+        long delaySeconds;
+        try {
+            tokenIssuer.refreshJwks(change -> jwksChangeListener.accept(tokenIssuer, change));
+            delaySeconds = tokenIssuer.getJwksRefreshSeconds();
+        } catch (Exception e) {
+            delaySeconds = TokenIssuer.MIN_JWKS_REFRESH_SECONDS;
+            LOG.warn(ReasonCode.APIM_2044.pattern(), tokenIssuer.getJwksUri(), delaySeconds, e);
+        }
+        scheduleJwksRefresh(tokenIssuer, delaySeconds);
+    }
+
+    /**
+     * Cheap check before matching the issuer URL against the issuer patterns
+     *
+     * @return false if the issuer URL does not start like any of the issuer patterns
+     */
+    boolean isPossiblyTrusted(String issuerUrl) {
+        if (issuerUrl == null) {
+            return false;
+        }
+        for (String issuerPrefix : issuerPrefixes) {
+            if (startsWith(issuerUrl, issuerPrefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean startsWith(String issuerUrl, String issuerPrefix) {
+        if (issuerUrl.length() < issuerPrefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < issuerPrefix.length(); i++) {
+            final char c = issuerPrefix.charAt(i);
+            if (c != '.' && c != issuerUrl.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the literal beginning of every string matching the pattern, where a '.' stands for any character
+     */
+    static String literalPrefix(String pattern) {
+        if (containsTopLevelAlternation(pattern)) {
+            return "";
+        }
+        final StringBuilder prefix = new StringBuilder();
+        for (int i = pattern.startsWith("^") ? 1 : 0; i < pattern.length(); i++) {
+            final char c = pattern.charAt(i);
+            if (c == '?' || c == '*' || c == '+' || c == '{') {
+                // the preceding character is optional or repeated
+                prefix.setLength(Math.max(0, prefix.length() - 1));
+                break;
+            }
+            if (c == '\\' || c == '(' || c == '[' || c == '$' || c == '|' || c == '^') {
+                break;
+            }
+            prefix.append(c);
+        }
+        return prefix.toString();
+    }
+
+    private static boolean containsTopLevelAlternation(String pattern) {
+        int depth = 0;
+        boolean inCharacterClass = false;
+        for (int i = 0; i < pattern.length(); i++) {
+            final char c = pattern.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (inCharacterClass) {
+                inCharacterClass = c != ']';
+            } else if (c == '[') {
+                inCharacterClass = true;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == '|' && depth == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void logUntrustedIssuer(String issuerUrl) {
+        final long suppressedEntries = untrustedIssuerLog.acquire();
+        if (suppressedEntries >= 0) {
+            LOG.warn(ReasonCode.APIM_2030.pattern(), issuerUrl, suppressedEntries);
+        }
     }
 
     public Collection<TokenIssuer> getIssuers() {
         return issuers.values();
     }
 
-    private void close() {
+    boolean isClosed() {
+        return jwksRefresher.isShutdown();
+    }
+
+    /**
+     * Stops the background refresh of the JWKS and closes the rest client
+     */
+    public void close() {
+        jwksRefresher.shutdownNow();
         try {
             resteasyClient.close();
         } catch (Exception e) {
@@ -0,0 +1,140 @@
+package ch.sbb.integration.api.adapter.model.tokenissuer;
+
+import ch.sbb.integration.api.adapter.config.ReasonCode;
+import ch.sbb.integration.api.adapter.model.jwk.InvalidPublicKeyException;
+import ch.sbb.integration.api.adapter.model.jwk.Jwk;
+import ch.sbb.integration.api.adapter.model.jwk.Jwks;
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.JWTVerifier;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.exceptions.AlgorithmMismatchException;
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.auth0.jwt.exceptions.SignatureVerificationException;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.security.PublicKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Verifiers for the keys of the JWKS of a token issuer. The verifier of a key and signature algorithm is built when
+ * the first token signed with it is verified and then shared by all tokens signed with it. A reloaded JWKS gets a new
+ * registry, so the verifiers of removed keys are dropped with the old one.
+ * <p>
+ * Supported are RS256, RS384 and RS512 for RSA keys and ES256, ES384 and ES512 for EC keys.
+ */
+final class VerifierRegistry {
+    private static final Logger LOG = LoggerFactory.getLogger(VerifierRegistry.class);
+    private static final Set<String> SUPPORTED_ALGORITHMS = new HashSet<>(Arrays.asList("RS256", "RS384", "RS512", "ES256", "ES384", "ES512"));
+
+    private final String jwksUri;
+    private final Jwks jwks;
+
+    /**
+     * By algorithm and kid, holds only keys of the JWKS and supported algorithms
+     */
+    private final ConcurrentMap<String, JWTVerifier> verifiers = new ConcurrentHashMap<>();
+
+    VerifierRegistry(String jwksUri, Jwks jwks) {
+        this.jwksUri = jwksUri;
+        this.jwks = jwks;
+    }
+
+    Jwks getJwks() {
+        return jwks;
+    }
+
+    /**
+     * @throws SignatureVerificationException if the key is unknown or does not fit the algorithm, or the signature is invalid
+     * @throws AlgorithmMismatchException     if the signature algorithm is not supported
+     */
+    DecodedJWT verify(DecodedJWT jwt) throws JWTVerificationException {
+        final String verifierKey = jwt.getAlgorithm() + ':' + jwt.getKeyId();
+        JWTVerifier verifier = verifiers.get(verifierKey);
+        if (verifier == null) {
+            // building a verifier twice is harmless, the first one is kept
+            final JWTVerifier newVerifier = createVerifier(jwt.getKeyId(), jwt.getAlgorithm());
+            verifier = verifiers.putIfAbsent(verifierKey, newVerifier);
+            if (verifier == null) {
+                verifier = newVerifier;
+            }
+        }
+        return verifier.verify(jwt);
+    }
+
+    int size() {
+        return verifiers.size();
+    }
+
+    private JWTVerifier createVerifier(String keyId, String algorithm) {
+        if (!SUPPORTED_ALGORITHMS.contains(algorithm)) {
+            throw new AlgorithmMismatchException("The signature algorithm " + algorithm + " is not supported");
+        }
+        LOG.debug("Creating verifier for keyId={} algorithm={} jwksUri={}", keyId, algorithm, jwksUri);
+
+        final PublicKey publicKey;
+        try {
+            publicKey = jwks.getPublicKey(keyId);
+        } catch (InvalidPublicKeyException e) {
+            LOG.warn(ReasonCode.APIM_2036.pattern(), keyId, jwksUri, e);
+            throw new SignatureVerificationException(Algorithm.none(), e);
+        }
+        if (publicKey == null) {
+            LOG.warn(ReasonCode.APIM_2037.pattern(), keyId, jwksUri);
+            throw new SignatureVerificationException(Algorithm.none());
+        }
+
+        final Jwk jwk = jwks.getKeys().get(keyId);
+        if (jwk.getAlgorithm() != null && !jwk.getAlgorithm().equals(algorithm)) {
+            LOG.debug("The key with keyId={} is not used with algorithm={}", keyId, algorithm);
+            throw new SignatureVerificationException(Algorithm.none());
+        }
+
+        final Algorithm signatureAlgorithm = createAlgorithm(algorithm, publicKey);
+        if (signatureAlgorithm == null) {
+            LOG.debug("The key with keyId={} does not fit algorithm={}", keyId, algorithm);
+            throw new SignatureVerificationException(Algorithm.none());
+        }
+        return JWT.require(signatureAlgorithm).build();
+    }
+
+    /**
+     * @return null if the key does not fit the algorithm
+     */
+    private static Algorithm createAlgorithm(String algorithm, PublicKey publicKey) {
+        if (publicKey instanceof RSAPublicKey) {
+            final RSAPublicKey rsaPublicKey = (RSAPublicKey) publicKey;
+            switch (algorithm) {
+                case "RS256":
+                    return Algorithm.RSA256(rsaPublicKey, null);
+                case "RS384":
+                    return Algorithm.RSA384(rsaPublicKey, null);
+                case "RS512":
+                    return Algorithm.RSA512(rsaPublicKey, null);
+                default:
+                    return null;
+            }
+        }
+        if (publicKey instanceof ECPublicKey) {
+            final ECPublicKey ecPublicKey = (ECPublicKey) publicKey;
+            switch (algorithm) {
+                case "ES256":
+                    return Algorithm.ECDSA256(ecPublicKey, null);
+                case "ES384":
+                    return Algorithm.ECDSA384(ecPublicKey, null);
+                case "ES512":
+                    return Algorithm.ECDSA512(ecPublicKey, null);
+                default:
+                    return null;
+            }
+        }
+        return null;
+    }
+}
@@ -5,16 +5,24 @@ import org.slf4j.LoggerFactory;
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.function.Function;
 
 import static ch.sbb.integration.api.adapter.config.ReasonCode.APIM_3004;
 
 /**
  * Created by u217269 on 16.02.2018.
+ * <p>
+ * The usages are kept in a compact table of interned metric system names with one slot per metric. The table is
+ * replaced (copy on write) when metrics are added or removed, which only happens during the synchronization. On
+ * the request path a metric is found by comparing the interned names, without hashing or locking, and a period
+ * rollover replaces the usage in its slot with a compare and set. The usages are taken out of a replaced table
+ * atomically, so a rollover racing with the replacement either is taken over by the new table or fails and is retried
+ * on it.
  */
 public class Client implements Serializable {
 
@@ -22,12 +30,15 @@ public class Client implements Serializable {
     private static final long serialVersionUID = -2265193224419120561L;
 
     private final String id;
-    private ConcurrentHashMap<String, MetricUsage> usageMap;
+    /**
+     * Only replaced while holding the lock of the client
+     */
+    private volatile UsageTable usages;
     private ClientSyncState syncState;
 
     public Client(String id, Map<String, MetricUsage> usageMap, ClientSyncState syncState) {
         this.id = id;
-        this.usageMap = new ConcurrentHashMap<>(usageMap); //Defensive copy
+        this.usages = UsageTable.of(usageMap); //Defensive copy
         this.syncState = syncState;
     }
 
@@ -35,22 +46,52 @@ public class Client implements Serializable {
         return ClientSyncState.isStatePermitted(syncState);
     }
 
-    public void updateMetricUsage(String metricSysName, Function<? super MetricUsage, ? extends MetricUsage> metricUsageTransformation) {
-        usageMap.compute(metricSysName,(key, metricUsage) -> metricUsageTransformation.apply(metricUsage));
+    /**
+     * Replaces the usage of the metric by the result of the transformation. The transformation gets null if there is
+     * no usage for the metric yet and removes the usage by returning null.
+     */
+    public synchronized void updateMetricUsage(String metricSysName, Function<? super MetricUsage, ? extends MetricUsage> metricUsageTransformation) {
+        final UsageTable table = usages;
+        final int slot = table.indexOf(metricSysName);
+        if (slot < 0) {
+            final MetricUsage newUsage = metricUsageTransformation.apply(null);
+            if (newUsage != null) {
+                usages = table.with(metricSysName, newUsage);
+            }
+            return;
+        }
+
+        while (true) {
+            final MetricUsage existingUsage = table.get(slot);
+            final MetricUsage newUsage = metricUsageTransformation.apply(existingUsage);
+            if (newUsage == null) {
+                usages = table.without(slot);
+                return;
+            }
+            // the request path may have rolled the usage over to the next period in the meantime
+            if (table.compareAndSet(slot, existingUsage, newUsage)) {
+                return;
+            }
+        }
     }
 
     public List<String> getMetricSysNames() {
-        return Collections.list(usageMap.keys());
+        return new ArrayList<>(Arrays.asList(usages.metricSysNames));
     }
 
     public void deleteNoneMatchingMetrics(List<String> knownMetricSysNames) {
-        ArrayList<String> metricsToDelete = Collections.list(usageMap.keys());
+        List<String> metricsToDelete = getMetricSysNames();
         knownMetricSysNames.forEach(metricsToDelete::remove);
-        metricsToDelete.forEach(obsoleteMetricSysName -> usageMap.remove(obsoleteMetricSysName));
+        deleteMatchingMetrics(metricsToDelete);
     }
 
-    public void deleteMatchingMetrics(List<String> metricsToDelete) {
-        metricsToDelete.forEach(obsoleteMetricSysName -> usageMap.remove(obsoleteMetricSysName));
+    public synchronized void deleteMatchingMetrics(List<String> metricsToDelete) {
+        for (String obsoleteMetricSysName : metricsToDelete) {
+            final int slot = usages.indexOf(obsoleteMetricSysName);
+            if (slot >= 0) {
+                usages = usages.without(slot);
+            }
+        }
     }
 
     public String getId() {
@@ -58,7 +99,41 @@ public class Client implements Serializable {
     }
 
     public MetricUsage getUsage(String metricSysName) {
-        return usageMap.get(metricSysName);
+        while (true) {
+            final UsageTable table = usages;
+            final int slot = table.indexOf(metricSysName);
+            if (slot < 0) {
+                return null;
+            }
+            final MetricUsage metricUsage = table.get(slot);
+            if (metricUsage != UsageTable.REPLACED) {
+                return metricUsage;
+            }
+            awaitReplacement(table);
+        }
+    }
+
+    /**
+     * @return the lowest number of hits left in the current period over all metrics, {@link Long#MAX_VALUE} if no
+     * metric is limited
+     */
+    public long getRemaining() {
+        while (true) {
+            final UsageTable table = usages;
+            long remaining = Long.MAX_VALUE;
+            int slot = 0;
+            for (; slot < table.metricSysNames.length; slot++) {
+                final MetricUsage metricUsage = table.get(slot);
+                if (metricUsage == UsageTable.REPLACED) {
+                    break;
+                }
+                remaining = Math.min(remaining, metricUsage.getRemaining());
+            }
+            if (slot == table.metricSysNames.length) {
+                return remaining;
+            }
+            awaitReplacement(table);
+        }
     }
 
     public ClientSyncState getSyncState() {
@@ -70,22 +145,35 @@ public class Client implements Serializable {
     }
 
     public boolean incrementUsage(String metricSysName) {
-        //Ensure that the metricUsage is in the correct time period
-        updateMetricUsage(metricSysName, usage -> {
-            //this is only possible when the clientCache is not synced (max cache_refresh_interval delay)
-            if (usage == null) {
-                return null;
-            } else {
-                return MetricUsage.getCurrentPeriod(usage);
+        while (true) {
+            final UsageTable table = usages;
+            final int slot = table.indexOf(metricSysName);
+            if (slot < 0) {
+                //this is only possible when the clientCache is not synced (max cache_refresh_interval delay)
+                LOG.error(APIM_3004.pattern(), metricSysName, id);
+                return true;
             }
-        });
 
-        MetricUsage metricUsage = usageMap.get(metricSysName);
-        if(metricUsage == null) {
-            LOG.error(APIM_3004.pattern(), metricSysName, id);
-            return true;
-        } else {
-            return metricUsage.incrementCurrentUsage(); // this increments the counter and returns if the access is allowed based on the current usage of this metric.
+            //Ensure that the metricUsage is in the correct time period
+            MetricUsage metricUsage = table.get(slot);
+            while (metricUsage != UsageTable.REPLACED) {
+                final MetricUsage currentPeriod = MetricUsage.getCurrentPeriod(metricUsage);
+                if (currentPeriod == metricUsage || table.compareAndSet(slot, metricUsage, currentPeriod)) {
+                    return currentPeriod.incrementCurrentUsage(); // this increments the counter and returns if the access is allowed based on the current usage of this metric.
+                }
+                // an other request or the synchronization replaced the usage first
+                metricUsage = table.get(slot);
+            }
+            awaitReplacement(table);
+        }
+    }
+
+    /**
+     * Waits for the synchronization to publish the table replacing the given one, whose usages it has taken out
+     */
+    private void awaitReplacement(UsageTable replacedTable) {
+        while (usages == replacedTable) {
+            Thread.yield();
         }
     }
 
@@ -112,9 +200,107 @@ public class Client implements Serializable {
     public String toString() {
         return "Client{" +
                 "id='" + id + '\'' +
-                ", usageMap=" + usageMap +
+                ", usageMap=" + usages +
                 ", syncState=" + syncState +
                 '}';
     }
 
+    /**
+     * Immutable list of interned metric system names, the usages per name are kept in the slot with the same index.
+     */
+    private static final class UsageTable implements Serializable {
+        private static final long serialVersionUID = 4502335960011470126L;
+        /**
+         * Left in the slots of a replaced table, so no usage is set in a table which is not published anymore
+         */
+        private static final MetricUsage REPLACED = MetricUsage.unlimitedMetric(null, null);
+
+        private final String[] metricSysNames;
+        private final AtomicReferenceArray<MetricUsage> metricUsages;
+
+        private UsageTable(String[] metricSysNames, MetricUsage[] metricUsages) {
+            this.metricSysNames = metricSysNames;
+            this.metricUsages = new AtomicReferenceArray<>(metricUsages);
+        }
+
+        private static UsageTable of(Map<String, MetricUsage> usageMap) {
+            final String[] names = new String[usageMap.size()];
+            final MetricUsage[] values = new MetricUsage[usageMap.size()];
+            int i = 0;
+            for (Map.Entry<String, MetricUsage> entry : usageMap.entrySet()) {
+                names[i] = entry.getKey().intern();
+                values[i] = entry.getValue();
+                i++;
+            }
+            return new UsageTable(names, values);
+        }
+
+        private int indexOf(String metricSysName) {
+            // the names are interned and so are the names of the mapping rules, the identity check is the common case
+            for (int i = 0; i < metricSysNames.length; i++) {
+                if (metricSysNames[i] == metricSysName) {
+                    return i;
+                }
+            }
+            for (int i = 0; i < metricSysNames.length; i++) {
+                if (metricSysNames[i].equals(metricSysName)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private MetricUsage get(int slot) {
+            return metricUsages.get(slot);
+        }
+
+        private boolean compareAndSet(int slot, MetricUsage expected, MetricUsage newUsage) {
+            return metricUsages.compareAndSet(slot, expected, newUsage);
+        }
+
+        private UsageTable with(String metricSysName, MetricUsage metricUsage) {
+            final int length = metricSysNames.length;
+            final String[] names = Arrays.copyOf(metricSysNames, length + 1);
+            final MetricUsage[] values = takeUsages(length + 1);
+            names[length] = metricSysName.intern();
+            values[length] = metricUsage;
+            return new UsageTable(names, values);
+        }
+
+        private UsageTable without(int slot) {
+            final List<String> names = new ArrayList<>(Arrays.asList(metricSysNames));
+            final List<MetricUsage> values = new ArrayList<>(Arrays.asList(takeUsages(metricSysNames.length)));
+            names.remove(slot);
+            values.remove(slot);
+            return new UsageTable(names.toArray(new String[0]), toArray(values));
+        }
+
+        /**
+         * Takes the usages out of this table for the table replacing it. A usage set by a request before is taken
+         * along, a request setting it afterwards fails and retries on the replacing table.
+         */
+        private MetricUsage[] takeUsages(int length) {
+            final MetricUsage[] values = new MetricUsage[length];
+            for (int i = 0; i < metricSysNames.length; i++) {
+                values[i] = metricUsages.getAndSet(i, REPLACED);
+            }
+            return values;
+        }
+
+        private static MetricUsage[] toArray(Collection<MetricUsage> values) {
+            return values.toArray(new MetricUsage[0]);
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder sb = new StringBuilder("{");
+            for (int i = 0; i < metricSysNames.length; i++) {
+                if (i > 0) {
+                    sb.append(", ");
+                }
+                sb.append(metricSysNames[i]).append('=').append(metricUsages.get(i));
+            }
+            return sb.append('}').toString();
+        }
+    }
 }
@@ -1,10 +1,11 @@
 package ch.sbb.integration.api.adapter.model.usage;
 
+import ch.sbb.integration.api.adapter.service.utils.CoarseClock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Serializable;
-import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
@@ -22,38 +23,48 @@ public final class MetricUsage implements Serializable {
     private static final Logger LOG = LoggerFactory.getLogger(MetricUsage.class);
     private static final long serialVersionUID = -6942725462035978945L;
 
+    private static final DateTimeFormatter PERIOD_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss Z");
+    private static final long UNLIMITED_PERIOD_START = Long.MIN_VALUE;
+    private static final long UNLIMITED_PERIOD_END = Long.MAX_VALUE;
+
     private final String clientId;
     private final String metricSysName;
-    private final ZonedDateTime periodStart;
-    private final ZonedDateTime periodEnd;
+    /**
+     * Period boundaries in milliseconds since the epoch, the zone is only kept to present them as {@link ZonedDateTime}.
+     */
+    private final long periodStart;
+    private final long periodEnd;
+    private final ZoneId zone;
 
     private final boolean limited;
-    private final Long limit;
-    private final Long base;
+    private final long limit;
+    private final long base;
     private final AtomicLong currentUsage;
 
     private MetricUsage(String clientId,
                         String metricSysName,
-                        ZonedDateTime periodStartDateTime,
-                        ZonedDateTime periodEndDateTime,
+                        long periodStart,
+                        long periodEnd,
+                        ZoneId zone,
                         boolean limited,
-                        Long limit,
-                        Long base) {
+                        long limit,
+                        long base) {
         this.clientId = clientId;
         this.metricSysName = metricSysName;
+        this.zone = zone;
 
         //Ensure that start < end
-        if(periodStartDateTime.isBefore(periodEndDateTime)) {
-            this.periodStart = periodStartDateTime;
-            this.periodEnd = periodEndDateTime;
+        if (periodStart < periodEnd) {
+            this.periodStart = periodStart;
+            this.periodEnd = periodEnd;
         } else {
-            if(periodStartDateTime.isAfter(periodEndDateTime)) {
-                this.periodStart = periodEndDateTime;
-                this.periodEnd = periodStartDateTime;
+            if (periodStart > periodEnd) {
+                this.periodStart = periodEnd;
+                this.periodEnd = periodStart;
             } else {
                 //They are the same, we add a second to the end
-                this.periodStart = periodStartDateTime;
-                this.periodEnd = periodStartDateTime.plusSeconds(1);
+                this.periodStart = periodStart;
+                this.periodEnd = periodStart + 1000L;
             }
         }
 
@@ -66,11 +77,13 @@ public final class MetricUsage implements Serializable {
     }
 
     public static MetricUsage unlimitedMetric(String clientId, String metricSysName) {
-        return new MetricUsage(clientId, metricSysName, LocalDateTime.MIN.atZone(ZoneId.systemDefault()), LocalDateTime.MAX.atZone(ZoneId.systemDefault()), false, null, null);
+        return new MetricUsage(clientId, metricSysName, UNLIMITED_PERIOD_START, UNLIMITED_PERIOD_END, ZoneId.systemDefault(), false, 0L, 0L);
     }
 
     public static MetricUsage limitedMetric(String clientId, String metricSysName, Long limit, Long base, String periodStartDateTime, String periodEndDateTime) {
-        return new MetricUsage(clientId, metricSysName, toZonedDateTime(periodStartDateTime), toZonedDateTime(periodEndDateTime), true, limit, base);
+        final ZonedDateTime periodStart = toZonedDateTime(periodStartDateTime);
+        final ZonedDateTime periodEnd = toZonedDateTime(periodEndDateTime);
+        return new MetricUsage(clientId, metricSysName, toEpochMilli(periodStart), toEpochMilli(periodEnd), periodStart.getZone(), true, limit, base);
     }
 
     public boolean isLimited() {
@@ -82,25 +95,32 @@ public final class MetricUsage implements Serializable {
     }
 
     public Long getBase() {
-        return base;
+        return limited ? base : null;
     }
 
     public ZonedDateTime getPeriodStart() {
-        return periodStart;
+        return periodStart == UNLIMITED_PERIOD_START ? LocalDateTime.MIN.atZone(zone) : Instant.ofEpochMilli(periodStart).atZone(zone);
     }
 
     public ZonedDateTime getPeriodEnd() {
-        return periodEnd;
+        return periodEnd == UNLIMITED_PERIOD_END ? LocalDateTime.MAX.atZone(zone) : Instant.ofEpochMilli(periodEnd).atZone(zone);
     }
 
     public Long getLimit() {
-        return limit;
+        return limited ? limit : null;
     }
 
     public AtomicLong getCurrentUsage() {
         return currentUsage;
     }
 
+    /**
+     * @return the number of hits left in the current period, {@link Long#MAX_VALUE} if the metric is unlimited
+     */
+    public long getRemaining() {
+        return limited ? limit - base - currentUsage.get() : Long.MAX_VALUE;
+    }
+
     /**
      * @return True if metric is successful hit, false if current usage is exceeded
      */
@@ -113,13 +133,16 @@ public final class MetricUsage implements Serializable {
         }
     }
 
-    private boolean isInPeriod() {
-        return !isLimited() || !ZonedDateTime.now().isAfter(periodEnd);
+    private boolean isInPeriod(long nowMillis) {
+        return !isLimited() || nowMillis <= periodEnd;
     }
 
     private static ZonedDateTime toZonedDateTime(String periodStartDateTime) {
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss Z");
-        return ZonedDateTime.parse(periodStartDateTime, formatter);
+        return ZonedDateTime.parse(periodStartDateTime, PERIOD_FORMATTER);
+    }
+
+    private static long toEpochMilli(ZonedDateTime dateTime) {
+        return dateTime.toInstant().toEpochMilli();
     }
 
     @Override
@@ -127,10 +150,10 @@ public final class MetricUsage implements Serializable {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         MetricUsage that = (MetricUsage) o;
-        return clientId.equals(that.clientId) &&
-                metricSysName.equals(that.metricSysName) &&
-                periodStart.equals(that.periodStart) &&
-                periodEnd.equals(that.periodEnd);
+        return periodStart == that.periodStart &&
+                periodEnd == that.periodEnd &&
+                clientId.equals(that.clientId) &&
+                metricSysName.equals(that.metricSysName);
     }
 
     @Override
@@ -143,21 +166,34 @@ public final class MetricUsage implements Serializable {
         return "MetricUsage{" +
                 "clientId='" + clientId + '\'' +
                 ", metricSysName='" + metricSysName + '\'' +
-                ", periodStart=" + periodStart +
-                ", periodEnd=" + periodEnd +
+                ", periodStart=" + getPeriodStart() +
+                ", periodEnd=" + getPeriodEnd() +
                 ", limited=" + limited +
-                ", limit=" + limit +
-                ", base=" + base +
+                ", limit=" + getLimit() +
+                ", base=" + getBase() +
                 ", currentUsage=" + currentUsage +
                 '}';
     }
 
     public static MetricUsage getCurrentPeriod(MetricUsage metricUsage) {
-        MetricUsage currentMetricUsage = metricUsage;
+        return getCurrentPeriod(metricUsage, CoarseClock.currentTimeMillis());
+    }
 
-        while(!currentMetricUsage.isInPeriod()){
-            currentMetricUsage = getNextPeriod(currentMetricUsage);
+    /**
+     * @return the given usage if it is in period, otherwise the usage of the period containing the given time. The
+     * period is moved by as many whole durations as needed in one step.
+     */
+    static MetricUsage getCurrentPeriod(MetricUsage metricUsage, long nowMillis) {
+        if (metricUsage.isInPeriod(nowMillis)) {
+            return metricUsage;
         }
+
+        final long duration = metricUsage.periodEnd - metricUsage.periodStart;
+        final long elapsedPeriods = (nowMillis - metricUsage.periodEnd + duration - 1) / duration;
+        final long shift = elapsedPeriods * duration;
+        final MetricUsage currentMetricUsage = new MetricUsage(metricUsage.clientId, metricUsage.metricSysName,
+                metricUsage.periodStart + shift, metricUsage.periodEnd + shift, metricUsage.zone, metricUsage.limited, metricUsage.limit, 0L);
+        LOG.info(APIM_1003.pattern(), currentMetricUsage.metricSysName, currentMetricUsage.clientId, currentMetricUsage.getPeriodStart(), currentMetricUsage.getPeriodEnd());
         return currentMetricUsage;
     }
 
@@ -171,17 +207,9 @@ public final class MetricUsage implements Serializable {
                 master.metricSysName,
                 master.periodStart,
                 master.periodEnd,
+                master.zone,
                 true,
                 master.limit,
                 master.base);
     }
-
-    private static MetricUsage getNextPeriod(MetricUsage metricUsage) {
-        Duration between = Duration.between(metricUsage.periodStart, metricUsage.periodEnd);
-        ZonedDateTime nextPeriodStart = metricUsage.periodStart.plus(between);
-        ZonedDateTime nextPeriodEnd = metricUsage.periodEnd.plus(between);
-        LOG.info(APIM_1003.pattern(), metricUsage.metricSysName, metricUsage.clientId, nextPeriodStart, nextPeriodEnd);
-        return new MetricUsage(metricUsage.clientId, metricUsage.metricSysName, nextPeriodStart, nextPeriodEnd, metricUsage.limited, metricUsage.limit, 0L);
-
-    }
 }
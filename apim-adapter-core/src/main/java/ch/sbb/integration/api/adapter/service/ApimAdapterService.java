@@ -7,13 +7,14 @@ import ch.sbb.integration.api.adapter.config.util.check.ConnectionCheck;
 import ch.sbb.integration.api.adapter.config.util.check.PublicKeyCheck;
 import ch.sbb.integration.api.adapter.config.util.check.SyncCheck;
 import ch.sbb.integration.api.adapter.model.AuthRepResponse;
-import ch.sbb.integration.api.adapter.model.Metric;
+import ch.sbb.integration.api.adapter.model.MetricMatchingResult;
 import ch.sbb.integration.api.adapter.model.OAuthToken;
 import ch.sbb.integration.api.adapter.model.Proxy;
 import ch.sbb.integration.api.adapter.model.reporting.Hits;
-import ch.sbb.integration.api.adapter.model.reporting.ResponseSummary;
 import ch.sbb.integration.api.adapter.model.status.CheckResult;
 import ch.sbb.integration.api.adapter.model.status.Status;
+import ch.sbb.integration.api.adapter.model.tokenissuer.TokenIssuer;
+import ch.sbb.integration.api.adapter.model.tokenissuer.TokenIssuer.JwksChange;
 import ch.sbb.integration.api.adapter.model.usage.Client;
 import ch.sbb.integration.api.adapter.service.apiwatch.ApiWatch;
 import ch.sbb.integration.api.adapter.service.cache.*;
@@ -24,9 +25,12 @@ import ch.sbb.integration.api.adapter.service.exception.ThreeScaleAdapterExcepti
 import ch.sbb.integration.api.adapter.service.job.ThreeScaleScheduler;
 import ch.sbb.integration.api.adapter.service.job.ThreeScaleSynchronizerService;
 import ch.sbb.integration.api.adapter.service.monitoring.MonitoringService;
+import ch.sbb.integration.api.adapter.service.repository.HitJournal;
 import ch.sbb.integration.api.adapter.service.repository.OfflineConfigurationCacheRepo;
 import ch.sbb.integration.api.adapter.service.restclient.ThreeScaleAdminCommunicationComponent;
 import ch.sbb.integration.api.adapter.service.restclient.ThreeScaleBackendCommunicationComponent;
+import ch.sbb.integration.api.adapter.service.utils.AuthUtils;
+import ch.sbb.integration.api.adapter.service.utils.CoarseClock;
 import ch.sbb.integration.api.adapter.service.utils.ErrorReason;
 import ch.sbb.integration.api.adapter.service.utils.ErrorResponseHelper;
 import ch.sbb.integration.api.adapter.service.utils.HttpMethod;
@@ -36,7 +40,10 @@ import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeoutException;
 
@@ -45,7 +52,6 @@ import static ch.sbb.integration.api.adapter.service.monitoring.MonitoringServic
 import static ch.sbb.integration.api.adapter.service.utils.ErrorReason.*;
 import static java.util.Collections.emptyList;
 import static java.util.concurrent.TimeUnit.SECONDS;
-import static java.util.stream.Collectors.toList;
 import static javax.ws.rs.core.Response.Status.Family.CLIENT_ERROR;
 import static javax.ws.rs.core.Response.Status.Family.SERVER_ERROR;
 import static javax.ws.rs.core.Response.Status.Family.familyOf;
@@ -64,8 +70,9 @@ public class ApimAdapterService implements Closeable {
     private final ThreeScaleScheduler scheduler;
 
     private final ServiceToMetricsCache serviceToMetricsCache;
+    private final PathMatchCache pathMatchCache;
     private final ClientCache clientCache;
-    private final Cache<Proxy> serviceToProxyCache;
+    private final ServiceToProxyCache serviceToProxyCache;
     private final TokenToParsedTokenCache tokenToParsedTokenCache;
 
     private final ApimAdapterConfig apimAdapterConfig;
@@ -82,6 +89,7 @@ public class ApimAdapterService implements Closeable {
     private final Hits hits;
 
     private final ConfigurationLoader configurationLoader;
+    private final CoarseClock.Ticking coarseClock;
 
     public ApimAdapterService(
             ApimAdapterConfig adapterConfig,
@@ -103,6 +111,7 @@ public class ApimAdapterService implements Closeable {
         this.emergencyModeState = emergencyModeState;
 
         this.errorResponseHelper = errorResponseHelper;
+        this.coarseClock = CoarseClock.start();
 
         // ---------------------------
         // initialize http clients
@@ -117,11 +126,13 @@ public class ApimAdapterService implements Closeable {
             // initialize caches
             // ---------------------------
             serviceToMetricsCache = new ServiceToMetricsCache(adapterConfig, configurationLoader);
+            pathMatchCache = new PathMatchCache(adapterConfig, () -> serviceToMetricsCache.getMappingRuleIndex(adapterConfig.getAdapterServiceId()));
             serviceToProxyCache = new ServiceToProxyCache(adapterConfig, configurationLoader);
             tokenToParsedTokenCache = new TokenToParsedTokenCache(adapterConfig, restConfig, offlineConfigurationCacheRepo);
             clientCache = new ClientCache(serviceToMetricsCache::get, adapterConfig, configurationLoader);
 
             monitoringService.addCache("serviceToMetrics", serviceToMetricsCache);
+            monitoringService.addCache("pathToMetricMatch", pathMatchCache);
             monitoringService.addCache("serviceToProxy", serviceToProxyCache);
             monitoringService.addCache("tokenToClientId", tokenToParsedTokenCache);
             monitoringService.addCache("clientIdToUsage", clientCache);
@@ -138,7 +149,10 @@ public class ApimAdapterService implements Closeable {
                     configurationLoader,
                     threeScaleBackendCommunicationComponent,
                     emergencyModeState,
-                    hits);
+                    hits,
+                    adapterConfig.getSyncParallelism(),
+                    adapterConfig.getSyncMaxInFlight(),
+                    new HitJournal(adapterConfig.getCacheLocation()));
             scheduler = new ThreeScaleScheduler(threeScaleSynchronizer);
             scheduler.scheduleSynchronizationOf3ScaleStats(adapterConfig.getAdapterSyncRateInSeconds());
             monitoringService.initializeSyncCollector(scheduler, emergencyModeState);
@@ -146,6 +160,7 @@ public class ApimAdapterService implements Closeable {
         } else {
             apiWatch = null;
             serviceToMetricsCache = null;
+            pathMatchCache = null;
             clientCache = null;
             serviceToProxyCache = null;
             tokenToParsedTokenCache = null;
@@ -170,11 +185,57 @@ public class ApimAdapterService implements Closeable {
                 LOG.error(APIM_3017.pattern(), e);
             }
         }
+        if (clientCache != null) {
+            clientCache.close();
+        }
+        if (tokenToParsedTokenCache != null) {
+            tokenToParsedTokenCache.close();
+        }
         try {
             monitoringService.close();
         } catch (Exception e) {
             LOG.warn(APIM_2032.pattern(), e);
         }
+        coarseClock.close();
+    }
+
+    /**
+     * Loads the token issuers, the metrics with the mapping rules and the proxy settings of the service in parallel,
+     * so the first requests do not have to wait for them
+     *
+     * @return completes when all of them are loaded
+     */
+    public CompletableFuture<Void> warmUp(Executor executor) {
+        if (!apimAdapterConfig.isApimFilterEnabled()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        final String serviceId = apimAdapterConfig.getAdapterServiceId();
+        return CompletableFuture.allOf(
+                tokenToParsedTokenCache.warmUp(),
+                serviceToMetricsCache.warmUp(serviceId, executor),
+                serviceToProxyCache.warmUp(serviceId, executor));
+    }
+
+    /**
+     * Takes whatever {@link #warmUp(Executor)} has not loaded yet from the offline cache. The running loads still
+     * replace it once they are finished.
+     */
+    public void warmUpFromOfflineCache() {
+        if (!apimAdapterConfig.isApimFilterEnabled()) {
+            return;
+        }
+        final String serviceId = apimAdapterConfig.getAdapterServiceId();
+        tokenToParsedTokenCache.warmUpFromOfflineCache();
+        try {
+            serviceToMetricsCache.warmUpFromOfflineCache(serviceId);
+        } catch (Exception e) {
+            LOG.warn(APIM_2048.pattern(), serviceId, e.getMessage());
+        }
+        try {
+            serviceToProxyCache.warmUpFromOfflineCache(serviceId);
+        } catch (Exception e) {
+            LOG.warn(APIM_2048.pattern(), serviceId, e.getMessage());
+        }
     }
 
     public Future triggerSynchronization() {
@@ -216,8 +277,65 @@ public class ApimAdapterService implements Closeable {
         if (token == null) {
             return errorResponseHelper.createErrorAuthResponse(null, null, UNAUTHORIZED, path, queryString, method, emptyList());
         }
+        return authRep(sw, parseToken(token), path, queryString, method);
+    }
+
+    /**
+     * @param parsedToken the token of the request as resolved by {@link #parseAuthorizationHeader(String)}, null if
+     *                    the request has no token
+     * @see ApimAdapterService#authRep(String, String, String, HttpMethod) but called with the already parsed token, so
+     * a request pipeline looks up its token only once
+     */
+    public AuthRepResponse authRep(OAuthToken parsedToken, String path, String queryString, HttpMethod method) {
+        StopWatch sw = new StopWatch().start();
+        if (parsedToken == null) {
+            return errorResponseHelper.createErrorAuthResponse(null, null, UNAUTHORIZED, path, queryString, method, emptyList());
+        }
+        return authRep(sw, parsedToken, path, queryString, method);
+    }
+
+    /**
+     * @param executor runs the authRep if something has to be loaded for it, e.g. the worker pool of the server
+     * @see ApimAdapterService#authRep(String, String, String, HttpMethod) but without blocking the caller: completes
+     * on the caller thread if the token, the mapping rules and the plan of the client are cached, otherwise on the
+     * executor once they are loaded
+     */
+    public CompletionStage<AuthRepResponse> authRepAsync(String token, String path, String queryString, HttpMethod method, Executor executor) {
+        if (token == null) {
+            return CompletableFuture.completedFuture(authRep((OAuthToken) null, path, queryString, method));
+        }
+        final OAuthToken cachedToken = tokenToParsedTokenCache.getIfPresent(token, 0, token.length());
+        // a token with an invalid signature may need the JWKS to be reloaded
+        if (cachedToken == null || cachedToken.getTokenState() == OAuthToken.TokenStateEnum.INVALID_SIGNATURE) {
+            return CompletableFuture.supplyAsync(() -> authRep(token, path, queryString, method), executor);
+        }
+        return authRepAsync(cachedToken, path, queryString, method, executor);
+    }
+
+    /**
+     * @param parsedToken the token of the request as resolved by {@link #parseAuthorizationHeader(String)} or
+     *                    {@link #getCachedToken(String)}, null if the request has no token
+     * @see ApimAdapterService#authRepAsync(String, String, String, HttpMethod, Executor)
+     */
+    public CompletionStage<AuthRepResponse> authRepAsync(OAuthToken parsedToken, String path, String queryString, HttpMethod method, Executor executor) {
+        if (isAuthRepWithoutLoading(parsedToken)) {
+            return CompletableFuture.completedFuture(authRep(parsedToken, path, queryString, method));
+        }
+        return CompletableFuture.supplyAsync(() -> authRep(parsedToken, path, queryString, method), executor);
+    }
+
+    private boolean isAuthRepWithoutLoading(OAuthToken parsedToken) {
+        if (!serviceToMetricsCache.isLoaded(apimAdapterConfig.getAdapterServiceId())) {
+            return false;
+        }
+        // only the client of a valid token is admitted
+        return parsedToken == null
+                || !parsedToken.isValid()
+                || parsedToken.getClientId() == null
+                || clientCache.isAdmissibleWithoutLoading(parsedToken.getClientId());
+    }
 
-        final OAuthToken parsedToken = parseToken(token);
+    private AuthRepResponse authRep(StopWatch sw, OAuthToken parsedToken, String path, String queryString, HttpMethod method) {
         if (parsedToken == null || !parsedToken.isValid()) {
             return createErrorAuthResponse(path, queryString, method, parsedToken);
         }
@@ -227,15 +345,57 @@ public class ApimAdapterService implements Closeable {
         return authRepResponse;
     }
 
-    private OAuthToken parseToken(String token) {
-        final OAuthToken parsedToken = tokenToParsedTokenCache.get(token);
+    /**
+     * Resolves the token of the Authorization header value without copying it out of the header, unless it has to
+     * be parsed
+     *
+     * @return null if there is no header
+     */
+    public OAuthToken parseAuthorizationHeader(String httpAuthorizationHeaderValue) {
+        if (httpAuthorizationHeaderValue == null) {
+            return null;
+        }
+        return parseToken(httpAuthorizationHeaderValue, AuthUtils.tokenBeginIndex(httpAuthorizationHeaderValue), AuthUtils.tokenEndIndex(httpAuthorizationHeaderValue));
+    }
+
+    /**
+     * Like {@link #parseAuthorizationHeader(String)} but only takes the token from the cache, so it never waits for a
+     * token issuer. A cached token with an invalid signature is not returned: its key may have been rotated, so the
+     * caller has to resolve it with {@link #parseAuthorizationHeader(String)}, which reloads the JWKS.
+     *
+     * @return null if there is no header, its token is not cached or has an invalid signature
+     */
+    public OAuthToken getCachedToken(String httpAuthorizationHeaderValue) {
+        if (httpAuthorizationHeaderValue == null) {
+            return null;
+        }
+        final OAuthToken cachedToken = tokenToParsedTokenCache.getIfPresent(httpAuthorizationHeaderValue, AuthUtils.tokenBeginIndex(httpAuthorizationHeaderValue), AuthUtils.tokenEndIndex(httpAuthorizationHeaderValue));
+        if (cachedToken == null || cachedToken.getTokenState() == OAuthToken.TokenStateEnum.INVALID_SIGNATURE) {
+            return null;
+        }
+        return cachedToken;
+    }
+
+    /**
+     * @return the parsed token, its JWKS reloaded if its key is unknown, null if there is no token
+     */
+    public OAuthToken parseToken(String token) {
+        if (token == null) {
+            return null;
+        }
+        return parseToken(token, 0, token.length());
+    }
+
+    private OAuthToken parseToken(String s, int beginIndex, int endIndex) {
+        final OAuthToken parsedToken = tokenToParsedTokenCache.get(s, beginIndex, endIndex);
         // in case signature was invalid
         if (parsedToken != null && parsedToken.getTokenState() == OAuthToken.TokenStateEnum.INVALID_SIGNATURE) {
             // try reloading JWKS
-            if (parsedToken.getTokenIssuer() != null && parsedToken.getTokenIssuer().reloadJwks()) {
-                // if reloaded, invalidate cached tokens and re-resolve itö
-                tokenToParsedTokenCache.invalidateCache();
-                return tokenToParsedTokenCache.get(token);
+            final TokenIssuer tokenIssuer = parsedToken.getTokenIssuer();
+            if (tokenIssuer != null
+                    && tokenIssuer.reloadJwks(jwksChange -> tokenToParsedTokenCache.invalidateTokens(tokenIssuer, jwksChange)) != JwksChange.NONE) {
+                // if the keys have changed, the cached token has been invalidated, re-resolve it
+                return tokenToParsedTokenCache.get(s, beginIndex, endIndex);
             }
         }
         return parsedToken;
@@ -250,20 +410,22 @@ public class ApimAdapterService implements Closeable {
             return errorResponseHelper.createErrorAuthResponse(realm, clientId, BAD_REQUEST, path, queryString, method, emptyList());
         }
 
-        final MetricMatchingResult metricMatchingResult = matchMetric(path, method, queryString);
-
         if (clientId == null || clientId.isEmpty()) {
             LOG.warn(APIM_2034.pattern());
-            return errorResponseHelper.createErrorAuthResponse(realm, clientId, UNAUTHORIZED, path, queryString, method, metricMatchingResult.getMetricSystemNames());
+            // hits are only reported for a client, the metrics are not needed
+            return errorResponseHelper.createErrorAuthResponse(realm, clientId, UNAUTHORIZED, path, queryString, method, emptyList());
         }
 
-        final Client client = clientCache.get(clientId);
+        final MetricMatchingResult metricMatchingResult = matchMetric(path, method, queryString);
 
-        if (!client.isAppWithPermission()) {
+        // null while the plan of a new client is loading with the async client admission
+        final Client client = clientCache.getForAdmission(clientId);
+
+        if (client != null && !client.isAppWithPermission()) {
             return errorResponseHelper.createErrorAuthResponse(realm, clientId, CLIENT_ID_HAS_NO_PERMISSION, path, queryString, method, metricMatchingResult.getMetricSystemNames());
         }
 
-        if (metricMatchingResult.getMatchingPathMetrics().isEmpty()) {
+        if (!metricMatchingResult.isPathMatching()) {
             return errorResponseHelper.createErrorAuthResponse(realm, clientId, PATH_NOT_FOUND, path, queryString, method, metricMatchingResult.getMetricSystemNames());
         }
 
@@ -271,8 +433,11 @@ public class ApimAdapterService implements Closeable {
             return errorResponseHelper.createErrorAuthResponse(realm, clientId, METHOD_NOT_FOUND, path, queryString, method, metricMatchingResult.getMetricSystemNames());
         }
 
-        if (!incrementUsages(client, metricMatchingResult.getMetricSystemNames())) {
-            return errorResponseHelper.createErrorAuthResponse(realm, clientId, LIMIT_EXCEEDED, path, queryString, method, metricMatchingResult.getMetricSystemNames());
+        final ErrorReason rejection = client != null
+                ? admit(client, metricMatchingResult.getMetricSystemNames())
+                : admitProvisionally(clientId, metricMatchingResult.getMetricSystemNames());
+        if (rejection != null) {
+            return errorResponseHelper.createErrorAuthResponse(realm, clientId, rejection, path, queryString, method, metricMatchingResult.getMetricSystemNames());
         }
 
         // return true, if at least one Metric matches the path & method and ALL of them returned an accessAllowed and the clientId is valid:
@@ -283,21 +448,17 @@ public class ApimAdapterService implements Closeable {
         if (parsedToken == null) {
             LOG.warn(APIM_2035.pattern(), TOKEN_VALIDATION_FAILED);
         }
-        final MetricMatchingResult metricMatchingResult = matchMetric(path, method, queryString);
         final ErrorReason errorReason = parsedToken == null ? TOKEN_VALIDATION_FAILED : EXPIRED_OR_INVALID;
-        return errorResponseHelper.createErrorAuthResponse(parsedToken, errorReason, path, queryString, method, metricMatchingResult.getMetricSystemNames());
+        // hits are only reported for a client, the metrics are not needed for a token without one
+        final List<String> metricSysNames = parsedToken == null || parsedToken.getClientId() == null
+                ? emptyList()
+                : matchMetric(path, method, queryString).getMetricSystemNames();
+        return errorResponseHelper.createErrorAuthResponse(parsedToken, errorReason, path, queryString, method, metricSysNames);
     }
 
 
     private MetricMatchingResult matchMetric(String path, HttpMethod method, String queryString) {
-        final String pathToValidate = buildPath(path, queryString);
-        final List<Metric> matchingPathMetrics = findMatchingPaths(pathToValidate);
-        final List<Metric> matchingPathAndMethod = findMatchingPathAndMethod(pathToValidate, method, matchingPathMetrics);
-        final List<String> metricSysNames = matchingPathAndMethod.stream()
-                .map(Metric::getSystemName)
-                .distinct()
-                .collect(toList());
-        return new MetricMatchingResult(pathToValidate, matchingPathMetrics, matchingPathAndMethod, metricSysNames);
+        return pathMatchCache.match(buildPath(path, queryString), method);
     }
 
     private String buildPath(String path, String queryString) {
@@ -326,6 +487,33 @@ public class ApimAdapterService implements Closeable {
         return adapterCheck;
     }
 
+    /**
+     * @return the reason the request of the client is rejected, null if it is admitted
+     */
+    private ErrorReason admit(Client client, List<String> metricSysNames) {
+        if (!client.isAppWithPermission()) {
+            return CLIENT_ID_HAS_NO_PERMISSION;
+        }
+        return incrementUsages(client, metricSysNames) ? null : LIMIT_EXCEEDED;
+    }
+
+    /**
+     * @see #admit(Client, List) for a client whose plan is still loading
+     */
+    private ErrorReason admitProvisionally(String clientId, List<String> metricSysNames) {
+        switch (clientCache.admitProvisionally(clientId, metricSysNames)) {
+            case ADMITTED:
+                return null;
+            case LIMIT_EXCEEDED:
+                return LIMIT_EXCEEDED;
+            case NO_PERMISSION:
+                return CLIENT_ID_HAS_NO_PERMISSION;
+            default:
+                // no provisional requests left or the load failed: wait for the plan like without the async admission
+                return admit(clientCache.get(clientId), metricSysNames);
+        }
+    }
+
     /**
      * @return True if all metrics were successfully hit, false if at least one failed.
      */
@@ -349,21 +537,6 @@ public class ApimAdapterService implements Closeable {
         return client.incrementUsage(metricSysName);
     }
 
-    private List<Metric> findMatchingPaths(String path) {
-        List<Metric> metrics = serviceToMetricsCache.get(apimAdapterConfig.getAdapterServiceId());
-        return metrics
-                .stream()
-                .filter(metric -> metric.matchesAnyPattern(path))
-                .collect(toList());
-    }
-
-    private List<Metric> findMatchingPathAndMethod(String path, HttpMethod method, List<Metric> filteredMetrics) {
-        return filteredMetrics
-                .stream()
-                .filter(metric -> metric.matchesAnyPathAndMethod(path, method))
-                .collect(toList());
-    }
-
     public EmergencyModeState getEmergencyModeState() {
         return emergencyModeState;
     }
@@ -380,9 +553,8 @@ public class ApimAdapterService implements Closeable {
 
         if (authRepResponse.getClientId() != null) {
             for (String metricSysName : authRepResponse.getMatchingMetricSysNames()) {
-                ResponseSummary responseSummary = new ResponseSummary(authRepResponse.getClientId(), httpStatus, metricSysName);
                 if (isUnique(authRepResponse, metricSysName)) {
-                    hits.addUnreportHits(responseSummary, 1L);
+                    hits.addHit(authRepResponse.getClientId(), metricSysName, httpStatus);
                 }
             }
         } else {
@@ -408,34 +580,4 @@ public class ApimAdapterService implements Closeable {
     protected ConfigurationLoader getConfigurationLoader() {
         return configurationLoader;
     }
-
-    private static class MetricMatchingResult {
-        private final String pathToValidate;
-        private final List<Metric> matchingPathMetrics;
-        private final List<Metric> matchingPathAndMethodMetrics;
-        private final List<String> matchingPathAndMethodSysNames;
-
-        private MetricMatchingResult(String pathToValidate, List<Metric> matchingPathMetrics, List<Metric> matchingPathAndMethodMetrics, List<String> matchingPathAndMethodSysNames) {
-            this.pathToValidate = pathToValidate;
-            this.matchingPathMetrics = matchingPathMetrics;
-            this.matchingPathAndMethodMetrics = matchingPathAndMethodMetrics;
-            this.matchingPathAndMethodSysNames = matchingPathAndMethodSysNames;
-        }
-
-        public String getPathToValidate() {
-            return pathToValidate;
-        }
-
-        public List<Metric> getMatchingPathMetrics() {
-            return matchingPathMetrics;
-        }
-
-        public List<Metric> getMatchingPathAndMethodMetrics() {
-            return matchingPathAndMethodMetrics;
-        }
-
-        public List<String> getMetricSystemNames() {
-            return matchingPathAndMethodSysNames;
-        }
-    }
 }
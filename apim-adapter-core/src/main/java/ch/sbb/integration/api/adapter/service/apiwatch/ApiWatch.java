@@ -53,6 +53,10 @@ public class ApiWatch {
         return isApiWatchRequest(tokenToParsedTokenCache.get(token), httpMethod);
     }
 
+    public boolean isApiWatchRequest(OAuthToken token, HttpMethod httpMethod) {
+        return isApiWatchRequest(token, httpMethod != null ? httpMethod.name() : null);
+    }
+
     public boolean isApiWatchRequest(OAuthToken token, String httpMethod) {
         boolean apiWatchRequest = token != null && token.isValid() && API_WATCH_CLIENT_ID.equals(token.getClientId()) && "GET".equalsIgnoreCase(httpMethod);
         LOG.debug("ApiWatchRequest={}", apiWatchRequest);
@@ -7,24 +7,51 @@ import ch.sbb.integration.api.adapter.service.configuration.ConfigurationLoader;
 import ch.sbb.integration.api.adapter.service.exception.ThreeScaleAdapterException;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.benmanes.caffeine.cache.LoadingCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
+import static ch.sbb.integration.api.adapter.config.ReasonCode.APIM_1039;
+import static ch.sbb.integration.api.adapter.config.ReasonCode.APIM_2049;
 import static ch.sbb.integration.api.adapter.config.ReasonCode.APIM_3005;
 import static ch.sbb.integration.api.adapter.model.usage.MetricUsage.unlimitedMetric;
 
 /**
  * Created by u217269 on 22.02.2018.
+ * <p>
+ * With the async client admission the plan of a new client is never loaded on the request thread. The request waits
+ * at most the provisional wait for it, if the plan is still loading then, the first provisional client requests are
+ * admitted and counted. Their usage is added to the client once its plan is loaded. Further requests, and all requests
+ * of a client whose plan could not be loaded, wait for the plan as without the async client admission.
  */
 public class ClientCache implements Cache<Client> {
 
+    private static final Logger LOG = LoggerFactory.getLogger(ClientCache.class);
     private static final int MAXIMUM_CACHE_SIZE = 10_000;
+    private static final int CLIENT_LOADING_THREADS = 4;
     private final ConfigurationLoader configurationLoader;
     private final String adapterServiceId;
     private final Function<String, List<Metric>> metricsService;
 
+    private final boolean asyncClientAdmission;
+    private final int provisionalClientRequests;
+    private final long provisionalClientWaitMillis;
+    private final ConcurrentMap<String, PendingClient> pendingClients = new ConcurrentHashMap<>();
+    private final ExecutorService clientLoader;
+
     private LoadingCache<String, Client> clientCache;
 
     public ClientCache(
@@ -35,6 +62,14 @@ public class ClientCache implements Cache<Client> {
         this.configurationLoader = configurationLoader;
 
         adapterServiceId = config.getAdapterServiceId();
+        asyncClientAdmission = config.isAsyncClientAdmission();
+        provisionalClientRequests = config.getProvisionalClientRequests();
+        provisionalClientWaitMillis = config.getProvisionalClientWaitMillis();
+        clientLoader = asyncClientAdmission ? Executors.newFixedThreadPool(CLIENT_LOADING_THREADS, runnable -> {
+            final Thread thread = new Thread(runnable, "apim-client-loader");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
         initCache(config);
     }
 
@@ -65,6 +100,11 @@ public class ClientCache implements Cache<Client> {
         try {
             Client client = configurationLoader.loadPlanConfig(adapterServiceId, clientId, true);
             updateToUnlimitedUsageWhenNoUsageIsDefined(client,adapterServiceId, metricsService);
+            final PendingClient pendingClient = pendingClients.get(clientId);
+            if (pendingClient != null) {
+                // before the client is visible in the cache, so no admitted request is missed
+                LOG.info(APIM_1039.pattern(), clientId, pendingClient.reconcile(client));
+            }
             return client;
         } catch (Exception e) {
             throw new ThreeScaleAdapterException(APIM_3005.format(adapterServiceId, clientId), e);
@@ -88,6 +128,127 @@ public class ClientCache implements Cache<Client> {
         return clientCache.get(clientId);
     }
 
+    /**
+     * @return the cached client, null if its plan is not loaded, the plan is never loaded
+     */
+    public Client getIfPresent(String clientId) {
+        return clientCache.getIfPresent(clientId);
+    }
+
+    /**
+     * Same as {@link #get(String)} without the async client admission. With it, the plan of an unknown client is
+     * loaded in the background and waited for at most the provisional wait.
+     *
+     * @return null if the plan of the client is still loading, the request is then admitted by
+     * {@link #admitProvisionally(String, List)}
+     */
+    public Client getForAdmission(String clientId) {
+        if (!asyncClientAdmission) {
+            return clientCache.get(clientId);
+        }
+        final Client client = clientCache.getIfPresent(clientId);
+        if (client != null) {
+            return client;
+        }
+
+        final CompletableFuture<Client> plan = pendingClientOf(clientId).plan;
+        if (provisionalClientWaitMillis > 0) {
+            try {
+                return plan.get(provisionalClientWaitMillis, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException | ExecutionException e) {
+                return null;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+        return plan.isDone() && !plan.isCompletedExceptionally() ? plan.join() : null;
+    }
+
+    /**
+     * @return true if neither {@link #getForAdmission(String)} nor {@link #admitProvisionally(String, List)} wait for
+     * the plan of the client
+     */
+    public boolean isAdmissibleWithoutLoading(String clientId) {
+        if (clientCache.getIfPresent(clientId) != null) {
+            return true;
+        }
+        if (!asyncClientAdmission || provisionalClientWaitMillis > 0) {
+            return false;
+        }
+        final PendingClient pendingClient = pendingClients.get(clientId);
+        return pendingClient == null || pendingClient.hasProvisionalRequests();
+    }
+
+    /**
+     * Counts a request of a client whose plan is still loading against the metrics. Once the plan is loaded, it
+     * counts against the plan as usual.
+     *
+     * @return {@link Admission#LOAD_REQUIRED} if the client has used up its provisional requests or its plan could not
+     * be loaded, the request then has to wait for the plan with {@link #get(String)}
+     */
+    public Admission admitProvisionally(String clientId, List<String> metricSysNames) {
+        final PendingClient pendingClient = pendingClients.get(clientId);
+        if (pendingClient != null) {
+            return pendingClient.admit(metricSysNames);
+        }
+        // the plan has been loaded in the meantime, or the load failed
+        final Client client = clientCache.getIfPresent(clientId);
+        return client != null ? admit(client, metricSysNames) : Admission.LOAD_REQUIRED;
+    }
+
+    private PendingClient pendingClientOf(String clientId) {
+        final PendingClient pendingClient = pendingClients.get(clientId);
+        if (pendingClient != null) {
+            return pendingClient;
+        }
+        final PendingClient newPendingClient = new PendingClient();
+        final PendingClient otherPendingClient = pendingClients.putIfAbsent(clientId, newPendingClient);
+        if (otherPendingClient != null) {
+            return otherPendingClient;
+        }
+        // only once it is in the map, so the load reconciles it and removes it again
+        loadInBackground(clientId, newPendingClient);
+        return newPendingClient;
+    }
+
+    private void loadInBackground(String clientId, PendingClient pendingClient) {
+        clientLoader.execute(() -> {
+            try {
+                pendingClient.plan.complete(clientCache.get(clientId));
+            } catch (Exception e) {
+                LOG.warn(APIM_2049.pattern(), clientId, pendingClient.fail(), e);
+                pendingClient.plan.completeExceptionally(e);
+            } finally {
+                pendingClients.remove(clientId, pendingClient);
+            }
+        });
+    }
+
+    private static Admission admit(Client client, List<String> metricSysNames) {
+        if (!client.isAppWithPermission()) {
+            return Admission.NO_PERMISSION;
+        }
+        return incrementUsages(client, metricSysNames) ? Admission.ADMITTED : Admission.LIMIT_EXCEEDED;
+    }
+
+    private static boolean incrementUsages(Client client, List<String> metricSysNames) {
+        boolean allMetricsSuccesfulUsageIncremented = true;
+        for (String metricSysName : metricSysNames) {
+            if (!client.incrementUsage(metricSysName)) {
+                //We have to hit all metrics, like the admission of a loaded client does.
+                allMetricsSuccesfulUsageIncremented = false;
+            }
+        }
+        return allMetricsSuccesfulUsageIncremented;
+    }
+
+    public void close() {
+        if (clientLoader != null) {
+            clientLoader.shutdownNow();
+        }
+    }
+
     @Override
     public long size() {
         return clientCache.estimatedSize();
@@ -97,4 +258,67 @@ public class ClientCache implements Cache<Client> {
     public com.github.benmanes.caffeine.cache.Cache<?, ?> get() {
         return clientCache;
     }
+
+    /**
+     * Outcome of {@link #admitProvisionally(String, List)}
+     */
+    public enum Admission {
+        ADMITTED,
+        LIMIT_EXCEEDED,
+        NO_PERMISSION,
+        LOAD_REQUIRED
+    }
+
+    /**
+     * A client whose plan is loading, with the requests admitted in the meantime
+     */
+    private final class PendingClient {
+        private final CompletableFuture<Client> plan = new CompletableFuture<>();
+        private final Map<String, Long> provisionalHits = new HashMap<>();
+        private int admittedRequests;
+        private Client client;
+        private boolean failed;
+
+        private synchronized Admission admit(List<String> metricSysNames) {
+            if (client != null) {
+                return ClientCache.admit(client, metricSysNames);
+            }
+            if (!hasProvisionalRequests()) {
+                return Admission.LOAD_REQUIRED;
+            }
+            admittedRequests++;
+            for (String metricSysName : metricSysNames) {
+                provisionalHits.merge(metricSysName, 1L, Long::sum);
+            }
+            return Admission.ADMITTED;
+        }
+
+        private synchronized boolean hasProvisionalRequests() {
+            return client != null || (!failed && admittedRequests < provisionalClientRequests);
+        }
+
+        /**
+         * Adds the usage of the admitted requests to the loaded client
+         *
+         * @return the number of admitted requests
+         */
+        private synchronized int reconcile(Client loadedClient) {
+            for (Map.Entry<String, Long> hits : provisionalHits.entrySet()) {
+                for (long i = 0; i < hits.getValue(); i++) {
+                    loadedClient.incrementUsage(hits.getKey());
+                }
+            }
+            provisionalHits.clear();
+            client = loadedClient;
+            return admittedRequests;
+        }
+
+        /**
+         * @return the number of admitted requests, which are not counted
+         */
+        private synchronized int fail() {
+            failed = true;
+            return admittedRequests;
+        }
+    }
 }
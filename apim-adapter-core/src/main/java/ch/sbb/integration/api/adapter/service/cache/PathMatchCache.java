@@ -0,0 +1,97 @@
+package ch.sbb.integration.api.adapter.service.cache;
+
+import ch.sbb.integration.api.adapter.config.ApimAdapterConfig;
+import ch.sbb.integration.api.adapter.model.MappingRuleIndex;
+import ch.sbb.integration.api.adapter.model.MetricMatchingResult;
+import ch.sbb.integration.api.adapter.service.utils.HttpMethod;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.util.function.Supplier;
+
+/**
+ * Memoizes the result of the metric matching per http method and path (including the query string).
+ * <p>
+ * The matching only depends on the path, the method and the current {@link MappingRuleIndex}. Each cached result
+ * remembers the index it was computed with, so as soon as {@link ServiceToMetricsCache} provides a new index all
+ * cached results are dropped and never served again.
+ * <p>
+ * To protect the heap against an explosion of distinct paths (e.g. ids in the path or random query parameters), the
+ * cache is bounded in size and very long paths are matched without being cached.
+ */
+public class PathMatchCache implements Cache<MetricMatchingResult> {
+
+    private static final int MAXIMUM_CACHE_SIZE = 10_000;
+    static final int MAXIMUM_CACHED_PATH_LENGTH = 256;
+
+    private final Supplier<MappingRuleIndex> mappingRuleIndexSupplier;
+    private final com.github.benmanes.caffeine.cache.Cache<String, CachedMatch> pathToMatch;
+    private volatile MappingRuleIndex currentIndex;
+
+    public PathMatchCache(ApimAdapterConfig config, Supplier<MappingRuleIndex> mappingRuleIndexSupplier) {
+        this.mappingRuleIndexSupplier = mappingRuleIndexSupplier;
+
+        Caffeine<Object, Object> builder = Caffeine.newBuilder();
+        if (config.isMonitoringNotDisabledOrMinimal()) {
+            builder.recordStats();
+        }
+        this.pathToMatch = builder
+                .maximumSize(MAXIMUM_CACHE_SIZE)
+                .build();
+    }
+
+    public MetricMatchingResult match(String pathToValidate, HttpMethod method) {
+        final MappingRuleIndex index = mappingRuleIndexSupplier.get();
+        if (index != currentIndex) {
+            // the metrics have been reloaded, the results of the previous index are of no use anymore
+            currentIndex = index;
+            pathToMatch.invalidateAll();
+        }
+
+        if (method == null || pathToValidate.length() > MAXIMUM_CACHED_PATH_LENGTH) {
+            // unknown methods (e.g. an unknown verb) do not get a key, they match no metric anyway
+            return index.match(pathToValidate, method);
+        }
+
+        final String key = key(method, pathToValidate);
+        CachedMatch cachedMatch = pathToMatch.getIfPresent(key);
+        if (cachedMatch == null || cachedMatch.index != index) {
+            cachedMatch = new CachedMatch(index, index.match(pathToValidate, method));
+            pathToMatch.put(key, cachedMatch);
+        }
+        return cachedMatch.result;
+    }
+
+    /**
+     * @param key http method and path separated by a blank, e.g. "GET /v1/locations?name=foo"
+     * @return the cached result or null if there is none for the current mapping rules
+     */
+    @Override
+    public MetricMatchingResult get(String key) {
+        final CachedMatch cachedMatch = pathToMatch.getIfPresent(key);
+        return cachedMatch != null && cachedMatch.index == currentIndex ? cachedMatch.result : null;
+    }
+
+    @Override
+    public long size() {
+        return pathToMatch.estimatedSize();
+    }
+
+    @Override
+    public com.github.benmanes.caffeine.cache.Cache<?, ?> get() {
+        return pathToMatch;
+    }
+
+    static String key(HttpMethod method, String pathToValidate) {
+        return method.name() + ' ' + pathToValidate;
+    }
+
+    private static final class CachedMatch {
+        private final MappingRuleIndex index;
+        private final MetricMatchingResult result;
+
+        private CachedMatch(MappingRuleIndex index, MetricMatchingResult result) {
+            this.index = index;
+            this.result = result;
+        }
+    }
+}
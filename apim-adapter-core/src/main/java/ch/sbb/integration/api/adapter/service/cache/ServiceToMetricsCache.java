@@ -1,6 +1,7 @@
 package ch.sbb.integration.api.adapter.service.cache;
 
 import ch.sbb.integration.api.adapter.config.ApimAdapterConfig;
+import ch.sbb.integration.api.adapter.model.MappingRuleIndex;
 import ch.sbb.integration.api.adapter.model.Metric;
 import ch.sbb.integration.api.adapter.service.configuration.ConfigurationLoader;
 import ch.sbb.integration.api.adapter.service.converter.MetricConverter;
@@ -11,6 +12,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 
 import static ch.sbb.integration.api.adapter.model.ConfigType.METRIC;
@@ -23,7 +26,7 @@ public class ServiceToMetricsCache implements Cache<List<Metric>> {
     private static final Logger LOG = LoggerFactory.getLogger(ServiceToMetricsCache.class);
     private static final int MAXIMUM_CACHE_SIZE = 10_000;
 
-    private LoadingCache<String, List<Metric>> serviceToMetrics;
+    private LoadingCache<String, MappingRuleIndex> serviceToMetrics;
 
     private final MetricConverter metricConverter;
     private final ConfigurationLoader configurationLoader;
@@ -47,19 +50,57 @@ public class ServiceToMetricsCache implements Cache<List<Metric>> {
                 .build(new KeepCacheReloader<>(this::loadMetrics, METRIC));
     }
 
-    private List<Metric> loadMetrics(String serviceId, boolean loadFromOfflineCache) {
+    private MappingRuleIndex loadMetrics(String serviceId, boolean loadFromOfflineCache) {
         JsonNode mappingRulesNode = configurationLoader.loadMappingRulesConfig(serviceId, loadFromOfflineCache);
         JsonNode metricsNode = configurationLoader.loadMetricConfig(serviceId, loadFromOfflineCache);
+        return toMappingRuleIndex(metricsNode, mappingRulesNode);
+    }
+
+    private MappingRuleIndex toMappingRuleIndex(JsonNode metricsNode, JsonNode mappingRulesNode) {
         List<Metric> metrics = metricConverter.convert(metricsNode, mappingRulesNode);
         LOG.debug("loaded the following metrics: '{}'", metrics);
-        return metrics;
+        return MappingRuleIndex.of(metrics);
+    }
+
+    /**
+     * Loads the mapping rules and the metrics of the service in parallel and puts them into the cache
+     */
+    public CompletableFuture<Void> warmUp(String serviceId, Executor executor) {
+        final CompletableFuture<JsonNode> mappingRulesNode = CompletableFuture.supplyAsync(() -> configurationLoader.loadMappingRulesConfig(serviceId, true), executor);
+        final CompletableFuture<JsonNode> metricsNode = CompletableFuture.supplyAsync(() -> configurationLoader.loadMetricConfig(serviceId, true), executor);
+        return mappingRulesNode.thenAcceptBoth(metricsNode, (mappingRules, metrics) -> serviceToMetrics.put(serviceId, toMappingRuleIndex(metrics, mappingRules)));
+    }
+
+    /**
+     * Puts the mapping rules and the metrics of the offline cache into the cache, unless they are loaded already
+     */
+    public void warmUpFromOfflineCache(String serviceId) {
+        if (serviceToMetrics.getIfPresent(serviceId) == null) {
+            final MappingRuleIndex mappingRuleIndex = toMappingRuleIndex(configurationLoader.loadMetricConfigFromOfflineCache(serviceId),
+                    configurationLoader.loadMappingRulesConfigFromOfflineCache(serviceId));
+            serviceToMetrics.asMap().putIfAbsent(serviceId, mappingRuleIndex);
+        }
     }
 
     @Override
     public List<Metric> get(String serviceId) {
+        return serviceToMetrics.get(serviceId).getMetrics();
+    }
+
+    /**
+     * @return the compiled mapping rules of the service. A new index is built whenever the metrics are (re)loaded.
+     */
+    public MappingRuleIndex getMappingRuleIndex(String serviceId) {
         return serviceToMetrics.get(serviceId);
     }
 
+    /**
+     * @return true if the mapping rules of the service can be matched without loading them
+     */
+    public boolean isLoaded(String serviceId) {
+        return serviceToMetrics.getIfPresent(serviceId) != null;
+    }
+
     @Override
     public long size() {
         return serviceToMetrics.estimatedSize();
@@ -7,6 +7,8 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.benmanes.caffeine.cache.LoadingCache;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 
 import static ch.sbb.integration.api.adapter.model.ConfigType.PROXY;
@@ -42,7 +44,10 @@ public class ServiceToProxyCache implements Cache<Proxy> {
     }
 
     private Proxy loadProxySettings(String serviceId, boolean loadFromOfflineCache) {
-        JsonNode jsonTree = configurationLoader.loadProxyConfig(serviceId, loadFromOfflineCache);
+        return toProxy(configurationLoader.loadProxyConfig(serviceId, loadFromOfflineCache));
+    }
+
+    private static Proxy toProxy(JsonNode jsonTree) {
         String targetUrl = jsonTree
                 .get("proxy_config")
                 .get("content")
@@ -51,6 +56,22 @@ public class ServiceToProxyCache implements Cache<Proxy> {
         return new Proxy(targetUrl);
     }
 
+    /**
+     * Loads the proxy settings of the service and puts them into the cache
+     */
+    public CompletableFuture<Void> warmUp(String serviceId, Executor executor) {
+        return CompletableFuture.runAsync(() -> serviceToProxy.put(serviceId, loadProxySettings(serviceId, true)), executor);
+    }
+
+    /**
+     * Puts the proxy settings of the offline cache into the cache, unless they are loaded already
+     */
+    public void warmUpFromOfflineCache(String serviceId) {
+        if (serviceToProxy.getIfPresent(serviceId) == null) {
+            serviceToProxy.asMap().putIfAbsent(serviceId, toProxy(configurationLoader.loadProxyConfigFromOfflineCache(serviceId)));
+        }
+    }
+
     @Override
     public Proxy get(String serviceId) {
         return serviceToProxy.get(serviceId);
@@ -5,34 +5,73 @@ import ch.sbb.integration.api.adapter.config.ReasonCode;
 import ch.sbb.integration.api.adapter.config.RestConfig;
 import ch.sbb.integration.api.adapter.model.OAuthToken;
 import ch.sbb.integration.api.adapter.model.OAuthToken.TokenStateEnum;
+import ch.sbb.integration.api.adapter.model.TokenDigest;
 import ch.sbb.integration.api.adapter.model.tokenissuer.TokenIssuer;
+import ch.sbb.integration.api.adapter.model.tokenissuer.TokenIssuer.JwksChange;
 import ch.sbb.integration.api.adapter.model.tokenissuer.TokenIssuerStore;
 import ch.sbb.integration.api.adapter.service.repository.OfflineConfigurationCacheRepo;
+import ch.sbb.integration.api.adapter.service.utils.LogThrottle;
 import com.auth0.jwt.JWT;
 import com.auth0.jwt.exceptions.JWTVerificationException;
 import com.auth0.jwt.exceptions.SignatureVerificationException;
 import com.auth0.jwt.interfaces.Claim;
 import com.auth0.jwt.interfaces.DecodedJWT;
 import com.github.benmanes.caffeine.cache.Caffeine;
-import com.github.benmanes.caffeine.cache.LoadingCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
 
+/**
+ * Caches the parsed tokens by the digest of the token, so neither the key nor the cached {@link OAuthToken} keeps the
+ * token itself. The size of the cache is limited by the estimated memory of its entries.
+ * <p>
+ * Rejected tokens are kept shortly in a separate small cache, so a flood of malformed or foreign tokens neither
+ * costs much nor evicts the valid tokens. Malformed tokens are rejected without decoding them.
+ */
 public class TokenToParsedTokenCache implements Cache<OAuthToken> {
 
     private static final Logger LOG = LoggerFactory.getLogger(TokenToParsedTokenCache.class);
-    private static final int MAXIMUM_CACHE_SIZE = 10_000;
     private static final int MINIMAL_TOKEN_LIFETIME = 30;
+    /**
+     * Estimated bytes of an entry without its strings: cache node, digest and parsed token
+     */
+    private static final int ENTRY_OVERHEAD = 160;
+    private static final int MAXIMUM_REJECTED_CACHE_SIZE = 1_000;
+    private static final int REJECTED_TOKEN_LIFETIME_SECONDS = 60;
+    /**
+     * The encoded JOSE header, which contains the algorithm, the type and the key id
+     */
+    private static final int MAXIMUM_HEADER_LENGTH = 4 * 1024;
+    private static final int REJECTED_TOKEN_LOG_INTERVAL_SECONDS = 10;
 
-    private LoadingCache<String, OAuthToken> tokenToClientId;
+    private com.github.benmanes.caffeine.cache.Cache<TokenDigest, OAuthToken> tokenToClientId;
+    private com.github.benmanes.caffeine.cache.Cache<TokenDigest, OAuthToken> rejectedTokens;
+    private final LogThrottle invalidSignatureLog = new LogThrottle(REJECTED_TOKEN_LOG_INTERVAL_SECONDS, TimeUnit.SECONDS);
     private final TokenIssuerStore tokenIssuerStore;
 
     public TokenToParsedTokenCache(ApimAdapterConfig config, RestConfig restConfig, OfflineConfigurationCacheRepo offlineConfigurationCacheRepo) {
-        this.tokenIssuerStore = TokenIssuerStore.init(config, restConfig, offlineConfigurationCacheRepo);
+        this.tokenIssuerStore = TokenIssuerStore.initAsync(config, restConfig, offlineConfigurationCacheRepo);
         initCache(config);
+        tokenIssuerStore.setJwksChangeListener(this::invalidateTokens);
+    }
+
+    /**
+     * @return completes when the token issuers of the configured patterns are initialized
+     */
+    public CompletableFuture<Void> warmUp() {
+        return tokenIssuerStore.getInitialization();
+    }
+
+    /**
+     * Initializes the token issuers which are not initialized yet from the offline cache
+     */
+    public void warmUpFromOfflineCache() {
+        tokenIssuerStore.initIssuersFromOfflineCache();
     }
 
     @Override
@@ -40,8 +79,51 @@ public class TokenToParsedTokenCache implements Cache<OAuthToken> {
         if (token == null) {
             return null;
         }
+        return get(token, 0, token.length());
+    }
 
-        return tokenToClientId.get(token);
+    /**
+     * Like {@link #get(String)} for the token between the given indexes of the string, e.g. of an Authorization
+     * header. The token is copied out of the string only if it has to be parsed.
+     */
+    public OAuthToken get(String s, int beginIndex, int endIndex) {
+        final TokenDigest tokenDigest = TokenDigest.of(s, beginIndex, endIndex);
+        final OAuthToken rejectedToken = rejectedTokens.getIfPresent(tokenDigest);
+        if (rejectedToken != null) {
+            return rejectedToken;
+        }
+
+        final OAuthToken parsedToken = tokenToClientId.get(tokenDigest, digest -> {
+            final OAuthToken newToken = parseToken(s.substring(beginIndex, endIndex), digest);
+            if (newToken != null && newToken.getTokenState() != TokenStateEnum.VALID) {
+                // not cached with the valid tokens
+                rejectedTokens.put(digest, newToken);
+                return null;
+            }
+            return newToken;
+        });
+        if (parsedToken == null) {
+            return rejectedTokens.getIfPresent(tokenDigest);
+        }
+        if (parsedToken.getTokenState() == TokenStateEnum.EXPIRED) {
+            // the token is of no use anymore once it expired, there is no need to keep it until the cache expires it
+            tokenToClientId.invalidate(tokenDigest);
+        }
+        return parsedToken;
+    }
+
+    /**
+     * Like {@link #get(String, int, int)} without parsing the token, so it never waits for a token issuer
+     *
+     * @return null if the token is not cached
+     */
+    public OAuthToken getIfPresent(String s, int beginIndex, int endIndex) {
+        final TokenDigest tokenDigest = TokenDigest.of(s, beginIndex, endIndex);
+        final OAuthToken rejectedToken = rejectedTokens.getIfPresent(tokenDigest);
+        if (rejectedToken != null) {
+            return rejectedToken;
+        }
+        return tokenToClientId.getIfPresent(tokenDigest);
     }
 
     @Override
@@ -62,16 +144,51 @@ public class TokenToParsedTokenCache implements Cache<OAuthToken> {
         }
 
         tokenToClientId = builder
-                .maximumSize(MAXIMUM_CACHE_SIZE)
+                .maximumWeight(config.getTokenCacheMaxKilobytes() * 1024L)
+                .weigher((TokenDigest tokenDigest, OAuthToken parsedToken) -> weigh(parsedToken))
                 .expireAfterWrite(MINIMAL_TOKEN_LIFETIME, TimeUnit.MINUTES)
-                .build(this::parseToken);
+                .build();
+
+        rejectedTokens = Caffeine.newBuilder()
+                .maximumSize(MAXIMUM_REJECTED_CACHE_SIZE)
+                .expireAfterWrite(REJECTED_TOKEN_LIFETIME_SECONDS, TimeUnit.SECONDS)
+                .build();
+    }
+
+    static int weigh(OAuthToken parsedToken) {
+        return ENTRY_OVERHEAD + 2 * length(parsedToken.getClientId()) + 2 * length(parsedToken.getType());
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
     }
 
     public OAuthToken parseToken(String token) {
+        return parseToken(token, TokenDigest.of(token));
+    }
+
+    /**
+     * @return false if the token is certainly not a JWS: it does not consist of three segments or its header is
+     * too long
+     */
+    static boolean isWellFormed(String token) {
+        final int headerEnd = token.indexOf('.');
+        if (headerEnd <= 0 || headerEnd > MAXIMUM_HEADER_LENGTH) {
+            return false;
+        }
+        final int payloadEnd = token.indexOf('.', headerEnd + 1);
+        return payloadEnd > headerEnd + 1 && token.indexOf('.', payloadEnd + 1) < 0;
+    }
+
+    private OAuthToken parseToken(String token, TokenDigest tokenDigest) {
         TokenIssuer tokenIssuer = null;
         String clientId = null;
         String type = null;
         Long expiration = null;
+        if (!isWellFormed(token)) {
+            LOG.debug("Rejecting malformed Token");
+            return new OAuthToken(TokenStateEnum.INVALID, null, tokenDigest, null, null, null);
+        }
         try {
             final DecodedJWT jwt = JWT.decode(token);
             final String issuer = jwt.getIssuer();
@@ -91,27 +208,64 @@ public class TokenToParsedTokenCache implements Cache<OAuthToken> {
             final Optional<TokenIssuer> optionalTokenIssuer = tokenIssuerStore.resolve(issuer);
             if (optionalTokenIssuer.isPresent()) {
                 tokenIssuer = optionalTokenIssuer.get();
-                tokenIssuer.getVerifier().verify(jwt);
+                tokenIssuer.verify(jwt);
 
-                return new OAuthToken(TokenStateEnum.VALID, tokenIssuer, token, clientId, expiration, type);
+                return new OAuthToken(TokenStateEnum.VALID, tokenIssuer, tokenDigest, clientId, expiration, type);
             } else {
-                return new OAuthToken(TokenStateEnum.UNKNOWN_TOKEN_ISSUER, tokenIssuer, token, clientId, expiration, type);
+                return new OAuthToken(TokenStateEnum.UNKNOWN_TOKEN_ISSUER, tokenIssuer, tokenDigest, clientId, expiration, type);
             }
         } catch (SignatureVerificationException e) {
-            LOG.info(ReasonCode.APIM_1010.pattern());
+            final long suppressedEntries = invalidSignatureLog.acquire();
+            if (suppressedEntries >= 0) {
+                LOG.info(ReasonCode.APIM_1010.pattern(), suppressedEntries);
+            }
             LOG.debug("Exception for failed signature is: ", e);
-            return new OAuthToken(TokenStateEnum.INVALID_SIGNATURE, tokenIssuer, token, clientId, expiration, type);
+            return new OAuthToken(TokenStateEnum.INVALID_SIGNATURE, tokenIssuer, tokenDigest, clientId, expiration, type);
         } catch (JWTVerificationException e) {
             LOG.debug("Unable to parse Token token='{}'", token, e);
-            return new OAuthToken(TokenStateEnum.INVALID, tokenIssuer, token, clientId, expiration, type);
+            return new OAuthToken(TokenStateEnum.INVALID, tokenIssuer, tokenDigest, clientId, expiration, type);
         } catch (Exception e) {
             LOG.error(ReasonCode.APIM_3023.pattern(), e);
             return null;
         }
     }
 
+    /**
+     * Invalidates the tokens of the given token issuer which have to be verified again after its JWKS was reloaded:
+     * the tokens with an invalid signature, as they may be signed by an added key, and if keys were removed all of
+     * its tokens.
+     */
+    public void invalidateTokens(TokenIssuer tokenIssuer, JwksChange jwksChange) {
+        final AtomicInteger invalidated = new AtomicInteger();
+        // the tokens with an invalid signature are in the cache of the rejected tokens
+        invalidateTokens(rejectedTokens, invalidated, parsedToken -> parsedToken.getTokenIssuer() == tokenIssuer
+                && parsedToken.getTokenState() == TokenStateEnum.INVALID_SIGNATURE);
+        if (jwksChange == JwksChange.KEYS_REMOVED) {
+            invalidateTokens(tokenToClientId, invalidated, parsedToken -> parsedToken.getTokenIssuer() == tokenIssuer);
+        }
+        LOG.info(ReasonCode.APIM_1036.pattern(), invalidated.get(), tokenIssuer.getIssuerUrl());
+    }
+
+    private static void invalidateTokens(com.github.benmanes.caffeine.cache.Cache<TokenDigest, OAuthToken> cache, AtomicInteger invalidated, Predicate<OAuthToken> predicate) {
+        cache.asMap().values().removeIf(parsedToken -> {
+            final boolean invalidate = predicate.test(parsedToken);
+            if (invalidate) {
+                invalidated.incrementAndGet();
+            }
+            return invalidate;
+        });
+    }
+
+    /**
+     * Closes the token issuer store, which stops the background refresh of the JWKS
+     */
+    public void close() {
+        tokenIssuerStore.close();
+    }
+
     public void invalidateCache() {
         LOG.info(ReasonCode.APIM_1006.pattern(), this.get().estimatedSize());
         this.get().invalidateAll();
+        rejectedTokens.invalidateAll();
     }
 }
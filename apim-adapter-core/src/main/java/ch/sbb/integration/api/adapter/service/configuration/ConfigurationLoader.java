@@ -93,8 +93,17 @@ public class ConfigurationLoader {
     }
 
     public JsonNode loadMappingRulesConfig(String serviceId, boolean loadFromOfflineCache) {
-        String mappingRulesJson = doLoadMappingRulesConfig(serviceId, loadFromOfflineCache);
+        return parseMappingRulesConfig(doLoadMappingRulesConfig(serviceId, loadFromOfflineCache));
+    }
+
+    /**
+     * Loads the mapping rules from the offline cache only, without calling 3scale
+     */
+    public JsonNode loadMappingRulesConfigFromOfflineCache(String serviceId) {
+        return parseMappingRulesConfig(repo.findMappingRulesConfig(serviceId));
+    }
 
+    private JsonNode parseMappingRulesConfig(String mappingRulesJson) {
         try {
             return new ObjectMapper().readTree(mappingRulesJson).get("mapping_rules");
         } catch (Exception e) {
@@ -120,8 +129,17 @@ public class ConfigurationLoader {
     }
 
     public JsonNode loadMetricConfig(String serviceId, boolean loadFromOfflineCache) {
-        String metric = doLoadMetricConfig(serviceId, loadFromOfflineCache);
+        return parseMetricConfig(doLoadMetricConfig(serviceId, loadFromOfflineCache));
+    }
 
+    /**
+     * Loads the metrics from the offline cache only, without calling 3scale
+     */
+    public JsonNode loadMetricConfigFromOfflineCache(String serviceId) {
+        return parseMetricConfig(repo.findMetricConfig(serviceId));
+    }
+
+    private JsonNode parseMetricConfig(String metric) {
         try {
             return new ObjectMapper().readTree(metric);
         } catch (Exception e) {
@@ -147,8 +165,17 @@ public class ConfigurationLoader {
     }
 
     public JsonNode loadProxyConfig(String serviceId, boolean loadFromOfflineCache) {
-        String proxySettings = doLoadProxyConfig(serviceId, loadFromOfflineCache);
+        return parseProxyConfig(doLoadProxyConfig(serviceId, loadFromOfflineCache));
+    }
+
+    /**
+     * Loads the proxy settings from the offline cache only, without calling 3scale
+     */
+    public JsonNode loadProxyConfigFromOfflineCache(String serviceId) {
+        return parseProxyConfig(repo.findProxyConfig(serviceId));
+    }
 
+    private JsonNode parseProxyConfig(String proxySettings) {
         try {
             return new ObjectMapper().readTree(proxySettings);
         } catch (Exception e) {
@@ -0,0 +1,153 @@
+package ch.sbb.integration.api.adapter.service.job;
+
+import ch.sbb.integration.api.adapter.model.reporting.ResponseSummary;
+import ch.sbb.integration.api.adapter.model.usage.Client;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Decides which clients are synchronized with 3Scale in a sync round.
+ * <p>
+ * Clients are synchronized as often as their quota pressure requires: the hit rate of a client is tracked per round
+ * and compared with the hits it has left in its current period (limit - base - current usage of its tightest
+ * metric). A client which would exhaust its quota within a few rounds or has high traffic is synchronized every
+ * round, an active client every few rounds and an idle or unlimited client far from its limit only every
+ * {@link #MAX_SYNC_INTERVAL_ROUNDS} rounds. Clients which were never synchronized are always due.
+ * <p>
+ * The due clients are returned by priority, the ones closest to their limit first.
+ */
+class ClientSyncScheduler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ClientSyncScheduler.class);
+
+    /**
+     * Upper bound for the staleness of a client, in sync rounds
+     */
+    static final int MAX_SYNC_INTERVAL_ROUNDS = 20;
+    /**
+     * Sync interval of a client with traffic but no quota pressure, in sync rounds
+     */
+    static final int ACTIVE_SYNC_INTERVAL_ROUNDS = 4;
+    /**
+     * Clients with at least this many hits per round are synchronized every round
+     */
+    static final double HIGH_TRAFFIC_HITS_PER_ROUND = 1_000;
+    /**
+     * Clients with less hits per round count as idle
+     */
+    private static final double IDLE_HITS_PER_ROUND = 0.5;
+    /**
+     * A client is synchronized this many times before it would exhaust its quota at the current rate
+     */
+    private static final int SYNCS_BEFORE_EXHAUSTION = 4;
+    /**
+     * Weight of the latest round in the moving average of the hit rate
+     */
+    private static final double HIT_RATE_WEIGHT = 0.3;
+
+    private final Map<String, ClientSchedule> schedules = new HashMap<>();
+    private final Map<String, Long> hitsOfRound = new HashMap<>();
+    private final Map<String, Long> requeuedHits = new HashMap<>();
+    private long round;
+
+    /**
+     * Records the hits of the clients since the last round.
+     */
+    synchronized void recordHits(Map<ResponseSummary, Long> hits) {
+        hits.forEach((responseSummary, count) -> hitsOfRound.merge(responseSummary.getClientId(), count, Long::sum));
+        // the hits put back by the last round are extracted again, they were counted when they were new
+        requeuedHits.forEach((clientId, count) -> hitsOfRound.computeIfPresent(clientId, (id, hitCount) -> Math.max(0L, hitCount - count)));
+        requeuedHits.clear();
+    }
+
+    /**
+     * Records the hits of a failed report, which are put back to be reported again with the hits of the next round.
+     */
+    synchronized void recordRequeuedHits(Map<ResponseSummary, Long> hits) {
+        hits.forEach((responseSummary, count) -> requeuedHits.merge(responseSummary.getClientId(), count, Long::sum));
+    }
+
+    /**
+     * Starts a new sync round.
+     *
+     * @param clientIds    all cached clients
+     * @param clientLookup provides the cached usages of a client without loading them
+     * @param allClients   true to synchronize all clients in this round, e.g. when the synchronization is triggered
+     * @return the clients to synchronize in this round, most urgent first
+     */
+    synchronized List<String> nextRound(List<String> clientIds, Function<String, Client> clientLookup, boolean allClients) {
+        round++;
+        final List<ClientSchedule> due = new ArrayList<>();
+        final Set<String> cachedClientIds = new HashSet<>(clientIds);
+
+        for (String clientId : clientIds) {
+            final ClientSchedule schedule = schedules.computeIfAbsent(clientId, ClientSchedule::new);
+            schedule.update(hitsOfRound.getOrDefault(clientId, 0L), clientLookup.apply(clientId));
+            if (allClients || schedule.isDue(round)) {
+                schedule.lastSyncRound = round;
+                due.add(schedule);
+            }
+        }
+        hitsOfRound.clear();
+        // forget clients which were evicted from the cache
+        schedules.keySet().retainAll(cachedClientIds);
+
+        due.sort(Comparator.comparingDouble(ClientSchedule::roundsUntilExhausted));
+        LOG.debug("Sync round={} synchronizes {} of {} clients", round, due.size(), clientIds.size());
+
+        final List<String> dueClientIds = new ArrayList<>(due.size());
+        due.forEach(schedule -> dueClientIds.add(schedule.clientId));
+        return dueClientIds;
+    }
+
+    private static final class ClientSchedule {
+        private final String clientId;
+        private long lastSyncRound;
+        private double hitsPerRound;
+        private long remaining = Long.MAX_VALUE;
+        private boolean unknownUsage = true;
+
+        private ClientSchedule(String clientId) {
+            this.clientId = clientId;
+        }
+
+        private void update(long hitsSinceLastRound, Client client) {
+            hitsPerRound = HIT_RATE_WEIGHT * hitsSinceLastRound + (1 - HIT_RATE_WEIGHT) * hitsPerRound;
+            unknownUsage = client == null;
+            remaining = client == null ? Long.MAX_VALUE : client.getRemaining();
+        }
+
+        private boolean isDue(long round) {
+            return lastSyncRound == 0 || unknownUsage || round - lastSyncRound >= syncIntervalRounds();
+        }
+
+        private long syncIntervalRounds() {
+            if (hitsPerRound >= HIGH_TRAFFIC_HITS_PER_ROUND) {
+                return 1;
+            }
+            final long quotaInterval = (long) (roundsUntilExhausted() / SYNCS_BEFORE_EXHAUSTION);
+            // an idle client close to its limit is synchronized as often as an active one
+            final long maxInterval = hitsPerRound < IDLE_HITS_PER_ROUND ? MAX_SYNC_INTERVAL_ROUNDS : ACTIVE_SYNC_INTERVAL_ROUNDS;
+            return Math.max(1, Math.min(maxInterval, quotaInterval));
+        }
+
+        private double roundsUntilExhausted() {
+            if (unknownUsage || remaining <= 0) {
+                return 0;
+            }
+            if (remaining == Long.MAX_VALUE) {
+                return Double.MAX_VALUE;
+            }
+            return remaining / Math.max(hitsPerRound, IDLE_HITS_PER_ROUND);
+        }
+    }
+}
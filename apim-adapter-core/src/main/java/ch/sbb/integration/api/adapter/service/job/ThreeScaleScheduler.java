@@ -36,7 +36,7 @@ public class ThreeScaleScheduler {
     }
 
     public Future triggerSynchronization() {
-        return scheduler.submit(threeScaleSynchronizerService);
+        return scheduler.submit(threeScaleSynchronizerService::runFullSync);
     }
 
     public SyncStatus getSyncStatus() {
@@ -46,6 +46,7 @@ public class ThreeScaleScheduler {
     public void terminate() throws InterruptedException {
         scheduler.shutdown();
         scheduler.awaitTermination(terminationTimeout, TimeUnit.SECONDS);
+        threeScaleSynchronizerService.terminate(terminationTimeout, TimeUnit.SECONDS);
     }
 
     public boolean isTerminated() {
@@ -2,6 +2,7 @@ package ch.sbb.integration.api.adapter.service.job;
 
 import ch.sbb.integration.api.adapter.model.Metric;
 import ch.sbb.integration.api.adapter.model.reporting.Hits;
+import ch.sbb.integration.api.adapter.model.reporting.ReportResult;
 import ch.sbb.integration.api.adapter.model.reporting.ResponseSummary;
 import ch.sbb.integration.api.adapter.model.status.SyncStatus;
 import ch.sbb.integration.api.adapter.model.usage.Client;
@@ -12,7 +13,9 @@ import ch.sbb.integration.api.adapter.service.cache.ServiceToMetricsCache;
 import ch.sbb.integration.api.adapter.service.configuration.ConfigurationLoader;
 import ch.sbb.integration.api.adapter.service.configuration.EmergencyModeState;
 import ch.sbb.integration.api.adapter.service.exception.ThreeScaleAdapterException;
+import ch.sbb.integration.api.adapter.service.repository.HitJournal;
 import ch.sbb.integration.api.adapter.service.restclient.ThreeScaleBackendCommunicationComponent;
+import ch.sbb.integration.api.adapter.service.utils.StopWatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -20,8 +23,17 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.TimerTask;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
+import static ch.sbb.integration.api.adapter.config.ApimAdapterConfig.DEFAULT_SYNC_MAX_IN_FLIGHT;
+import static ch.sbb.integration.api.adapter.config.ApimAdapterConfig.DEFAULT_SYNC_PARALLELISM;
 import static ch.sbb.integration.api.adapter.config.ReasonCode.*;
 import static ch.sbb.integration.api.adapter.model.usage.MetricUsage.synchronizePeriods;
 import static ch.sbb.integration.api.adapter.model.usage.MetricUsage.unlimitedMetric;
@@ -34,15 +46,24 @@ public class ThreeScaleSynchronizerService extends TimerTask {
 
     //See: https://github.com/3scale/apisonator/blob/a99715d10f5816908bdd4184f8c48663728a4255/lib/3scale/backend/transaction.rb#L5
     private static final Logger LOG = LoggerFactory.getLogger(ThreeScaleSynchronizerService.class);
+    /**
+     * Maximum number of response summaries reported at once, the backlog of an outage is reported in several chunks
+     */
+    static final int MAX_REPORTED_RESPONSE_SUMMARIES = 10_000;
     private final ClientCache clientCache;
     private final ServiceToMetricsCache serviceToMetricsCache;
     private final String serviceId;
     private final ConfigurationLoader configurationLoader;
 
     private final SyncStatus syncStatus = new SyncStatus();
+    private final ClientSyncScheduler clientSyncScheduler = new ClientSyncScheduler();
     private final ThreeScaleBackendCommunicationComponent threeScaleBackendCommunicationComponent;
     private EmergencyModeState emergencyModeState;
     private final Hits hits;
+    private final HitJournal hitJournal;
+
+    private final int syncMaxInFlight;
+    private final ExecutorService clientSyncExecutor;
 
     public ThreeScaleSynchronizerService(
             ClientCache clientCache,
@@ -52,6 +73,26 @@ public class ThreeScaleSynchronizerService extends TimerTask {
             ThreeScaleBackendCommunicationComponent threeScaleBackendCommunicationComponent,
             EmergencyModeState emergencyModeState,
             Hits hits) {
+        this(clientCache, serviceToMetricsCache, serviceId, configurationLoader, threeScaleBackendCommunicationComponent,
+                emergencyModeState, hits, DEFAULT_SYNC_PARALLELISM, DEFAULT_SYNC_MAX_IN_FLIGHT, HitJournal.disabled());
+    }
+
+    /**
+     * @param syncParallelism number of clients which are synchronized concurrently
+     * @param syncMaxInFlight number of clients which are queued or being synchronized, bounds the backlog of a run
+     * @param hitJournal      keeps the unreported hits across restarts and outages of 3Scale
+     */
+    public ThreeScaleSynchronizerService(
+            ClientCache clientCache,
+            ServiceToMetricsCache serviceToMetricsCache,
+            String serviceId,
+            ConfigurationLoader configurationLoader,
+            ThreeScaleBackendCommunicationComponent threeScaleBackendCommunicationComponent,
+            EmergencyModeState emergencyModeState,
+            Hits hits,
+            int syncParallelism,
+            int syncMaxInFlight,
+            HitJournal hitJournal) {
         this.clientCache = clientCache;
         this.serviceToMetricsCache = serviceToMetricsCache;
         this.serviceId = serviceId;
@@ -60,14 +101,28 @@ public class ThreeScaleSynchronizerService extends TimerTask {
         this.threeScaleBackendCommunicationComponent = threeScaleBackendCommunicationComponent;
         this.emergencyModeState = emergencyModeState;
         this.hits = hits;
+        this.hitJournal = hitJournal;
+
+        this.syncMaxInFlight = syncMaxInFlight;
+        this.clientSyncExecutor = Executors.newFixedThreadPool(syncParallelism, new ClientSyncThreadFactory());
     }
 
+    /**
+     * Reports the hits and synchronizes the clients which are due according to their quota pressure.
+     */
     @Override
     public void run() {
-        synchronize();
+        synchronize(false);
+    }
+
+    /**
+     * Reports the hits and synchronizes all clients, regardless of their quota pressure.
+     */
+    public void runFullSync() {
+        synchronize(true);
     }
 
-    private void synchronize() {
+    private void synchronize(boolean allClients) {
         try {
             syncStatus.startSync();
 
@@ -76,16 +131,70 @@ public class ThreeScaleSynchronizerService extends TimerTask {
             syncStatus.setLastRunSuccessful(reportSuccessful);
 
             if (reportSuccessful || emergencyModeState.isEmergencyMode()) {
-                clientCache.clientIds().forEach(this::syncWith3Scale);
+                final List<String> clientIds = clientSyncScheduler.nextRound(clientCache.clientIds(), clientCache::getIfPresent, allClients);
+                syncClients(clientIds);
             }
 
             syncStatus.finishSync();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.error(APIM_3001.pattern(), e);
+            syncStatus.setLastRunSuccessful(false);
         } catch (Exception e) {
             LOG.error(APIM_3001.pattern(), e);
             syncStatus.setLastRunSuccessful(false);
         }
     }
 
+    /**
+     * Synchronizes the clients concurrently, each client independently of the others. Returns when all clients are
+     * synchronized, so that runs do not overlap.
+     */
+    private void syncClients(List<String> clientIds) throws InterruptedException {
+        final Semaphore inFlight = new Semaphore(syncMaxInFlight);
+        try {
+            for (String clientId : clientIds) {
+                inFlight.acquire();
+                try {
+                    clientSyncExecutor.execute(() -> {
+                        try {
+                            syncClient(clientId);
+                        } finally {
+                            inFlight.release();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    inFlight.release();
+                    throw e;
+                }
+            }
+        } finally {
+            // wait for the clients in flight
+            inFlight.acquireUninterruptibly(syncMaxInFlight);
+        }
+    }
+
+    private void syncClient(String clientId) {
+        final StopWatch sw = new StopWatch().start();
+        try {
+            syncWith3Scale(clientId);
+        } catch (Exception e) {
+            LOG.error(APIM_3026.pattern(), clientId, e);
+            syncStatus.setLastRunSuccessful(false);
+        } finally {
+            syncStatus.clientSynced(sw.stop().getMillis());
+        }
+    }
+
+    /**
+     * Stops the threads synchronizing the clients, a running synchronization is finished first.
+     */
+    public void terminate(long timeout, TimeUnit unit) throws InterruptedException {
+        clientSyncExecutor.shutdown();
+        clientSyncExecutor.awaitTermination(timeout, unit);
+        hitJournal.close();
+    }
+
     public SyncStatus getSyncStatus() {
         return syncStatus;
     }
@@ -94,22 +203,49 @@ public class ThreeScaleSynchronizerService extends TimerTask {
         syncStatus.updateLastSyncActivity();
         LOG.debug("Start reporting");
 
-        Map<ResponseSummary, Long> metricsToReport = hits.extractUnreportedHits().entrySet().stream()
-                .filter(e -> e.getKey().isWithin24Hours()) //We do not care about reporting which are older than a day, we can remove these.
-                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+        final Map<ResponseSummary, Long> unreportedHits = hits.extractUnreportedHits();
+        clientSyncScheduler.recordHits(unreportedHits);
+
+        // with the journal, the hits of failed reports stay in the journal instead of going back into the memory
+        hitJournal.append(unreportedHits);
+        if (!hitJournal.isEnabled()) {
+            return report(unreportedHits, false);
+        }
+
+        // the oldest hits first, until a report fails or all hits are reported
+        Map<ResponseSummary, Long> chunk = hitJournal.unreportedHits(MAX_REPORTED_RESPONSE_SUMMARIES);
+        boolean successful = report(chunk, true);
+        while (successful && chunk.size() == MAX_REPORTED_RESPONSE_SUMMARIES) {
+            chunk = hitJournal.unreportedHits(MAX_REPORTED_RESPONSE_SUMMARIES);
+            successful = report(chunk, true);
+        }
+        return successful;
+    }
+
+    private boolean report(Map<ResponseSummary, Long> hitsToReport, boolean journaled) {
+        //We do not care about reporting which are older than a day, we can remove these.
+        final Map<Boolean, Map<ResponseSummary, Long>> byAge = hitsToReport.entrySet().stream()
+                .collect(Collectors.partitioningBy(e -> e.getKey().isWithin24Hours(), Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue)));
+        final Map<ResponseSummary, Long> metricsToReport = byAge.get(true);
+        hitJournal.acknowledge(byAge.get(false));
         if (metricsToReport.isEmpty()) {
             return true;
         }
         LOG.debug("NumberOfMetricsToReport={}", metricsToReport.size());
 
-        boolean successfulReported = threeScaleBackendCommunicationComponent.report(metricsToReport);
-        if(successfulReported) {
+        final ReportResult reportResult = threeScaleBackendCommunicationComponent.report(metricsToReport);
+        hitJournal.acknowledge(reportResult.reportedHitsOf(metricsToReport));
+        if(reportResult.isSuccessful()) {
             metricsToReport.forEach(this::logHit);
+        }else if (journaled) {
+            //Reporting went partially wrong, the hits of the failed forms are reported again from the journal
+            reportResult.getUnreportedHits().forEach((responseSummary, count) -> LOG.info(APIM_1018.pattern(), responseSummary, count));
         }else{
-            //Reporting went wrong, add the unreported hits again
-            metricsToReport.forEach(this::addUnreportHits);
+            //Reporting went partially wrong, add the hits of the failed forms again
+            reportResult.getUnreportedHits().forEach(this::addUnreportHits);
+            clientSyncScheduler.recordRequeuedHits(reportResult.getUnreportedHits());
         }
-        return successfulReported;
+        return reportResult.isSuccessful();
     }
 
     private void addUnreportHits(ResponseSummary responseSummary, Long count) {
@@ -129,9 +265,7 @@ public class ThreeScaleSynchronizerService extends TimerTask {
         }
     }
 
-    private synchronized void syncWith3Scale(String clientId) {
-        syncStatus.updateLastSyncActivity();
-
+    private void syncWith3Scale(String clientId) {
         final Client newStats = loadClient(clientId);
 
         // do not sync if 3Scale is not available
@@ -221,4 +355,14 @@ public class ThreeScaleSynchronizerService extends TimerTask {
         });
     }
 
+    private static final class ClientSyncThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadNumber = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            final Thread thread = new Thread(runnable, "apim-client-sync-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
 }
@@ -61,10 +61,10 @@ public class MonitoringService {
 
         if (MonitoringLevel.MINIMAL.equals(config.getMonitoringLevel())) {
             // init only cachesize monitoring
-            initMinimalCollectors();
+            initMinimalCollectors(false);
         }else if (MonitoringLevel.STANDARD.equals(config.getMonitoringLevel())) {
             // init thread, memory, GC, XNIO
-            initMinimalCollectors();
+            initMinimalCollectors(true);
             initStandardCollectors(Collections.singletonList("org.xnio:*"));
 
         }else {
@@ -74,8 +74,8 @@ public class MonitoringService {
         }
     }
 
-    private void initMinimalCollectors() {
-        simpleCacheSizeCollector = new SimpleCacheSizeCollector().register();
+    private void initMinimalCollectors(boolean collectHitsAndMisses) {
+        simpleCacheSizeCollector = new SimpleCacheSizeCollector(collectHitsAndMisses).register();
     }
 
     private void initAllCollectors() {
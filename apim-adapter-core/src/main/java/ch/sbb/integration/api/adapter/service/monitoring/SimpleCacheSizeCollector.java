@@ -2,7 +2,9 @@ package ch.sbb.integration.api.adapter.service.monitoring;
 
 
 import ch.sbb.integration.api.adapter.service.cache.Cache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import io.prometheus.client.Collector;
+import io.prometheus.client.CounterMetricFamily;
 import io.prometheus.client.GaugeMetricFamily;
 
 import java.util.*;
@@ -10,6 +12,15 @@ import java.util.*;
 public class SimpleCacheSizeCollector extends Collector {
 
     private Map<String, Cache<?>> caches = new HashMap<>();
+    private final boolean collectHitsAndMisses;
+
+    /**
+     * @param collectHitsAndMisses true to export the hit and miss counters in addition to the size. The caches only
+     *                             record them, if the monitoring level is higher than minimal.
+     */
+    public SimpleCacheSizeCollector(boolean collectHitsAndMisses) {
+        this.collectHitsAndMisses = collectHitsAndMisses;
+    }
 
     @Override
     public List<MetricFamilySamples> collect() {
@@ -22,6 +33,19 @@ public class SimpleCacheSizeCollector extends Collector {
                 cacheSize.addMetric(Collections.singletonList(s), (double) (cache.size()))
         );
 
+        if (collectHitsAndMisses) {
+            CounterMetricFamily cacheHitTotal = new CounterMetricFamily("caffeine_cache_hit_total", "Cache hit totals", labelNames);
+            CounterMetricFamily cacheMissTotal = new CounterMetricFamily("caffeine_cache_miss_total", "Cache miss totals", labelNames);
+            mfs.add(cacheHitTotal);
+            mfs.add(cacheMissTotal);
+
+            caches.forEach((s, cache) -> {
+                CacheStats stats = cache.get().stats();
+                cacheHitTotal.addMetric(Collections.singletonList(s), stats.hitCount());
+                cacheMissTotal.addMetric(Collections.singletonList(s), stats.missCount());
+            });
+        }
+
         return mfs;
     }
 
@@ -9,6 +9,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static java.util.Collections.singletonList;
@@ -65,6 +66,31 @@ public class SyncCollector extends Collector {
 
         syncDuration.addMetric(labelValue, threeScaleScheduler.getSyncStatus().getLastSyncDurationSeconds());
         mfs.add(syncDuration);
+
+        GaugeMetricFamily syncClients = new GaugeMetricFamily(
+                "apim_adapter_sync_last_run_clients",
+                "number of clients synchronized in the last sync run",
+                labelNames);
+
+        syncClients.addMetric(labelValue, threeScaleScheduler.getSyncStatus().getLastSyncClients());
+        mfs.add(syncClients);
+
+        GaugeMetricFamily syncThroughput = new GaugeMetricFamily(
+                "apim_adapter_sync_last_run_clients_per_second",
+                "throughput of the last sync run in synchronized clients per second",
+                labelNames);
+
+        syncThroughput.addMetric(labelValue, threeScaleScheduler.getSyncStatus().getLastSyncThroughputPerSecond());
+        mfs.add(syncThroughput);
+
+        GaugeMetricFamily syncClientLatency = new GaugeMetricFamily(
+                "apim_adapter_sync_last_run_client_latency_seconds",
+                "average and maximum duration to synchronize a single client in the last sync run",
+                Arrays.asList("sync", "stat"));
+
+        syncClientLatency.addMetric(Arrays.asList("3scaleSync", "avg"), threeScaleScheduler.getSyncStatus().getLastSyncClientLatencyAvgSeconds());
+        syncClientLatency.addMetric(Arrays.asList("3scaleSync", "max"), threeScaleScheduler.getSyncStatus().getLastSyncClientLatencyMaxSeconds());
+        mfs.add(syncClientLatency);
     }
 
     private void collectEmergencyModeMetric(List<MetricFamilySamples> mfs) {
@@ -0,0 +1,533 @@
+package ch.sbb.integration.api.adapter.service.repository;
+
+import ch.sbb.integration.api.adapter.model.reporting.ResponseSummary;
+import ch.sbb.integration.api.adapter.service.utils.CoarseClock;
+import ch.sbb.integration.api.adapter.service.utils.StopWatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import static ch.sbb.integration.api.adapter.config.ReasonCode.APIM_1035;
+import static ch.sbb.integration.api.adapter.config.ReasonCode.APIM_2043;
+import static ch.sbb.integration.api.adapter.config.ReasonCode.APIM_2050;
+import static ch.sbb.integration.api.adapter.config.ReasonCode.APIM_3027;
+
+/**
+ * Append-only journal of the hits which are not yet reported to 3Scale, stored in the directory {@value #HITS_DIR_NAME}
+ * of the cache location.
+ * <p>
+ * The journal records deltas per {@link ResponseSummary}: the hits are appended when they are extracted for reporting
+ * and acknowledged (appended negatively) once 3Scale accepted them. The unreported hits are the sum of all records, so
+ * they survive a restart. The journal is only read at the start, afterwards the sums are kept in memory: one counter
+ * per response summary of the last {@value #MAX_AGE_MINUTES} minutes, older hits are dropped.
+ * <p>
+ * Records are written into memory mapped segments of a fixed size, a record is only valid if its length and CRC32
+ * match, so a torn write at the end of a segment is ignored. A new segment is started when the active one is full and
+ * at every start, a retired segment is unmapped. Periodically the journal is compacted: the sums are written into a
+ * base file, which replaces all older segments.
+ * <p>
+ * The directory is locked by the instance using it. Replicas sharing the cache location (e.g. on a persistent volume)
+ * would otherwise replay and delete each other's segments, so an instance which does not get the lock keeps its
+ * unreported hits in memory only.
+ * <p>
+ * Without a cache location the journal is disabled and does nothing. On an I/O error the journal stops writing and
+ * keeps the unreported hits in memory only.
+ */
+public class HitJournal {
+    private static final Logger LOG = LoggerFactory.getLogger(HitJournal.class);
+
+    static final String HITS_DIR_NAME = "hits";
+    static final String LOCK_FILE_NAME = "hits.lock";
+    static final int DEFAULT_SEGMENT_SIZE = 4 * 1024 * 1024;
+    /**
+     * Number of appends (one per sync round) after which the journal is compacted
+     */
+    static final int COMPACT_AFTER_APPENDS = 40;
+    /**
+     * Number of segments after which the journal is compacted
+     */
+    static final int COMPACT_AFTER_SEGMENTS = 4;
+    /**
+     * Hits older than this are not reported anymore and are dropped by the compaction
+     */
+    private static final long MAX_AGE_MINUTES = 24 * 60L;
+
+    private static final Pattern FILE_NAME = Pattern.compile("hits-(\\d{19})\\.(journal|base)");
+    private static final String JOURNAL = "journal";
+    private static final String BASE = "base";
+    private static final String TMP_SUFFIX = ".tmp";
+    /**
+     * Length and CRC32 of a record
+     */
+    private static final int RECORD_HEADER_SIZE = 8;
+    /**
+     * epochMinute, delta, httpStatus and the lengths of clientId and metricSysName
+     */
+    private static final int RECORD_FIXED_SIZE = 8 + 8 + 4 + 2 + 2;
+
+    private final Path dir;
+    private final int segmentSize;
+    private boolean enabled;
+    private boolean writable;
+
+    private long activeSeq;
+    private FileChannel activeChannel;
+    private MappedByteBuffer active;
+    private final List<Path> segments = new ArrayList<>();
+    /**
+     * The unreported hits per epoch minute, the oldest first
+     */
+    private final TreeMap<Long, Map<ResponseSummary, Long>> unreported = new TreeMap<>();
+    private FileChannel lockChannel;
+    private int appendsSinceCompaction;
+
+    public static HitJournal disabled() {
+        return new HitJournal(OfflineConfigurationCacheRepo.DISABLED);
+    }
+
+    public HitJournal(final String apimAdapterCacheLocation) {
+        this(apimAdapterCacheLocation, DEFAULT_SEGMENT_SIZE);
+    }
+
+    HitJournal(final String apimAdapterCacheLocation, final int segmentSize) {
+        this.segmentSize = segmentSize;
+        if (apimAdapterCacheLocation == null || OfflineConfigurationCacheRepo.DISABLED.equalsIgnoreCase(apimAdapterCacheLocation)) {
+            this.dir = null;
+            this.enabled = false;
+        } else {
+            this.dir = Paths.get(apimAdapterCacheLocation).resolve(HITS_DIR_NAME);
+            this.enabled = open();
+            this.writable = enabled;
+        }
+    }
+
+    public synchronized boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Records hits which are about to be reported.
+     */
+    public synchronized void append(final Map<ResponseSummary, Long> hits) {
+        write(hits, 1);
+    }
+
+    /**
+     * Records hits which were reported successfully.
+     */
+    public synchronized void acknowledge(final Map<ResponseSummary, Long> hits) {
+        write(hits, -1);
+    }
+
+    /**
+     * @return the hits which were appended but not acknowledged, empty if the journal is disabled
+     */
+    public synchronized Map<ResponseSummary, Long> unreportedHits() {
+        return unreportedHits(Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param maxResponseSummaries the maximum number of response summaries to return
+     * @return the oldest hits which were appended but not acknowledged, empty if the journal is disabled
+     */
+    public synchronized Map<ResponseSummary, Long> unreportedHits(final int maxResponseSummaries) {
+        final Map<ResponseSummary, Long> oldest = new HashMap<>();
+        if (!enabled) {
+            return oldest;
+        }
+        dropOutdated();
+        for (Map<ResponseSummary, Long> hitsOfMinute : unreported.values()) {
+            for (Map.Entry<ResponseSummary, Long> hit : hitsOfMinute.entrySet()) {
+                if (oldest.size() >= maxResponseSummaries) {
+                    return oldest;
+                }
+                oldest.put(hit.getKey(), hit.getValue());
+            }
+        }
+        return oldest;
+    }
+
+    public synchronized void close() {
+        if (writable) {
+            active.force();
+            closeActive();
+            releaseLock();
+        }
+        enabled = false;
+        writable = false;
+        unreported.clear();
+    }
+
+    private boolean open() {
+        try {
+            Files.createDirectories(dir);
+            lock();
+            deleteTmpFiles();
+            final List<Path> files = listFiles();
+            final long baseSeq = files.stream().filter(f -> BASE.equals(type(f))).mapToLong(HitJournal::seq).max().orElse(-1L);
+            long lastSeq = baseSeq;
+            for (Path file : files) {
+                if (seq(file) < baseSeq) {
+                    // left behind by a compaction which was interrupted before it deleted the replaced segments
+                    Files.deleteIfExists(file);
+                } else {
+                    segments.add(file);
+                    lastSeq = Math.max(lastSeq, seq(file));
+                }
+            }
+            // never append to a segment of a previous run, its end may be torn
+            openActive(lastSeq + 1);
+
+            for (Path segment : segments) {
+                replaySegment(segment);
+            }
+            dropOutdated();
+            LOG.info(APIM_1035.pattern(), dir.toAbsolutePath(),
+                    unreported.values().stream().flatMap(hitsOfMinute -> hitsOfMinute.values().stream()).mapToLong(Long::longValue).sum(),
+                    unreported.values().stream().mapToInt(Map::size).sum());
+            return true;
+        } catch (Exception e) {
+            LOG.error(APIM_3027.pattern(), dir.toAbsolutePath(), e);
+            unreported.clear();
+            if (activeChannel != null) {
+                closeActive();
+            }
+            releaseLock();
+            return false;
+        }
+    }
+
+    private void lock() throws IOException {
+        lockChannel = FileChannel.open(dir.resolve(LOCK_FILE_NAME), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock lock;
+        try {
+            lock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // held by another journal of this JVM
+            lock = null;
+        }
+        if (lock == null) {
+            releaseLock();
+            throw new IOException("The hit journal is locked by another instance sharing the cache location");
+        }
+    }
+
+    private void releaseLock() {
+        if (lockChannel == null) {
+            return;
+        }
+        try {
+            // closing the channel releases the lock
+            lockChannel.close();
+        } catch (IOException e) {
+            LOG.debug("Unable to release the lock of the hit journal in location={}", dir, e);
+        }
+        lockChannel = null;
+    }
+
+    private void write(final Map<ResponseSummary, Long> hits, final int sign) {
+        if (!enabled || hits.isEmpty()) {
+            return;
+        }
+        hits.forEach((responseSummary, count) -> add(responseSummary, sign * count));
+        if (!writable) {
+            return;
+        }
+        try {
+            for (Map.Entry<ResponseSummary, Long> hit : hits.entrySet()) {
+                appendRecord(hit.getKey(), sign * hit.getValue());
+            }
+            active.force();
+
+            appendsSinceCompaction++;
+            if (appendsSinceCompaction >= COMPACT_AFTER_APPENDS || segments.size() >= COMPACT_AFTER_SEGMENTS) {
+                compact();
+            }
+        } catch (IOException e) {
+            disable(e);
+        }
+    }
+
+    private void add(final ResponseSummary responseSummary, final long delta) {
+        final Map<ResponseSummary, Long> hitsOfMinute = unreported.computeIfAbsent(responseSummary.getEpochMinute(), minute -> new HashMap<>());
+        if (hitsOfMinute.merge(responseSummary, delta, Long::sum) <= 0) {
+            hitsOfMinute.remove(responseSummary);
+            if (hitsOfMinute.isEmpty()) {
+                unreported.remove(responseSummary.getEpochMinute());
+            }
+        }
+    }
+
+    /**
+     * Drops the hits which are too old to be reported, the next compaction removes them from the journal
+     */
+    private void dropOutdated() {
+        unreported.headMap(CoarseClock.currentTimeMillis() / 60_000L - MAX_AGE_MINUTES).clear();
+    }
+
+    private void appendRecord(final ResponseSummary responseSummary, final long delta) throws IOException {
+        final byte[] clientId = responseSummary.getClientId().getBytes(StandardCharsets.UTF_8);
+        final byte[] metricSysName = responseSummary.getMetricSysName().getBytes(StandardCharsets.UTF_8);
+        if (clientId.length > Short.MAX_VALUE || metricSysName.length > Short.MAX_VALUE) {
+            // the lengths are stored as shorts, the hits are still reported from memory
+            LOG.warn(APIM_2050.pattern(), responseSummary, Short.MAX_VALUE);
+            return;
+        }
+        final int size = RECORD_HEADER_SIZE + RECORD_FIXED_SIZE + clientId.length + metricSysName.length;
+        if (size > segmentSize) {
+            throw new IOException("Record of " + responseSummary + " does not fit into a segment");
+        }
+        if (active.remaining() < size) {
+            active.force();
+            closeActive();
+            openActive(activeSeq + 1);
+        }
+        writeRecord(active, responseSummary.getEpochMinute(), delta, responseSummary.getHttpStatus(), clientId, metricSysName);
+    }
+
+    private static void writeRecord(final ByteBuffer target, final long epochMinute, final long delta, final int httpStatus,
+                                    final byte[] clientId, final byte[] metricSysName) {
+        final int start = target.position();
+        final int length = RECORD_FIXED_SIZE + clientId.length + metricSysName.length;
+        final ByteBuffer payload = target.duplicate();
+        payload.position(start + RECORD_HEADER_SIZE);
+        payload.putLong(epochMinute)
+                .putLong(delta)
+                .putInt(httpStatus)
+                .putShort((short) clientId.length).put(clientId)
+                .putShort((short) metricSysName.length).put(metricSysName);
+
+        payload.flip().position(start + RECORD_HEADER_SIZE);
+        final CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        // the length is written last, a record is only visible once it is complete
+        target.putInt(start + 4, (int) crc.getValue());
+        target.putInt(start, length);
+        target.position(start + RECORD_HEADER_SIZE + length);
+    }
+
+    private void replaySegment(final Path segment) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            try {
+                replayRecords(segment, buffer);
+            } finally {
+                unmap(buffer);
+            }
+        }
+    }
+
+    private void replayRecords(final Path segment, final ByteBuffer buffer) {
+        while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+            final int start = buffer.position();
+            final int length = buffer.getInt();
+            final int crcValue = buffer.getInt();
+            if (length < RECORD_FIXED_SIZE || length > buffer.remaining()) {
+                // end of the segment or a torn record
+                return;
+            }
+            final ByteBuffer payload = buffer.duplicate();
+            payload.limit(start + RECORD_HEADER_SIZE + length);
+            final CRC32 crc = new CRC32();
+            crc.update(payload);
+            if ((int) crc.getValue() != crcValue) {
+                LOG.warn("Ignoring the rest of hit journal segment={} after a corrupt record at position={}", segment, start);
+                return;
+            }
+
+            final long epochMinute = buffer.getLong();
+            final long delta = buffer.getLong();
+            final int httpStatus = buffer.getInt();
+            final String clientId = readString(buffer);
+            final String metricSysName = readString(buffer);
+            add(new ResponseSummary(clientId, httpStatus, metricSysName, epochMinute), delta);
+        }
+    }
+
+    private static String readString(final ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.getShort()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void compact() {
+        final StopWatch sw = new StopWatch().start();
+        final long baseSeq = activeSeq + 1;
+        final Path base = dir.resolve(fileName(baseSeq, BASE));
+        final Path tmp = dir.resolve(fileName(baseSeq, BASE) + TMP_SUFFIX);
+        final Map<ResponseSummary, Long> unreportedHits = unreportedHits(Integer.MAX_VALUE);
+        try {
+            writeBase(tmp, unreportedHits);
+            Files.move(tmp, base, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOG.warn(APIM_2043.pattern(), dir.toAbsolutePath(), e);
+            silentDelete(tmp);
+            return;
+        }
+
+        // from now on the base replaces all segments, including the active one
+        final List<Path> replaced = new ArrayList<>(segments);
+        closeActive();
+        segments.clear();
+        segments.add(base);
+        appendsSinceCompaction = 0;
+        try {
+            openActive(baseSeq + 1);
+        } catch (IOException e) {
+            disable(e);
+        }
+        replaced.forEach(this::silentDelete);
+        LOG.debug("Compacted hit journal to responseSummaries={} took ms={}", unreportedHits.size(), sw.stop().getMillis());
+    }
+
+    private static void writeBase(final Path file, final Map<ResponseSummary, Long> unreportedHits) throws IOException {
+        final Map<ResponseSummary, byte[][]> names = new HashMap<>(unreportedHits.size() * 2);
+        int size = 0;
+        for (ResponseSummary responseSummary : unreportedHits.keySet()) {
+            final byte[][] name = {responseSummary.getClientId().getBytes(StandardCharsets.UTF_8), responseSummary.getMetricSysName().getBytes(StandardCharsets.UTF_8)};
+            if (name[0].length <= Short.MAX_VALUE && name[1].length <= Short.MAX_VALUE) {
+                names.put(responseSummary, name);
+                size += RECORD_HEADER_SIZE + RECORD_FIXED_SIZE + name[0].length + name[1].length;
+            }
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            try {
+                names.forEach((responseSummary, name) -> writeRecord(buffer, responseSummary.getEpochMinute(),
+                        unreportedHits.get(responseSummary), responseSummary.getHttpStatus(), name[0], name[1]));
+                buffer.force();
+            } finally {
+                unmap(buffer);
+            }
+        }
+    }
+
+    private void openActive(final long seq) throws IOException {
+        final Path segment = dir.resolve(fileName(seq, JOURNAL));
+        activeChannel = FileChannel.open(segment, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        // the mapping extends the file, the zeroes mark the end of the records
+        active = activeChannel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        activeSeq = seq;
+        segments.add(segment);
+    }
+
+    private void closeActive() {
+        if (active != null) {
+            unmap(active);
+            active = null;
+        }
+        try {
+            activeChannel.close();
+        } catch (IOException e) {
+            LOG.debug("Unable to close hit journal segment seq={}", activeSeq, e);
+        }
+    }
+
+    /**
+     * Releases the mapping at once instead of when the buffer is garbage collected, the buffer must not be used anymore
+     */
+    private static void unmap(final MappedByteBuffer buffer) {
+        try {
+            // Java 8
+            final Method cleaner = buffer.getClass().getMethod("cleaner");
+            cleaner.setAccessible(true);
+            final Object bufferCleaner = cleaner.invoke(buffer);
+            if (bufferCleaner != null) {
+                bufferCleaner.getClass().getMethod("clean").invoke(bufferCleaner);
+            }
+        } catch (Exception | LinkageError e) {
+            try {
+                // Java 9 and later
+                final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                final Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                unsafeClass.getMethod("invokeCleaner", ByteBuffer.class).invoke(theUnsafe.get(null), buffer);
+            } catch (Exception | LinkageError e1) {
+                LOG.debug("Unable to unmap hit journal segment, it is unmapped by the garbage collector", e1);
+            }
+        }
+    }
+
+    private void silentDelete(final Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // files older than the latest base are deleted at the next start
+            LOG.debug("Unable to delete hit journal file={}", file, e);
+        }
+    }
+
+    private void disable(final Exception e) {
+        LOG.error(APIM_3027.pattern(), dir.toAbsolutePath(), e);
+        writable = false;
+        if (activeChannel != null) {
+            closeActive();
+        }
+        releaseLock();
+    }
+
+    private void deleteTmpFiles() throws IOException {
+        // maxDepth=1 prevents recursion into subdirectory
+        try (Stream<Path> walk = Files.walk(dir, 1)) {
+            walk.filter(Files::isRegularFile)
+                    .filter(f -> f.getFileName().toString().endsWith(TMP_SUFFIX))
+                    .forEach(this::silentDelete);
+        }
+    }
+
+    private List<Path> listFiles() throws IOException {
+        // maxDepth=1 prevents recursion into subdirectory
+        try (Stream<Path> walk = Files.walk(dir, 1)) {
+            return walk.filter(Files::isRegularFile)
+                    .filter(f -> FILE_NAME.matcher(f.getFileName().toString()).matches())
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    static String fileName(final long seq, final String type) {
+        return String.format("hits-%019d.%s", seq, type);
+    }
+
+    private static long seq(final Path file) {
+        return Long.parseLong(matcher(file).group(1));
+    }
+
+    private static String type(final Path file) {
+        return matcher(file).group(2);
+    }
+
+    private static Matcher matcher(final Path file) {
+        final Matcher matcher = FILE_NAME.matcher(file.getFileName().toString());
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Not a hit journal file: " + file);
+        }
+        return matcher;
+    }
+}
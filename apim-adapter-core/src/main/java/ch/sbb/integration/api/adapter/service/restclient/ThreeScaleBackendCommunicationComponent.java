@@ -4,6 +4,7 @@ import ch.sbb.integration.api.adapter.config.ApimAdapterConfig;
 import ch.sbb.integration.api.adapter.config.ReasonCode;
 import ch.sbb.integration.api.adapter.config.RestConfig;
 import ch.sbb.integration.api.adapter.model.ThreeScalePlanResult;
+import ch.sbb.integration.api.adapter.model.reporting.ReportResult;
 import ch.sbb.integration.api.adapter.model.reporting.ResponseSummary;
 import ch.sbb.integration.api.adapter.service.exception.ThreeScaleAdapterException;
 import ch.sbb.integration.api.adapter.service.utils.StopWatch;
@@ -13,23 +14,25 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.ws.rs.client.Entity;
-import javax.ws.rs.core.Form;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
-import java.time.format.DateTimeFormatter;
-import java.util.*;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static ch.sbb.integration.api.adapter.config.ReasonCode.APIM_2028;
 import static ch.sbb.integration.api.adapter.config.ReasonCode.APIM_2029;
-import static java.util.stream.Collectors.groupingBy;
-import static java.util.stream.Collectors.toList;
 import static javax.ws.rs.core.Response.Status.Family.SUCCESSFUL;
 
 public class ThreeScaleBackendCommunicationComponent {
 
     private static final Logger LOG = LoggerFactory.getLogger(ThreeScaleBackendCommunicationComponent.class);
 
-    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss Z");
     private static final int MAX_TRANSACTIONS_PER_FORM = 1000;
 
     private final ResteasyClient rest;
@@ -37,40 +40,79 @@ public class ThreeScaleBackendCommunicationComponent {
     private final String serviceId;
     private final String backendUrl;
     private final boolean reportResponseCode;
+    private final int reportParallelism;
+    private final Executor reportExecutor;
 
     public ThreeScaleBackendCommunicationComponent(ApimAdapterConfig config, RestConfig restConfig) {
         this.backendUrl = config.getBackendUrl();
         this.serviceToken = config.getBackendToken();
         this.serviceId = config.getAdapterServiceId();
         this.reportResponseCode = config.isReportResponseCode();
+        this.reportParallelism = config.getReportParallelism();
+        this.reportExecutor = Executors.newFixedThreadPool(Math.max(1, reportParallelism), new ReportThreadFactory());
 
-        this.rest = restConfig.newRestEasyClient();
+        // the plans are loaded by the parallel synchronization and by requests of clients which are not yet cached,
+        // the forms are reported concurrently as well
+        this.rest = restConfig.newRestEasyClient(2 * config.getSyncParallelism() + reportParallelism);
     }
 
-    public boolean report(Map<ResponseSummary, Long> hits) {
-        List<Map<String, String>> transactions = createTransactions(hits);
-        List<Form> forms = splitAndTransform(transactions);
+    /**
+     * Reports the hits in forms of at most {@value #MAX_TRANSACTIONS_PER_FORM} transactions. Up to reportParallelism
+     * forms are posted concurrently, a form which fails does not stop the others.
+     *
+     * @return the hits of the forms which could not be reported
+     */
+    public ReportResult report(Map<ResponseSummary, Long> hits) {
+        final TransactionReportEncoder encoder = new TransactionReportEncoder(serviceToken, serviceId, reportResponseCode, MAX_TRANSACTIONS_PER_FORM, hits);
         Long numberOfHits = hits.values().stream().reduce(0L, Long::sum);
 
         LOG.info(ReasonCode.APIM_1024.pattern(), numberOfHits);
-        LOG.debug("Reporting to 3Scale - number of hits={}, size of hits={}, number of transactions={}, number of forms={}", numberOfHits, hits.size(), transactions.size(), forms.size());
+        LOG.debug("Reporting to 3Scale - number of hits={}, size of hits={}, number of transactions={}, number of forms={}", numberOfHits, hits.size(), encoder.getTotalTransactions(), encoder.getTotalChunks());
 
-        for (Form f : forms) {
-            boolean successful = submitForm(f);
-            if (!successful) {
-                //If one report failed, we mark all reporting as failed.
-                return false;
-            }
+        final ReportResult result = ReportResult.successful();
+        final int chunks = (int) Math.min(reportParallelism, encoder.getTotalChunks());
+        if (chunks == 0) {
+            return result;
         }
 
-        return true;
+        // every chunk in flight has its own buffer, a chunk is encoded again once its form was posted
+        final Semaphore freeChunks = new Semaphore(chunks);
+        final Queue<TransactionReportEncoder.Chunk> chunkPool = new ConcurrentLinkedQueue<>();
+        for (int i = 0; i < chunks; i++) {
+            chunkPool.add(new TransactionReportEncoder.Chunk());
+        }
+
+        freeChunks.acquireUninterruptibly();
+        TransactionReportEncoder.Chunk chunk = chunkPool.poll();
+        while (encoder.nextChunk(chunk)) {
+            final TransactionReportEncoder.Chunk form = chunk;
+            reportExecutor.execute(() -> {
+                try {
+                    if (!submitForm(form)) {
+                        result.addUnreportedHits(form.getHits());
+                    }
+                } finally {
+                    chunkPool.add(form);
+                    freeChunks.release();
+                }
+            });
+            freeChunks.acquireUninterruptibly();
+            chunk = chunkPool.poll();
+        }
+        // wait until all forms are posted
+        freeChunks.acquireUninterruptibly(chunks - 1);
+
+        if (!result.isSuccessful()) {
+            LOG.debug("Reporting to 3Scale failed partially - unreported hits={}", result.getUnreportedHits().size());
+        }
+        return result;
     }
 
-    private boolean submitForm(Form form) {
+    private boolean submitForm(TransactionReportEncoder.Chunk form) {
         final StopWatch sw = new StopWatch().start();
         final String url = backendUrl + "/transactions.xml"; // Does only exist in XML unfortunately
-        try (Response response = rest.target(url).request().post(Entity.form(form))) {
-            LOG.debug("reported transactions to 3scale, result={}  duration={} ms", response.getStatusInfo(), sw.stop().getMillis());
+        try (Response response = rest.target(url).request().post(Entity.entity(form, MediaType.APPLICATION_FORM_URLENCODED_TYPE))) {
+            LOG.debug("reported transactions={} to 3scale, result={}  duration={} ms", form.getTransactions(), response.getStatusInfo(), sw.stop().getMillis());
             if (SUCCESSFUL.equals(response.getStatusInfo().getFamily())) {
                 return true;
             } else {
@@ -83,80 +125,6 @@ public class ThreeScaleBackendCommunicationComponent {
         }
     }
 
-    private List<Form> splitAndTransform(List<Map<String, String>> transactions) {
-        final AtomicInteger counter = new AtomicInteger();
-        Collection<List<Map<String, String>>> transactionChunk = transactions.stream()
-                .collect(groupingBy(it -> counter.getAndIncrement() / MAX_TRANSACTIONS_PER_FORM)) //We split the list into chunks
-                .values();
-
-        return transactionChunk.stream()
-                .map(this::to3ScaleTransactionForm)
-                .collect(toList());
-    }
-
-    private Form to3ScaleTransactionForm(List<Map<String, String>> transactions) {
-        Form form = new Form()
-                .param("service_token", serviceToken)
-                .param("service_id", serviceId);
-
-        for (Map<String, String> transaction : transactions) {
-            for (Map.Entry<String, String> transactionEntry : transaction.entrySet()) {
-                form.param(transactionEntry.getKey(), transactionEntry.getValue());
-            }
-        }
-        return form;
-    }
-
-    private List<Map<String, String>> createTransactions(Map<ResponseSummary, Long> hits) {
-        if (reportResponseCode) {
-            return createUsageAndResponseCodeTransaction(hits);
-        } else {
-            return createUsageTransaction(hits);
-        }
-    }
-
-    private List<Map<String, String>> createUsageTransaction(Map<ResponseSummary, Long> hits) {
-        List<Map<String, String>> transactions = new ArrayList<>();
-
-        for (Map.Entry<ResponseSummary, Long> entry : hits.entrySet()) {
-            //We make one transaction per responseSummary
-            ResponseSummary responseSummary = entry.getKey();
-            Long count = entry.getValue();
-            Map<String, String> transaction = new HashMap<>();
-            final int transactionNumber = transactions.size();
-            transaction.put("transactions[" + transactionNumber + "][app_id]", responseSummary.getClientId());
-            transaction.put("transactions[" + transactionNumber + "][timestamp]", responseSummary.getTimestamp().format(FORMATTER));
-            transaction.put("transactions[" + transactionNumber + "][usage][" + responseSummary.getMetricSysName() + "]", String.valueOf(count));
-            //We do not add [log][code]
-            transactions.add(transaction);
-        }
-
-        return transactions;
-    }
-
-    private List<Map<String, String>> createUsageAndResponseCodeTransaction(Map<ResponseSummary, Long> hits) {
-        List<Map<String, String>> transactions = new ArrayList<>();
-
-        for (Map.Entry<ResponseSummary, Long> entry : hits.entrySet()) {
-            ResponseSummary responseSummary = entry.getKey();
-            Long count = entry.getValue();
-
-            //We make one transaction per hit, because 3Scale cannot aggregate [log][code]
-            for (int i = 0; i < count; i++) {
-                Map<String, String> transaction = new HashMap<>();
-                final int transactionNumber = transactions.size();
-                transaction.put("transactions[" + transactionNumber + "][app_id]", responseSummary.getClientId());
-                transaction.put("transactions[" + transactionNumber + "][timestamp]", responseSummary.getTimestamp().format(FORMATTER));
-
-                transaction.put("transactions[" + transactionNumber + "][usage][" + responseSummary.getMetricSysName() + "]", "1");
-                transaction.put("transactions[" + transactionNumber + "][log][code]", String.valueOf(responseSummary.getHttpStatus()));
-                transactions.add(transaction);
-            }
-        }
-
-        return transactions;
-    }
-
     public ThreeScalePlanResult loadThreeScalePlan(String clientId) {
         final StopWatch sw = new StopWatch().start();
         final String url = backendUrl + "/transactions/oauth_authorize.xml"; // Does only exist in XML unfortunately
@@ -174,4 +142,15 @@ public class ThreeScaleBackendCommunicationComponent {
             throw new ThreeScaleAdapterException(String.format("Error when loading the initial client usage stats. ServiceId: %s, ClientId: %s, url: %s", serviceId, clientId, url), e);
         }
     }
+
+    private static final class ReportThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadNumber = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            final Thread thread = new Thread(runnable, "apim-report-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
 }
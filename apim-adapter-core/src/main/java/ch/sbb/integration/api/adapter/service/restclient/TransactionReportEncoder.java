@@ -0,0 +1,231 @@
+package ch.sbb.integration.api.adapter.service.restclient;
+
+import ch.sbb.integration.api.adapter.model.reporting.ResponseSummary;
+
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Encodes hits as 3Scale transactions (application/x-www-form-urlencoded) in chunks of at most
+ * {@code maxTransactionsPerChunk} transactions.
+ * <p>
+ * The transactions of a chunk are written straight into the byte buffer of a {@link Chunk}. Chunks are meant to be
+ * reused once they were posted, so the memory needed for a report depends on the chunk size and the number of chunks
+ * in flight, but not on the number of hits. Without {@code reportResponseCode} one transaction is written per
+ * {@link ResponseSummary}, with it one transaction per hit, because 3Scale cannot aggregate [log][code]. The
+ * transactions are numbered per chunk.
+ * <p>
+ * Every chunk knows the hits it contains, so the hits of a chunk which could not be posted can be reported again.
+ * Not thread safe, use one encoder per report.
+ */
+final class TransactionReportEncoder {
+
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss Z");
+
+    private static final byte[] TRANSACTION_PREFIX = ascii("&transactions%5B");
+    private static final byte[] APP_ID = ascii("%5D%5Bapp_id%5D=");
+    private static final byte[] TIMESTAMP = ascii("%5D%5Btimestamp%5D=");
+    private static final byte[] USAGE = ascii("%5D%5Busage%5D%5B");
+    private static final byte[] USAGE_VALUE = ascii("%5D=");
+    private static final byte[] LOG_CODE = ascii("%5D%5Blog%5D%5Bcode%5D=");
+    private static final byte[] HEX = ascii("0123456789ABCDEF");
+    private static final int INITIAL_BUFFER_SIZE = 8 * 1024;
+
+    private final byte[] header;
+    private final boolean reportResponseCode;
+    private final int maxTransactionsPerChunk;
+    private final Iterator<Map.Entry<ResponseSummary, Long>> entries;
+    private final long totalTransactions;
+
+    /**
+     * The timestamps are minute buckets, so a report only contains a few distinct ones
+     */
+    private final Map<Long, byte[]> encodedTimestamps = new HashMap<>();
+
+    // the summary currently being encoded and how many of its transactions are not yet written
+    private ResponseSummary summary;
+    private long summaryCount;
+    private long summaryTransactionsLeft;
+    private byte[] encodedClientId;
+    private byte[] encodedMetric;
+    private byte[] encodedTimestamp;
+    private byte[] encodedHttpStatus;
+
+    TransactionReportEncoder(String serviceToken, String serviceId, boolean reportResponseCode, int maxTransactionsPerChunk, Map<ResponseSummary, Long> hits) {
+        this.header = ascii("service_token=" + encode(serviceToken) + "&service_id=" + encode(serviceId));
+        this.reportResponseCode = reportResponseCode;
+        this.maxTransactionsPerChunk = maxTransactionsPerChunk;
+        this.entries = hits.entrySet().iterator();
+        this.totalTransactions = reportResponseCode ? hits.values().stream().mapToLong(Long::longValue).sum() : hits.size();
+    }
+
+    long getTotalTransactions() {
+        return totalTransactions;
+    }
+
+    long getTotalChunks() {
+        return (totalTransactions + maxTransactionsPerChunk - 1) / maxTransactionsPerChunk;
+    }
+
+    /**
+     * Encodes the next transactions into the given chunk, replacing its previous content.
+     *
+     * @return false if all transactions were already encoded
+     */
+    boolean nextChunk(Chunk chunk) {
+        chunk.reset(header);
+        while (chunk.transactions < maxTransactionsPerChunk && nextTransaction()) {
+            writeTransaction(chunk, chunk.transactions++);
+        }
+        return chunk.transactions > 0;
+    }
+
+    private boolean nextTransaction() {
+        if (summaryTransactionsLeft > 0) {
+            return true;
+        }
+        while (entries.hasNext()) {
+            final Map.Entry<ResponseSummary, Long> entry = entries.next();
+            final long count = entry.getValue();
+            if (count <= 0) {
+                continue;
+            }
+            summary = entry.getKey();
+            summaryCount = count;
+            summaryTransactionsLeft = reportResponseCode ? count : 1;
+            encodedClientId = ascii(encode(summary.getClientId()));
+            encodedMetric = ascii(encode(summary.getMetricSysName()));
+            encodedTimestamp = encodedTimestamps.computeIfAbsent(summary.getEpochMinute(),
+                    minute -> ascii(encode(summary.getTimestamp().format(FORMATTER))));
+            encodedHttpStatus = ascii(String.valueOf(summary.getHttpStatus()));
+            return true;
+        }
+        return false;
+    }
+
+    private void writeTransaction(Chunk chunk, int transactionNumber) {
+        summaryTransactionsLeft--;
+
+        writeField(chunk, transactionNumber, APP_ID);
+        chunk.write(encodedClientId);
+        writeField(chunk, transactionNumber, TIMESTAMP);
+        chunk.write(encodedTimestamp);
+        writeField(chunk, transactionNumber, USAGE);
+        chunk.write(encodedMetric);
+        chunk.write(USAGE_VALUE);
+        if (reportResponseCode) {
+            chunk.write((byte) '1');
+            writeField(chunk, transactionNumber, LOG_CODE);
+            chunk.write(encodedHttpStatus);
+            chunk.hits.merge(summary, 1L, Long::sum);
+        } else {
+            chunk.writeNumber(summaryCount);
+            chunk.hits.put(summary, summaryCount);
+        }
+    }
+
+    private static void writeField(Chunk chunk, int transactionNumber, byte[] field) {
+        chunk.write(TRANSACTION_PREFIX);
+        chunk.writeNumber(transactionNumber);
+        chunk.write(field);
+    }
+
+    /**
+     * An encoded form with the hits it contains, reusable for several chunks of a report
+     */
+    static final class Chunk implements StreamingOutput {
+        private final Map<ResponseSummary, Long> hits = new HashMap<>();
+        private byte[] header;
+        private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+        private int length;
+        private int transactions;
+
+        int getTransactions() {
+            return transactions;
+        }
+
+        Map<ResponseSummary, Long> getHits() {
+            return Collections.unmodifiableMap(hits);
+        }
+
+        @Override
+        public void write(OutputStream output) throws IOException {
+            output.write(header);
+            output.write(buffer, 0, length);
+        }
+
+        private void reset(byte[] header) {
+            this.header = header;
+            hits.clear();
+            length = 0;
+            transactions = 0;
+        }
+
+        private void writeNumber(long number) {
+            if (number == 0) {
+                write((byte) '0');
+                return;
+            }
+            ensureCapacity(20);
+            final int start = length;
+            for (long n = number; n > 0; n /= 10) {
+                buffer[length++] = (byte) ('0' + n % 10);
+            }
+            // digits were written least significant first
+            for (int i = start, j = length - 1; i < j; i++, j--) {
+                final byte digit = buffer[i];
+                buffer[i] = buffer[j];
+                buffer[j] = digit;
+            }
+        }
+
+        private void write(byte[] bytes) {
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buffer, length, bytes.length);
+            length += bytes.length;
+        }
+
+        private void write(byte b) {
+            ensureCapacity(1);
+            buffer[length++] = b;
+        }
+
+        private void ensureCapacity(int additionalBytes) {
+            if (length + additionalBytes > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + additionalBytes));
+            }
+        }
+    }
+
+    /**
+     * Same encoding as {@link java.net.URLEncoder} with UTF-8, which is what JAX-RS forms use
+     */
+    static String encode(String value) {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        final StringBuilder encoded = new StringBuilder(bytes.length);
+        for (byte b : bytes) {
+            final int c = b & 0xFF;
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || c == '.' || c == '-' || c == '*' || c == '_') {
+                encoded.append((char) c);
+            } else if (c == ' ') {
+                encoded.append('+');
+            } else {
+                encoded.append('%').append((char) HEX[c >> 4]).append((char) HEX[c & 0xF]);
+            }
+        }
+        return encoded.toString();
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
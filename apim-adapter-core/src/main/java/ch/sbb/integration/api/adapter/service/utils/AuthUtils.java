@@ -1,7 +1,5 @@
 package ch.sbb.integration.api.adapter.service.utils;
 
-import java.util.regex.Pattern;
-
 import static ch.sbb.integration.api.adapter.config.ReasonCode.APIM_3016;
 
 public class AuthUtils {
@@ -10,14 +8,44 @@ public class AuthUtils {
 
     public static final String HTTP_AUTHORIZATION_HEADER_NAME = "Authorization";
     private static final String HTTP_AUTHORIZATION_HEADER_VALUE_BEARER_PREFIX = "Bearer ";
-    private static final Pattern BEARER_PATTERN = Pattern.compile(HTTP_AUTHORIZATION_HEADER_VALUE_BEARER_PREFIX);
 
     public static String extractJwtFromAuthHeader(String httpAuthorizationHeaderValue) {
         if (httpAuthorizationHeaderValue != null) {
-            return BEARER_PATTERN.matcher(httpAuthorizationHeaderValue).replaceFirst("").trim();
+            return httpAuthorizationHeaderValue.substring(tokenBeginIndex(httpAuthorizationHeaderValue), tokenEndIndex(httpAuthorizationHeaderValue));
         } else {
-            return httpAuthorizationHeaderValue;
+            return null;
+        }
+    }
+
+    /**
+     * @return the index of the token in the header value, after the bearer prefix and any whitespace
+     */
+    public static int tokenBeginIndex(String httpAuthorizationHeaderValue) {
+        int begin = skipWhitespace(httpAuthorizationHeaderValue, 0);
+        if (httpAuthorizationHeaderValue.startsWith(HTTP_AUTHORIZATION_HEADER_VALUE_BEARER_PREFIX, begin)) {
+            begin = skipWhitespace(httpAuthorizationHeaderValue, begin + HTTP_AUTHORIZATION_HEADER_VALUE_BEARER_PREFIX.length());
+        }
+        return begin;
+    }
+
+    /**
+     * @return the index after the token in the header value, before any trailing whitespace
+     */
+    public static int tokenEndIndex(String httpAuthorizationHeaderValue) {
+        final int begin = tokenBeginIndex(httpAuthorizationHeaderValue);
+        int end = httpAuthorizationHeaderValue.length();
+        while (end > begin && httpAuthorizationHeaderValue.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return end;
+    }
+
+    private static int skipWhitespace(String value, int index) {
+        int i = index;
+        while (i < value.length() && value.charAt(i) <= ' ') {
+            i++;
         }
+        return i;
     }
 
     public static String mapJwtToHttpAuthorizationHeaderValue(String token) {
@@ -0,0 +1,91 @@
+package ch.sbb.integration.api.adapter.service.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Clock for the request path with a resolution of about 10 milliseconds, which is plenty for its callers: they work
+ * with periods, minutes and log intervals.
+ * <p>
+ * While an adapter service runs, a single daemon thread publishes the wall clock time into a volatile field once per
+ * tick, so reading the time is a plain volatile read instead of a call to the system clock and allocates nothing
+ * (unlike e.g. {@link java.time.ZonedDateTime#now()}). The thread stops once the last service is closed, the clock
+ * then reads the system clock.
+ */
+public final class CoarseClock {
+
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(10L);
+
+    private static volatile long currentTimeMillis;
+    private static volatile boolean ticking;
+
+    /**
+     * Guarded by the class
+     */
+    private static int runningServices;
+    private static Thread ticker;
+
+    private CoarseClock() {
+    }
+
+    /**
+     * @return milliseconds since the epoch, at most about 10 milliseconds behind {@link System#currentTimeMillis()}
+     */
+    public static long currentTimeMillis() {
+        return ticking ? currentTimeMillis : System.currentTimeMillis();
+    }
+
+    /**
+     * Starts ticking for a service, until the returned ticking is closed
+     */
+    public static synchronized Ticking start() {
+        if (runningServices++ == 0) {
+            currentTimeMillis = System.currentTimeMillis();
+            ticking = true;
+            ticker = new Thread(CoarseClock::tick, "apim-coarse-clock");
+            ticker.setDaemon(true);
+            ticker.start();
+        }
+        return new Ticking();
+    }
+
+    static synchronized boolean isTicking() {
+        return ticker != null;
+    }
+
+    private static synchronized void release() {
+        if (--runningServices == 0) {
+            ticking = false;
+            ticker.interrupt();
+            ticker = null;
+        }
+    }
+
+    private static void tick() {
+        while (!Thread.currentThread().isInterrupted()) {
+            currentTimeMillis = System.currentTimeMillis();
+            LockSupport.parkNanos(TICK_NANOS);
+        }
+    }
+
+    /**
+     * The clock ticking for a service
+     */
+    public static final class Ticking implements AutoCloseable {
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Ticking() {
+        }
+
+        /**
+         * Stops the ticking if no other service needs it, closing it again has no effect
+         */
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                release();
+            }
+        }
+    }
+}
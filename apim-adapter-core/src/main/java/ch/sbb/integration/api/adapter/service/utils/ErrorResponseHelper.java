@@ -8,19 +8,38 @@ import org.apache.http.HttpStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
 import static ch.sbb.integration.api.adapter.config.ReasonCode.APIM_1033;
 
 public class ErrorResponseHelper {
 
     private static final Logger LOG = LoggerFactory.getLogger(ErrorResponseHelper.class);
+    private static final int REJECTION_LOG_INTERVAL_SECONDS = 10;
+    /**
+     * The realms are those of the trusted token issuers, this only guards against a pattern matching any realm
+     */
+    private static final int MAXIMUM_CACHED_REALMS = 100;
 
     private ApimAdapterConfig config;
 
+    /**
+     * The parts of the error responses which do not depend on the request, by realm and reason
+     */
+    private final ConcurrentMap<String, Map<ErrorReason, ErrorTemplate>> templates = new ConcurrentHashMap<>();
+    private final Map<ErrorReason, LogThrottle> rejectionLogs = new EnumMap<>(ErrorReason.class);
+
     public ErrorResponseHelper(ApimAdapterConfig config) {
         this.config = config;
+        for (ErrorReason reason : ErrorReason.values()) {
+            rejectionLogs.put(reason, new LogThrottle(REJECTION_LOG_INTERVAL_SECONDS, TimeUnit.SECONDS));
+        }
     }
 
     public AuthRepResponse createErrorAuthResponse(OAuthToken oAuthToken, ErrorReason reason, String path, String queryString, HttpMethod method, List<String> metricSysNames) {
@@ -40,38 +59,76 @@ public class ErrorResponseHelper {
 
     public AuthRepResponse createErrorAuthResponse(String realm, String clientId, ErrorReason reason, String path, String queryString, HttpMethod method, List<String> metricSysNames) {
         if (ErrorResponseHelper.isNotMonitoringUrl(path)) {
-            LOG.info(APIM_1033.pattern(), clientId, reason.getHttpStatus(), reason.getMessage(), path, method);
+            logRejection(clientId, reason, path, method);
         }
 
+        final ErrorTemplate template = getTemplates(realm).get(reason);
         // I would vote for production mode removal
         if (config.isAdapterProductionMode()) {
             // not sure if we should distinguish the status codes here - this makes it harder to troubleshoot issues.
-            return handleAuthTokenRelatedReasons(realm, clientId, reason, path, queryString, method, metricSysNames, reason.getMessage()).
-                    orElse(new AuthRepResponse(false, clientId, HttpStatus.SC_FORBIDDEN, metricSysNames, "forbidden", path, queryString, method));
+            return new AuthRepResponse(false, clientId, template.httpStatus, template.wwwAuthenticateResponseHeader, metricSysNames, template.message, path, queryString, method);
         } else {
             final String msg = createExtendedMessage(reason.getMessage(), path, queryString, method);
-            return handleAuthTokenRelatedReasons(realm, clientId, reason, path, queryString, method, metricSysNames, msg).
-                    orElse(new AuthRepResponse(false, clientId, reason.getHttpStatus(), metricSysNames, msg, path, queryString, method));
+            return new AuthRepResponse(false, clientId, reason.getHttpStatus(), template.wwwAuthenticateResponseHeader, metricSysNames, msg, path, queryString, method);
+        }
+    }
+
+    /**
+     * A flood of rejected requests is logged with one entry per reason and interval
+     */
+    private void logRejection(String clientId, ErrorReason reason, String path, HttpMethod method) {
+        final long suppressedEntries = rejectionLogs.get(reason).acquire();
+        if (suppressedEntries >= 0) {
+            LOG.info(APIM_1033.pattern(), clientId, reason.getHttpStatus(), reason.getMessage(), path, method, suppressedEntries);
         }
     }
 
-    private Optional<AuthRepResponse> handleAuthTokenRelatedReasons(String realm, String clientId, ErrorReason reason, String path, String queryString, HttpMethod method, List<String> metricSysNames, String msg) {
-        if (realm == null || realm.isEmpty()) {
-            realm = AuthUtils.RH_SSO_REALM;
+    private Map<ErrorReason, ErrorTemplate> getTemplates(String realm) {
+        final String templateRealm = realm == null || realm.isEmpty() ? AuthUtils.RH_SSO_REALM : realm;
+        final Map<ErrorReason, ErrorTemplate> realmTemplates = templates.get(templateRealm);
+        if (realmTemplates != null) {
+            return realmTemplates;
         }
+        if (templates.size() >= MAXIMUM_CACHED_REALMS) {
+            return createTemplates(templateRealm);
+        }
+        return templates.computeIfAbsent(templateRealm, ErrorResponseHelper::createTemplates);
+    }
+
+    private static Map<ErrorReason, ErrorTemplate> createTemplates(String realm) {
+        final Map<ErrorReason, ErrorTemplate> realmTemplates = new EnumMap<>(ErrorReason.class);
+        for (ErrorReason reason : ErrorReason.values()) {
+            switch (reason) {
+                case TOKEN_VALIDATION_FAILED:
+                case EXPIRED_OR_INVALID:
+                    final String wwwAuthenticateBearerInvalidToken = "Bearer realm=\"" + realm + "\",\n" +
+                            "error=\"invalid_token\",\n" +
+                            "error_description=\"The access token expired\"\n";
+                    realmTemplates.put(reason, new ErrorTemplate(reason.getHttpStatus(), wwwAuthenticateBearerInvalidToken, reason.getMessage()));
+                    break;
+                case UNAUTHORIZED:
+                    final String wwwAuthenticateBearer = "Bearer realm=\"" + realm + "\"";
+                    realmTemplates.put(reason, new ErrorTemplate(reason.getHttpStatus(), wwwAuthenticateBearer, reason.getMessage()));
+                    break;
+                default:
+                    realmTemplates.put(reason, new ErrorTemplate(HttpStatus.SC_FORBIDDEN, null, "forbidden"));
+            }
+        }
+        return Collections.unmodifiableMap(realmTemplates);
+    }
 
-        switch (reason) {
-            case TOKEN_VALIDATION_FAILED:
-            case EXPIRED_OR_INVALID:
-                final String wwwAuthenticateBearerInvalidToken = String.format("Bearer realm=\"%s\",\n" +
-                        "error=\"invalid_token\",\n" +
-                        "error_description=\"The access token expired\"\n", realm);
-                return Optional.of(new AuthRepResponse(false, clientId, reason.getHttpStatus(), wwwAuthenticateBearerInvalidToken, metricSysNames, msg, path, queryString, method));
-            case UNAUTHORIZED:
-                final String wwwAuthenticateBearer = String.format("Bearer realm=\"%s\"", realm);
-                return Optional.of(new AuthRepResponse(false, clientId, reason.getHttpStatus(), wwwAuthenticateBearer, metricSysNames, msg, path, queryString, method));
-            default:
-                return Optional.empty();
+    /**
+     * The status, WWW-Authenticate header and message of an error response in production mode
+     */
+    private static final class ErrorTemplate {
+        private final int httpStatus;
+        private final String wwwAuthenticateResponseHeader;
+        private final String message;
+
+        private ErrorTemplate(int httpStatus, String wwwAuthenticateResponseHeader, String message) {
+            this.httpStatus = httpStatus;
+            this.wwwAuthenticateResponseHeader = wwwAuthenticateResponseHeader;
+            this.message = message;
         }
     }
 
@@ -0,0 +1,32 @@
+package ch.sbb.integration.api.adapter.service.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits a log entry which is caused by client requests to one per interval, so a flood of bad requests does not
+ * flood the log as well. The entries which are not written are counted.
+ */
+public final class LogThrottle {
+
+    private final long intervalMillis;
+    private final AtomicLong nextEntryMillis = new AtomicLong();
+    private final AtomicLong suppressedEntries = new AtomicLong();
+
+    public LogThrottle(long interval, TimeUnit unit) {
+        this.intervalMillis = unit.toMillis(interval);
+    }
+
+    /**
+     * @return the number of entries suppressed since the last entry written, -1 if this entry must not be written
+     */
+    public long acquire() {
+        final long now = CoarseClock.currentTimeMillis();
+        final long nextEntry = nextEntryMillis.get();
+        if (now >= nextEntry && nextEntryMillis.compareAndSet(nextEntry, now + intervalMillis)) {
+            return suppressedEntries.getAndSet(0);
+        }
+        suppressedEntries.incrementAndGet();
+        return -1;
+    }
+}
@@ -15,6 +15,9 @@ import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.mock.web.MockHttpServletResponse;
 
 import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.util.Collections;
 
@@ -27,6 +30,12 @@ import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
 
 public class ApimAdapterFilterTest extends AbstractWiremockTest {
 
@@ -35,12 +44,13 @@ public class ApimAdapterFilterTest extends AbstractWiremockTest {
 	private MockFilterChain mockFilterChain = new MockFilterChain();
 	
 	private ApimAdapterFilter filter;
+	private ApimAdapterService service;
 	
 	@Before
     public void initStubs() {
 		WireMock.reset();
         StubGenerator.instantiateAll();
-		ApimAdapterService service = ApimAdapterFactory.createApimAdapterService();
+		service = spy(ApimAdapterFactory.createApimAdapterService());
         filter = new ApimAdapterFilter(service, Collections.emptyList());
 		
     }
@@ -65,6 +75,34 @@ public class ApimAdapterFilterTest extends AbstractWiremockTest {
 		assertEquals(null, mockHttpServletResponse.getErrorMessage());
 	}
 	
+	@Test
+	public void testFilterAsyncReportsStatusOnCompletion() throws IOException, ServletException {
+		mockHttpServletRequest.setRequestURI(V1_LOCATIONS);
+		mockHttpServletRequest.setMethod(HttpMethod.GET.toString());
+		mockHttpServletRequest.setAsyncSupported(true);
+		String token = TokenGenerator.getInstance().generateBearerToken(CLIENT_ID, 30_000);
+		mockHttpServletRequest.addHeader(HTTP_AUTHORIZATION_HEADER_NAME, mapJwtToHttpAuthorizationHeaderValue(token));
+
+		stubFor(get(patternForAuthorization())
+                .atPriority(5)
+                .willReturn(aResponse()
+                        .withStatus(HttpStatus.SC_OK)
+                        .withBody(StubGenerator.authResponseForAnUnlimitedPlan())));
+		MockFilterChain asyncFilterChain = new MockFilterChain(new HttpServlet() {
+			@Override
+			protected void doGet(HttpServletRequest req, HttpServletResponse resp) {
+				req.startAsync();
+			}
+		});
+
+		filter.doFilter(mockHttpServletRequest, mockHttpServletResponse, asyncFilterChain);
+		verify(service, never()).reportHit(any(), anyInt());
+		mockHttpServletResponse.setStatus(HttpStatus.SC_CREATED);
+		mockHttpServletRequest.getAsyncContext().complete();
+
+		verify(service).reportHit(any(), eq(HttpStatus.SC_CREATED));
+	}
+
 	@Test
 	public void testFilterFailure() throws IOException, ServletException {
 		mockHttpServletRequest.setRequestURI(V1_LOCATIONS);
@@ -0,0 +1,154 @@
+package ch.sbb.integration.api.adapter.model;
+
+import ch.sbb.integration.api.adapter.model.usage.Client;
+import ch.sbb.integration.api.adapter.model.usage.ClientSyncState;
+import ch.sbb.integration.api.adapter.model.usage.MetricUsage;
+import org.junit.Test;
+
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static java.time.ZonedDateTime.now;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class ClientTest {
+
+    private static final String CLIENT_ID = "CLIENT_ID";
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss Z");
+
+    @Test
+    public void incrementUsage_thenCountedOnCachedUsage() {
+        //Arrange
+        MetricUsage hits = limitedMetric("hits", 2L, 0);
+        Client testee = clientWith(hits, MetricUsage.unlimitedMetric(CLIENT_ID, "locations"));
+
+        //Act
+        boolean first = testee.incrementUsage(new String("hits"));
+        boolean second = testee.incrementUsage("hits");
+        boolean third = testee.incrementUsage("hits");
+
+        //Assert
+        assertThat(first, is(true));
+        assertThat(second, is(true));
+        assertThat(third, is(false));
+        assertThat(testee.getUsage("hits"), is(sameInstance(hits)));
+        assertThat(hits.getCurrentUsage().get(), is(3L));
+    }
+
+    @Test
+    public void incrementUsageOfUnknownMetric_thenAllowed() {
+        //Arrange
+        Client testee = clientWith(limitedMetric("hits", 0L, 0));
+
+        //Act
+        boolean allowed = testee.incrementUsage("unknown");
+
+        //Assert
+        assertThat(allowed, is(true));
+        assertThat(testee.getUsage("unknown"), is(nullValue()));
+    }
+
+    @Test
+    public void incrementUsageOfPastPeriod_thenUsageIsRolledOver() {
+        //Arrange
+        MetricUsage pastPeriod = limitedMetric("hits", 1L, 2);
+        pastPeriod.incrementCurrentUsage();
+        Client testee = clientWith(pastPeriod);
+
+        //Act
+        boolean allowed = testee.incrementUsage("hits");
+
+        //Assert
+        MetricUsage currentPeriod = testee.getUsage("hits");
+        assertThat(allowed, is(true));
+        assertThat(currentPeriod, is(not(sameInstance(pastPeriod))));
+        assertThat(currentPeriod.getCurrentUsage().get(), is(1L));
+    }
+
+    @Test
+    public void updateMetricUsage_thenAddedReplacedAndRemoved() {
+        //Arrange
+        Client testee = clientWith(limitedMetric("hits", 10L, 0));
+        MetricUsage replacement = limitedMetric("hits", 20L, 0);
+
+        //Act
+        testee.updateMetricUsage("locations", existing -> existing == null ? MetricUsage.unlimitedMetric(CLIENT_ID, "locations") : existing);
+        testee.updateMetricUsage("hits", existing -> replacement);
+        testee.updateMetricUsage("locations", existing -> null);
+
+        //Assert
+        assertThat(testee.getMetricSysNames(), containsInAnyOrder("hits"));
+        assertThat(testee.getUsage("hits"), is(sameInstance(replacement)));
+        assertThat(testee.getUsage("locations"), is(nullValue()));
+    }
+
+    @Test
+    public void deleteNoneMatchingMetrics_thenOnlyKnownMetricsRemain() {
+        //Arrange
+        Client testee = clientWith(limitedMetric("hits", 10L, 0),
+                limitedMetric("locations", 10L, 0),
+                limitedMetric("stations", 10L, 0));
+
+        //Act
+        testee.deleteNoneMatchingMetrics(Arrays.asList("hits", "stations"));
+
+        //Assert
+        assertThat(testee.getMetricSysNames(), containsInAnyOrder("hits", "stations"));
+        assertThat(testee.incrementUsage("stations"), is(true));
+    }
+
+    @Test
+    public void incrementUsageWhileMetricIsAdded_thenNoHitLost() throws Exception {
+        //Arrange
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            for (int round = 0; round < 1_000; round++) {
+                Client testee = clientWith(limitedMetric("hits", 100L, 2));
+                CountDownLatch started = new CountDownLatch(1);
+
+                //Act
+                Future<?> requests = executor.submit(() -> {
+                    started.countDown();
+                    for (int i = 0; i < 10; i++) {
+                        testee.incrementUsage("hits");
+                    }
+                });
+                started.await();
+                // the first request rolls the usage over to the current period while the table is replaced
+                testee.updateMetricUsage("locations", existing -> MetricUsage.unlimitedMetric(CLIENT_ID, "locations"));
+                requests.get(5, TimeUnit.SECONDS);
+
+                //Assert
+                assertThat(testee.getUsage("hits").getCurrentUsage().get(), is(10L));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Client clientWith(MetricUsage... metricUsages) {
+        Map<String, MetricUsage> usageMap = new HashMap<>();
+        for (MetricUsage metricUsage : metricUsages) {
+            usageMap.put(metricUsage.getMetricSysName(), metricUsage);
+        }
+        return new Client(CLIENT_ID, usageMap, ClientSyncState.OK);
+    }
+
+    private static MetricUsage limitedMetric(String metricSysName, Long limit, int daysAgo) {
+        return MetricUsage.limitedMetric(CLIENT_ID, metricSysName, limit, 0L,
+                now().minusDays(daysAgo).minusHours(1).format(FORMATTER),
+                now().minusDays(daysAgo).plusHours(1).format(FORMATTER));
+    }
+}
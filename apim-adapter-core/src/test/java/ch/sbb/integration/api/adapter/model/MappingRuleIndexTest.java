@@ -0,0 +1,150 @@
+package ch.sbb.integration.api.adapter.model;
+
+import ch.sbb.integration.api.adapter.service.utils.HttpMethod;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class MappingRuleIndexTest {
+
+    @Test
+    public void whenLiteralPattern_thenPrefixMatches() {
+        //Arrange
+        MappingRuleIndex testee = MappingRuleIndex.of(singleMetric("locations", "/v1/locations", "GET"));
+
+        //Act & Assert
+        assertMatch(testee.match("/v1/locations", HttpMethod.GET), "locations");
+        assertMatch(testee.match("/v1/locations/4711", HttpMethod.GET), "locations");
+        assertMatch(testee.match("/v1/locationsXYZ", HttpMethod.GET), "locations");
+        assertNoMatch(testee.match("/v1/location", HttpMethod.GET));
+        assertNoMatch(testee.match("/v2/locations", HttpMethod.GET));
+    }
+
+    @Test
+    public void whenDollarAtEnd_thenFixEnd() {
+        //Arrange
+        MappingRuleIndex testee = MappingRuleIndex.of(singleMetric("locations", "/v1/locations/{id}/$", "GET"));
+
+        //Act & Assert
+        assertMatch(testee.match("/v1/locations/4711/", HttpMethod.GET), "locations");
+        assertNoMatch(testee.match("/v1/locations/4711/foo", HttpMethod.GET));
+        assertNoMatch(testee.match("/v1/locations//", HttpMethod.GET));
+    }
+
+    @Test
+    public void whenWildcard_thenSpansSegmentsLikeRegex() {
+        //Arrange
+        MappingRuleIndex testee = MappingRuleIndex.of(singleMetric("json", "/url/{pattern}.json", "GET"));
+
+        //Act & Assert
+        assertMatch(testee.match("/url/some-file.json", HttpMethod.GET), "json");
+        assertMatch(testee.match("/url/some/deep/file.json?foo=bar", HttpMethod.GET), "json");
+        assertNoMatch(testee.match("/url/.json", HttpMethod.GET));
+        assertNoMatch(testee.match("/url/some-file.xml", HttpMethod.GET));
+    }
+
+    @Test
+    public void whenQueryStringPattern_thenQueryStringMatches() {
+        //Arrange
+        MappingRuleIndex testee = MappingRuleIndex.of(singleMetric("search", "/v1/search?name={name}&version=2", "GET"));
+
+        //Act & Assert
+        assertMatch(testee.match("/v1/search?name=foo&version=2", HttpMethod.GET), "search");
+        assertNoMatch(testee.match("/v1/search?name=foo&version=1", HttpMethod.GET));
+        assertNoMatch(testee.match("/v1/search", HttpMethod.GET));
+    }
+
+    @Test
+    public void whenPathMatchesButMethodNot_thenPathMatchingWithoutMetrics() {
+        //Arrange
+        MappingRuleIndex testee = MappingRuleIndex.of(singleMetric("locations", "/v1/locations", "GET"));
+
+        //Act
+        MetricMatchingResult result = testee.match("/v1/locations", HttpMethod.POST);
+
+        //Assert
+        assertThat(result.isPathMatching(), is(true));
+        assertThat(result.getMetricSystemNames(), is(empty()));
+    }
+
+    @Test
+    public void whenMethodUnknown_thenPathMatchingWithoutMetrics() {
+        //Arrange
+        MappingRuleIndex testee = MappingRuleIndex.of(singleMetric("locations", "/v1/locations", "GET"));
+
+        //Act
+        MetricMatchingResult result = testee.match("/v1/locations", null);
+
+        //Assert
+        assertThat(result.isPathMatching(), is(true));
+        assertThat(result.getMetricSystemNames(), is(empty()));
+    }
+
+    @Test
+    public void whenSeveralMetricsMatch_thenDistinctSystemNamesInMetricOrder() {
+        //Arrange
+        MappingRule locations = new MappingRule("1", "m1", "/v1/locations", "GET");
+        MappingRule locationDetail = new MappingRule("2", "m2", "/v1/locations/{id}", "GET");
+        MappingRule root = new MappingRule("3", "m3", "/", "GET");
+        List<Metric> metrics = asList(
+                new Metric("m0", "Hits", "hits", asList(locations, locationDetail, root)),
+                new Metric("m1", "Locations", "locations", asList(locations, root)),
+                new Metric("m2", "Location detail", "location-detail", asList(locationDetail)));
+        MappingRuleIndex testee = MappingRuleIndex.of(metrics);
+
+        //Act
+        MetricMatchingResult result = testee.match("/v1/locations/4711", HttpMethod.GET);
+
+        //Assert
+        assertThat(result.isPathMatching(), is(true));
+        assertThat(result.getMetricSystemNames(), contains("hits", "locations", "location-detail"));
+    }
+
+    @Test
+    public void whenPatternContainsRegexCharacter_thenFallbackToRegex() {
+        //Arrange
+        MappingRule mappingRule = new MappingRule("1", "m1", "/v1/a$b", "GET");
+        MappingRuleIndex testee = MappingRuleIndex.of(singletonMetric("ab", mappingRule));
+
+        //Act
+        MetricMatchingResult result = testee.match("/v1/a$b", HttpMethod.GET);
+
+        //Assert
+        assertThat(result.isPathMatching(), is(mappingRule.getPattern().matcher("/v1/a$b").matches()));
+    }
+
+    @Test
+    public void whenNoMetrics_thenNoMatch() {
+        //Arrange
+        MappingRuleIndex testee = MappingRuleIndex.of(emptyList());
+
+        //Act & Assert
+        assertNoMatch(testee.match("/", HttpMethod.GET));
+    }
+
+    private static List<Metric> singleMetric(String systemName, String pattern, String method) {
+        return singletonMetric(systemName, new MappingRule("1", "m1", pattern, method));
+    }
+
+    private static List<Metric> singletonMetric(String systemName, MappingRule mappingRule) {
+        return Arrays.asList(new Metric("m1", systemName, systemName, asList(mappingRule)));
+    }
+
+    private static void assertMatch(MetricMatchingResult result, String systemName) {
+        assertThat(result.isPathMatching(), is(true));
+        assertThat(result.getMetricSystemNames(), contains(systemName));
+    }
+
+    private static void assertNoMatch(MetricMatchingResult result) {
+        assertThat(result.isPathMatching(), is(false));
+        assertThat(result.getMetricSystemNames(), is(empty()));
+    }
+}
@@ -3,10 +3,13 @@ package ch.sbb.integration.api.adapter.model;
 import ch.sbb.integration.api.adapter.model.usage.MetricUsage;
 import org.junit.Test;
 
+import java.time.Duration;
+import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 
 import static java.time.ZonedDateTime.now;
 import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
 import static org.junit.Assert.assertThat;
 
 public class MetricUsageTest {
@@ -28,4 +31,40 @@ public class MetricUsageTest {
         assertThat(MetricUsage.getCurrentPeriod(currentPeriod), is(currentPeriod));
         assertThat(currentPeriod.getMetricSysName(), is("METRIC_NAME"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void calculateCurrentPeriodOfLongAgo_thenJumpsToPeriodContainingNow() {
+        //Arrange
+        MetricUsage metricUsage = MetricUsage.limitedMetric("CLIENT_ID",
+                "METRIC_NAME",
+                10L,
+                5L,
+                now().minusYears(1).format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss Z")),
+                now().minusYears(1).plusMinutes(1).format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss Z")));
+        ZonedDateTime now = now();
+
+        // Act
+        MetricUsage currentPeriod = MetricUsage.getCurrentPeriod(metricUsage);
+
+        // assert
+        assertThat(currentPeriod.getPeriodStart().isAfter(now.minusMinutes(2)), is(true));
+        assertThat(currentPeriod.getPeriodEnd().isBefore(now.plusMinutes(2)), is(true));
+        assertThat(Duration.between(currentPeriod.getPeriodStart(), currentPeriod.getPeriodEnd()), is(Duration.ofMinutes(1)));
+        assertThat(currentPeriod.getBase(), is(0L));
+        assertThat(currentPeriod.getLimit(), is(10L));
+    }
+
+    @Test
+    public void unlimitedMetric_isAlwaysInPeriod() {
+        //Arrange
+        MetricUsage metricUsage = MetricUsage.unlimitedMetric("CLIENT_ID", "METRIC_NAME");
+
+        // Act
+        MetricUsage currentPeriod = MetricUsage.getCurrentPeriod(metricUsage);
+
+        // assert
+        assertThat(currentPeriod, is(metricUsage));
+        assertThat(currentPeriod.incrementCurrentUsage(), is(true));
+        assertThat(currentPeriod.getLimit(), is(nullValue()));
+    }
+}
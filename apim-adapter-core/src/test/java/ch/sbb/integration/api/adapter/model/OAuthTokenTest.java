@@ -18,7 +18,7 @@ public class OAuthTokenTest {
         assertFalse(oAuthToken.isBearer());
         assertNull(oAuthToken.getClientId());
         assertNull(oAuthToken.getExpiration());
-        assertNull(oAuthToken.getToken());
+        assertNull(oAuthToken.getTokenDigest());
         assertNull(oAuthToken.getType());
         assertNull(oAuthToken.getTokenIssuer());
     }
@@ -29,14 +29,14 @@ public class OAuthTokenTest {
         final long ttlSeconds = 2L;
         final String token = TokenGenerator.getInstance().generateBearerToken(clientId, ttlSeconds);
         final Long expirationMillis = System.currentTimeMillis() + ttlSeconds * 1_000;
-        final OAuthToken oAuthToken = new OAuthToken(OAuthToken.TokenStateEnum.VALID, new TokenIssuer(null, null), token, clientId, expirationMillis / 1000, "Bearer");
+        final OAuthToken oAuthToken = new OAuthToken(OAuthToken.TokenStateEnum.VALID, new TokenIssuer(null, null), TokenDigest.of(token), clientId, expirationMillis / 1000, "Bearer");
         assertEquals(OAuthToken.TokenStateEnum.VALID, oAuthToken.getTokenState());
         assertTrue(oAuthToken.isValid());
         assertFalse(oAuthToken.isExpired());
         assertTrue(oAuthToken.isBearer());
         assertEquals(clientId, oAuthToken.getClientId());
         assertTrue(Math.abs(expirationMillis - oAuthToken.getExpiration()) < 1000);
-        assertEquals(token, oAuthToken.getToken());
+        assertEquals(TokenDigest.of(token), oAuthToken.getTokenDigest());
         assertEquals("Bearer", oAuthToken.getType());
         assertNotNull(oAuthToken.getTokenIssuer());
 
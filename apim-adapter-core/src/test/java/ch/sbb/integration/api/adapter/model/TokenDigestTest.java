@@ -0,0 +1,32 @@
+package ch.sbb.integration.api.adapter.model;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class TokenDigestTest {
+
+    @Test
+    public void digestOfRangeEqualsDigestOfSubstring() {
+        //Arrange
+        final StringBuilder token = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            token.append((char) ('a' + i % 26));
+        }
+        final String authHeader = "Bearer " + token;
+
+        //Act
+        final TokenDigest testee = TokenDigest.of(authHeader, 7, authHeader.length());
+
+        //Assert
+        assertEquals(TokenDigest.of(token.toString()), testee);
+        assertNotEquals(TokenDigest.of(authHeader), testee);
+    }
+
+    @Test
+    public void digestOfNonAsciiRangeEqualsDigestOfSubstring() {
+        final String authHeader = "Bearer t\u00f6k\u00e9n";
+        assertEquals(TokenDigest.of("t\u00f6k\u00e9n"), TokenDigest.of(authHeader, 7, authHeader.length()));
+    }
+}
@@ -9,6 +9,8 @@ import java.nio.charset.StandardCharsets;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 public class JwksTest {
@@ -39,18 +41,21 @@ public class JwksTest {
         verifyKey(jwks, "5dfad4b9");
     }
 
-    private void verifyJwks(Jwks jwks, int nrOfKeys) {
+    private void verifyJwks(Jwks jwks, int nrOfKeys) throws InvalidPublicKeyException {
         assertNotNull(jwks);
         assertNotNull(jwks.getKeys());
         assertEquals(nrOfKeys, jwks.getKeys().size());
         assertEquals(nrOfKeys, jwks.getKeyIds().size());
         assertFalse(jwks.getKey("does-not-exist").isPresent());
+        assertNull(jwks.getRsaPublicKey("does-not-exist"));
     }
 
     private void verifyKey(Jwks jwks, String keyId) throws InvalidPublicKeyException {
         assertNotNull(jwks.getKeys().get(keyId));
         assertNotNull(jwks.getKeys().get(keyId).getRsaPublicKey());
         assertTrue(jwks.getKey(keyId).isPresent());
+        assertEquals(jwks.getKeys().get(keyId).getRsaPublicKey(), jwks.getRsaPublicKey(keyId));
+        assertSame(jwks.getRsaPublicKey(keyId), jwks.getRsaPublicKey(keyId));
     }
 
 }
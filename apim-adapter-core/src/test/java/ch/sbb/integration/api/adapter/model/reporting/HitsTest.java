@@ -2,9 +2,16 @@ package ch.sbb.integration.api.adapter.model.reporting;
 
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.apache.http.HttpStatus.SC_OK;
+import static org.apache.http.HttpStatus.SC_NOT_FOUND;
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
@@ -50,4 +57,96 @@ public class HitsTest {
         assertThat(entries.size(), is(0));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void addHit_thenAggregatedPerResponseSummary() {
+        //Arrange
+        testee.addHit("CLIENT", "GETS", SC_OK);
+        testee.addHit("CLIENT", "GETS", SC_OK);
+        testee.addHit("CLIENT", "GETS", SC_NOT_FOUND);
+
+        //Act
+        Map<ResponseSummary, Long> entries = testee.extractUnreportedHits();
+
+        //Assert
+        assertThat(entries.size(), is(2));
+        assertThat(entries.get(new ResponseSummary("CLIENT", SC_OK, "GETS")), is(2L));
+        assertThat(entries.get(new ResponseSummary("CLIENT", SC_NOT_FOUND, "GETS")), is(1L));
+    }
+
+    @Test
+    public void addUnreportHitsOfPastMinute_thenKeepsMinute() {
+        //Arrange
+        ResponseSummary pastMinute = new ResponseSummary("CLIENT", SC_OK, "GETS", RESPONSE_SUMMARY_1.getEpochMinute() - 10);
+        testee.addUnreportHits(pastMinute, 5L);
+
+        //Act
+        Map<ResponseSummary, Long> entries = testee.extractUnreportedHits();
+
+        //Assert
+        assertThat(entries.size(), is(1));
+        assertThat(entries.get(pastMinute), is(5L));
+        assertThat(testee.extractUnreportedHits().size(), is(0));
+    }
+
+    @Test
+    public void concurrentAddAndExtract_thenNoHitIsLost() throws Exception {
+        //Arrange
+        final int threads = 4;
+        final int hitsPerThread = 50_000;
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        long extracted = 0;
+
+        //Act
+        for (int t = 0; t < threads; t++) {
+            futures.add(executorService.submit(() -> {
+                for (int i = 0; i < hitsPerThread; i++) {
+                    testee.addHit("CLIENT-" + (i % 10), "GETS", SC_OK);
+                }
+            }));
+        }
+        while (!futures.stream().allMatch(Future::isDone)) {
+            extracted += sum(testee.extractUnreportedHits());
+        }
+        extracted += sum(testee.extractUnreportedHits());
+        executorService.shutdown();
+        executorService.awaitTermination(10, TimeUnit.SECONDS);
+
+        //Assert
+        assertThat(extracted, is((long) threads * hitsPerThread));
+    }
+
+    @Test
+    public void concurrentAddOfPastMinuteAndExtract_thenNoHitIsLostWhenBucketRetires() throws Exception {
+        //Arrange
+        final int threads = 4;
+        final int hitsPerThread = 50_000;
+        final long pastMinute = RESPONSE_SUMMARY_1.getEpochMinute() - 10;
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        long extracted = 0;
+
+        //Act
+        for (int t = 0; t < threads; t++) {
+            futures.add(executorService.submit(() -> {
+                for (int i = 0; i < hitsPerThread; i++) {
+                    // like re-queued hits of a failed report, they land in a bucket which every extraction retires
+                    testee.addUnreportHits(new ResponseSummary("CLIENT-" + (i % 10), SC_OK, "GETS", pastMinute), 1L);
+                }
+            }));
+        }
+        while (!futures.stream().allMatch(Future::isDone)) {
+            extracted += sum(testee.extractUnreportedHits());
+        }
+        extracted += sum(testee.extractUnreportedHits());
+        executorService.shutdown();
+        executorService.awaitTermination(10, TimeUnit.SECONDS);
+
+        //Assert
+        assertThat(extracted, is((long) threads * hitsPerThread));
+    }
+
+    private static long sum(Map<ResponseSummary, Long> entries) {
+        return entries.values().stream().mapToLong(Long::longValue).sum();
+    }
+}
@@ -1,16 +1,207 @@
 package ch.sbb.integration.api.adapter.model.tokenissuer;
 
+import ch.sbb.integration.api.adapter.config.ApimAdapterConfig;
+import ch.sbb.integration.api.adapter.config.RestConfig;
+import ch.sbb.integration.api.adapter.service.exception.TokenIssuerException;
+import ch.sbb.integration.api.adapter.service.repository.OfflineConfigurationCacheRepo;
+import ch.sbb.integration.api.adapter.util.Utilities;
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Test;
 
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.stream.Collectors;
 
+import static java.util.Collections.singletonList;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class TokenIssuerStoreTest {
 
+    private static final String ISSUER_PATTERN = "https://sso.sbb.ch/auth/realms/(SBB_Public)";
+    private static final String ISSUER_URL = "https://sso.sbb.ch/auth/realms/SBB_Public";
+    private static final String UNKNOWN_ISSUER_URL = "https://sso.sbb.ch/auth/realms/SBB_Unknown";
+
+    private final AtomicInteger initializations = new AtomicInteger();
+    private final AtomicInteger patternMatches = new AtomicInteger();
+    private final CountDownLatch initializing = new CountDownLatch(1);
+    private final CountDownLatch initialized = new CountDownLatch(1);
+    private volatile RuntimeException initializationFailure;
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+    private TokenIssuerStore testee;
+
+    @Before
+    public void setup() {
+        final ApimAdapterConfig config = ApimAdapterConfig.builder()
+                .tokenIssuerUrlPatterns(singletonList(ISSUER_PATTERN))
+                .adapterServiceId("1")
+                .monitoringLevelAsString("standard")
+                .build();
+        testee = new TokenIssuerStore(config, new RestConfig(), OfflineConfigurationCacheRepo.disabled()) {
+            @Override
+            Optional<Matcher> matchIssuerPattern(String issuerUrl) {
+                patternMatches.incrementAndGet();
+                return super.matchIssuerPattern(issuerUrl);
+            }
+
+            @Override
+            TokenIssuer newTokenIssuer(String issuerUrl, Matcher matcher) {
+                final TokenIssuer tokenIssuer = new TokenIssuer(null, OfflineConfigurationCacheRepo.disabled()) {
+                    @Override
+                    void initJwks() {
+                        initializations.incrementAndGet();
+                        initializing.countDown();
+                        try {
+                            initialized.await(5, TimeUnit.SECONDS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        if (initializationFailure != null) {
+                            throw initializationFailure;
+                        }
+                    }
+                };
+                tokenIssuer.setIssuerUrl(issuerUrl);
+                return tokenIssuer;
+            }
+        };
+    }
+
+    @After
+    public void close() {
+        executor.shutdownNow();
+        testee.close();
+    }
+
+    @Test
+    public void testResolve_concurrentCallersWaitForTheSameInitialization() throws Exception {
+        //Act
+        final Future<Optional<TokenIssuer>> first = executor.submit(() -> testee.resolve(ISSUER_URL));
+        assertTrue(initializing.await(5, TimeUnit.SECONDS));
+        final CompletableFuture<Thread> secondCaller = new CompletableFuture<>();
+        final Future<Optional<TokenIssuer>> second = executor.submit(() -> {
+            secondCaller.complete(Thread.currentThread());
+            return testee.resolve(ISSUER_URL);
+        });
+        // the second caller joins the running initialization
+        assertTrue(Utilities.awaitWaiting(secondCaller.get(5, TimeUnit.SECONDS), 5_000));
+        initialized.countDown();
+
+        //Assert
+        final TokenIssuer tokenIssuer = first.get(5, TimeUnit.SECONDS).orElseThrow(AssertionError::new);
+        assertSame(tokenIssuer, second.get(5, TimeUnit.SECONDS).orElseThrow(AssertionError::new));
+        assertSame(tokenIssuer, testee.resolve(ISSUER_URL).orElseThrow(AssertionError::new));
+        assertEquals(1, initializations.get());
+    }
+
+    @Test
+    public void testResolve_initializationFailureReachesAllWaitingCallers() throws Exception {
+        //Arrange
+        initializationFailure = new TokenIssuerException("JWKS not available");
+
+        //Act
+        final Future<Optional<TokenIssuer>> first = executor.submit(() -> testee.resolve(ISSUER_URL));
+        assertTrue(initializing.await(5, TimeUnit.SECONDS));
+        final CompletableFuture<Thread> secondCaller = new CompletableFuture<>();
+        final Future<Optional<TokenIssuer>> second = executor.submit(() -> {
+            secondCaller.complete(Thread.currentThread());
+            return testee.resolve(ISSUER_URL);
+        });
+        // the second caller joins the running initialization
+        assertTrue(Utilities.awaitWaiting(secondCaller.get(5, TimeUnit.SECONDS), 5_000));
+        initialized.countDown();
+
+        //Assert
+        assertSame(initializationFailure, failureOf(first));
+        assertSame(initializationFailure, failureOf(second));
+        assertEquals(1, initializations.get());
+        assertTrue(testee.getIssuers().isEmpty());
+    }
+
+    @Test
+    public void testResolve_unknownIssuerMatchedOnlyOnce() {
+        //Act
+        final Optional<TokenIssuer> first = testee.resolve(UNKNOWN_ISSUER_URL);
+        final Optional<TokenIssuer> second = testee.resolve(UNKNOWN_ISSUER_URL);
+
+        //Assert
+        assertFalse(first.isPresent());
+        assertFalse(second.isPresent());
+        assertEquals(1, patternMatches.get());
+        assertEquals(0, initializations.get());
+    }
+
+    @Test
+    public void testClose_noJwksRefresherLeft() throws Exception {
+        //Arrange
+        final Set<Thread> existingRefreshers = jwksRefreshers();
+        initialized.countDown();
+        testee.resolve(ISSUER_URL);
+        final Set<Thread> refreshers = jwksRefreshers();
+        refreshers.removeAll(existingRefreshers);
+        assertEquals(1, refreshers.size());
+
+        //Act
+        testee.close();
+
+        //Assert
+        for (Thread refresher : refreshers) {
+            refresher.join(TimeUnit.SECONDS.toMillis(5));
+            assertFalse(refresher.isAlive());
+        }
+    }
+
+    @Test
+    public void testInitAsync_previousStoreClosed() {
+        //Arrange
+        final ApimAdapterConfig config = ApimAdapterConfig.builder()
+                .tokenIssuerUrlPatterns(singletonList("https://sso.sbb.ch/auth/realms/(.*)"))
+                .adapterServiceId("1")
+                .monitoringLevelAsString("standard")
+                .build();
+        final TokenIssuerStore previous = TokenIssuerStore.initAsync(config, new RestConfig(), OfflineConfigurationCacheRepo.disabled());
+
+        //Act
+        final TokenIssuerStore current = TokenIssuerStore.initAsync(config, new RestConfig(), OfflineConfigurationCacheRepo.disabled());
+
+        //Assert
+        assertTrue(previous.isClosed());
+        assertFalse(current.isClosed());
+        TokenIssuerStore.reset();
+        assertTrue(current.isClosed());
+    }
+
+    private static Set<Thread> jwksRefreshers() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().equals("apim-jwks-refresher"))
+                .collect(Collectors.toSet());
+    }
+
+    private static Throwable failureOf(Future<?> resolution) throws Exception {
+        try {
+            resolution.get(5, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            return e.getCause();
+        }
+        fail("resolution has not failed");
+        return null;
+    }
+
     @Test
     public void guessTokenIssuerUrls() {
         assertNull(TokenIssuerStore.guessTokenIssuerUrls(null).get(0));
@@ -48,4 +239,17 @@ public class TokenIssuerStoreTest {
         assertFalse(TokenIssuerStore.containsRegex("abc"));
         assertFalse(TokenIssuerStore.containsRegex("abc(def)ghe"));
     }
+
+    @Test
+    public void literalPrefix() {
+        assertEquals("https://sso-dev.sbb.ch/auth/realms/", TokenIssuerStore.literalPrefix("https://sso-dev.sbb.ch/auth/realms/(SBB_Public)"));
+        assertEquals("https://sso-dev.sbb.ch/auth/realms/SBB_Public", TokenIssuerStore.literalPrefix("https://sso-dev.sbb.ch/auth/realms/SBB_Public"));
+        assertEquals("https://sso-dev.sbb.ch/auth/realms/SBB_Public", TokenIssuerStore.literalPrefix("^https://sso-dev.sbb.ch/auth/realms/SBB_Public$"));
+        assertEquals("https://login.windows.net/", TokenIssuerStore.literalPrefix("https://login.windows.net/[0-9a-f-]+/"));
+        assertEquals("https://sso", TokenIssuerStore.literalPrefix("https://sso-?dev.sbb.ch"));
+        assertEquals("https://sso-dev.sbb.ch/", TokenIssuerStore.literalPrefix("https://sso-dev.sbb.ch/.*"));
+        assertEquals("https://sso-dev", TokenIssuerStore.literalPrefix("https://sso-dev\\.sbb\\.ch"));
+        assertEquals("", TokenIssuerStore.literalPrefix("https://sso-dev.sbb.ch|https://sso.sbb.ch"));
+        assertEquals("https://sso", TokenIssuerStore.literalPrefix("https://sso(-dev|-int)?.sbb.ch"));
+    }
 }
\ No newline at end of file
@@ -0,0 +1,254 @@
+package ch.sbb.integration.api.adapter.model.tokenissuer;
+
+import ch.sbb.integration.api.adapter.model.jwk.Jwks;
+import ch.sbb.integration.api.adapter.model.tokenissuer.TokenIssuer.JwksChange;
+import ch.sbb.integration.api.adapter.service.repository.OfflineConfigurationCacheRepo;
+import ch.sbb.integration.api.adapter.util.Utilities;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.commons.io.IOUtils;
+import org.jboss.resteasy.client.jaxrs.ResteasyClient;
+import org.jboss.resteasy.client.jaxrs.ResteasyWebTarget;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TokenIssuerTest {
+
+    private static final String JWKS_URI = "https://sso.sbb.ch/auth/realms/SBB_Public/protocol/openid-connect/certs";
+    private static final String ETAG = "\"jwks-1\"";
+    private static final String LAST_MODIFIED = "Wed, 21 Oct 2015 07:28:00 GMT";
+
+    private String allKeysJson;
+    private Jwks allKeys;
+    private Jwks firstKeyMissing;
+
+    private final AtomicInteger loads = new AtomicInteger();
+    private final CountDownLatch loading = new CountDownLatch(1);
+    private final CountDownLatch loaded = new CountDownLatch(1);
+    private final List<JwksChange> keyChanges = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setup() throws IOException {
+        final String jwksJson = IOUtils.toString(TokenIssuerTest.class.getResourceAsStream("/jwks/rh-sso.json"), StandardCharsets.UTF_8);
+        final ObjectNode jwksNode = (ObjectNode) new ObjectMapper().readTree(jwksJson);
+        allKeysJson = jwksNode.toString();
+        allKeys = new Jwks(allKeysJson);
+        ((ArrayNode) jwksNode.get("keys")).remove(0);
+        firstKeyMissing = new Jwks(jwksNode.toString());
+    }
+
+    private TokenIssuer createTokenIssuer(Jwks currentJwks, Jwks reloadedJwks) {
+        final TokenIssuer tokenIssuer = new TokenIssuer(null, OfflineConfigurationCacheRepo.disabled()) {
+            @Override
+            public Jwks loadJwks(boolean loadFromOfflineCache) {
+                loads.incrementAndGet();
+                loading.countDown();
+                try {
+                    loaded.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return reloadedJwks;
+            }
+        };
+        tokenIssuer.setJwks(currentJwks);
+        return tokenIssuer;
+    }
+
+    @Test
+    public void testReloadJwks_concurrentCallersWaitForTheSameReload() throws Exception {
+        //Arrange
+        final TokenIssuer testee = createTokenIssuer(firstKeyMissing, allKeys);
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        //Act
+        final Future<JwksChange> first = executor.submit(() -> testee.reloadJwks(keyChanges::add));
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+        final CompletableFuture<Thread> secondCaller = new CompletableFuture<>();
+        final Future<JwksChange> second = executor.submit(() -> {
+            secondCaller.complete(Thread.currentThread());
+            return testee.reloadJwks(keyChanges::add);
+        });
+        // the second caller joins the running reload
+        assertTrue(Utilities.awaitWaiting(secondCaller.get(5, TimeUnit.SECONDS), 5_000));
+        loaded.countDown();
+
+        //Assert
+        assertEquals(JwksChange.KEYS_ADDED, first.get(5, TimeUnit.SECONDS));
+        assertEquals(JwksChange.KEYS_ADDED, second.get(5, TimeUnit.SECONDS));
+        assertEquals(1, loads.get());
+        assertEquals(1, keyChanges.size());
+        assertEquals(allKeys, testee.getJwks());
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testReloadJwks_notReloadedWithinAMinute() {
+        //Arrange
+        final TokenIssuer testee = createTokenIssuer(firstKeyMissing, allKeys);
+        loaded.countDown();
+
+        //Act
+        final JwksChange firstChange = testee.reloadJwks(keyChanges::add);
+        final JwksChange secondChange = testee.reloadJwks(keyChanges::add);
+
+        //Assert
+        assertEquals(JwksChange.KEYS_ADDED, firstChange);
+        assertEquals(JwksChange.NONE, secondChange);
+        assertEquals(1, loads.get());
+        assertEquals(1, keyChanges.size());
+    }
+
+    @Test
+    public void testReloadJwks_keysRemoved() {
+        //Arrange
+        final TokenIssuer testee = createTokenIssuer(allKeys, firstKeyMissing);
+        loaded.countDown();
+
+        //Act
+        final JwksChange change = testee.reloadJwks(keyChanges::add);
+
+        //Assert
+        assertEquals(JwksChange.KEYS_REMOVED, change);
+        assertEquals(1, keyChanges.size());
+    }
+
+    @Test
+    public void testReloadJwks_sameKeys() {
+        //Arrange
+        final TokenIssuer testee = createTokenIssuer(allKeys, allKeys);
+        loaded.countDown();
+
+        //Act
+        final JwksChange change = testee.reloadJwks(keyChanges::add);
+
+        //Assert
+        assertEquals(JwksChange.NONE, change);
+        assertTrue(keyChanges.isEmpty());
+    }
+
+    private TokenIssuer createTokenIssuer(ResteasyClient resteasyClient, OfflineConfigurationCacheRepo offlineConfigurationCacheRepo) {
+        final TokenIssuer tokenIssuer = new TokenIssuer(resteasyClient, offlineConfigurationCacheRepo);
+        tokenIssuer.setJwksUri(JWKS_URI);
+        tokenIssuer.setJwks(firstKeyMissing);
+        return tokenIssuer;
+    }
+
+    private static Invocation.Builder mockJwksRequest(ResteasyClient resteasyClient) {
+        final ResteasyWebTarget webTarget = mock(ResteasyWebTarget.class);
+        final Invocation.Builder request = mock(Invocation.Builder.class);
+        when(resteasyClient.target(JWKS_URI)).thenReturn(webTarget);
+        when(webTarget.request()).thenReturn(request);
+        when(request.header(anyString(), any())).thenReturn(request);
+        return request;
+    }
+
+    private static Response jwksResponse(int status, String jwksJson) {
+        final Response response = mock(Response.class);
+        when(response.getStatus()).thenReturn(status);
+        when(response.getHeaderString(HttpHeaders.ETAG)).thenReturn(ETAG);
+        when(response.getHeaderString(HttpHeaders.LAST_MODIFIED)).thenReturn(LAST_MODIFIED);
+        when(response.getHeaderString(HttpHeaders.CACHE_CONTROL)).thenReturn("max-age=120");
+        when(response.readEntity(String.class)).thenReturn(jwksJson);
+        return response;
+    }
+
+    @Test
+    public void testRefreshJwks_modified_keysSwappedAndListenerCalled() {
+        //Arrange
+        final ResteasyClient resteasyClient = mock(ResteasyClient.class);
+        final OfflineConfigurationCacheRepo offlineConfigurationCacheRepo = mock(OfflineConfigurationCacheRepo.class);
+        final Invocation.Builder request = mockJwksRequest(resteasyClient);
+        final Response modified = jwksResponse(200, allKeysJson);
+        when(request.get()).thenReturn(modified);
+        final TokenIssuer testee = createTokenIssuer(resteasyClient, offlineConfigurationCacheRepo);
+
+        //Act
+        final JwksChange change = testee.refreshJwks(keyChanges::add);
+
+        //Assert
+        assertEquals(JwksChange.KEYS_ADDED, change);
+        assertEquals(1, keyChanges.size());
+        assertEquals(allKeys.getKeyIds(), testee.getJwks().getKeyIds());
+        assertEquals(120L, testee.getJwksRefreshSeconds());
+        verify(offlineConfigurationCacheRepo).persistJwks(JWKS_URI, allKeysJson);
+    }
+
+    @Test
+    public void testRefreshJwks_sendsValidatorsOfLastResponse() {
+        //Arrange
+        final ResteasyClient resteasyClient = mock(ResteasyClient.class);
+        final Invocation.Builder request = mockJwksRequest(resteasyClient);
+        final Response modified = jwksResponse(200, allKeysJson);
+        final Response notModified = jwksResponse(304, null);
+        when(request.get()).thenReturn(modified, notModified);
+        final TokenIssuer testee = createTokenIssuer(resteasyClient, mock(OfflineConfigurationCacheRepo.class));
+
+        //Act
+        testee.refreshJwks(keyChanges::add);
+        verify(request, never()).header(anyString(), any());
+        testee.refreshJwks(keyChanges::add);
+
+        //Assert
+        verify(request).header(HttpHeaders.IF_NONE_MATCH, ETAG);
+        verify(request).header(HttpHeaders.IF_MODIFIED_SINCE, LAST_MODIFIED);
+    }
+
+    @Test
+    public void testRefreshJwks_notModified_neitherParsedNorPersisted() {
+        //Arrange
+        final ResteasyClient resteasyClient = mock(ResteasyClient.class);
+        final OfflineConfigurationCacheRepo offlineConfigurationCacheRepo = mock(OfflineConfigurationCacheRepo.class);
+        final Invocation.Builder request = mockJwksRequest(resteasyClient);
+        final Response notModified = jwksResponse(304, null);
+        when(notModified.getHeaderString(HttpHeaders.CACHE_CONTROL)).thenReturn("max-age=600");
+        when(request.get()).thenReturn(notModified);
+        final TokenIssuer testee = createTokenIssuer(resteasyClient, offlineConfigurationCacheRepo);
+
+        //Act
+        final JwksChange change = testee.refreshJwks(keyChanges::add);
+
+        //Assert
+        assertEquals(JwksChange.NONE, change);
+        assertTrue(keyChanges.isEmpty());
+        assertEquals(firstKeyMissing, testee.getJwks());
+        assertEquals(600L, testee.getJwksRefreshSeconds());
+        verify(notModified, never()).readEntity(String.class);
+        verify(offlineConfigurationCacheRepo, never()).persistJwks(anyString(), anyString());
+    }
+
+    @Test
+    public void testRefreshSeconds_boundedMaxAge() {
+        assertEquals(120L, TokenIssuer.refreshSeconds("public, max-age=120"));
+        assertEquals(TokenIssuer.MIN_JWKS_REFRESH_SECONDS, TokenIssuer.refreshSeconds("max-age=0"));
+        assertEquals(TokenIssuer.MAX_JWKS_REFRESH_SECONDS, TokenIssuer.refreshSeconds("max-age=86400"));
+        assertEquals(TokenIssuer.MIN_JWKS_REFRESH_SECONDS, TokenIssuer.refreshSeconds("no-cache"));
+        assertEquals(TokenIssuer.DEFAULT_JWKS_REFRESH_SECONDS, TokenIssuer.refreshSeconds(null));
+        assertEquals(TokenIssuer.DEFAULT_JWKS_REFRESH_SECONDS, TokenIssuer.refreshSeconds("max-age=soon"));
+    }
+}
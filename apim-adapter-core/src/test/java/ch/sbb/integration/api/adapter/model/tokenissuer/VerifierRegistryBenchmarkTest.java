@@ -0,0 +1,117 @@
+package ch.sbb.integration.api.adapter.model.tokenissuer;
+
+import ch.sbb.integration.api.adapter.model.jwk.Jwks;
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import org.apache.commons.codec.binary.Base64;
+import org.junit.BeforeClass;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * Measures {@link VerifierRegistry#verify(DecodedJWT)} per signature algorithm, run it on demand to compare the
+ * algorithms a token issuer may sign with.
+ */
+@Ignore("benchmark, run on demand")
+public class VerifierRegistryBenchmarkTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(VerifierRegistryBenchmarkTest.class);
+
+    private static final int WARM_UP_ITERATIONS = 2_000;
+    private static final int MEASURED_ITERATIONS = 5_000;
+
+    private static KeyPair rsaKeyPair;
+    private static KeyPair ec256KeyPair;
+    private static KeyPair ec384KeyPair;
+    private static KeyPair ec521KeyPair;
+    private static VerifierRegistry testee;
+
+    @BeforeClass
+    public static void setupKeys() throws Exception {
+        final KeyPairGenerator rsaGenerator = KeyPairGenerator.getInstance("RSA");
+        rsaGenerator.initialize(2048);
+        rsaKeyPair = rsaGenerator.generateKeyPair();
+        ec256KeyPair = createEcKeyPair("secp256r1");
+        ec384KeyPair = createEcKeyPair("secp384r1");
+        ec521KeyPair = createEcKeyPair("secp521r1");
+
+        testee = new VerifierRegistry("jwksUri", new Jwks("{\"keys\":[" +
+                rsaJwk("rsa", (RSAPublicKey) rsaKeyPair.getPublic()) + "," +
+                ecJwk("ec256", "P-256", (ECPublicKey) ec256KeyPair.getPublic()) + "," +
+                ecJwk("ec384", "P-384", (ECPublicKey) ec384KeyPair.getPublic()) + "," +
+                ecJwk("ec521", "P-521", (ECPublicKey) ec521KeyPair.getPublic()) +
+                "]}"));
+    }
+
+    @Test
+    public void verifyRsaSignedTokens() {
+        final RSAPrivateKey privateKey = (RSAPrivateKey) rsaKeyPair.getPrivate();
+        measure("RS256", createToken("rsa", Algorithm.RSA256(null, privateKey)));
+        measure("RS384", createToken("rsa", Algorithm.RSA384(null, privateKey)));
+        measure("RS512", createToken("rsa", Algorithm.RSA512(null, privateKey)));
+    }
+
+    @Test
+    public void verifyEcSignedTokens() {
+        measure("ES256", createToken("ec256", Algorithm.ECDSA256(null, (ECPrivateKey) ec256KeyPair.getPrivate())));
+        measure("ES384", createToken("ec384", Algorithm.ECDSA384(null, (ECPrivateKey) ec384KeyPair.getPrivate())));
+        measure("ES512", createToken("ec521", Algorithm.ECDSA512(null, (ECPrivateKey) ec521KeyPair.getPrivate())));
+    }
+
+    private static void measure(String algorithm, DecodedJWT jwt) {
+        for (int i = 0; i < WARM_UP_ITERATIONS; i++) {
+            testee.verify(jwt);
+        }
+        final long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            testee.verify(jwt);
+        }
+        final long nanosPerVerify = (System.nanoTime() - start) / MEASURED_ITERATIONS;
+        LOG.info("algorithm={} verify={} us/op", algorithm, String.format("%.1f", nanosPerVerify / 1_000d));
+    }
+
+    private static DecodedJWT createToken(String keyId, Algorithm algorithm) {
+        return JWT.decode(JWT.create()
+                .withKeyId(keyId)
+                .withIssuer("http://localhost:8099/auth/realms/SBB_Public")
+                .withExpiresAt(new Date(System.currentTimeMillis() + 3_600_000))
+                .sign(algorithm));
+    }
+
+    private static KeyPair createEcKeyPair(String curve) throws Exception {
+        final KeyPairGenerator ecGenerator = KeyPairGenerator.getInstance("EC");
+        ecGenerator.initialize(new ECGenParameterSpec(curve));
+        return ecGenerator.generateKeyPair();
+    }
+
+    private static String rsaJwk(String keyId, RSAPublicKey publicKey) {
+        // without alg, so the key verifies all RSA algorithms
+        return "{\"kid\":\"" + keyId + "\",\"kty\":\"RSA\",\"use\":\"sig\"," +
+                "\"n\":\"" + base64(publicKey.getModulus()) + "\",\"e\":\"" + base64(publicKey.getPublicExponent()) + "\"}";
+    }
+
+    private static String ecJwk(String keyId, String curve, ECPublicKey publicKey) {
+        return "{\"kid\":\"" + keyId + "\",\"kty\":\"EC\",\"use\":\"sig\",\"crv\":\"" + curve + "\"," +
+                "\"x\":\"" + base64(publicKey.getW().getAffineX()) + "\",\"y\":\"" + base64(publicKey.getW().getAffineY()) + "\"}";
+    }
+
+    private static String base64(BigInteger value) {
+        final byte[] bytes = value.toByteArray();
+        // without the sign byte
+        return Base64.encodeBase64URLSafeString(bytes[0] == 0 ? Arrays.copyOfRange(bytes, 1, bytes.length) : bytes);
+    }
+}
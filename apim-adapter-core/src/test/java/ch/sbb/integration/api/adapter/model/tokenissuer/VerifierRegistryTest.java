@@ -0,0 +1,111 @@
+package ch.sbb.integration.api.adapter.model.tokenissuer;
+
+import ch.sbb.integration.api.adapter.model.jwk.Jwks;
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.exceptions.AlgorithmMismatchException;
+import com.auth0.jwt.exceptions.SignatureVerificationException;
+import org.apache.commons.codec.binary.Base64;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Arrays;
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+
+public class VerifierRegistryTest {
+
+    private static KeyPair rsaKeyPair;
+    private static KeyPair ecKeyPair;
+    private static Jwks jwks;
+
+    @BeforeClass
+    public static void setupKeys() throws Exception {
+        final KeyPairGenerator rsaGenerator = KeyPairGenerator.getInstance("RSA");
+        rsaGenerator.initialize(2048);
+        rsaKeyPair = rsaGenerator.generateKeyPair();
+
+        final KeyPairGenerator ecGenerator = KeyPairGenerator.getInstance("EC");
+        ecGenerator.initialize(new ECGenParameterSpec("secp256r1"));
+        ecKeyPair = ecGenerator.generateKeyPair();
+
+        jwks = createJwks((RSAPublicKey) rsaKeyPair.getPublic(), (ECPublicKey) ecKeyPair.getPublic());
+    }
+
+    @Test
+    public void verifyRsaAndEcSignedTokens() {
+        //Arrange
+        final VerifierRegistry testee = new VerifierRegistry("jwksUri", jwks);
+        final String rsaToken = createToken("rsa", Algorithm.RSA256(null, (RSAPrivateKey) rsaKeyPair.getPrivate()));
+        final String ecToken = createToken("ec", Algorithm.ECDSA256(null, (ECPrivateKey) ecKeyPair.getPrivate()));
+
+        //Act
+        testee.verify(JWT.decode(rsaToken));
+        testee.verify(JWT.decode(ecToken));
+        testee.verify(JWT.decode(createToken("ec", Algorithm.ECDSA256(null, (ECPrivateKey) ecKeyPair.getPrivate()))));
+
+        //Assert
+        assertEquals("one verifier per key and algorithm", 2, testee.size());
+    }
+
+    @Test(expected = SignatureVerificationException.class)
+    public void verifyTokenOfUnknownKey() {
+        final VerifierRegistry testee = new VerifierRegistry("jwksUri", jwks);
+        testee.verify(JWT.decode(createToken("unknown", Algorithm.RSA256(null, (RSAPrivateKey) rsaKeyPair.getPrivate()))));
+    }
+
+    @Test(expected = SignatureVerificationException.class)
+    public void verifyTokenWithAlgorithmNotFittingTheKey() {
+        final VerifierRegistry testee = new VerifierRegistry("jwksUri", jwks);
+        testee.verify(JWT.decode(createToken("ec", Algorithm.RSA256(null, (RSAPrivateKey) rsaKeyPair.getPrivate()))));
+    }
+
+    @Test(expected = AlgorithmMismatchException.class)
+    public void verifyTokenWithUnsupportedAlgorithm() {
+        final VerifierRegistry testee = new VerifierRegistry("jwksUri", jwks);
+        testee.verify(JWT.decode(createToken("rsa", Algorithm.HMAC256("secret"))));
+    }
+
+    @Test(expected = SignatureVerificationException.class)
+    public void verifyTokenWithInvalidSignature() throws Exception {
+        final KeyPairGenerator ecGenerator = KeyPairGenerator.getInstance("EC");
+        ecGenerator.initialize(new ECGenParameterSpec("secp256r1"));
+        final KeyPair otherKeyPair = ecGenerator.generateKeyPair();
+
+        final VerifierRegistry testee = new VerifierRegistry("jwksUri", jwks);
+        testee.verify(JWT.decode(createToken("ec", Algorithm.ECDSA256(null, (ECPrivateKey) otherKeyPair.getPrivate()))));
+    }
+
+    private static String createToken(String keyId, Algorithm algorithm) {
+        return JWT.create()
+                .withKeyId(keyId)
+                .withIssuer("http://localhost:8099/auth/realms/SBB_Public")
+                .withExpiresAt(new Date(System.currentTimeMillis() + 60_000))
+                .sign(algorithm);
+    }
+
+    private static Jwks createJwks(RSAPublicKey rsaPublicKey, ECPublicKey ecPublicKey) throws IOException {
+        return new Jwks("{\"keys\":[" +
+                "{\"kid\":\"rsa\",\"kty\":\"RSA\",\"alg\":\"RS256\",\"use\":\"sig\"," +
+                "\"n\":\"" + base64(rsaPublicKey.getModulus()) + "\",\"e\":\"" + base64(rsaPublicKey.getPublicExponent()) + "\"}," +
+                "{\"kid\":\"ec\",\"kty\":\"EC\",\"use\":\"sig\",\"crv\":\"P-256\"," +
+                "\"x\":\"" + base64(ecPublicKey.getW().getAffineX()) + "\",\"y\":\"" + base64(ecPublicKey.getW().getAffineY()) + "\"}" +
+                "]}");
+    }
+
+    private static String base64(BigInteger value) {
+        final byte[] bytes = value.toByteArray();
+        // without the sign byte
+        return Base64.encodeBase64URLSafeString(bytes[0] == 0 ? Arrays.copyOfRange(bytes, 1, bytes.length) : bytes);
+    }
+}
@@ -4,6 +4,7 @@ import ch.sbb.integration.api.adapter.factory.ApimAdapterFactory;
 import ch.sbb.integration.api.adapter.model.AuthRepResponse;
 import ch.sbb.integration.api.adapter.model.OAuthToken;
 import ch.sbb.integration.api.adapter.model.OAuthToken.TokenStateEnum;
+import ch.sbb.integration.api.adapter.model.TokenDigest;
 import ch.sbb.integration.api.adapter.model.tokenissuer.TokenIssuer;
 import ch.sbb.integration.api.adapter.model.tokenissuer.TokenIssuerStore;
 import ch.sbb.integration.api.adapter.model.usage.Client;
@@ -21,6 +22,7 @@ import org.junit.Test;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import static ch.sbb.integration.api.adapter.service.utils.HttpMethod.GET;
 import static ch.sbb.integration.api.adapter.service.utils.HttpMethod.POST;
@@ -327,7 +329,7 @@ public class ApimAdapterServiceTest extends AbstractWiremockTest {
         try (ApimAdapterService service = ApimAdapterFactory.createApimAdapterService()) {
             String validToken = TokenGenerator.getInstance().generateBearerToken(CLIENT_ID, 30_000);
 
-            OAuthToken oAuthToken = new OAuthToken(TokenStateEnum.VALID, null, validToken, CLIENT_ID, null, null);
+            OAuthToken oAuthToken = new OAuthToken(TokenStateEnum.VALID, null, TokenDigest.of(validToken), CLIENT_ID, null, null);
             HttpMethod method = PUT;
 
             AuthRepResponse badPathResponse = service.authRep(validToken, null, method);
@@ -617,5 +619,66 @@ public class ApimAdapterServiceTest extends AbstractWiremockTest {
         }
     }
 
+    @Test
+    public void testAuthRepAsync_everythingCached_completesOnCallerThread() {
+        try (ApimAdapterService service = ApimAdapterFactory.createApimAdapterService()) {
+            String validToken = TokenGenerator.getInstance().generateBearerToken(CLIENT_ID, 30_000);
+            // loads the token, the mapping rules and the plan of the client
+            service.authRep(validToken, V1_LOCATIONS, GET);
+            List<Runnable> dispatched = new ArrayList<>();
+
+            CompletableFuture<AuthRepResponse> authRep = service.authRepAsync(validToken, V1_LOCATIONS, null, GET, dispatched::add).toCompletableFuture();
+
+            assertTrue(authRep.isDone());
+            assertTrue(dispatched.isEmpty());
+            assertTrue(authRep.join().isAllowed());
+        }
+    }
+
+    @Test
+    public void testAuthRepAsync_tokenNotCached_runsOnExecutor() {
+        try (ApimAdapterService service = ApimAdapterFactory.createApimAdapterService()) {
+            String validToken = TokenGenerator.getInstance().generateBearerToken(CLIENT_ID, 30_000);
+            List<Runnable> dispatched = new ArrayList<>();
+
+            CompletableFuture<AuthRepResponse> authRep = service.authRepAsync(validToken, V1_LOCATIONS, null, GET, dispatched::add).toCompletableFuture();
+
+            assertFalse(authRep.isDone());
+            assertEquals(1, dispatched.size());
+            dispatched.get(0).run();
+            assertTrue(authRep.isDone());
+            assertTrue(authRep.join().isAllowed());
+        }
+    }
+
+    @Test
+    public void testAuthRepAsync_planNotCached_runsOnExecutor() {
+        try (ApimAdapterService service = ApimAdapterFactory.createApimAdapterService()) {
+            String validToken = TokenGenerator.getInstance().generateBearerToken(CLIENT_ID, 30_000);
+            OAuthToken parsedToken = service.parseAuthorizationHeader(validToken);
+            List<Runnable> dispatched = new ArrayList<>();
+
+            CompletableFuture<AuthRepResponse> authRep = service.authRepAsync(parsedToken, V1_LOCATIONS, null, GET, dispatched::add).toCompletableFuture();
+
+            assertFalse(authRep.isDone());
+            assertEquals(1, dispatched.size());
+            dispatched.get(0).run();
+            assertTrue(authRep.join().isAllowed());
+        }
+    }
+
+    @Test
+    public void testGetCachedToken_invalidSignature_notReturned() {
+        try (ApimAdapterService service = ApimAdapterFactory.createApimAdapterService()) {
+            String wrongSignedToken = TokenGenerator.getInstance().generateTokenWithRandomNewKey(CLIENT_ID, 30_000, true);
+            String validToken = TokenGenerator.getInstance().generateBearerToken(CLIENT_ID, 30_000);
+            assertEquals(TokenStateEnum.INVALID_SIGNATURE, service.parseAuthorizationHeader(wrongSignedToken).getTokenState());
+            service.parseAuthorizationHeader(validToken);
+
+            // the caller has to parse it, so the JWKS is reloaded if its key was rotated
+            assertNull(service.getCachedToken(wrongSignedToken));
+            assertEquals(TokenStateEnum.VALID, service.getCachedToken(validToken).getTokenState());
+        }
+    }
 
 }
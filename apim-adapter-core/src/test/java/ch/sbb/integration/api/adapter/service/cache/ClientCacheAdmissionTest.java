@@ -0,0 +1,150 @@
+package ch.sbb.integration.api.adapter.service.cache;
+
+import ch.sbb.integration.api.adapter.config.ApimAdapterConfig;
+import ch.sbb.integration.api.adapter.model.Metric;
+import ch.sbb.integration.api.adapter.model.usage.Client;
+import ch.sbb.integration.api.adapter.model.usage.ClientSyncState;
+import ch.sbb.integration.api.adapter.model.usage.MetricUsage;
+import ch.sbb.integration.api.adapter.service.cache.ClientCache.Admission;
+import ch.sbb.integration.api.adapter.service.configuration.ConfigurationLoader;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static java.time.ZonedDateTime.now;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ClientCacheAdmissionTest {
+
+    private static final String CLIENT_ID = "CLIENT_ID";
+    private static final List<String> HITS = singletonList("hits");
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss Z");
+
+    private final CountDownLatch planRequested = new CountDownLatch(1);
+    private final CountDownLatch planLoaded = new CountDownLatch(1);
+    private ClientSyncState syncState = ClientSyncState.OK;
+    private ApimAdapterConfig config;
+    private ConfigurationLoader configurationLoader;
+    private ClientCache testee;
+
+    @Before
+    public void setup() throws Exception {
+        config = mock(ApimAdapterConfig.class);
+        when(config.getAdapterServiceId()).thenReturn("1");
+        when(config.isAsyncClientAdmission()).thenReturn(true);
+        when(config.getProvisionalClientRequests()).thenReturn(2);
+
+        configurationLoader = mock(ConfigurationLoader.class);
+        when(configurationLoader.loadPlanConfig(anyString(), anyString(), anyBoolean())).thenAnswer(invocation -> {
+            planRequested.countDown();
+            planLoaded.await(5, TimeUnit.SECONDS);
+            final MetricUsage hits = MetricUsage.limitedMetric(CLIENT_ID, "hits", 10L, 0L,
+                    now().minusHours(1).format(FORMATTER), now().plusHours(1).format(FORMATTER));
+            return new Client(CLIENT_ID, singletonMap("hits", hits), syncState);
+        });
+    }
+
+    @After
+    public void close() {
+        testee.close();
+    }
+
+    @Test
+    public void whenPlanIsLoading_thenProvisionalRequestsAdmittedAndReconciled() throws Exception {
+        //Arrange
+        testee = new ClientCache(serviceId -> singletonList(new Metric("1", "hits", "hits", emptyList())), config, configurationLoader);
+
+        //Act
+        final Client pending = testee.getForAdmission(CLIENT_ID);
+        final Admission first = testee.admitProvisionally(CLIENT_ID, HITS);
+        final Admission second = testee.admitProvisionally(CLIENT_ID, HITS);
+        final Admission third = testee.admitProvisionally(CLIENT_ID, HITS);
+        final boolean admissibleWhileLoading = testee.isAdmissibleWithoutLoading(CLIENT_ID);
+        assertTrue(planRequested.await(5, TimeUnit.SECONDS));
+        planLoaded.countDown();
+        final Client loaded = awaitClient();
+
+        //Assert
+        assertNull(pending);
+        assertEquals(Admission.ADMITTED, first);
+        assertEquals(Admission.ADMITTED, second);
+        assertEquals("the provisional requests are used up", Admission.LOAD_REQUIRED, third);
+        assertFalse(admissibleWhileLoading);
+        assertTrue("the loaded plan admits without loading", testee.isAdmissibleWithoutLoading(CLIENT_ID));
+        assertEquals(2L, loaded.getUsage("hits").getCurrentUsage().get());
+    }
+
+    @Test
+    public void whenPlanIsLoadedWithinTheWait_thenClientReturned() {
+        //Arrange
+        when(config.getProvisionalClientWaitMillis()).thenReturn(5_000);
+        testee = new ClientCache(serviceId -> emptyList(), config, configurationLoader);
+        planLoaded.countDown();
+
+        //Act
+        final Client client = testee.getForAdmission(CLIENT_ID);
+
+        //Assert
+        assertNotNull(client);
+        assertEquals(CLIENT_ID, client.getId());
+    }
+
+    @Test
+    public void whenPlanLoadFails_thenLoadRequired() throws Exception {
+        //Arrange
+        when(config.getProvisionalClientWaitMillis()).thenReturn(5_000);
+        doThrow(new IllegalStateException("3scale unavailable")).when(configurationLoader).loadPlanConfig(anyString(), anyString(), anyBoolean());
+        testee = new ClientCache(serviceId -> emptyList(), config, configurationLoader);
+
+        //Act
+        final Client client = testee.getForAdmission(CLIENT_ID);
+        final Admission admission = testee.admitProvisionally(CLIENT_ID, HITS);
+
+        //Assert
+        assertNull(client);
+        assertEquals(Admission.LOAD_REQUIRED, admission);
+    }
+
+    @Test
+    public void whenPlanLoadedWithoutPermission_thenNoPermission() throws Exception {
+        //Arrange
+        syncState = ClientSyncState.APPLICATION_NOT_FOUND;
+        testee = new ClientCache(serviceId -> emptyList(), config, configurationLoader);
+        planLoaded.countDown();
+        awaitClient();
+
+        //Act
+        final Admission admission = testee.admitProvisionally(CLIENT_ID, HITS);
+
+        //Assert
+        assertEquals(Admission.NO_PERMISSION, admission);
+    }
+
+    private Client awaitClient() throws InterruptedException {
+        for (int i = 0; i < 500; i++) {
+            final Client client = testee.getForAdmission(CLIENT_ID);
+            if (client != null) {
+                return client;
+            }
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        throw new AssertionError("The plan of the client was not loaded");
+    }
+}
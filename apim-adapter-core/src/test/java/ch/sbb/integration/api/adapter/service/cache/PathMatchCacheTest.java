@@ -0,0 +1,111 @@
+package ch.sbb.integration.api.adapter.service.cache;
+
+import ch.sbb.integration.api.adapter.config.ApimAdapterConfig;
+import ch.sbb.integration.api.adapter.model.MappingRule;
+import ch.sbb.integration.api.adapter.model.MappingRuleIndex;
+import ch.sbb.integration.api.adapter.model.Metric;
+import ch.sbb.integration.api.adapter.model.MetricMatchingResult;
+import ch.sbb.integration.api.adapter.service.utils.HttpMethod;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.util.Collections.singletonList;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class PathMatchCacheTest {
+
+    private final AtomicReference<MappingRuleIndex> mappingRuleIndex = new AtomicReference<>();
+    private PathMatchCache testee;
+
+    @Before
+    public void setup() {
+        ApimAdapterConfig config = mock(ApimAdapterConfig.class);
+        when(config.isMonitoringNotDisabledOrMinimal()).thenReturn(true);
+        mappingRuleIndex.set(indexFor("locations", "/v1/locations"));
+        testee = new PathMatchCache(config, mappingRuleIndex::get);
+    }
+
+    @Test
+    public void whenSamePathAndMethod_thenCachedResult() {
+        //Act
+        MetricMatchingResult first = testee.match("/v1/locations/4711", HttpMethod.GET);
+        MetricMatchingResult second = testee.match("/v1/locations/4711", HttpMethod.GET);
+
+        //Assert
+        assertThat(second, is(sameInstance(first)));
+        assertThat(second.getMetricSystemNames(), contains("locations"));
+        assertThat(testee.size(), is(1L));
+        assertThat(testee.get().stats().hitCount(), is(1L));
+        assertThat(testee.get().stats().missCount(), is(1L));
+    }
+
+    @Test
+    public void whenDifferentMethod_thenMatchedSeparately() {
+        //Act
+        MetricMatchingResult get = testee.match("/v1/locations", HttpMethod.GET);
+        MetricMatchingResult post = testee.match("/v1/locations", HttpMethod.POST);
+
+        //Assert
+        assertThat(get.getMetricSystemNames(), contains("locations"));
+        assertThat(post.getMetricSystemNames(), is(empty()));
+        assertThat(testee.get(PathMatchCache.key(HttpMethod.POST, "/v1/locations")), is(sameInstance(post)));
+    }
+
+    @Test
+    public void whenMappingRulesReloaded_thenCachedResultsAreDropped() {
+        //Arrange
+        MetricMatchingResult before = testee.match("/v1/stations", HttpMethod.GET);
+
+        //Act
+        mappingRuleIndex.set(indexFor("stations", "/v1/stations"));
+        MetricMatchingResult after = testee.match("/v1/stations", HttpMethod.GET);
+
+        //Assert
+        assertThat(before.isPathMatching(), is(false));
+        assertThat(after, is(not(sameInstance(before))));
+        assertThat(after.getMetricSystemNames(), contains("stations"));
+    }
+
+    @Test
+    public void whenPathIsVeryLong_thenNotCached() {
+        //Arrange
+        StringBuilder path = new StringBuilder("/v1/locations?");
+        while (path.length() <= PathMatchCache.MAXIMUM_CACHED_PATH_LENGTH) {
+            path.append("random=value&");
+        }
+
+        //Act
+        MetricMatchingResult result = testee.match(path.toString(), HttpMethod.GET);
+
+        //Assert
+        assertThat(result.getMetricSystemNames(), contains("locations"));
+        assertThat(testee.get(PathMatchCache.key(HttpMethod.GET, path.toString())), is(nullValue()));
+        assertThat(testee.size(), is(0L));
+    }
+
+    @Test
+    public void whenMethodUnknown_thenNoMetricAndNotCached() {
+        //Act
+        MetricMatchingResult result = testee.match("/v1/locations", null);
+
+        //Assert
+        assertThat(result.isPathMatching(), is(true));
+        assertThat(result.getMetricSystemNames(), is(empty()));
+        assertThat(testee.size(), is(0L));
+    }
+
+    private static MappingRuleIndex indexFor(String systemName, String pattern) {
+        MappingRule mappingRule = new MappingRule("1", "m1", pattern, "GET");
+        return MappingRuleIndex.of(singletonList(new Metric("m1", systemName, systemName, singletonList(mappingRule))));
+    }
+}
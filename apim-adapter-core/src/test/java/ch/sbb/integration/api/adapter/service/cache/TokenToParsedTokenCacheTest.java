@@ -1,6 +1,7 @@
 package ch.sbb.integration.api.adapter.service.cache;
 
 import ch.sbb.integration.api.adapter.model.OAuthToken;
+import ch.sbb.integration.api.adapter.model.TokenDigest;
 import ch.sbb.integration.api.adapter.service.repository.OfflineConfigurationCacheRepo;
 import ch.sbb.integration.api.adapter.util.TokenGenerator;
 import ch.sbb.integration.api.adapter.wiremock.AbstractWiremockTest;
@@ -9,6 +10,8 @@ import com.github.tomakehurst.wiremock.client.WireMock;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.concurrent.TimeUnit;
+
 import static org.junit.Assert.*;
 
 /**
@@ -59,6 +62,50 @@ public class TokenToParsedTokenCacheTest extends AbstractWiremockTest {
         assertFalse("Token is expected to be expired.", oAuthToken.isExpired());
     }
 
+    @Test
+    public void testTokenParsing_withMalformedToken() {
+        assertFalse(TokenToParsedTokenCache.isWellFormed("some-invalid-string-token"));
+        assertFalse(TokenToParsedTokenCache.isWellFormed("a.b"));
+        assertFalse(TokenToParsedTokenCache.isWellFormed("a..c"));
+        assertFalse(TokenToParsedTokenCache.isWellFormed(".b.c"));
+        assertFalse(TokenToParsedTokenCache.isWellFormed("a.b.c.d"));
+        assertFalse(TokenToParsedTokenCache.isWellFormed(new String(new char[5000]).replace('\0', 'a') + ".b.c"));
+        assertTrue(TokenToParsedTokenCache.isWellFormed("a.b.c"));
+        assertTrue(TokenToParsedTokenCache.isWellFormed("a.b."));
+        assertTrue(TokenToParsedTokenCache.isWellFormed(TokenGenerator.getInstance().generateBearerToken(clientId, 30L)));
+    }
+
+    @Test
+    public void testGet_rejectedTokenIsNotCachedWithValidTokens() {
+        final String token = TokenGenerator.getInstance().generateTokenWithRandomNewKey(clientId, 30L, true);
+
+        OAuthToken oAuthToken = cache.get(token);
+
+        assertEquals(OAuthToken.TokenStateEnum.INVALID_SIGNATURE, oAuthToken.getTokenState());
+        assertSame("Rejected token is expected to be parsed only once.", oAuthToken, cache.get(token));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testGet_cachedByDigestOfToken() {
+        final String token = TokenGenerator.getInstance().generateBearerToken(clientId, 30L);
+
+        OAuthToken oAuthToken = cache.get(token);
+
+        assertSame("Token is expected to be parsed only once.", oAuthToken, cache.get(new String(token.toCharArray())));
+        assertEquals(TokenDigest.of(token), oAuthToken.getTokenDigest());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testGet_expiredTokenIsEvicted() throws InterruptedException {
+        final String token = TokenGenerator.getInstance().generateBearerToken(clientId, 2L);
+        assertTrue("Token is expected to be valid.", cache.get(token).isValid());
 
+        // wait in order to let the token to become expired
+        TimeUnit.MILLISECONDS.sleep(2_001);
 
+        assertEquals(OAuthToken.TokenStateEnum.EXPIRED, cache.get(token).getTokenState());
+        assertEquals(0, cache.size());
+    }
 }
\ No newline at end of file
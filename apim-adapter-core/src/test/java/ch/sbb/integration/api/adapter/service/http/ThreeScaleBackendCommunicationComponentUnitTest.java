@@ -2,6 +2,7 @@ package ch.sbb.integration.api.adapter.service.http;
 
 import ch.sbb.integration.api.adapter.config.ApimAdapterConfig;
 import ch.sbb.integration.api.adapter.config.RestConfig;
+import ch.sbb.integration.api.adapter.model.reporting.ReportResult;
 import ch.sbb.integration.api.adapter.model.reporting.ResponseSummary;
 import ch.sbb.integration.api.adapter.service.restclient.ThreeScaleBackendCommunicationComponent;
 import org.jboss.resteasy.client.jaxrs.ResteasyClient;
@@ -9,24 +10,35 @@ import org.jboss.resteasy.client.jaxrs.ResteasyWebTarget;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
-import org.mockito.ArgumentCaptor;
-import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
 
 import javax.ws.rs.client.Entity;
 import javax.ws.rs.client.Invocation;
 import javax.ws.rs.core.Form;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import static javax.ws.rs.core.Response.noContent;
 import static javax.ws.rs.core.Response.serverError;
+import static java.util.stream.Collectors.toList;
 import static org.hamcrest.CoreMatchers.hasItem;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.*;
 
@@ -51,8 +63,7 @@ public class ThreeScaleBackendCommunicationComponentUnitTest {
     @Mock
     private Invocation.Builder mockedBuilder;
 
-    @Captor
-    private ArgumentCaptor<Entity> captor;
+    private final List<Form> postedForms = Collections.synchronizedList(new ArrayList<>());
 
     @Before
     public void setUp() throws Exception {
@@ -64,10 +75,12 @@ public class ThreeScaleBackendCommunicationComponentUnitTest {
         when(mockedConfig.getBackendToken()).thenReturn(BACKEND_TOKEN);
         when(mockedConfig.getAdapterServiceId()).thenReturn(SERVICE_ID);
         when(mockedConfig.isReportResponseCode()).thenReturn(reportResponseCode);
+        when(mockedConfig.getReportParallelism()).thenReturn(2);
 
-        when(mockedRestConfig.newRestEasyClient()).thenReturn(mockedRestClient);
+        when(mockedRestConfig.newRestEasyClient(anyInt())).thenReturn(mockedRestClient);
         when(mockedRestClient.target(eq("BACKEND_URL/transactions.xml"))).thenReturn(mockedWebTarget);
         when(mockedWebTarget.request()).thenReturn(mockedBuilder);
+        postedForms.clear();
 
         testee = new ThreeScaleBackendCommunicationComponent(mockedConfig, mockedRestConfig);
     }
@@ -75,10 +88,10 @@ public class ThreeScaleBackendCommunicationComponentUnitTest {
     @Test
     public void reportEmptyMap() {
         // Act
-        boolean report = testee.report(new HashMap<>());
+        ReportResult report = testee.report(new HashMap<>());
 
         // Assert
-        assertThat(report, is(true));
+        assertThat(report.isSuccessful(), is(true));
         verifyZeroInteractions(mockedRestClient);
     }
 
@@ -87,16 +100,15 @@ public class ThreeScaleBackendCommunicationComponentUnitTest {
         // Arrange
         Map<ResponseSummary, Long> hits = new HashMap<>();
         hits.put(new ResponseSummary(CLIENT_ID, 200, METRIC), 1L);
-        when(mockedBuilder.post(any(Entity.class))).thenReturn(OK_RESPONSE);
+        when(mockedBuilder.post(any(Entity.class))).thenAnswer(postAndRespond(OK_RESPONSE));
 
         // Act
-        boolean report = testee.report(hits);
+        ReportResult report = testee.report(hits);
 
         // Assert
-        assertThat(report, is(true));
-        verify(mockedBuilder).post(captor.capture());
-        System.out.println(captor.getValue());
-        Form f = ((Form)captor.getValue().getEntity());
+        assertThat(report.isSuccessful(), is(true));
+        verify(mockedBuilder).post(any(Entity.class));
+        Form f = postedForms.get(0);
 
         assertThat(f.asMap().size(), is(6)); //service_token + service_id + 4 per transaction
         assertThat(f.asMap().get("service_token"), hasItem(BACKEND_TOKEN));
@@ -114,10 +126,10 @@ public class ThreeScaleBackendCommunicationComponentUnitTest {
         when(mockedBuilder.post(any(Entity.class))).thenReturn(serverError().build());
 
         // Act
-        boolean report = testee.report(hits);
+        ReportResult report = testee.report(hits);
 
         // Assert
-        assertThat(report, is(false));
+        assertThat(report.isSuccessful(), is(false));
     }
 
     @Test
@@ -128,10 +140,10 @@ public class ThreeScaleBackendCommunicationComponentUnitTest {
         when(mockedBuilder.post(any(Entity.class))).thenThrow(new RuntimeException("error"));
 
         // Act
-        boolean report = testee.report(hits);
+        ReportResult report = testee.report(hits);
 
         // Assert
-        assertThat(report, is(false));
+        assertThat(report.isSuccessful(), is(false));
     }
 
     @Test
@@ -139,15 +151,15 @@ public class ThreeScaleBackendCommunicationComponentUnitTest {
         // Arrange
         Map<ResponseSummary, Long> hits = new HashMap<>();
         hits.put(new ResponseSummary(CLIENT_ID, 200, METRIC), 2L);
-        when(mockedBuilder.post(any(Entity.class))).thenReturn(OK_RESPONSE);
+        when(mockedBuilder.post(any(Entity.class))).thenAnswer(postAndRespond(OK_RESPONSE));
 
         // Act
-        boolean report = testee.report(hits);
+        ReportResult report = testee.report(hits);
 
         // Assert
-        assertThat(report, is(true));
-        verify(mockedBuilder).post(captor.capture());
-        Form f = ((Form)captor.getValue().getEntity());
+        assertThat(report.isSuccessful(), is(true));
+        verify(mockedBuilder).post(any(Entity.class));
+        Form f = postedForms.get(0);
 
         assertThat(f.asMap().size(), is(10)); //service_token + service_id + 4 per transaction
         assertThat(f.asMap().get("transactions[0][app_id]"), hasItem(CLIENT_ID));
@@ -164,17 +176,41 @@ public class ThreeScaleBackendCommunicationComponentUnitTest {
         Map<ResponseSummary, Long> hits = new HashMap<>();
         hits.put(new ResponseSummary(CLIENT_ID, 200, METRIC), 500L);
         hits.put(new ResponseSummary(CLIENT_ID, 201, METRIC), 501L);
-        when(mockedBuilder.post(any(Entity.class))).thenReturn(OK_RESPONSE);
+        when(mockedBuilder.post(any(Entity.class))).thenAnswer(postAndRespond(OK_RESPONSE));
 
         // Act
-        boolean report = testee.report(hits);
+        ReportResult report = testee.report(hits);
 
         // Assert
-        assertThat(report, is(true));
-        verify(mockedBuilder, times(2)).post(captor.capture());
-        Form f = ((Form)captor.getAllValues().get(0).getEntity());
+        assertThat(report.isSuccessful(), is(true));
+        verify(mockedBuilder, times(2)).post(any(Entity.class));
+        List<Integer> formSizes = postedForms.stream().map(f -> f.asMap().size()).sorted().collect(toList());
 
-        assertThat(f.asMap().size(), is(4002)); //service_token + service_id + 4 per transaction
+        assertThat(formSizes, contains(6, 4002)); //service_token + service_id + 4 per transaction
+    }
+
+    @Test
+    public void reportPartiallyFailing_thenOnlyHitsOfFailedFormAreUnreported() {
+        // Arrange
+        Map<ResponseSummary, Long> hits = new HashMap<>();
+        ResponseSummary ok = new ResponseSummary(CLIENT_ID, 200, METRIC);
+        ResponseSummary notFound = new ResponseSummary(CLIENT_ID, 404, METRIC);
+        hits.put(ok, 1500L);
+        hits.put(notFound, 700L);
+        when(mockedBuilder.post(any(Entity.class))).thenAnswer(invocation -> {
+            Form form = decode((StreamingOutput) ((Entity<?>) invocation.getArguments()[0]).getEntity());
+            // the last form with 200 transactions fails
+            return form.asMap().size() == 2 + 4 * 200 ? serverError().build() : OK_RESPONSE;
+        });
+
+        // Act
+        ReportResult report = testee.report(hits);
+
+        // Assert
+        assertThat(report.isSuccessful(), is(false));
+        verify(mockedBuilder, times(3)).post(any(Entity.class));
+        long unreported = report.getUnreportedHits().values().stream().mapToLong(Long::longValue).sum();
+        assertThat(unreported, is(200L));
     }
 
 
@@ -185,19 +221,62 @@ public class ThreeScaleBackendCommunicationComponentUnitTest {
 
         Map<ResponseSummary, Long> hits = new HashMap<>();
         hits.put(new ResponseSummary(CLIENT_ID, 200, METRIC), 2L);
-        when(mockedBuilder.post(any(Entity.class))).thenReturn(OK_RESPONSE);
+        when(mockedBuilder.post(any(Entity.class))).thenAnswer(postAndRespond(OK_RESPONSE));
 
         // Act
-        boolean report = testee.report(hits);
+        ReportResult report = testee.report(hits);
 
         // Assert
-        assertThat(report, is(true));
-        verify(mockedBuilder).post(captor.capture());
-        Form f = ((Form)captor.getValue().getEntity());
+        assertThat(report.isSuccessful(), is(true));
+        verify(mockedBuilder).post(any(Entity.class));
+        Form f = postedForms.get(0);
 
         assertThat(f.asMap().size(), is(5)); //service_token + service_id + 3 per transaction
         assertThat(f.asMap().get("transactions[0][app_id]"), hasItem(CLIENT_ID));
         assertThat(f.asMap().containsKey("transactions[0][log][code]"), is(false));
         assertThat(f.asMap().get("transactions[0][usage][" + METRIC + "]"), hasItem("2"));
     }
+
+    @Test
+    public void reportEncodesSpecialCharacters() {
+        // Arrange
+        createTestee(false);
+
+        Map<ResponseSummary, Long> hits = new HashMap<>();
+        hits.put(new ResponseSummary("client &=+ äöü", 200, "metric[1]"), 12345L);
+        when(mockedBuilder.post(any(Entity.class))).thenAnswer(postAndRespond(OK_RESPONSE));
+
+        // Act
+        ReportResult report = testee.report(hits);
+
+        // Assert
+        assertThat(report.isSuccessful(), is(true));
+        Form f = postedForms.get(0);
+        assertThat(f.asMap().get("transactions[0][app_id]"), hasItem("client &=+ äöü"));
+        assertThat(f.asMap().get("transactions[0][usage][metric[1]]"), hasItem("12345"));
+        assertThat(f.asMap().get("transactions[0][timestamp]").get(0).length(), is("yyyy-MM-dd HH:mm:ss +0000".length()));
+    }
+
+    /**
+     * Decodes the posted form when it is posted, the reporting reuses its buffer for the next form
+     */
+    private Answer<Response> postAndRespond(Response response) {
+        return invocation -> {
+            Entity<?> entity = (Entity<?>) invocation.getArguments()[0];
+            assertThat(entity.getMediaType(), is(MediaType.APPLICATION_FORM_URLENCODED_TYPE));
+            postedForms.add(decode((StreamingOutput) entity.getEntity()));
+            return response;
+        };
+    }
+
+    private static Form decode(StreamingOutput output) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        output.write(body);
+        Form form = new Form();
+        for (String param : body.toString(StandardCharsets.US_ASCII.name()).split("&")) {
+            String[] keyValue = param.split("=", 2);
+            form.param(URLDecoder.decode(keyValue[0], "UTF-8"), URLDecoder.decode(keyValue[1], "UTF-8"));
+        }
+        return form;
+    }
 }
@@ -0,0 +1,141 @@
+package ch.sbb.integration.api.adapter.service.job;
+
+import ch.sbb.integration.api.adapter.model.reporting.ResponseSummary;
+import ch.sbb.integration.api.adapter.model.usage.Client;
+import ch.sbb.integration.api.adapter.model.usage.ClientSyncState;
+import ch.sbb.integration.api.adapter.model.usage.MetricUsage;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.time.ZonedDateTime.now;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class ClientSyncSchedulerTest {
+
+    private static final String METRIC = "hits";
+    private static final String IDLE = "IDLE";
+    private static final String BUSY = "BUSY";
+    private static final String UNLIMITED = "UNLIMITED";
+
+    private final Map<String, Client> clients = new HashMap<>();
+    private final List<String> clientIds = Arrays.asList(IDLE, BUSY, UNLIMITED);
+    private ClientSyncScheduler testee;
+
+    @Before
+    public void setup() {
+        clients.put(IDLE, limitedClient(IDLE, 1_000L));
+        clients.put(BUSY, limitedClient(BUSY, 1_000L));
+        clients.put(UNLIMITED, new Client(UNLIMITED, Collections.singletonMap(METRIC, MetricUsage.unlimitedMetric(UNLIMITED, METRIC)), ClientSyncState.OK));
+        testee = new ClientSyncScheduler();
+    }
+
+    @Test
+    public void firstRound_thenAllClientsAreDue() {
+        //Act
+        List<String> due = testee.nextRound(clientIds, clients::get, false);
+
+        //Assert
+        assertThat(due.size(), is(3));
+    }
+
+    @Test
+    public void idleClients_thenSyncedOnlyEveryMaxInterval() {
+        //Arrange
+        testee.nextRound(clientIds, clients::get, false);
+
+        //Act & Assert
+        for (int round = 1; round < ClientSyncScheduler.MAX_SYNC_INTERVAL_ROUNDS; round++) {
+            assertThat(testee.nextRound(clientIds, clients::get, false), is(empty()));
+        }
+        assertThat(testee.nextRound(clientIds, clients::get, false).size(), is(3));
+    }
+
+    @Test
+    public void clientCloseToItsLimit_thenSyncedEveryRound() {
+        //Arrange
+        testee.nextRound(clientIds, clients::get, false);
+
+        //Act & Assert
+        for (int round = 0; round < 5; round++) {
+            testee.recordHits(hitsOf(BUSY, 100L));
+            clients.put(BUSY, limitedClient(BUSY, 150L));
+            assertThat(testee.nextRound(clientIds, clients::get, false), contains(BUSY));
+        }
+    }
+
+    @Test
+    public void idleClientCloseToItsLimit_thenSyncedEveryRound() {
+        //Arrange
+        clients.put(IDLE, limitedClient(IDLE, 3L));
+        testee.nextRound(clientIds, clients::get, false);
+
+        //Act & Assert
+        for (int round = 0; round < 5; round++) {
+            assertThat(testee.nextRound(clientIds, clients::get, false), contains(IDLE));
+        }
+        clients.put(IDLE, limitedClient(IDLE, 0L));
+        assertThat(testee.nextRound(clientIds, clients::get, false), contains(IDLE));
+    }
+
+    @Test
+    public void requeuedHitsOfFailedReports_thenNotCountedAgain() {
+        //Arrange
+        testee.nextRound(clientIds, clients::get, false);
+
+        //Act & Assert
+        // a burst of hits makes the client high traffic, the report of them fails again and again
+        for (int round = 0; round < 4; round++) {
+            testee.recordHits(hitsOf(UNLIMITED, 10_000L));
+            testee.recordRequeuedHits(hitsOf(UNLIMITED, 10_000L));
+            assertThat(testee.nextRound(clientIds, clients::get, false), contains(UNLIMITED));
+        }
+        // only the first round had new hits, the hit rate has decayed below high traffic
+        testee.recordHits(hitsOf(UNLIMITED, 10_000L));
+        assertThat(testee.nextRound(clientIds, clients::get, false), is(empty()));
+    }
+
+    @Test
+    public void severalClientsDue_thenClosestToLimitFirst() {
+        //Arrange
+        clients.put(IDLE, limitedClient(IDLE, 10L));
+
+        //Act
+        List<String> due = testee.nextRound(clientIds, clients::get, false);
+
+        //Assert
+        assertThat(due, contains(IDLE, BUSY, UNLIMITED));
+    }
+
+    @Test
+    public void allClientsRequested_thenAllClientsAreDue() {
+        //Arrange
+        testee.nextRound(clientIds, clients::get, false);
+
+        //Act
+        List<String> due = testee.nextRound(clientIds, clients::get, true);
+
+        //Assert
+        assertThat(due.size(), is(3));
+    }
+
+    private static Map<ResponseSummary, Long> hitsOf(String clientId, long count) {
+        return Collections.singletonMap(new ResponseSummary(clientId, 200, METRIC), count);
+    }
+
+    private static Client limitedClient(String clientId, long remaining) {
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss Z");
+        MetricUsage metricUsage = MetricUsage.limitedMetric(clientId, METRIC, 10_000L, 10_000L - remaining,
+                now().minusHours(1).format(formatter), now().plusHours(1).format(formatter));
+        return new Client(clientId, Collections.singletonMap(METRIC, metricUsage), ClientSyncState.OK);
+    }
+}
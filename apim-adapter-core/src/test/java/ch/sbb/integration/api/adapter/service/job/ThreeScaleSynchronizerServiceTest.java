@@ -3,6 +3,7 @@ package ch.sbb.integration.api.adapter.service.job;
 import ch.sbb.integration.api.adapter.model.Metric;
 import ch.sbb.integration.api.adapter.model.TransactionsRequest;
 import ch.sbb.integration.api.adapter.model.reporting.Hits;
+import ch.sbb.integration.api.adapter.model.reporting.ReportResult;
 import ch.sbb.integration.api.adapter.model.reporting.ResponseSummary;
 import ch.sbb.integration.api.adapter.model.usage.Client;
 import ch.sbb.integration.api.adapter.model.usage.ClientSyncState;
@@ -11,7 +12,9 @@ import ch.sbb.integration.api.adapter.service.cache.ClientCache;
 import ch.sbb.integration.api.adapter.service.cache.ServiceToMetricsCache;
 import ch.sbb.integration.api.adapter.service.configuration.ConfigurationLoader;
 import ch.sbb.integration.api.adapter.service.configuration.EmergencyModeState;
+import ch.sbb.integration.api.adapter.service.repository.HitJournal;
 import ch.sbb.integration.api.adapter.service.restclient.ThreeScaleBackendCommunicationComponent;
+import org.apache.commons.io.FileUtils;
 import org.hamcrest.core.IsNull;
 import org.junit.Before;
 import org.junit.Test;
@@ -25,6 +28,8 @@ import org.xml.sax.SAXException;
 
 import javax.xml.parsers.ParserConfigurationException;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
@@ -102,7 +107,7 @@ public class ThreeScaleSynchronizerServiceTest {
     @Test
     public void unlimitedMetric_areReportedOnce() throws ParserConfigurationException, SAXException, IOException {
         //Arrange
-        when(mockedThreeScaleBackendCommunicationComponent.report(Matchers.any())).thenReturn(true);
+        when(mockedThreeScaleBackendCommunicationComponent.report(Matchers.any())).thenReturn(ReportResult.successful());
 
         Map<String, MetricUsage> usageMap = new HashMap<>();
         MetricUsage metricUsage = MetricUsage.unlimitedMetric(CLIENT_ID, METRIC_ID);
@@ -137,7 +142,7 @@ public class ThreeScaleSynchronizerServiceTest {
     @Test
     public void limitedMetrics_areReportedOnce() throws ParserConfigurationException, SAXException, IOException {
         //Arrange
-        when(mockedThreeScaleBackendCommunicationComponent.report(Matchers.any())).thenReturn(true);
+        when(mockedThreeScaleBackendCommunicationComponent.report(Matchers.any())).thenReturn(ReportResult.successful());
         prepareMetricUsage(now().minusSeconds(1), now());
 
         //Act 0
@@ -164,7 +169,7 @@ public class ThreeScaleSynchronizerServiceTest {
     @Test
     public void limitedMetrics_ChangeUsage() throws ParserConfigurationException, SAXException, IOException {
         //Arrange
-        when(mockedThreeScaleBackendCommunicationComponent.report(Matchers.any())).thenReturn(true);
+        when(mockedThreeScaleBackendCommunicationComponent.report(Matchers.any())).thenReturn(ReportResult.successful());
 
         Map<String, MetricUsage> chachedUsageMap = new HashMap<>();
         long cachedBase = 10L;
@@ -203,7 +208,7 @@ public class ThreeScaleSynchronizerServiceTest {
     @Test
     public void limitedMetrics_deleteMetric() throws ParserConfigurationException, SAXException, IOException {
         //Arrange
-        when(mockedThreeScaleBackendCommunicationComponent.report(Matchers.any())).thenReturn(true);
+        when(mockedThreeScaleBackendCommunicationComponent.report(Matchers.any())).thenReturn(ReportResult.successful());
 
         Map<String, MetricUsage> chachedUsageMap = new HashMap<>();
         long cachedBase = 10L;
@@ -233,9 +238,9 @@ public class ThreeScaleSynchronizerServiceTest {
     public void hitsOnlimitedMetrics_areReportedOnce_in500Case() throws ParserConfigurationException, SAXException, IOException {
         //Arrange
         when(mockedThreeScaleBackendCommunicationComponent.report(Matchers.any()))
-                .thenReturn(false) //There is a error on first report
-                .thenReturn(true)                    //ok on 2nd report
-                .thenReturn(true);                   //ok on 3nd report
+                .thenAnswer(invocation -> ReportResult.failed((Map<ResponseSummary, Long>) invocation.getArguments()[0])) //There is a error on first report
+                .thenReturn(ReportResult.successful())                    //ok on 2nd report
+                .thenReturn(ReportResult.successful());                   //ok on 3nd report
 
         MetricUsage metricUsage = prepareMetricUsage(now().minusSeconds(1), now());
 
@@ -290,9 +295,9 @@ public class ThreeScaleSynchronizerServiceTest {
     public void hitsFromYesterdayOnlimitedMetrics_areNotReportedOnce_in500Case() throws ParserConfigurationException, SAXException, IOException {
         //Arrange
         when(mockedThreeScaleBackendCommunicationComponent.report(Matchers.any()))
-                .thenReturn(false) //There is a error on first report
-                .thenReturn(true)                    //ok on 2nd report
-                .thenReturn(true);                   //ok on 3nd report
+                .thenAnswer(invocation -> ReportResult.failed((Map<ResponseSummary, Long>) invocation.getArguments()[0])) //There is a error on first report
+                .thenReturn(ReportResult.successful())                    //ok on 2nd report
+                .thenReturn(ReportResult.successful());                   //ok on 3nd report
 
         MetricUsage metricUsage = prepareMetricUsage(now().minusDays(2).minusSeconds(1), now().minusDays(2));
 
@@ -315,9 +320,9 @@ public class ThreeScaleSynchronizerServiceTest {
         List<Metric> metrics = singletonList(new Metric(METRIC_ID, METRIC_ID, null, null));
         when(mockedServiceToMetricsCache.get(any())).thenReturn(metrics);
         when(mockedThreeScaleBackendCommunicationComponent.report(Matchers.any()))
-                .thenReturn(false) //There is a error on first report
-                .thenReturn(true)                    //ok on 2nd report
-                .thenReturn(true);                   //ok on 3nd report
+                .thenAnswer(invocation -> ReportResult.failed((Map<ResponseSummary, Long>) invocation.getArguments()[0])) //There is a error on first report
+                .thenReturn(ReportResult.successful())                    //ok on 2nd report
+                .thenReturn(ReportResult.successful());                   //ok on 3nd report
 
         ZonedDateTime from = now().minusHours(1).minusSeconds(1);
         ZonedDateTime to = now().minusHours(1);
@@ -352,6 +357,121 @@ public class ThreeScaleSynchronizerServiceTest {
         verifyNoMoreInteractions(mockedThreeScaleBackendCommunicationComponent);
     }
 
+    @Test
+    public void hitsOfFailedReport_areKeptInHitJournal_andReportedAfterRestart() throws IOException {
+        //Arrange
+        Path cacheLocation = Files.createTempDirectory(ThreeScaleSynchronizerServiceTest.class.getSimpleName());
+        HitJournal hitJournal = new HitJournal(cacheLocation.toString());
+        testee = synchronizerWith(hitJournal);
+        when(mockedThreeScaleBackendCommunicationComponent.report(Matchers.any()))
+                .thenAnswer(invocation -> ReportResult.failed((Map<ResponseSummary, Long>) invocation.getArguments()[0])) //There is a error on first report
+                .thenReturn(ReportResult.successful());                   //ok on 2nd report
+
+        //Act 0
+        hits.addUnreportHits(RESPONSE_SUMMARY, 1L);
+
+        //Act 1
+        testee.run();
+
+        //Assert 1
+        //The hit is not kept in memory, but in the journal
+        assertThat(hits.extractUnreportedHits().isEmpty(), is(true));
+        assertSingleTransactions(hitJournal.unreportedHits());
+
+        //Act 2
+        //We restart and sync again
+        hitJournal.close();
+        HitJournal restartedHitJournal = new HitJournal(cacheLocation.toString());
+        testee = synchronizerWith(restartedHitJournal);
+        testee.run();
+
+        //Assert 2
+        verify(mockedThreeScaleBackendCommunicationComponent, times(2)).report(captor.capture());
+        assertSingleTransactions(captor.getAllValues().get(1));
+        assertThat(restartedHitJournal.unreportedHits().isEmpty(), is(true));
+
+        restartedHitJournal.close();
+        FileUtils.deleteDirectory(cacheLocation.toFile());
+    }
+
+    @Test
+    public void backlogOfHitJournal_isReportedInChunks() throws IOException {
+        //Arrange
+        Path cacheLocation = Files.createTempDirectory(ThreeScaleSynchronizerServiceTest.class.getSimpleName());
+        HitJournal hitJournal = new HitJournal(cacheLocation.toString());
+        testee = synchronizerWith(hitJournal);
+        when(mockedThreeScaleBackendCommunicationComponent.report(Matchers.any())).thenReturn(ReportResult.successful());
+        for (int i = 0; i <= ThreeScaleSynchronizerService.MAX_REPORTED_RESPONSE_SUMMARIES; i++) {
+            hits.addUnreportHits(new ResponseSummary(CLIENT_ID + i, 200, METRIC_ID), 1L);
+        }
+
+        //Act
+        testee.run();
+
+        //Assert
+        verify(mockedThreeScaleBackendCommunicationComponent, times(2)).report(captor.capture());
+        assertThat(captor.getAllValues().get(0).size(), is(ThreeScaleSynchronizerService.MAX_REPORTED_RESPONSE_SUMMARIES));
+        assertThat(captor.getAllValues().get(1).size(), is(1));
+        assertThat(hitJournal.unreportedHits().isEmpty(), is(true));
+
+        hitJournal.close();
+        FileUtils.deleteDirectory(cacheLocation.toFile());
+    }
+
+    private ThreeScaleSynchronizerService synchronizerWith(HitJournal hitJournal) {
+        return new ThreeScaleSynchronizerService(
+                mockedClientCache,
+                mockedServiceToMetricsCache,
+                null,
+                mockedConfigurationLoader,
+                mockedThreeScaleBackendCommunicationComponent,
+                mockedEmergencyModeState,
+                hits,
+                4,
+                8,
+                hitJournal);
+    }
+
+    @Test
+    public void manyClients_areSynchronizedConcurrentlyAndIndependently() throws ParserConfigurationException, SAXException, IOException {
+        //Arrange
+        testee = new ThreeScaleSynchronizerService(
+                mockedClientCache,
+                mockedServiceToMetricsCache,
+                null,
+                mockedConfigurationLoader,
+                mockedThreeScaleBackendCommunicationComponent,
+                mockedEmergencyModeState,
+                hits,
+                4,
+                8,
+                HitJournal.disabled());
+        when(mockedServiceToMetricsCache.get(any())).thenReturn(singletonList(new Metric(METRIC_ID, METRIC_ID, METRIC_ID, emptyList())));
+
+        List<Client> cachedClients = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            String clientId = CLIENT_ID + i;
+            Client cachedClient = new Client(clientId, new HashMap<>(), ClientSyncState.OK);
+            cachedClients.add(cachedClient);
+            clientIds.add(clientId);
+            when(mockedClientCache.get(eq(clientId))).thenReturn(cachedClient);
+            when(mockedConfigurationLoader.loadPlanConfig(any(String.class), eq(clientId), eq(false))).thenReturn(new Client(clientId, new HashMap<>(), ClientSyncState.OK));
+        }
+        //the sync of one client fails, the others are synchronized anyway
+        when(mockedConfigurationLoader.loadPlanConfig(any(String.class), eq(CLIENT_ID + 42), eq(false))).thenThrow(new IOException("connection reset"));
+
+        //Act
+        testee.run();
+
+        //Assert
+        for (int i = 0; i < 100; i++) {
+            verify(mockedConfigurationLoader).loadPlanConfig(any(String.class), eq(CLIENT_ID + i), eq(false));
+            assertThat(cachedClients.get(i).getUsage(METRIC_ID) == null, is(i == 42));
+        }
+        assertThat(testee.getSyncStatus().getLastSyncClients(), is(100));
+        assertThat(testee.getSyncStatus().isLastRunSuccessful(), is(false));
+    }
+
     private MetricUsage prepareMetricUsage(ZonedDateTime from, ZonedDateTime to) throws IOException, SAXException, ParserConfigurationException {
         Map<String, MetricUsage> usageMap = new HashMap<>();
         MetricUsage metricUsage = MetricUsage.limitedMetric(CLIENT_ID, METRIC_ID, 10L, 10L, toDateTimeString(from), toDateTimeString(to));
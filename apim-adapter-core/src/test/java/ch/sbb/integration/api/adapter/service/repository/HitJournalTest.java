@@ -0,0 +1,200 @@
+package ch.sbb.integration.api.adapter.service.repository;
+
+import ch.sbb.integration.api.adapter.model.reporting.ResponseSummary;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static ch.sbb.integration.api.adapter.service.repository.HitJournal.COMPACT_AFTER_APPENDS;
+import static ch.sbb.integration.api.adapter.service.repository.HitJournal.HITS_DIR_NAME;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HitJournalTest {
+
+    private static final long NOW_MINUTE = System.currentTimeMillis() / 60_000L;
+    private static final ResponseSummary OK = new ResponseSummary("client1", 200, "hits", NOW_MINUTE);
+    private static final ResponseSummary NOT_FOUND = new ResponseSummary("client1", 404, "hits", NOW_MINUTE);
+
+    private Path dir;
+
+    @Before
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory(HitJournalTest.class.getSimpleName());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(dir.toFile());
+    }
+
+    private HitJournal createJournal(int segmentSize) {
+        return new HitJournal(dir.toAbsolutePath().toString(), segmentSize);
+    }
+
+    @Test
+    public void testDisabled() {
+        HitJournal journal = HitJournal.disabled();
+        journal.append(hits(OK, 1L));
+        assertFalse(journal.isEnabled());
+        assertTrue(journal.unreportedHits().isEmpty());
+    }
+
+    @Test
+    public void testAppendAndAcknowledge() {
+        HitJournal journal = createJournal(HitJournal.DEFAULT_SEGMENT_SIZE);
+        assertTrue(journal.isEnabled());
+
+        journal.append(hits(OK, 5L));
+        journal.append(hits(OK, 2L));
+        journal.append(hits(NOT_FOUND, 1L));
+        journal.acknowledge(hits(OK, 3L));
+        journal.acknowledge(hits(NOT_FOUND, 1L));
+
+        assertEquals(hits(OK, 4L), journal.unreportedHits());
+    }
+
+    @Test
+    public void testReplayAfterRestart() {
+        HitJournal journal = createJournal(HitJournal.DEFAULT_SEGMENT_SIZE);
+        journal.append(hits(OK, 5L));
+        journal.acknowledge(hits(OK, 1L));
+        journal.close();
+
+        HitJournal restarted = createJournal(HitJournal.DEFAULT_SEGMENT_SIZE);
+        assertEquals(hits(OK, 4L), restarted.unreportedHits());
+
+        restarted.acknowledge(hits(OK, 4L));
+        restarted.close();
+        assertTrue(createJournal(HitJournal.DEFAULT_SEGMENT_SIZE).unreportedHits().isEmpty());
+    }
+
+    @Test
+    public void testSharedCacheLocation_secondInstanceKeepsHitsInMemory() {
+        HitJournal journal = createJournal(HitJournal.DEFAULT_SEGMENT_SIZE);
+        journal.append(hits(OK, 5L));
+
+        HitJournal other = createJournal(HitJournal.DEFAULT_SEGMENT_SIZE);
+        assertFalse(other.isEnabled());
+        assertTrue(other.unreportedHits().isEmpty());
+        other.close();
+
+        // the second instance neither replayed nor deleted the segments of the first one
+        assertEquals(hits(OK, 5L), journal.unreportedHits());
+        journal.close();
+
+        HitJournal restarted = createJournal(HitJournal.DEFAULT_SEGMENT_SIZE);
+        assertTrue(restarted.isEnabled());
+        assertEquals(hits(OK, 5L), restarted.unreportedHits());
+        restarted.close();
+    }
+
+    @Test
+    public void testSegmentRotation() throws IOException {
+        // a record of OK needs 8 + 24 + 7 + 4 = 43 bytes, so a segment holds two records
+        HitJournal journal = createJournal(100);
+        journal.append(hits(OK, 1L));
+        journal.append(hits(OK, 1L));
+        journal.append(hits(OK, 1L));
+
+        assertEquals(hits(OK, 3L), journal.unreportedHits());
+        assertEquals(2, countFiles(".journal"));
+    }
+
+    @Test
+    public void testCompaction() throws IOException {
+        HitJournal journal = createJournal(HitJournal.DEFAULT_SEGMENT_SIZE);
+        ResponseSummary yesterday = new ResponseSummary("client1", 200, "hits", NOW_MINUTE - 25 * 60L);
+        journal.append(hits(yesterday, 1L));
+        for (int i = 1; i < COMPACT_AFTER_APPENDS; i++) {
+            journal.append(hits(OK, 1L));
+        }
+
+        // the compaction drops the hits which are older than a day
+        assertEquals(1, countFiles(".base"));
+        assertEquals(1, countFiles(".journal"));
+        assertEquals(hits(OK, COMPACT_AFTER_APPENDS - 1L), journal.unreportedHits());
+        journal.close();
+
+        assertEquals(hits(OK, COMPACT_AFTER_APPENDS - 1L), createJournal(HitJournal.DEFAULT_SEGMENT_SIZE).unreportedHits());
+    }
+
+    @Test
+    public void testUnreportedHits_oldestFirstAndBounded() {
+        HitJournal journal = createJournal(HitJournal.DEFAULT_SEGMENT_SIZE);
+        ResponseSummary twoMinutesAgo = new ResponseSummary("client1", 200, "hits", NOW_MINUTE - 2);
+        ResponseSummary oneMinuteAgo = new ResponseSummary("client1", 200, "hits", NOW_MINUTE - 1);
+        journal.append(hits(OK, 3L));
+        journal.append(hits(oneMinuteAgo, 2L));
+        journal.append(hits(twoMinutesAgo, 1L));
+
+        Map<ResponseSummary, Long> oldest = journal.unreportedHits(2);
+
+        Map<ResponseSummary, Long> expected = hits(twoMinutesAgo, 1L);
+        expected.put(oneMinuteAgo, 2L);
+        assertEquals(expected, oldest);
+        journal.acknowledge(oldest);
+        assertEquals(hits(OK, 3L), journal.unreportedHits(2));
+        journal.close();
+    }
+
+    @Test
+    public void testTooLongClientId_keptInMemoryOnly() {
+        HitJournal journal = createJournal(HitJournal.DEFAULT_SEGMENT_SIZE);
+        ResponseSummary tooLong = new ResponseSummary(String.join("", Collections.nCopies(Short.MAX_VALUE + 1, "c")), 200, "hits", NOW_MINUTE);
+        journal.append(hits(tooLong, 1L));
+        journal.append(hits(OK, 1L));
+
+        Map<ResponseSummary, Long> expected = hits(tooLong, 1L);
+        expected.put(OK, 1L);
+        assertTrue(journal.isEnabled());
+        assertEquals(expected, journal.unreportedHits());
+        journal.close();
+
+        HitJournal restarted = createJournal(HitJournal.DEFAULT_SEGMENT_SIZE);
+        assertEquals(hits(OK, 1L), restarted.unreportedHits());
+        restarted.close();
+    }
+
+    @Test
+    public void testTornRecordIsIgnored() throws IOException {
+        HitJournal journal = createJournal(HitJournal.DEFAULT_SEGMENT_SIZE);
+        journal.append(hits(OK, 1L));
+        journal.append(hits(OK, 1L));
+        journal.close();
+
+        // corrupt the last byte of the second record
+        Path segment = files(".journal")[0];
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            file.seek(2 * 43 - 1);
+            file.write('x');
+        }
+
+        assertEquals(hits(OK, 1L), createJournal(HitJournal.DEFAULT_SEGMENT_SIZE).unreportedHits());
+    }
+
+    private static Map<ResponseSummary, Long> hits(ResponseSummary responseSummary, long count) {
+        return new HashMap<>(Collections.singletonMap(responseSummary, count));
+    }
+
+    private long countFiles(String suffix) throws IOException {
+        return files(suffix).length;
+    }
+
+    private Path[] files(String suffix) throws IOException {
+        try (Stream<Path> files = Files.list(dir.resolve(HITS_DIR_NAME))) {
+            return files.filter(f -> f.toString().endsWith(suffix)).sorted().toArray(Path[]::new);
+        }
+    }
+}
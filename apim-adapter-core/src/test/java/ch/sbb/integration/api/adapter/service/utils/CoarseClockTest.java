@@ -0,0 +1,49 @@
+package ch.sbb.integration.api.adapter.service.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CoarseClockTest {
+
+    @Test
+    public void tickingUntilTheLastServiceIsClosed() throws Exception {
+        //Arrange
+        final CoarseClock.Ticking first = CoarseClock.start();
+        final CoarseClock.Ticking second = CoarseClock.start();
+
+        //Act
+        first.close();
+        first.close();
+        final boolean tickingForSecond = CoarseClock.isTicking();
+        second.close();
+
+        //Assert
+        assertTrue("closing the first twice keeps the clock ticking for the second", tickingForSecond);
+        assertFalse(CoarseClock.isTicking());
+        assertNoTickerLeft();
+    }
+
+    @Test
+    public void currentTimeMillis_closeToTheSystemClock() {
+        try (CoarseClock.Ticking ignored = CoarseClock.start()) {
+            assertCloseToTheSystemClock(CoarseClock.currentTimeMillis());
+        }
+        assertCloseToTheSystemClock(CoarseClock.currentTimeMillis());
+    }
+
+    private static void assertCloseToTheSystemClock(long millis) {
+        final long delta = System.currentTimeMillis() - millis;
+        assertTrue("delta=" + delta, delta >= 0 && delta < 1_000);
+    }
+
+    private static void assertNoTickerLeft() throws InterruptedException {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if ("apim-coarse-clock".equals(thread.getName())) {
+                thread.join(5_000);
+                assertFalse(thread.isAlive());
+            }
+        }
+    }
+}
@@ -8,6 +8,7 @@ import org.junit.Test;
 
 import static java.util.Collections.emptyList;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
 
 public class ErrorResponseProdModeHelperTest {
@@ -51,4 +52,21 @@ public class ErrorResponseProdModeHelperTest {
         assertEquals(401, generatedAuthResponse.getHttpStatus());
     }
 
-}
\ No newline at end of file
+    @Test
+    public void createErrorAuthResponseReusesTemplatePerRealm() {
+        //Arrange
+        ApimAdapterConfig apimAdapterConfig = ApimAdapterFactory.createApimAdapterConfig();
+        ErrorResponseHelper testee = new ErrorResponseHelper(apimAdapterConfig);
+
+        //Act
+        AuthRepResponse first = testee.createErrorAuthResponse(AuthUtils.RH_SSO_REALM, "187e4s30", ErrorReason.UNAUTHORIZED, "/v1/locations", null, HttpMethod.GET, emptyList());
+        AuthRepResponse second = testee.createErrorAuthResponse("", null, ErrorReason.UNAUTHORIZED, "/v1/stations", null, HttpMethod.POST, emptyList());
+        AuthRepResponse otherRealm = testee.createErrorAuthResponse("OTHER", null, ErrorReason.UNAUTHORIZED, "/v1/locations", null, HttpMethod.GET, emptyList());
+
+        //Assert
+        assertSame(first.getWwwAuthenticateResponseHeader(), second.getWwwAuthenticateResponseHeader());
+        assertEquals("Bearer realm=\"OTHER\"", otherRealm.getWwwAuthenticateResponseHeader());
+        assertEquals("/v1/stations", second.getPath());
+        assertEquals(HttpMethod.POST, second.getMethod());
+    }
+}
@@ -19,6 +19,14 @@ public class JwtUtilsTest {
         assertEquals("a", AuthUtils.extractJwtFromAuthHeader("Bearer a "));
     }
 
+    @Test
+    public void tokenIndexesInAuthHeader() {
+        final String authHeader = " Bearer  a.b.c ";
+        assertEquals(9, AuthUtils.tokenBeginIndex(authHeader));
+        assertEquals(14, AuthUtils.tokenEndIndex(authHeader));
+        assertEquals(AuthUtils.tokenBeginIndex("Bearer "), AuthUtils.tokenEndIndex("Bearer "));
+    }
+
     @Test
     public void mapAndExtract() {
         String bearerToken = TokenGenerator.getInstance().generateBearerToken("test-client", 42);
@@ -23,6 +23,23 @@ public class Utilities {
         }
     }
 
+    /**
+     * Waits until the thread waits without timeout, e.g. for a running future, so a test can hand over to it without
+     * sleeping
+     *
+     * @return false if the thread did not wait within the timeout
+     */
+    public static boolean awaitWaiting(Thread thread, long timeoutMillis) {
+        final long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (thread.getState() != Thread.State.WAITING) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            Thread.yield();
+        }
+        return true;
+    }
+
     public static String readFile(String fileName) {
         InputStream resourceAsStream = ApimAdapterServiceTest.class.getResourceAsStream(fileName);
         try (Scanner scanner = new Scanner(resourceAsStream, "utf-8")) {
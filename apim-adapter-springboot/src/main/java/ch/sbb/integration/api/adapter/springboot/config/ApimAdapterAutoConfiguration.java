@@ -5,6 +5,7 @@ import ch.sbb.integration.api.adapter.config.RestConfig;
 import ch.sbb.integration.api.adapter.config.util.check.ConnectionCheck;
 import ch.sbb.integration.api.adapter.config.util.check.PublicKeyCheck;
 import ch.sbb.integration.api.adapter.config.util.check.SyncCheck;
+import ch.sbb.integration.api.adapter.factory.ApimAdapterFactory;
 import ch.sbb.integration.api.adapter.filter.ApimAdapterFilter;
 import ch.sbb.integration.api.adapter.service.ApimAdapterService;
 import ch.sbb.integration.api.adapter.service.configuration.EmergencyModeState;
@@ -91,6 +92,30 @@ public class ApimAdapterAutoConfiguration {
 	@Value("${apim.adapter.report-response-code:false}")
 	private boolean reportResponseCode;
 
+	@Value("${apim.adapter.sync-parallelism:16}")
+	private int syncParallelism;
+
+	@Value("${apim.adapter.sync-max-in-flight:64}")
+	private int syncMaxInFlight;
+
+	@Value("${apim.adapter.report-parallelism:4}")
+	private int reportParallelism;
+
+	@Value("${apim.adapter.token-cache-max-kilobytes:4096}")
+	private int tokenCacheMaxKilobytes;
+
+	@Value("${apim.adapter.startup-timeout-in-seconds:10}")
+	private int startupTimeoutInSeconds;
+
+	@Value("${apim.adapter.async-client-admission:false}")
+	private boolean asyncClientAdmission;
+
+	@Value("${apim.adapter.provisional-client-requests:10}")
+	private int provisionalClientRequests;
+
+	@Value("${apim.adapter.provisional-client-wait-millis:0}")
+	private int provisionalClientWaitMillis;
+
 	@Value("${apim.adapter.filter.enabled:true}")
 	private boolean apimFilterEnabled;
 
@@ -122,6 +147,14 @@ public class ApimAdapterAutoConfiguration {
     			.monitoringNamespace(monitoringNamespace)
 				.cacheLocation(cacheLocation)
 				.reportResponseCode(reportResponseCode)
+				.syncParallelism(syncParallelism)
+				.syncMaxInFlight(syncMaxInFlight)
+				.reportParallelism(reportParallelism)
+				.tokenCacheMaxKilobytes(tokenCacheMaxKilobytes)
+				.startupTimeoutInSeconds(startupTimeoutInSeconds)
+				.asyncClientAdmission(asyncClientAdmission)
+				.provisionalClientRequests(provisionalClientRequests)
+				.provisionalClientWaitMillis(provisionalClientWaitMillis)
 				.apimFilterEnabled(apimFilterEnabled)
     			.build();
     }
@@ -144,8 +177,8 @@ public class ApimAdapterAutoConfiguration {
 			ErrorResponseHelper errorResponseHelper,
 			OfflineConfigurationCacheRepo offlineConfigurationCacheRepo,
 			EmergencyModeState emergencyModeState) {
-    	return new ApimAdapterService(
-				config, monitoringService, connectionCheck, publicKeyCheck, syncCheck, restConfig, errorResponseHelper, offlineConfigurationCacheRepo, emergencyModeState, OperationMode.ADAPTER_SPRINGBOOT);
+    	return ApimAdapterFactory.warmUp(new ApimAdapterService(
+				config, monitoringService, connectionCheck, publicKeyCheck, syncCheck, restConfig, errorResponseHelper, offlineConfigurationCacheRepo, emergencyModeState, OperationMode.ADAPTER_SPRINGBOOT), config);
     }
 
 	@Bean
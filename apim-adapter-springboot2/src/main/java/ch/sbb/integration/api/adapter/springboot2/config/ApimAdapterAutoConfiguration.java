@@ -5,6 +5,7 @@ import ch.sbb.integration.api.adapter.config.RestConfig;
 import ch.sbb.integration.api.adapter.config.util.check.ConnectionCheck;
 import ch.sbb.integration.api.adapter.config.util.check.PublicKeyCheck;
 import ch.sbb.integration.api.adapter.config.util.check.SyncCheck;
+import ch.sbb.integration.api.adapter.factory.ApimAdapterFactory;
 import ch.sbb.integration.api.adapter.filter.ApimAdapterFilter;
 import ch.sbb.integration.api.adapter.service.ApimAdapterService;
 import ch.sbb.integration.api.adapter.service.configuration.EmergencyModeState;
@@ -14,10 +15,13 @@ import ch.sbb.integration.api.adapter.service.repository.OfflineConfigurationCac
 import ch.sbb.integration.api.adapter.service.utils.ErrorResponseHelper;
 import ch.sbb.integration.api.adapter.service.utils.HttpMethod;
 import ch.sbb.integration.api.adapter.springboot2.config.util.check.HealthCheck;
+import ch.sbb.integration.api.adapter.springboot2.filter.ApimAdapterWebFilter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -85,12 +89,33 @@ public class ApimAdapterAutoConfiguration {
 	@Value("${apim.cache.location}")
 	private String cacheLocation;
 
-	@Value("${apim.adapter.exclude-filter-methods:}")
-    private List<String> excludeFilterMethods;
-
 	@Value("${apim.adapter.report-response-code:false}")
     private boolean reportResponseCode;
 
+    @Value("${apim.adapter.sync-parallelism:16}")
+    private int syncParallelism;
+
+    @Value("${apim.adapter.sync-max-in-flight:64}")
+    private int syncMaxInFlight;
+
+    @Value("${apim.adapter.report-parallelism:4}")
+    private int reportParallelism;
+
+    @Value("${apim.adapter.token-cache-max-kilobytes:4096}")
+    private int tokenCacheMaxKilobytes;
+
+    @Value("${apim.adapter.startup-timeout-in-seconds:10}")
+    private int startupTimeoutInSeconds;
+
+    @Value("${apim.adapter.async-client-admission:false}")
+    private boolean asyncClientAdmission;
+
+    @Value("${apim.adapter.provisional-client-requests:10}")
+    private int provisionalClientRequests;
+
+    @Value("${apim.adapter.provisional-client-wait-millis:0}")
+    private int provisionalClientWaitMillis;
+
     @Value("${apim.adapter.filter.enabled:true}")
     private boolean apimFilterEnabled;
 
@@ -122,16 +147,54 @@ public class ApimAdapterAutoConfiguration {
     			.monitoringNamespace(monitoringNamespace)
 				.cacheLocation(cacheLocation)
 				.reportResponseCode(reportResponseCode)
+				.syncParallelism(syncParallelism)
+				.syncMaxInFlight(syncMaxInFlight)
+				.reportParallelism(reportParallelism)
+				.tokenCacheMaxKilobytes(tokenCacheMaxKilobytes)
+				.startupTimeoutInSeconds(startupTimeoutInSeconds)
+				.asyncClientAdmission(asyncClientAdmission)
+				.provisionalClientRequests(provisionalClientRequests)
+				.provisionalClientWaitMillis(provisionalClientWaitMillis)
 				.apimFilterEnabled(apimFilterEnabled)
     			.build();
     }
 
-	@Bean
-	@ConditionalOnMissingBean
-	public ApimAdapterFilter apimAdapterFilter(ApimAdapterService apimAdapterService) {
-        return new ApimAdapterFilter(apimAdapterService, excludeFilterMethods.stream().map(HttpMethod::parse).filter(Objects::nonNull).collect(toList()));
+	private static List<HttpMethod> parseHttpMethods(List<String> httpMethods) {
+		return httpMethods.stream().map(HttpMethod::parse).filter(Objects::nonNull).collect(toList());
 	}
-    
+
+	/**
+	 * The servlet filter, in its own configuration so the servlet API is only needed if it is used
+	 */
+	@Configuration
+	@ConditionalOnClass(name = "javax.servlet.Filter")
+	@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+	static class ServletFilterConfiguration {
+
+		@Bean
+		@ConditionalOnMissingBean
+		public ApimAdapterFilter apimAdapterFilter(ApimAdapterService apimAdapterService,
+				@Value("${apim.adapter.exclude-filter-methods:}") List<String> excludeFilterMethods) {
+			return new ApimAdapterFilter(apimAdapterService, parseHttpMethods(excludeFilterMethods));
+		}
+	}
+
+	/**
+	 * The filter of reactive web applications, which does not block the event loop
+	 */
+	@Configuration
+	@ConditionalOnClass(name = "org.springframework.web.server.WebFilter")
+	@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+	static class ReactiveFilterConfiguration {
+
+		@Bean
+		@ConditionalOnMissingBean
+		public ApimAdapterWebFilter apimAdapterWebFilter(ApimAdapterService apimAdapterService,
+				@Value("${apim.adapter.exclude-filter-methods:}") List<String> excludeFilterMethods) {
+			return new ApimAdapterWebFilter(apimAdapterService, parseHttpMethods(excludeFilterMethods));
+		}
+	}
+
     @Bean
     @ConditionalOnMissingBean
     public ApimAdapterService apimAdapterService(
@@ -144,8 +207,8 @@ public class ApimAdapterAutoConfiguration {
 			ErrorResponseHelper errorResponseHelper,
 			OfflineConfigurationCacheRepo offlineConfigurationCacheRepo,
 			EmergencyModeState emergencyModeState) {
-    	return new ApimAdapterService(
-				config, monitoringService, connectionCheck, publicKeyCheck, syncCheck, restConfig, errorResponseHelper, offlineConfigurationCacheRepo, emergencyModeState, OperationMode.ADAPTER_SPRINGBOOT);
+    	return ApimAdapterFactory.warmUp(new ApimAdapterService(
+				config, monitoringService, connectionCheck, publicKeyCheck, syncCheck, restConfig, errorResponseHelper, offlineConfigurationCacheRepo, emergencyModeState, OperationMode.ADAPTER_SPRINGBOOT), config);
     }
 
 	@Bean
@@ -0,0 +1,151 @@
+package ch.sbb.integration.api.adapter.springboot2.filter;
+
+import ch.sbb.integration.api.adapter.model.AuthRepResponse;
+import ch.sbb.integration.api.adapter.model.OAuthToken;
+import ch.sbb.integration.api.adapter.service.ApimAdapterService;
+import ch.sbb.integration.api.adapter.service.apiwatch.ApiWatch;
+import ch.sbb.integration.api.adapter.service.utils.AuthUtils;
+import ch.sbb.integration.api.adapter.service.utils.HttpMethod;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+
+import static ch.sbb.integration.api.adapter.config.ReasonCode.APIM_1002;
+
+/**
+ * The {@link ch.sbb.integration.api.adapter.filter.ApimAdapterFilter} of reactive web applications. Requests whose
+ * token, mapping rules and plan are cached are handled on the event loop, whatever has to be loaded is loaded on a
+ * bounded pool, so a slow 3scale or token issuer never blocks the event loop.
+ */
+public class ApimAdapterWebFilter implements WebFilter, DisposableBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ApimAdapterWebFilter.class);
+    private static final int LOADING_THREADS = 16;
+    /**
+     * Reported for a request the client cancelled before the response was sent (as in nginx)
+     */
+    static final int HTTP_STATUS_CLIENT_CLOSED_REQUEST = 499;
+
+    private final ApimAdapterService apimAdapterService;
+    private final List<HttpMethod> excludeFilterMethods;
+    private final Scheduler loadingScheduler;
+
+    public ApimAdapterWebFilter(ApimAdapterService apimAdapterService, List<HttpMethod> excludeFilterMethods) {
+        this.apimAdapterService = apimAdapterService;
+        this.excludeFilterMethods = excludeFilterMethods;
+        this.loadingScheduler = Schedulers.fromExecutorService(Executors.newFixedThreadPool(LOADING_THREADS, runnable -> {
+            final Thread thread = new Thread(runnable, "apim-web-filter");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        LOG.info(APIM_1002.pattern(), excludeFilterMethods);
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        final ServerHttpRequest request = exchange.getRequest();
+        final HttpMethod httpMethod = HttpMethod.parse(request.getMethodValue());
+        final String authorizationHeader = request.getHeaders().getFirst(AuthUtils.HTTP_AUTHORIZATION_HEADER_NAME);
+
+        // the token is looked up once and passed along, it is parsed on the event loop only if it is cached
+        final OAuthToken cachedToken = apimAdapterService.getCachedToken(authorizationHeader);
+        if (cachedToken != null || authorizationHeader == null) {
+            return filter(exchange, chain, httpMethod, cachedToken);
+        }
+        return Mono.fromCallable(() -> Optional.ofNullable(apimAdapterService.parseAuthorizationHeader(authorizationHeader)))
+                .subscribeOn(loadingScheduler)
+                .flatMap(parsedToken -> filter(exchange, chain, httpMethod, parsedToken.orElse(null)));
+    }
+
+    private Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain, HttpMethod httpMethod, OAuthToken parsedToken) {
+        if (apimAdapterService.getApiWatch().isApiWatchRequest(parsedToken, httpMethod)) {
+            return writeApiWatchResponse(exchange.getResponse());
+        }
+        if (excludeFilterMethods.contains(httpMethod)) {
+            return chain.filter(exchange);
+        }
+
+        final String path = exchange.getRequest().getURI().getRawPath();
+        final String queryString = exchange.getRequest().getURI().getRawQuery();
+        return Mono.fromCompletionStage(apimAdapterService.authRepAsync(parsedToken, path, queryString, httpMethod, loadingScheduler::schedule))
+                .flatMap(authRepResponse -> {
+                    final Mono<Void> response = authRepResponse.isAllowed()
+                            ? chain.filter(exchange)
+                            : reject(exchange.getResponse(), authRepResponse);
+                    return response
+                            .doOnSuccess(done -> apimAdapterService.reportHit(authRepResponse, statusOf(exchange.getResponse(), false)))
+                            .doOnError(error -> apimAdapterService.reportHit(authRepResponse, statusOf(error)))
+                            .doOnCancel(() -> apimAdapterService.reportHit(authRepResponse, statusOf(exchange.getResponse(), true)));
+                });
+    }
+
+    private static Mono<Void> reject(ServerHttpResponse response, AuthRepResponse authRepResponse) {
+        response.setStatusCode(HttpStatus.valueOf(authRepResponse.getHttpStatus()));
+        if (authRepResponse.getWwwAuthenticateResponseHeader() != null) {
+            response.getHeaders().set(AuthUtils.HTTP_WWW_AUTHENTICATE_HEADER_NAME, authRepResponse.getWwwAuthenticateResponseHeader());
+        }
+        return write(response, authRepResponse.getMessage());
+    }
+
+    private Mono<Void> writeApiWatchResponse(ServerHttpResponse response) {
+        return Mono.fromCallable(() -> apimAdapterService.getApiWatch().buildResponse())
+                .flatMap(apiWatchResponse -> {
+                    response.setStatusCode(HttpStatus.valueOf(ApiWatch.HTTP_STATUS_OK));
+                    response.getHeaders().set(HttpHeaders.CONTENT_TYPE, ApiWatch.RESPONSE_CONTENT_TYPE);
+                    return write(response, apiWatchResponse);
+                });
+    }
+
+    private static Mono<Void> write(ServerHttpResponse response, String body) {
+        final DataBuffer buffer = response.bufferFactory().wrap(body.getBytes(StandardCharsets.UTF_8));
+        return response.writeWith(Mono.just(buffer));
+    }
+
+    /**
+     * The status of the response, a cancelled response keeps its status only if it has been sent already
+     */
+    static int statusOf(ServerHttpResponse response, boolean cancelled) {
+        if (cancelled && !response.isCommitted()) {
+            return HTTP_STATUS_CLIENT_CLOSED_REQUEST;
+        }
+        final HttpStatus status = response.getStatusCode();
+        return status != null ? status.value() : HttpStatus.OK.value();
+    }
+
+    /**
+     * The status the exception handlers will answer the error with, which happens after the filters: the status of a
+     * {@link ResponseStatusException} (e.g. 404 if there is no handler) or of the {@link ResponseStatus} of the
+     * exception, a 500 otherwise
+     */
+    static int statusOf(Throwable error) {
+        if (error instanceof ResponseStatusException) {
+            return ((ResponseStatusException) error).getStatus().value();
+        }
+        final ResponseStatus responseStatus = AnnotatedElementUtils.findMergedAnnotation(error.getClass(), ResponseStatus.class);
+        return responseStatus != null ? responseStatus.code().value() : HttpStatus.INTERNAL_SERVER_ERROR.value();
+    }
+
+    @Override
+    public void destroy() {
+        loadingScheduler.dispose();
+    }
+}
@@ -0,0 +1,44 @@
+package ch.sbb.integration.api.adapter.springboot2.config;
+
+import io.prometheus.client.CollectorRegistry;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = {ApimAdapterReactiveAutoConfigurationTest.class, ApimTokenIssuerConfig.class},
+        properties = "spring.main.web-application-type=reactive")
+@EnableAutoConfiguration
+@TestPropertySource(locations = "classpath:test.properties")
+public class ApimAdapterReactiveAutoConfigurationTest {
+
+    @Autowired
+    private ApplicationContext context;
+
+    @Test
+    public void testWebFilterRegisteredInReactiveApplication() {
+        String[] beanDefinitionNames = context.getBeanDefinitionNames();
+
+        assertTrue(Arrays.asList(beanDefinitionNames).contains("apimAdapterConfig"));
+        assertTrue(Arrays.asList(beanDefinitionNames).contains("apimAdapterWebFilter"));
+        assertFalse("the servlet API is on the classpath, but this is no servlet application",
+                Arrays.asList(beanDefinitionNames).contains("apimAdapterFilter"));
+    }
+
+    @BeforeClass
+    public static void before() {
+        // make sure registry is empty before execution, otherwise multiple test executions collide with "Collector already registered"
+        CollectorRegistry.defaultRegistry.clear();
+    }
+}
@@ -0,0 +1,158 @@
+package ch.sbb.integration.api.adapter.springboot2.filter;
+
+import ch.sbb.integration.api.adapter.model.AuthRepResponse;
+import ch.sbb.integration.api.adapter.model.OAuthToken;
+import ch.sbb.integration.api.adapter.service.ApimAdapterService;
+import ch.sbb.integration.api.adapter.service.apiwatch.ApiWatch;
+import ch.sbb.integration.api.adapter.service.utils.HttpMethod;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ApimAdapterWebFilterTest {
+
+    private static final String AUTHORIZATION_HEADER = "Bearer token";
+    private static final String PATH = "/v1/locations";
+
+    private final ApimAdapterService apimAdapterService = mock(ApimAdapterService.class);
+    private final OAuthToken cachedToken = mock(OAuthToken.class);
+    private final MockServerWebExchange exchange = MockServerWebExchange.from(
+            MockServerHttpRequest.get(PATH).header("Authorization", AUTHORIZATION_HEADER));
+    private ApimAdapterWebFilter testee;
+
+    @Before
+    public void setup() {
+        final ApiWatch apiWatch = mock(ApiWatch.class);
+        when(apimAdapterService.getApiWatch()).thenReturn(apiWatch);
+        when(apimAdapterService.getCachedToken(AUTHORIZATION_HEADER)).thenReturn(cachedToken);
+
+        testee = new ApimAdapterWebFilter(apimAdapterService, emptyList());
+    }
+
+    @After
+    public void close() {
+        testee.destroy();
+    }
+
+    @Test
+    public void whenTokenCachedAndAllowed_thenChainCalledAndStatusReported() {
+        //Arrange
+        final AuthRepResponse allowed = authRepResponse(true, 200);
+        final WebFilterChain chain = webExchange -> {
+            webExchange.getResponse().setStatusCode(HttpStatus.CREATED);
+            return Mono.empty();
+        };
+
+        //Act
+        testee.filter(exchange, chain).block();
+
+        //Assert
+        assertEquals(HttpStatus.CREATED, exchange.getResponse().getStatusCode());
+        verify(apimAdapterService, never()).parseAuthorizationHeader(anyString());
+        verify(apimAdapterService).reportHit(allowed, HttpStatus.CREATED.value());
+    }
+
+    @Test
+    public void whenRejected_thenErrorResponseAndRejectionReported() {
+        //Arrange
+        final AuthRepResponse rejected = authRepResponse(false, 429);
+        final WebFilterChain chain = mock(WebFilterChain.class);
+
+        //Act
+        testee.filter(exchange, chain).block();
+
+        //Assert
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, exchange.getResponse().getStatusCode());
+        assertEquals("Limit exceeded", exchange.getResponse().getBodyAsString().block());
+        verify(chain, never()).filter(any());
+        verify(apimAdapterService).reportHit(rejected, 429);
+    }
+
+    @Test
+    public void whenChainFails_thenServerErrorReported() {
+        //Arrange
+        final AuthRepResponse allowed = authRepResponse(true, 200);
+        final WebFilterChain chain = webExchange -> Mono.error(new IllegalStateException("backend failed"));
+
+        //Act
+        testee.filter(exchange, chain).onErrorResume(e -> Mono.empty()).block();
+
+        //Assert
+        verify(apimAdapterService).reportHit(allowed, HttpStatus.INTERNAL_SERVER_ERROR.value());
+    }
+
+    @Test
+    public void whenChainFailsWithStatus_thenThatStatusReported() {
+        //Arrange
+        final AuthRepResponse allowed = authRepResponse(true, 200);
+        final WebFilterChain chain = webExchange -> Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND));
+
+        //Act
+        testee.filter(exchange, chain).onErrorResume(e -> Mono.empty()).block();
+
+        //Assert
+        verify(apimAdapterService).reportHit(allowed, HttpStatus.NOT_FOUND.value());
+    }
+
+    @Test
+    public void whenCancelledBeforeResponse_thenClientClosedRequestReported() {
+        //Arrange
+        final AuthRepResponse allowed = authRepResponse(true, 200);
+        final WebFilterChain chain = webExchange -> Mono.never();
+
+        //Act
+        final Disposable subscription = testee.filter(exchange, chain).subscribe();
+        subscription.dispose();
+
+        //Assert
+        verify(apimAdapterService).reportHit(allowed, ApimAdapterWebFilter.HTTP_STATUS_CLIENT_CLOSED_REQUEST);
+    }
+
+    @Test
+    public void whenNoAuthorizationHeader_thenRejectedWithoutLookup() {
+        //Arrange
+        final MockServerWebExchange withoutToken = MockServerWebExchange.from(MockServerHttpRequest.get(PATH));
+        final AuthRepResponse rejected = new AuthRepResponse(false, null, 401, emptyList(), "Authorization header is missing or invalid", PATH, null, HttpMethod.GET);
+        when(apimAdapterService.authRepAsync((OAuthToken) isNull(), eq(PATH), isNull(), eq(HttpMethod.GET), any(Executor.class)))
+                .thenReturn(CompletableFuture.completedFuture(rejected));
+
+        //Act
+        testee.filter(withoutToken, mock(WebFilterChain.class)).block();
+
+        //Assert
+        assertEquals(HttpStatus.UNAUTHORIZED, withoutToken.getResponse().getStatusCode());
+        verify(apimAdapterService, never()).parseAuthorizationHeader(anyString());
+        verify(apimAdapterService).reportHit(eq(rejected), anyInt());
+    }
+
+    private AuthRepResponse authRepResponse(boolean allowed, int httpStatus) {
+        final AuthRepResponse authRepResponse = new AuthRepResponse(allowed, "clientId", httpStatus,
+                singletonList("hits"), allowed ? "Access granted" : "Limit exceeded", PATH, null, HttpMethod.GET);
+        when(apimAdapterService.authRepAsync(eq(cachedToken), eq(PATH), isNull(), eq(HttpMethod.GET), any(Executor.class)))
+                .thenReturn(CompletableFuture.completedFuture(authRepResponse));
+        return authRepResponse;
+    }
+}
@@ -26,13 +26,13 @@ import java.util.Map;
  */
 public final class ApimSingleton {
 
-    private static ApimAdapterService service;
+    private static volatile ApimAdapterService service;
     private static Undertow adminServer;
-    private static ApimAdapterConfig apimAdapterConfig;
+    private static volatile ApimAdapterConfig apimAdapterConfig;
 
     private static final String CONFIG_NAME = "apim";
 
-    private static Boolean apimFilterEnabled;
+    private static volatile Boolean apimFilterEnabled;
 
     private static final Map<String, Object> config = Config.getInstance().getJsonMapConfig(CONFIG_NAME);
 
@@ -40,7 +40,19 @@ public final class ApimSingleton {
         // Hide Constructor for Singleton.
     }
 
-    public static synchronized ApimAdapterService get() {
+    /**
+     * Read on every request, hence without a lock. The service is created on startup by {@link #init()}, the lock is
+     * only taken if it is requested before.
+     */
+    public static ApimAdapterService get() {
+        final ApimAdapterService current = service;
+        return current != null ? current : init();
+    }
+
+    /**
+     * Creates the service once, called on startup by the {@link ch.sbb.integration.api.gateway.hooks.AdminStartupHook}.
+     */
+    public static synchronized ApimAdapterService init() {
         if (service == null) {
             apimFilterEnabled = (Boolean) config.get("enableApiManagement");
             service = ApimAdapterFactory.createApimAdapterService(getAdapterConfig(), OperationMode.GATEWAY, apimFilterEnabled);
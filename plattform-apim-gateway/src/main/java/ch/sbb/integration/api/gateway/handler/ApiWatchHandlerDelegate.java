@@ -1,9 +1,9 @@
 package ch.sbb.integration.api.gateway.handler;
 
+import ch.sbb.integration.api.adapter.model.OAuthToken;
 import ch.sbb.integration.api.adapter.service.ApimAdapterService;
 import ch.sbb.integration.api.adapter.service.apiwatch.ApiWatch;
 import ch.sbb.integration.api.adapter.service.utils.HttpMethod;
-import ch.sbb.integration.api.gateway.ApimSingleton;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import io.undertow.server.HttpServerExchange;
 import io.undertow.util.Headers;
@@ -14,12 +14,12 @@ import java.util.Optional;
 class ApiWatchHandlerDelegate {
     private final ApimAdapterService apimAdapterService;
 
-    ApiWatchHandlerDelegate() {
-        this.apimAdapterService = ApimSingleton.get();
+    ApiWatchHandlerDelegate(ApimAdapterService apimAdapterService) {
+        this.apimAdapterService = apimAdapterService;
     }
 
-    boolean isApiWatchRequest(String token, HttpMethod httpMethod) {
-        return apimAdapterService.getApiWatch().isApiWatchRequest(token, httpMethod);
+    boolean isApiWatchRequest(OAuthToken parsedToken, HttpMethod httpMethod) {
+        return apimAdapterService.getApiWatch().isApiWatchRequest(parsedToken, httpMethod);
     }
 
     void handleApiWatchRequest(HttpServerExchange exchange, String token) throws JsonProcessingException {
@@ -1,7 +1,7 @@
 package ch.sbb.integration.api.gateway.handler;
 
 import ch.sbb.integration.api.adapter.model.AuthRepResponse;
-import ch.sbb.integration.api.gateway.ApimSingleton;
+import ch.sbb.integration.api.adapter.service.ApimAdapterService;
 import io.undertow.server.ExchangeCompletionListener;
 import io.undertow.server.HttpServerExchange;
 import org.slf4j.Logger;
@@ -11,9 +11,11 @@ import org.slf4j.MDC;
 public class ReportHitsExchangeCompletionListener implements ExchangeCompletionListener {
     private static final Logger LOG = LoggerFactory.getLogger(ReportHitsExchangeCompletionListener.class);
 
+    private final ApimAdapterService apimAdapterService;
     private AuthRepResponse authRepResponse;
 
-    ReportHitsExchangeCompletionListener(AuthRepResponse authRepResponse) {
+    ReportHitsExchangeCompletionListener(ApimAdapterService apimAdapterService, AuthRepResponse authRepResponse) {
+        this.apimAdapterService = apimAdapterService;
         this.authRepResponse = authRepResponse;
     }
 
@@ -22,7 +24,7 @@ public class ReportHitsExchangeCompletionListener implements ExchangeCompletionL
         CorrelationHandler.setupMDC(exchange);
 
         LOG.debug("invoked reportStatusCode for authRepResponse={}", authRepResponse);
-        ApimSingleton.get().reportHit(authRepResponse, exchange.getStatusCode());
+        apimAdapterService.reportHit(authRepResponse, exchange.getStatusCode());
 
         MDC.clear();
         if (next != null) {
@@ -2,6 +2,8 @@ package ch.sbb.integration.api.gateway.handler;
 
 import ch.sbb.integration.api.adapter.config.MonitoringLevel;
 import ch.sbb.integration.api.adapter.model.AuthRepResponse;
+import ch.sbb.integration.api.adapter.model.OAuthToken;
+import ch.sbb.integration.api.adapter.service.ApimAdapterService;
 import ch.sbb.integration.api.adapter.service.utils.AuthUtils;
 import ch.sbb.integration.api.adapter.service.utils.ErrorResponseHelper;
 import ch.sbb.integration.api.adapter.service.utils.HttpMethod;
@@ -17,12 +19,15 @@ import io.undertow.server.HttpHandler;
 import io.undertow.server.HttpServerExchange;
 import io.undertow.util.HeaderValues;
 import io.undertow.util.HttpString;
+import io.undertow.util.SameThreadExecutor;
 import org.apache.http.HttpStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 import static ch.sbb.integration.api.adapter.config.ReasonCode.APIM_6006;
 import static ch.sbb.integration.api.adapter.config.ReasonCode.APIM_6007;
@@ -40,12 +45,18 @@ public class ThreeScaleAdapterHandler implements MiddlewareHandler {
     private static final String CORS_REPLY_ALLOW_ORIGIN_HEADER = "Access-Control-Allow-Origin";
     private static final String ORIGIN_HEADER = "Origin";
 
+    private final ApimAdapterService apimAdapterService;
     private final ApiWatchHandlerDelegate apiWatchHandlerDelegate;
     private volatile HttpHandler next;
     private Set<String> endpoints = Collections.synchronizedSet(new HashSet<>());
 
     public ThreeScaleAdapterHandler() {
-        apiWatchHandlerDelegate = new ApiWatchHandlerDelegate();
+        this(ApimSingleton.get());
+    }
+
+    ThreeScaleAdapterHandler(ApimAdapterService apimAdapterService) {
+        this.apimAdapterService = apimAdapterService;
+        apiWatchHandlerDelegate = new ApiWatchHandlerDelegate(apimAdapterService);
     }
 
     @Override
@@ -95,31 +106,69 @@ public class ThreeScaleAdapterHandler implements MiddlewareHandler {
     }
 
     private void tryHandleRequest(HttpServerExchange exchange) throws Exception {
+        final String authorizationHeader = extractAuthorizationHeader(exchange);
+
+        // the token is looked up once, straight from the header, and passed along
+        final OAuthToken parsedToken;
+        if (exchange.isInIoThread()) {
+            parsedToken = apimAdapterService.getCachedToken(authorizationHeader);
+            if (parsedToken == null && authorizationHeader != null) {
+                // the token issuer may have to be loaded, which must not block the IO thread
+                exchange.dispatch(this);
+                return;
+            }
+        } else {
+            parsedToken = apimAdapterService.parseAuthorizationHeader(authorizationHeader);
+        }
+
         exchange.putAttachment(LoggingExchangeCompletionListener.APIM_HANDLE_START_TIME, System.currentTimeMillis());
 
         final String path = exchange.getRequestPath();
         final String queryString = exchange.getQueryString();
-        final String token = extractToken(exchange);
         final HttpMethod httpMethod = extractHttpMethod(exchange);
 
         if (ErrorResponseHelper.isNotMonitoringUrl(path)) {
             addPrometheusAuditInfo(exchange);
         }
 
-        if (apiWatchHandlerDelegate.isApiWatchRequest(token, httpMethod)) {
-            apiWatchHandlerDelegate.handleApiWatchRequest(exchange, token);
+        if (apiWatchHandlerDelegate.isApiWatchRequest(parsedToken, httpMethod)) {
+            apiWatchHandlerDelegate.handleApiWatchRequest(exchange, AuthUtils.extractJwtFromAuthHeader(authorizationHeader));
         } else if (ApimSingleton.getAdapterConfig().getExcludeFilterMethods().contains(httpMethod)) {
             MDC.clear();
             Handler.next(exchange);
         } else {
-            applyApimFilter(exchange, path, queryString, token, httpMethod);
+            applyApimFilter(exchange, path, queryString, parsedToken, httpMethod);
         }
     }
 
-    private void applyApimFilter(HttpServerExchange exchange, String path, String queryString, String token, HttpMethod httpMethod) throws Exception {
-        final AuthRepResponse authRepResponse = ApimSingleton.get().authRep(token, path, queryString, httpMethod);
+    private void applyApimFilter(HttpServerExchange exchange, String path, String queryString, OAuthToken parsedToken, HttpMethod httpMethod) throws Exception {
+        // completes right away if nothing has to be loaded, otherwise on a worker thread
+        final Executor executor = exchange.isInIoThread() ? exchange.getConnection().getWorker() : SameThreadExecutor.INSTANCE;
+        final CompletableFuture<AuthRepResponse> authRep = apimAdapterService.authRepAsync(parsedToken, path, queryString, httpMethod, executor).toCompletableFuture();
+        if (authRep.isDone()) {
+            handleAuthRepResponse(exchange, authRep.join());
+            return;
+        }
+
+        exchange.dispatch(SameThreadExecutor.INSTANCE, () -> authRep.whenComplete((authRepResponse, e) -> {
+            CorrelationHandler.setupMDC(exchange);
+            try {
+                if (e != null) {
+                    throw e;
+                }
+                handleAuthRepResponse(exchange, authRepResponse);
+            } catch (Throwable t) {
+                LOG.error(APIM_6006.pattern(), t);
+                replyWithErrorMessage(
+                        exchange,
+                        "Unexpected Internal Server Error occurred",
+                        HttpStatus.SC_INTERNAL_SERVER_ERROR);
+            }
+        }));
+    }
 
-        exchange.addExchangeCompleteListener(new ReportHitsExchangeCompletionListener(authRepResponse));
+    private void handleAuthRepResponse(HttpServerExchange exchange, AuthRepResponse authRepResponse) throws Exception {
+        exchange.addExchangeCompleteListener(new ReportHitsExchangeCompletionListener(apimAdapterService, authRepResponse));
         exchange.addExchangeCompleteListener(new LoggingExchangeCompletionListener(authRepResponse));
 
         exchange.putAttachment(LoggingExchangeCompletionListener.APIM_HANDLE_END_TIME, System.currentTimeMillis());
@@ -186,13 +235,13 @@ public class ThreeScaleAdapterHandler implements MiddlewareHandler {
         }
     }
 
-    private String extractToken(HttpServerExchange exchange) {
+    private String extractAuthorizationHeader(HttpServerExchange exchange) {
         final HeaderValues authorizationHeader = exchange.getRequestHeaders().get(AuthUtils.HTTP_AUTHORIZATION_HEADER_NAME);
         if (authorizationHeader == null || authorizationHeader.isEmpty()) {
             LOG.debug("Authorization header is missing.");
             return null;
         }
-        return AuthUtils.extractJwtFromAuthHeader(authorizationHeader.getFirst());
+        return authorizationHeader.getFirst();
     }
 
     private void replyWithErrorMessage(HttpServerExchange exchange, String statusMessage, int httpStatus) {
@@ -1,5 +1,6 @@
 package ch.sbb.integration.api.gateway.hooks;
 
+import ch.sbb.integration.api.adapter.service.ApimAdapterService;
 import ch.sbb.integration.api.adapter.service.configuration.EmergencyModeState;
 import ch.sbb.integration.api.gateway.ApimSingleton;
 import ch.sbb.integration.api.gateway.handler.HealthHandler;
@@ -27,6 +28,8 @@ public class AdminStartupHook implements StartupHookProvider {
 
     @Override
     public void onStartup() {
+        // created before the first request, which then reads it without a lock
+        final ApimAdapterService apimAdapterService = ApimSingleton.init();
         if(isEnabled()) {
             int port = (int) CONFIG.getOrDefault("httpPort", 3000);
             String ip = (String) CONFIG.getOrDefault("ip", "0.0.0.0");
@@ -39,7 +42,7 @@ public class AdminStartupHook implements StartupHookProvider {
 
             LOG.info(APIM_4002.pattern(), ip, port);
 
-            final EmergencyModeState emergencyModeState = ApimSingleton.get().getEmergencyModeState();
+            final EmergencyModeState emergencyModeState = apimAdapterService.getEmergencyModeState();
             ReadinessHandler readinessHandler =  new ReadinessHandler(emergencyModeState);
             Undertow server = Undertow.builder()
                     .addHttpListener(port, ip)
@@ -2,6 +2,7 @@ package ch.sbb.integration.api.gateway.handler;
 
 import ch.sbb.integration.api.adapter.config.ApimAdapterConfig;
 import ch.sbb.integration.api.adapter.model.AuthRepResponse;
+import ch.sbb.integration.api.adapter.model.OAuthToken;
 import ch.sbb.integration.api.adapter.service.ApimAdapterService;
 import ch.sbb.integration.api.adapter.service.apiwatch.ApiWatch;
 import ch.sbb.integration.api.gateway.ApimSingleton;
@@ -12,15 +13,21 @@ import io.undertow.util.HttpString;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentMatchers;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import java.util.concurrent.CompletableFuture;
+
 import static io.undertow.util.StatusCodes.UNAUTHORIZED;
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -53,10 +60,9 @@ public class ThreeScaleAdapterHandlerTest {
         when(exchange.getRequestHeaders()).thenReturn(requestHeaderMap);
         when(exchange.getResponseHeaders()).thenReturn(responseHeaderMap);
 
-        ApimSingleton.set(mockedApimAdapterService);
         ApimSingleton.setAdapterConfig(adapterConfig);
 
-        testee = new ThreeScaleAdapterHandler();
+        testee = new ThreeScaleAdapterHandler(mockedApimAdapterService);
     }
 
     @Test
@@ -88,11 +94,25 @@ public class ThreeScaleAdapterHandlerTest {
         assertThat(responseHeaderMap.get(HttpString.tryFromString("Access-Control-Allow-Origin")).getFirst(), is(origin));
     }
 
+    @Test
+    public void whenTokenNotCachedOnIoThread_ThenDispatchedToWorker() {
+        //Arrange
+        when(exchange.isInIoThread()).thenReturn(true);
+        requestHeaderMap.add(HttpString.tryFromString("Authorization"), "Bearer token");
+
+        //Act
+        testee.handleRequest(exchange);
+
+        //Assert
+        verify(exchange).dispatch(testee);
+        verify(mockedApimAdapterService, never()).parseAuthorizationHeader(anyString());
+    }
+
     private void mockUnauthorized() {
         AuthRepResponse mockedResponse = mock(AuthRepResponse.class);
         when(mockedResponse.isAllowed()).thenReturn(false);
         when(mockedResponse.getHttpStatus()).thenReturn(UNAUTHORIZED);
         when(mockedApimAdapterService.getApiWatch()).thenReturn(mockedApiWatch);
-        when(mockedApimAdapterService.authRep(isNull(), isNull(), isNull(), isNull())).thenReturn(mockedResponse);
+        when(mockedApimAdapterService.authRepAsync(ArgumentMatchers.<OAuthToken>isNull(), isNull(), isNull(), isNull(), any())).thenReturn(CompletableFuture.completedFuture(mockedResponse));
     }
 }
\ No newline at end of file